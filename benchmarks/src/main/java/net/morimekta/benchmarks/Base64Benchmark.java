@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks;
+
+import net.morimekta.util.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding with {@link Base64} compared to the JDK
+ * {@link java.util.Base64}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64Benchmark {
+    @Param({"48", "4096"})
+    public int size;
+
+    private byte[] bytes;
+    private String encoded;
+    private byte[] encodedBytes;
+    private char[] chars;
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() {
+        bytes = Payloads.bytes(size, 42L);
+        encoded = Base64.encodeToString(bytes);
+        encodedBytes = Base64.encode(bytes);
+        chars = new char[size * 2];
+        buffer = new byte[size * 2];
+    }
+
+    @Benchmark
+    public String encodeToString() {
+        return Base64.encodeToString(bytes);
+    }
+
+    @Benchmark
+    public int encodeToChars() {
+        return Base64.encode(bytes, 0, bytes.length, chars, 0);
+    }
+
+    @Benchmark
+    public int encodeToBytes() {
+        return Base64.encode(bytes, 0, bytes.length, buffer, 0);
+    }
+
+    @Benchmark
+    public int jdk_encodeToBytes() {
+        return java.util.Base64.getEncoder().withoutPadding().encode(bytes, buffer);
+    }
+
+    @Benchmark
+    public String jdk_encodeToString() {
+        return java.util.Base64.getEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base64.decode(encoded);
+    }
+
+    @Benchmark
+    public int decodeToBytes() {
+        return Base64.decode(encodedBytes, 0, encodedBytes.length, buffer, 0);
+    }
+
+    @Benchmark
+    public int jdk_decodeToBytes() {
+        return java.util.Base64.getDecoder().decode(encodedBytes, buffer);
+    }
+
+    @Benchmark
+    public byte[] jdk_decode() {
+        return java.util.Base64.getDecoder().decode(encoded);
+    }
+}
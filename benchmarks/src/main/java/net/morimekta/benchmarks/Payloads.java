@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generators for realistic benchmark payloads. All generators are
+ * deterministic for a given seed, so the runs are comparable.
+ */
+public class Payloads {
+    /**
+     * The kind of text to generate.
+     */
+    public enum Text {
+        /** Plain ASCII text, e.g. english or most identifiers. */
+        ASCII,
+        /** Mostly ASCII, with some latin-1 chars, e.g. most european languages. */
+        LATIN,
+        /** Mostly 3-byte UTF-8 chars, e.g. chinese or japanese. */
+        CJK,
+        /** A mix of all of the above, including some surrogate pairs. */
+        MIXED,
+    }
+
+    private static final String ASCII_WORDS = "the quick brown fox jumps over lazy dog lorem ipsum dolor sit amet";
+    private static final String LATIN_CHARS = "æøåÆØÅéèüöäßñç";
+    private static final String CJK_CHARS   = "優秀的日本語中文漢字測試資料";
+    private static final String EMOJI       = "😁👍🎉";
+
+    /**
+     * Make a text of approximately the given number of chars.
+     *
+     * @param text The kind of text.
+     * @param chars The number of chars to generate.
+     * @param seed The random seed.
+     * @return The text.
+     */
+    public static String text(Text text, int chars, long seed) {
+        Random random = new Random(seed);
+        String[] words = ASCII_WORDS.split(" ");
+        StringBuilder builder = new StringBuilder(chars + 16);
+        while (builder.length() < chars) {
+            switch (text) {
+                case ASCII:
+                    builder.append(words[random.nextInt(words.length)]);
+                    break;
+                case LATIN:
+                    builder.append(words[random.nextInt(words.length)]);
+                    builder.append(LATIN_CHARS.charAt(random.nextInt(LATIN_CHARS.length())));
+                    break;
+                case CJK:
+                    for (int i = 0; i < 8; ++i) {
+                        builder.append(CJK_CHARS.charAt(random.nextInt(CJK_CHARS.length())));
+                    }
+                    break;
+                case MIXED:
+                    builder.append(words[random.nextInt(words.length)]);
+                    builder.append(LATIN_CHARS.charAt(random.nextInt(LATIN_CHARS.length())));
+                    builder.append(CJK_CHARS.charAt(random.nextInt(CJK_CHARS.length())));
+                    if (random.nextInt(8) == 0) {
+                        int i = random.nextInt(EMOJI.length() / 2) * 2;
+                        builder.append(EMOJI, i, i + 2);
+                    }
+                    break;
+            }
+            builder.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Make a JSON array document of records similar to a metrics feed, with
+     * repeated keys, short string values, integers and doubles.
+     *
+     * @param records The number of records in the array.
+     * @param seed The random seed.
+     * @return The JSON document.
+     */
+    public static String json(int records, long seed) {
+        Random random = new Random(seed);
+        String[] hosts = {"web-01", "web-02", "db-master", "cache-eu-west", "queue"};
+        String[] metrics = {"cpu.user", "cpu.system", "mem.used", "disk.io.read", "net.rx"};
+        StringBuilder builder = new StringBuilder(records * 160);
+        builder.append("[\n");
+        for (int i = 0; i < records; ++i) {
+            if (i > 0) {
+                builder.append(",\n");
+            }
+            builder.append("  {\"id\":").append(1000000 + i)
+                   .append(",\"timestamp\":").append(1514764800000L + random.nextInt(86400000))
+                   .append(",\"host\":\"").append(hosts[random.nextInt(hosts.length)])
+                   .append("\",\"metric\":\"").append(metrics[random.nextInt(metrics.length)])
+                   .append("\",\"value\":").append(Math.round(random.nextDouble() * 1000000) / 100.0)
+                   .append(",\"tags\":[\"env:prod\",\"zone:").append((char) ('a' + random.nextInt(3)))
+                   .append("\"],\"note\":\"").append(text(Text.ASCII, 24, seed + i).trim().replace('\n', ' '))
+                   .append("\",\"ok\":").append(random.nextInt(10) > 0)
+                   .append('}');
+        }
+        builder.append("\n]\n");
+        return builder.toString();
+    }
+
+    /**
+     * Make random bytes.
+     *
+     * @param size The number of bytes.
+     * @param seed The random seed.
+     * @return The bytes.
+     */
+    public static byte[] bytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Make random longs where small numbers are the most common, like
+     * lengths, counts and ids usually are. About half the values fit in a
+     * single varint byte, and the rest are spread over all sizes.
+     *
+     * @param count The number of values.
+     * @param negative If negative values should be included.
+     * @param seed The random seed.
+     * @return The values.
+     */
+    public static long[] longs(int count, boolean negative, long seed) {
+        Random random = new Random(seed);
+        long[] values = new long[count];
+        for (int i = 0; i < count; ++i) {
+            long value = random.nextInt(2) == 0 ? random.nextInt(128) : random.nextLong() >>> random.nextInt(64);
+            values[i] = negative && random.nextBoolean() ? -value : value;
+        }
+        return values;
+    }
+
+    private Payloads() {}
+}
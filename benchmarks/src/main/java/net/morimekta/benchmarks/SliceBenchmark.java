@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks;
+
+import net.morimekta.util.CharSlice;
+import net.morimekta.util.Slice;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Looking up keys in a hash map with {@link Slice} and {@link CharSlice}
+ * keys, where the lookup keys are new slices into a different buffer than
+ * the map keys, as when indexing tokenized data. The baselines are looking
+ * up with {@link String} keys made from the same content, and with strings
+ * that are already made.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SliceBenchmark {
+    @Param({"1024"})
+    public int count;
+
+    private byte[]                  bytes;
+    private char[]                  chars;
+    private int[]                   offsets;
+    private String[]                strings;
+    private Map<Slice, Integer>     sliceMap;
+    private Map<CharSlice, Integer> charSliceMap;
+    private Map<String, Integer>    stringMap;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42L);
+        String[] words = Payloads.text(Payloads.Text.ASCII, count * 8, 42L).split("[^a-z]+");
+        StringBuilder builder = new StringBuilder();
+        strings = new String[count];
+        offsets = new int[count + 1];
+        for (int i = 0; i < count; ++i) {
+            // Similar keys of varying length.
+            strings[i] = words[random.nextInt(words.length)] + "_" + i;
+            offsets[i] = builder.length();
+            builder.append(strings[i]);
+        }
+        offsets[count] = builder.length();
+
+        // The map keys are slices into their own copy of the content.
+        byte[] keyBytes = builder.toString().getBytes(UTF_8);
+        char[] keyChars = builder.toString().toCharArray();
+        bytes = builder.toString().getBytes(UTF_8);
+        chars = builder.toString().toCharArray();
+
+        sliceMap = new HashMap<>();
+        charSliceMap = new HashMap<>();
+        stringMap = new HashMap<>();
+        for (int i = 0; i < count; ++i) {
+            sliceMap.put(new Slice(keyBytes, offsets[i], offsets[i + 1] - offsets[i]), i);
+            charSliceMap.put(new CharSlice(keyChars, offsets[i], offsets[i + 1] - offsets[i]), i);
+            stringMap.put(strings[i], i);
+        }
+    }
+
+    @Benchmark
+    public int slice() {
+        int sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += sliceMap.get(new Slice(bytes, offsets[i], offsets[i + 1] - offsets[i]));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int charSlice() {
+        int sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += charSliceMap.get(new CharSlice(chars, offsets[i], offsets[i + 1] - offsets[i]));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int sliceAsString() {
+        int sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += stringMap.get(new Slice(bytes, offsets[i], offsets[i + 1] - offsets[i]).asString());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int string() {
+        int sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += stringMap.get(strings[i]);
+        }
+        return sum;
+    }
+}
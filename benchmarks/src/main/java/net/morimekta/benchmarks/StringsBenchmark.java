@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks;
+
+import net.morimekta.util.Strings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escaping strings with {@link Strings#escape(CharSequence)}. The JDK has no
+ * string escaping, so the baseline is the common replace chain for the
+ * basic escapes, which does not handle control or non-printable chars.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringsBenchmark {
+    @Param({"ASCII", "MIXED"})
+    public Payloads.Text text;
+
+    private String content;
+
+    @Setup
+    public void setUp() {
+        // Includes line breaks, and some quotes.
+        content = Payloads.text(text, 256, 42L).replace("fox", "\"fox\"");
+    }
+
+    @Benchmark
+    public String escape() {
+        return Strings.escape(content);
+    }
+
+    @Benchmark
+    public String replaceChain() {
+        return content.replace("\\", "\\\\")
+                      .replace("\"", "\\\"")
+                      .replace("'", "\\'")
+                      .replace("\n", "\\n")
+                      .replace("\t", "\\t")
+                      .replace("\r", "\\r");
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks;
+
+import net.morimekta.util.StrongHashBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Hashing a record like value with the {@link StrongHashBuilder} backends,
+ * compared to the (much weaker) 32-bit {@link Objects#hash(Object...)} of the
+ * same fields, and the throughput of hashing larger content. The hash
+ * distribution of the backends is checked in the io-util tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrongHashBuilderBenchmark {
+    @Param({"default", "xxhash64", "murmur3"})
+    public String backend;
+
+    private Supplier<StrongHashBuilder> builder;
+    private long   id;
+    private String name;
+    private double value;
+    private byte[] bytes;
+    private int[]  counts;
+    private byte[] content;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        switch (backend) {
+            case "xxhash64":
+                builder = StrongHashBuilder::xxHash64;
+                break;
+            case "murmur3":
+                builder = StrongHashBuilder::murmur3;
+                break;
+            default:
+                builder = StrongHashBuilder::new;
+                break;
+        }
+        id = 1234567890123L;
+        name = Payloads.text(Payloads.Text.LATIN, 32, 42L).trim();
+        value = 1234.5678;
+        bytes = Payloads.bytes(64, 42L);
+        counts = new int[]{1, 2, 3, 5, 8, 13, 21, 34};
+        content = Payloads.bytes(1 << 16, 42L);
+        text = Payloads.text(Payloads.Text.LATIN, 4096, 42L);
+    }
+
+    @Benchmark
+    public long strongHash() {
+        return builder.get().add(id)
+                      .add(name)
+                      .add(value)
+                      .add(bytes)
+                      .add(counts)
+                      .strongHash();
+    }
+
+    @Benchmark
+    public long contentHash() {
+        return builder.get().add(content).strongHash();
+    }
+
+    @Benchmark
+    public long textHash() {
+        return builder.get().add(text).strongHash();
+    }
+
+    @Benchmark
+    public int objectsHash() {
+        return Objects.hash(id, name, value, Arrays.hashCode(bytes), Arrays.hashCode(counts));
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks.io;
+
+import net.morimekta.benchmarks.Payloads;
+import net.morimekta.util.io.BigEndianBinaryReader;
+import net.morimekta.util.io.BigEndianBinaryWriter;
+import net.morimekta.util.io.BinaryReader;
+import net.morimekta.util.io.BinaryWriter;
+import net.morimekta.util.io.VarintUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading varint and zigzag encoded numbers with the
+ * {@link BinaryWriter} and {@link BinaryReader}, both directly on the stream
+ * and through a buffer. The baseline is writing and reading the same numbers as
+ * fixed 8 byte longs with the JDK {@link DataOutputStream} and
+ * {@link DataInputStream}. The {@link VarintUtil} variants skip the stream
+ * and work directly on the byte array.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryBenchmark {
+    @Param({"1024"})
+    public int count;
+
+    private long[]                values;
+    private long[]                signed;
+    private byte[]                varints;
+    private byte[]                zigzags;
+    private byte[]                fixed;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        values = Payloads.longs(count, false, 42L);
+        signed = Payloads.longs(count, true, 42L);
+        out = new ByteArrayOutputStream(count * 10);
+
+        writeVarint();
+        varints = out.toByteArray();
+        writeZigzag();
+        zigzags = out.toByteArray();
+        dataOutputStream();
+        fixed = out.toByteArray();
+    }
+
+    @Benchmark
+    public int writeVarint() throws IOException {
+        out.reset();
+        BinaryWriter writer = new BigEndianBinaryWriter(out);
+        for (long value : values) {
+            writer.writeVarint(value);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeVarint_buffered() throws IOException {
+        out.reset();
+        BinaryWriter writer = new BigEndianBinaryWriter(out, 1 << 12);
+        for (long value : values) {
+            writer.writeVarint(value);
+        }
+        writer.flush();
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeLong_buffered() throws IOException {
+        out.reset();
+        BinaryWriter writer = new BigEndianBinaryWriter(out, 1 << 12);
+        for (long value : values) {
+            writer.writeLong(value);
+        }
+        writer.flush();
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeLongs() throws IOException {
+        out.reset();
+        BinaryWriter writer = new BigEndianBinaryWriter(out);
+        writer.writeLongs(values, 0, count);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writePackedVarints() throws IOException {
+        out.reset();
+        BinaryWriter writer = new BigEndianBinaryWriter(out);
+        writer.writePackedVarints(values, 0, count);
+        return out.size();
+    }
+
+    @Benchmark
+    public int writeZigzag() throws IOException {
+        out.reset();
+        BinaryWriter writer = new BigEndianBinaryWriter(out);
+        for (long value : signed) {
+            writer.writeZigzag(value);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    public int dataOutputStream() throws IOException {
+        out.reset();
+        DataOutputStream writer = new DataOutputStream(out);
+        for (long value : values) {
+            writer.writeLong(value);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    public long readVarint() throws IOException {
+        BinaryReader reader = new BigEndianBinaryReader(new ByteArrayInputStream(varints));
+        long sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += reader.readLongVarint();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long readVarint_buffered() throws IOException {
+        BinaryReader reader = new BigEndianBinaryReader(new ByteArrayInputStream(varints), 1 << 12);
+        long sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += reader.readLongVarint();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long readVarint_array() throws IOException {
+        BinaryReader reader = new BigEndianBinaryReader(varints);
+        long sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += reader.readLongVarint();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long readVarint_varintUtil() {
+        long[] result = new long[count];
+        VarintUtil.readVarints(varints, 0, result, 0, count);
+        long sum = 0;
+        for (long value : result) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int writeVarint_varintUtil() {
+        byte[] target = new byte[count * VarintUtil.MAX_LONG_VARINT_SIZE];
+        int pos = 0;
+        for (long value : values) {
+            pos = VarintUtil.writeVarint(target, pos, value);
+        }
+        return pos;
+    }
+
+    @Benchmark
+    public long readLong_array() throws IOException {
+        BinaryReader reader = new BigEndianBinaryReader(fixed);
+        long sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += reader.expectLong();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long[] readLongs_array() throws IOException {
+        BinaryReader reader = new BigEndianBinaryReader(fixed);
+        long[] result = new long[count];
+        reader.expectLongs(result);
+        return result;
+    }
+
+    @Benchmark
+    public long[] readPackedVarints_array() throws IOException {
+        BinaryReader reader = new BigEndianBinaryReader(varints);
+        long[] result = new long[count];
+        reader.expectPackedVarints(result, 0, count);
+        return result;
+    }
+
+    @Benchmark
+    public long readZigzag() throws IOException {
+        BinaryReader reader = new BigEndianBinaryReader(new ByteArrayInputStream(zigzags));
+        long sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += reader.readLongZigzag();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long dataInputStream() throws IOException {
+        DataInputStream reader = new DataInputStream(new ByteArrayInputStream(fixed));
+        long sum = 0;
+        for (int i = 0; i < count; ++i) {
+            sum += reader.readLong();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks.io;
+
+import net.morimekta.benchmarks.Payloads;
+import net.morimekta.util.io.ByteBufferPool;
+import net.morimekta.util.io.ChunkedByteBufferOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling a response of a given size in 1 kB writes, and writing it to a
+ * channel. The {@link ChunkedByteBufferOutputStream} with pooled direct
+ * chunks and a single gathering write, compared to a new
+ * {@link ByteArrayOutputStream} and writing its byte array copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkedOutputBenchmark {
+    @Param({"4096", "1048576"})
+    public int size;
+
+    private byte[]               part;
+    private ByteBufferPool       pool;
+    private GatheringByteChannel channel;
+
+    @Setup
+    public void setUp() {
+        part = Payloads.bytes(1024, 42L);
+        pool = new ByteBufferPool();
+        channel = new NullChannel();
+    }
+
+    @Benchmark
+    public long chunked() throws IOException {
+        try (ChunkedByteBufferOutputStream out = new ChunkedByteBufferOutputStream(pool)) {
+            for (int i = 0; i < size; i += part.length) {
+                out.write(part);
+            }
+            return out.writeTo(channel);
+        }
+    }
+
+    @Benchmark
+    public long byteArray() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < size; i += part.length) {
+            out.write(part);
+        }
+        return channel.write(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    private static class NullChannel implements GatheringByteChannel {
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; ++i) {
+                written += srcs[i].remaining();
+                srcs[i].position(srcs[i].limit());
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int written = src.remaining();
+            src.position(src.limit());
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
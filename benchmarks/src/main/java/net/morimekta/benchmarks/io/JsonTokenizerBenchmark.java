@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks.io;
+
+import net.morimekta.benchmarks.Payloads;
+import net.morimekta.util.json.JsonByteToken;
+import net.morimekta.util.json.JsonByteTokenizer;
+import net.morimekta.util.json.JsonException;
+import net.morimekta.util.json.JsonToken;
+import net.morimekta.util.json.JsonTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Tokenizing a JSON document of metric records. The JDK has no JSON parser,
+ * so the baseline is just decoding the same document with the JDK
+ * {@link InputStreamReader}, which is the least any char based parser has
+ * to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonTokenizerBenchmark {
+    @Param({"1000"})
+    public int records;
+
+    private byte[] content;
+    private char[] chars;
+
+    @Setup
+    public void setUp() {
+        content = Payloads.json(records, 42L).getBytes(UTF_8);
+        chars = new char[1 << 12];
+    }
+
+    @Benchmark
+    public int inputStreamReader() throws IOException {
+        int total = 0;
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(content), UTF_8)) {
+            int r;
+            while ((r = reader.read(chars)) > 0) {
+                total += r;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public void tokens(Blackhole blackhole) throws IOException, JsonException {
+        JsonTokenizer tokenizer = new JsonTokenizer(new ByteArrayInputStream(content));
+        while (tokenizer.hasNext()) {
+            blackhole.consume(tokenizer.next());
+        }
+    }
+
+    @Benchmark
+    public void values(Blackhole blackhole) throws IOException, JsonException {
+        decodeValues(new JsonTokenizer(new ByteArrayInputStream(content)), blackhole);
+    }
+
+    @Benchmark
+    public void values_keyCache(Blackhole blackhole) throws IOException, JsonException {
+        JsonTokenizer tokenizer = new JsonTokenizer(new ByteArrayInputStream(content));
+        tokenizer.setKeyCacheSize(64);
+        decodeValues(tokenizer, blackhole);
+    }
+
+    @Benchmark
+    public void byteTokens(Blackhole blackhole) throws IOException, JsonException {
+        JsonByteTokenizer tokenizer = new JsonByteTokenizer(content);
+        while (tokenizer.hasNext()) {
+            JsonByteToken token = tokenizer.next();
+            blackhole.consume(token);
+        }
+    }
+
+    private static void decodeValues(JsonTokenizer tokenizer, Blackhole blackhole)
+            throws IOException, JsonException {
+        JsonToken literal = null;
+        while (tokenizer.hasNext()) {
+            JsonToken token = tokenizer.next();
+            if (literal != null) {
+                if (token.isSymbol(JsonToken.kKeyValSep)) {
+                    blackhole.consume(tokenizer.decodeKey(literal));
+                } else {
+                    blackhole.consume(literal.decodeJsonLiteral());
+                }
+                literal = null;
+            }
+            if (token.isLiteral()) {
+                // Decoded as key or value depending on the next token.
+                literal = token;
+            } else if (token.isInteger()) {
+                blackhole.consume(token.longValue());
+            } else if (token.isDouble()) {
+                blackhole.consume(token.doubleValue());
+            } else if (token.isBoolean()) {
+                blackhole.consume(token.booleanValue());
+            }
+        }
+    }
+}
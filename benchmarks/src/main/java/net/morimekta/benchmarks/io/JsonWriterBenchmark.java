@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks.io;
+
+import net.morimekta.benchmarks.Payloads;
+import net.morimekta.util.Binary;
+import net.morimekta.util.json.JsonWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single value and key calls on the {@link JsonWriter}. The writer is kept
+ * inside an open array or object for the whole run, writing to a stream that
+ * discards the output, so only the cost of the calls is measured. Run with
+ * the GC profiler to see the allocation per call, e.g.:
+ * <pre>
+ *     java -jar benchmarks/target/benchmarks.jar JsonWriterBenchmark -prof gc
+ * </pre>
+ * And look at the <code>gc.alloc.rate.norm</code> numbers, which should stay
+ * at (or near) zero bytes per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonWriterBenchmark {
+    private JsonWriter array;
+    private JsonWriter object;
+    private String     ascii;
+    private String     escaped;
+    private String     mixed;
+    private Binary     binary;
+
+    @Setup
+    public void setUp() {
+        array = new JsonWriter(new DiscardingOutputStream());
+        array.array();
+        object = new JsonWriter(new DiscardingOutputStream());
+        object.object();
+
+        ascii = Payloads.text(Payloads.Text.ASCII, 32, 42L).trim();
+        escaped = "line \"one\"\n\tline two\\";
+        mixed = Payloads.text(Payloads.Text.MIXED, 32, 42L).trim();
+        byte[] bytes = new byte[48];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) (i * 31);
+        }
+        binary = Binary.wrap(bytes);
+    }
+
+    @Benchmark
+    public JsonWriter intValue() {
+        return array.value(1234567);
+    }
+
+    @Benchmark
+    public JsonWriter longValue() {
+        return array.value(-1234567890123456789L);
+    }
+
+    @Benchmark
+    public JsonWriter doubleValue() {
+        return array.value(1234.5678);
+    }
+
+    @Benchmark
+    public JsonWriter asciiValue() {
+        return array.value(ascii);
+    }
+
+    @Benchmark
+    public JsonWriter escapedValue() {
+        return array.value(escaped);
+    }
+
+    @Benchmark
+    public JsonWriter mixedValue() {
+        return array.value(mixed);
+    }
+
+    @Benchmark
+    public JsonWriter binaryValue() {
+        return array.value(binary);
+    }
+
+    @Benchmark
+    public JsonWriter longKeyAndValue() {
+        return object.key(1234567890L).value(ascii);
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks.io;
+
+import net.morimekta.benchmarks.Payloads;
+import net.morimekta.util.json.JsonWriter;
+import net.morimekta.util.json.PrettyJsonWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writing a whole document of metric records with the {@link JsonWriter} and
+ * the {@link PrettyJsonWriter}. The baseline is formatting the same document
+ * by hand with a {@link StringBuilder}, without any escaping or structure
+ * checks, and writing it with the JDK {@link OutputStreamWriter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrettyJsonWriterBenchmark {
+    @Param({"1000"})
+    public int records;
+
+    private long[]                ids;
+    private double[]              values;
+    private String[]              notes;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42L);
+        ids = new long[records];
+        values = new double[records];
+        notes = new String[records];
+        for (int i = 0; i < records; ++i) {
+            ids[i] = 1514764800000L + random.nextInt(86400000);
+            values[i] = Math.round(random.nextDouble() * 1000000) / 100.0;
+            notes[i] = Payloads.text(Payloads.Text.LATIN, 24, i).trim();
+        }
+        out = new ByteArrayOutputStream(records * 200);
+    }
+
+    @Benchmark
+    public int stringBuilder() throws IOException {
+        out.reset();
+        StringBuilder builder = new StringBuilder();
+        builder.append('[');
+        for (int i = 0; i < records; ++i) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"id\":").append(ids[i])
+                   .append(",\"value\":").append(values[i])
+                   .append(",\"note\":\"").append(notes[i])
+                   .append("\",\"tags\":[\"env:prod\",\"zone:a\"]}");
+        }
+        builder.append(']');
+        Writer writer = new OutputStreamWriter(out, UTF_8);
+        writer.write(builder.toString());
+        writer.flush();
+        return out.size();
+    }
+
+    @Benchmark
+    public int jsonWriter() {
+        out.reset();
+        write(new JsonWriter(out));
+        return out.size();
+    }
+
+    @Benchmark
+    public int prettyJsonWriter() {
+        out.reset();
+        write(new PrettyJsonWriter(out));
+        return out.size();
+    }
+
+    private void write(JsonWriter writer) {
+        writer.array();
+        for (int i = 0; i < records; ++i) {
+            writer.object()
+                  .key("id").value(ids[i])
+                  .key("value").value(values[i])
+                  .key("note").value(notes[i])
+                  .key("tags").array()
+                  .value("env:prod")
+                  .value("zone:a")
+                  .endArray()
+                  .endObject();
+        }
+        writer.endArray();
+        writer.flush();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks.io;
+
+import net.morimekta.benchmarks.Payloads;
+import net.morimekta.util.io.Utf8StreamReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Decoding UTF-8 with the {@link Utf8StreamReader} compared to the JDK
+ * {@link InputStreamReader}, which is internally buffered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8StreamReaderBenchmark {
+    @Param({"ASCII", "LATIN", "CJK", "MIXED"})
+    public Payloads.Text text;
+
+    @Param({"65536"})
+    public int size;
+
+    private byte[] data;
+    private char[] chars;
+
+    @Setup
+    public void setUp() {
+        data = Payloads.text(text, size, 42L).getBytes(UTF_8);
+        chars = new char[4096];
+    }
+
+    @Benchmark
+    public int utf8StreamReader() throws IOException {
+        return drain(new Utf8StreamReader(new ByteArrayInputStream(data)));
+    }
+
+    @Benchmark
+    public int inputStreamReader() throws IOException {
+        return drain(new InputStreamReader(new ByteArrayInputStream(data), UTF_8));
+    }
+
+    @Benchmark
+    public int utf8StreamReader_singleChar() throws IOException {
+        Reader reader = new Utf8StreamReader(new ByteArrayInputStream(data));
+        int total = 0;
+        while (reader.read() >= 0) {
+            ++total;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int inputStreamReader_singleChar() throws IOException {
+        Reader reader = new InputStreamReader(new ByteArrayInputStream(data), UTF_8);
+        int total = 0;
+        while (reader.read() >= 0) {
+            ++total;
+        }
+        return total;
+    }
+
+    private int drain(Reader reader) throws IOException {
+        int total = 0;
+        int r;
+        while ((r = reader.read(chars)) > 0) {
+            total += r;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.benchmarks.io;
+
+import net.morimekta.benchmarks.Payloads;
+import net.morimekta.util.io.Utf8StreamWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encoding UTF-8 with the {@link Utf8StreamWriter} compared to the JDK
+ * {@link OutputStreamWriter}, both in large and small (token sized) writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8StreamWriterBenchmark {
+    @Param({"ASCII", "LATIN", "CJK", "MIXED"})
+    public Payloads.Text text;
+
+    @Param({"65536"})
+    public int size;
+
+    private char[]                chars;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() {
+        chars = Payloads.text(text, size, 42L).toCharArray();
+        out = new ByteArrayOutputStream(size * 4);
+    }
+
+    @Benchmark
+    public int utf8StreamWriter() throws IOException {
+        return write(new Utf8StreamWriter(out), chars.length);
+    }
+
+    @Benchmark
+    public int outputStreamWriter() throws IOException {
+        return write(new OutputStreamWriter(out, UTF_8), chars.length);
+    }
+
+    @Benchmark
+    public int utf8StreamWriter_smallWrites() throws IOException {
+        return write(new Utf8StreamWriter(out), 12);
+    }
+
+    @Benchmark
+    public int outputStreamWriter_smallWrites() throws IOException {
+        return write(new OutputStreamWriter(out, UTF_8), 12);
+    }
+
+    private int write(Writer writer, int chunk) throws IOException {
+        out.reset();
+        for (int off = 0; off < chars.length; off += chunk) {
+            writer.write(chars, off, Math.min(chunk, chars.length - off));
+        }
+        writer.flush();
+        return out.size();
+    }
+}
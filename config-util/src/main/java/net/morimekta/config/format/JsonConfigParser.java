@@ -40,10 +40,13 @@ import java.util.Collection;
  * Config parser for JSON object syntax.
  */
 public class JsonConfigParser implements ConfigParser {
+    private static final int KEY_CACHE_SIZE = 256;
+
     @Override
     public Config parse(InputStream in) {
         try {
             JsonTokenizer tokenizer = new JsonTokenizer(in);
+            tokenizer.setKeyCacheSize(KEY_CACHE_SIZE);
             JsonToken token = tokenizer.expect("config start");
             if (!token.isSymbol(JsonToken.kMapStart)) {
                 throw new ConfigException("Illegal json start token: %s", token);
@@ -65,9 +68,8 @@ public class JsonConfigParser implements ConfigParser {
 
         char sep = token.charAt(0);
         while (sep != JsonToken.kMapEnd) {
-            JsonToken jkey = tokenizer.expect("map key");
-            // No need to decode the key.
-            String key = jkey.substring(1, -1).asString();
+            JsonToken jkey = tokenizer.expectString("map key");
+            String key = tokenizer.decodeKey(jkey);
             tokenizer.expectSymbol("", JsonToken.kKeyValSep);
 
             token = tokenizer.expect("Map value.");
@@ -17,6 +17,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests for the JSON config format.
@@ -78,6 +79,17 @@ public class JsonConfigTest {
         assertTrue(c.isEmpty());
     }
 
+    @Test
+    public void testBadKey() {
+        ByteArrayInputStream in = new ByteArrayInputStream("{foo:1}".getBytes(UTF_8));
+        try {
+            parser.parse(in);
+            fail("No exception on bad key");
+        } catch (ConfigException e) {
+            assertEquals("Expected map key (string literal): but found 'foo'", e.getMessage());
+        }
+    }
+
     @Test
     public void testConvenience() {
         assertEquals("{" +
@@ -18,16 +18,24 @@
  */
 package net.morimekta.util;
 
-import static java.nio.charset.StandardCharsets.US_ASCII;
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
- * Minimal Base64 utility. Will always encode with standard base64 encoding, no
- * padding, and no wrapping, but will parse both URL_SAFE and standard base64
- * data (or even a mismatched mix).
+ * Minimal Base64 utility. The static encode methods will always encode with
+ * standard base64 encoding, no padding, and no wrapping, but the decode
+ * methods will parse both URL_SAFE and standard base64 data (or even a
+ * mismatched mix), with or without padding and line breaks.
+ * <p>
+ * Other encodings are made with an {@link Encoder}, see
+ * {@link #urlSafeEncoder()} and {@link #mimeEncoder()}. Both encoding and
+ * decoding can be done directly into a given array or buffer.
  * <p>
  * The code is optimized to have a low stack count, but be call safe using
- * IllegalArgumentException on errors.
+ * IllegalArgumentException on errors. Whole 6 byte groups are encoded and
+ * decoded as 48 bit words, which avoids most of the per-char branching.
  * </p>
  * It is a minimal port of the
  * <a href="http://iharder.sourceforge.net/current/java/base64/">iharder Base64</a>
@@ -46,13 +54,9 @@ public class Base64 {
     private final static byte WHITE_SPACE_ENC = -5; // Indicates white space in encoding
     private final static byte EQUALS_SIGN_ENC = -1; // Indicates equals sign in encoding
 
-    /* ********  U R L   S A F E   B A S E 6 4   A L P H A B E T  ******** */
+    /* ********  S T A N D A R D   B A S E 6 4   A L P H A B E T  ******** */
 
-    /**
-     * Used in the URL- and Filename-safe dialect described in Section 4 of RFC3548:
-     * <a href="http://www.faqs.org/rfcs/rfc3548.html">http://www.faqs.org/rfcs/rfc3548.html</a>.
-     * Notice that the last two bytes become "hyphen" and "underscore" instead of "plus" and "slash."
-     */
+    /** The standard base64 alphabet as described in Section 3 of RFC3548. */
     private final static byte[] ALPHABET = {
             (byte) 'A', (byte) 'B', (byte) 'C', (byte) 'D', (byte) 'E', (byte) 'F', (byte) 'G', (byte) 'H',
             (byte) 'I', (byte) 'J', (byte) 'K', (byte) 'L', (byte) 'M', (byte) 'N', (byte) 'O', (byte) 'P',
@@ -95,76 +99,335 @@ public class Base64 {
             -9, -9, -9, -9, -9,                                  // Decimal 123 - 127
     };
 
+    /** Max line length for MIME encoded base64, as described in RFC2045. */
+    public final static int MIME_LINE_LENGTH = 76;
+
+    private final static Encoder ENCODER          = new Encoder(false, false, 0, new byte[0]);
+    private final static Encoder URL_SAFE_ENCODER = new Encoder(true, false, 0, new byte[0]);
+    private final static Encoder MIME_ENCODER     = new Encoder(false, true, MIME_LINE_LENGTH, new byte[]{'\r', '\n'});
+
     /** Defeats instantiation. */
     private Base64() {
     }
 
-    /* ********  E N C O D I N G   M E T H O D S  ******** */
+    /* ********  E N C O D E R S  ******** */
 
     /**
-     * <p>Encodes up to three bytes of the array <var>source</var>
-     * and writes the resulting four Base64 bytes to <var>destination</var>.
-     * The source and destination arrays can be manipulated
-     * anywhere along their length by specifying
-     * <var>srcOffset</var> and <var>destOffset</var>.
-     * This method does not check to make sure your arrays
-     * are large enough to accomodate <var>srcOffset</var> + 3 for
-     * the <var>source</var> array or <var>destOffset</var> + 4 for
-     * the <var>destination</var> array.
-     * The actual number of significant bytes in your array is
-     * given by <var>numSigBytes</var>.</p>
-     * <p>This is the lowest level of the encoding methods with
-     * all possible parameters.</p>
-     *
-     * @param source the array to convert
-     * @param srcOffset the index where conversion begins
-     * @param numSigBytes the number of significant bytes in your array
-     * @param destination the array to hold the conversion
-     * @param destOffset the index where output will be put
-     * @return the <var>destination</var> array
-     * @since 1.3
+     * @return The standard base64 encoder, without padding or line wrapping.
+     *         This is the encoder used by the static encode methods.
+     */
+    public static Encoder encoder() {
+        return ENCODER;
+    }
+
+    /**
+     * @return The URL- and Filename-safe base64 encoder, without padding or
+     *         line wrapping.
+     */
+    public static Encoder urlSafeEncoder() {
+        return URL_SAFE_ENCODER;
+    }
+
+    /**
+     * @return The MIME base64 encoder, using the standard alphabet with
+     *         padding, and lines of {@link #MIME_LINE_LENGTH} chars separated
+     *         with CRLF.
+     */
+    public static Encoder mimeEncoder() {
+        return MIME_ENCODER;
+    }
+
+    /**
+     * A base64 encoder with a given alphabet, padding and line wrapping. The
+     * encoder is immutable and thread safe, and encodes directly into the
+     * given array or buffer.
      */
-    private static int encode3to4(byte[] source,
-                                  int srcOffset,
-                                  int numSigBytes,
-                                  byte[] destination,
-                                  int destOffset) {
-        //           1         2         3
-        // 01234567890123456789012345678901 Bit position
-        // --------000000001111111122222222 Array position from threeBytes
-        // --------|    ||    ||    ||    | Six bit groups to index ALPHABET
-        //          >>18  >>12  >> 6  >> 0  Right shift necessary
-        //                0x3f  0x3f  0x3f  Additional AND
-
-        // Create buffer with zero-padding if there are only one or two
-        // significant bytes passed in the array.
-        // We have to shift left 24 in order to flush out the 1's that appear
-        // when Java treats a value as negative that is cast from a byte to an int.
-        int inBuff = (numSigBytes > 0 ? ((source[srcOffset] << 24) >>> 8) : 0) |
-                     (numSigBytes > 1 ? ((source[srcOffset + 1] << 24) >>> 16) : 0) |
-                     (numSigBytes > 2 ? ((source[srcOffset + 2] << 24) >>> 24) : 0);
-
-        switch (numSigBytes) {
-            case 1:
-                destination[destOffset] = ALPHABET[(inBuff >>> 18)];
-                destination[destOffset + 1] = ALPHABET[(inBuff >>> 12) & 0x3f];
-                return 2;
-
-            case 2:
-                destination[destOffset] = ALPHABET[(inBuff >>> 18)];
-                destination[destOffset + 1] = ALPHABET[(inBuff >>> 12) & 0x3f];
-                destination[destOffset + 2] = ALPHABET[(inBuff >>> 6) & 0x3f];
-                return 3;
-
-            default:
-                destination[destOffset] = ALPHABET[(inBuff >>> 18)];
-                destination[destOffset + 1] = ALPHABET[(inBuff >>> 12) & 0x3f];
-                destination[destOffset + 2] = ALPHABET[(inBuff >>> 6) & 0x3f];
-                destination[destOffset + 3] = ALPHABET[(inBuff) & 0x3f];
-                return 4;
+    public static final class Encoder {
+        private final boolean urlSafe;
+        private final boolean padding;
+        private final int     lineLength;
+        private final byte[]  separator;
+
+        private Encoder(boolean urlSafe, boolean padding, int lineLength, byte[] separator) {
+            this.urlSafe = urlSafe;
+            this.padding = padding;
+            this.lineLength = lineLength;
+            this.separator = separator;
+        }
+
+        /**
+         * @param padding If the encoded data should be padded with '='.
+         * @return Encoder with the same alphabet and wrapping, and the given
+         *         padding.
+         */
+        public Encoder withPadding(boolean padding) {
+            if (padding == this.padding) {
+                return this;
+            }
+            return new Encoder(urlSafe, padding, lineLength, separator);
+        }
+
+        /**
+         * @param lineLength The max number of chars per line, rounded down
+         *                   to a multiple of 4. Zero for no line wrapping.
+         * @param separator The line separator, must be only white space.
+         * @return Encoder with the same alphabet and padding, and the given
+         *         line wrapping.
+         */
+        public Encoder withLineWrapping(int lineLength, @Nonnull String separator) {
+            if (lineLength < 0) {
+                throw new IllegalArgumentException("Negative line length: " + lineLength);
+            }
+            byte[] sep = new byte[separator.length()];
+            for (int i = 0; i < sep.length; ++i) {
+                char c = separator.charAt(i);
+                if (c >= 0x80 || DECODABET[c] != WHITE_SPACE_ENC) {
+                    throw new IllegalArgumentException(
+                            "Invalid line separator \"" + Strings.escape(separator) + "\"");
+                }
+                sep[i] = (byte) c;
+            }
+            lineLength -= lineLength % 4;
+            if (lineLength == 0) {
+                sep = new byte[0];
+            }
+            return new Encoder(urlSafe, padding, lineLength, sep);
+        }
+
+        /**
+         * @return The max number of chars per line, or 0 if the encoder does
+         *         not wrap lines.
+         */
+        public int getLineLength() {
+            return lineLength;
+        }
+
+        /**
+         * @return The line separator, or empty string if the encoder does not
+         *         wrap lines.
+         */
+        @Nonnull
+        public String getLineSeparator() {
+            return new String(separator, UTF_8);
+        }
+
+        /**
+         * Get the exact number of chars needed to encode the given number of
+         * bytes, including padding and line separators.
+         *
+         * @param len The number of bytes to encode.
+         * @return The encoded length.
+         */
+        public int encodedLength(int len) {
+            if (len < 0) {
+                throw new IllegalArgumentException("Cannot have negative length: " + len);
+            }
+            long chars = padding ? (len + 2L) / 3 * 4 : (len * 4L + 2) / 3;
+            if (lineLength > 0 && chars > 0) {
+                chars += (chars - 1) / lineLength * separator.length;
+            }
+            if (chars > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many bytes to encode: " + len);
+            }
+            return (int) chars;
+        }
+
+        /**
+         * Encodes bytes into Base64 data.
+         *
+         * @param source The data to convert
+         * @param off The data offset of what to encode.
+         * @param len The number of bytes to encode.
+         * @return The Base64-encoded data.
+         * @throws NullPointerException if source array is null
+         */
+        public byte[] encode(final byte[] source, final int off, final int len) {
+            checkEncodeInput(source, off, len);
+            byte[] dest = new byte[encodedLength(len)];
+            encodeInto(source, off, len, dest, 0);
+            return dest;
+        }
+
+        /**
+         * Encodes bytes into a Base64 string.
+         *
+         * @param source The data to convert
+         * @param off The data offset of what to encode.
+         * @param len The number of bytes to encode.
+         * @return The Base64-encoded data as a String
+         * @throws NullPointerException if source array is null
+         */
+        public String encodeToString(final byte[] source, final int off, final int len) {
+            checkEncodeInput(source, off, len);
+            char[] dest = new char[encodedLength(len)];
+            encodeInto(source, off, len, dest, 0);
+            return new String(dest);
+        }
+
+        /**
+         * Encodes bytes into Base64 data in a given byte array. The destination
+         * must have room for {@link #encodedLength(int)} bytes from the
+         * destination offset, which is checked before anything is written.
+         *
+         * @param source The data to convert
+         * @param off The data offset of what to encode.
+         * @param len The number of bytes to encode.
+         * @param dest The byte array to write the encoded data to.
+         * @param destOff The offset in the destination to start writing.
+         * @return The number of bytes written.
+         */
+        public int encode(final byte[] source, final int off, final int len,
+                          final byte[] dest, final int destOff) {
+            checkEncodeInput(source, off, len);
+            if (dest == null) {
+                throw new NullPointerException("Cannot serialize into a null array.");
+            }
+            checkEncodeRoom(encodedLength(len), destOff, dest.length);
+            return encodeInto(source, off, len, dest, destOff) - destOff;
+        }
+
+        /**
+         * Encodes bytes into Base64 chars in a given char array. The destination
+         * must have room for {@link #encodedLength(int)} chars from the
+         * destination offset, which is checked before anything is written.
+         *
+         * @param source The data to convert
+         * @param off The data offset of what to encode.
+         * @param len The number of bytes to encode.
+         * @param dest The char array to write the encoded data to.
+         * @param destOff The offset in the destination to start writing.
+         * @return The number of chars written.
+         */
+        public int encode(final byte[] source, final int off, final int len,
+                          final char[] dest, final int destOff) {
+            checkEncodeInput(source, off, len);
+            if (dest == null) {
+                throw new NullPointerException("Cannot serialize into a null array.");
+            }
+            checkEncodeRoom(encodedLength(len), destOff, dest.length);
+            return encodeInto(source, off, len, dest, destOff) - destOff;
+        }
+
+        /**
+         * Encodes the remaining bytes of the source buffer into the destination
+         * buffer. The destination must have {@link #encodedLength(int)} bytes
+         * remaining. Both buffers are moved past the data read and written.
+         * Heap buffers are encoded in place, while direct buffers have to be
+         * copied.
+         *
+         * @param source The data to convert.
+         * @param dest The buffer to write the encoded data to.
+         * @return The number of bytes written.
+         */
+        public int encode(@Nonnull ByteBuffer source, @Nonnull ByteBuffer dest) {
+            final int len = source.remaining();
+            final int encodedLen = encodedLength(len);
+            if (encodedLen > dest.remaining()) {
+                throw new IllegalArgumentException(String.format(
+                        "Not room for %d chars in buffer with %d remaining",
+                        encodedLen,
+                        dest.remaining()));
+            }
+
+            final byte[] src;
+            final int srcOff;
+            if (source.hasArray()) {
+                src = source.array();
+                srcOff = source.arrayOffset() + source.position();
+            } else {
+                src = new byte[len];
+                source.duplicate().get(src);
+                srcOff = 0;
+            }
+            if (dest.hasArray()) {
+                encodeInto(src, srcOff, len, dest.array(), dest.arrayOffset() + dest.position());
+                dest.position(dest.position() + encodedLen);
+            } else {
+                byte[] encoded = new byte[encodedLen];
+                encodeInto(src, srcOff, len, encoded, 0);
+                dest.put(encoded);
+            }
+            source.position(source.limit());
+            return encodedLen;
+        }
+
+        /**
+         * Encode into the destination. The lines are encoded with the
+         * constant standard alphabet, as that is notably faster than looking
+         * up the chars in an alphabet field. URL-safe encoding replaces the
+         * two differing chars afterwards.
+         */
+        private int encodeInto(byte[] source, int off, int len, byte[] dest, int destOff) {
+            final int destEnd = encodeLines(source, off, len, dest, destOff);
+            if (urlSafe) {
+                for (int i = destOff; i < destEnd; ++i) {
+                    if (dest[i] == '+') {
+                        dest[i] = '-';
+                    } else if (dest[i] == '/') {
+                        dest[i] = '_';
+                    }
+                }
+            }
+            return destEnd;
+        }
+
+        private int encodeInto(byte[] source, int off, int len, char[] dest, int destOff) {
+            final int destEnd = encodeLines(source, off, len, dest, destOff);
+            if (urlSafe) {
+                for (int i = destOff; i < destEnd; ++i) {
+                    if (dest[i] == '+') {
+                        dest[i] = '-';
+                    } else if (dest[i] == '/') {
+                        dest[i] = '_';
+                    }
+                }
+            }
+            return destEnd;
+        }
+
+        private int encodeLines(byte[] source, int off, int len, byte[] dest, int destPos) {
+            final int end = off + len;
+            if (lineLength == 0) {
+                return encodeLine(padding, source, off, end, dest, destPos);
+            }
+            final int lineBytes = lineLength / 4 * 3;
+            int srcPos = off;
+            while (srcPos < end) {
+                final int lineEnd = end - srcPos > lineBytes ? srcPos + lineBytes : end;
+                destPos = encodeLine(padding, source, srcPos, lineEnd, dest, destPos);
+                srcPos = lineEnd;
+                if (srcPos < end) {
+                    for (byte b : separator) {
+                        dest[destPos++] = b;
+                    }
+                }
+            }
+            return destPos;
+        }
+
+        private int encodeLines(byte[] source, int off, int len, char[] dest, int destPos) {
+            final int end = off + len;
+            if (lineLength == 0) {
+                return encodeLine(padding, source, off, end, dest, destPos);
+            }
+            final int lineBytes = lineLength / 4 * 3;
+            int srcPos = off;
+            while (srcPos < end) {
+                final int lineEnd = end - srcPos > lineBytes ? srcPos + lineBytes : end;
+                destPos = encodeLine(padding, source, srcPos, lineEnd, dest, destPos);
+                srcPos = lineEnd;
+                if (srcPos < end) {
+                    for (byte b : separator) {
+                        dest[destPos++] = (char) b;
+                    }
+                }
+            }
+            return destPos;
         }
     }
 
+    /* ********  E N C O D I N G   M E T H O D S  ******** */
+
     /**
      * Encodes a byte array into Base64 notation.
      *
@@ -188,8 +451,7 @@ public class Base64 {
      * @since 2.0
      */
     public static String encodeToString(final byte[] source, int off, int len) {
-        byte[] encoded = encode(source, off, len);
-        return new String(encoded, US_ASCII);
+        return ENCODER.encodeToString(source, off, len);
     }
 
     /**
@@ -203,6 +465,171 @@ public class Base64 {
      * @since 2.0
      */
     public static byte[] encode(final byte[] source, final int off, final int len) {
+        return ENCODER.encode(source, off, len);
+    }
+
+    /**
+     * Encodes a byte array into Base64 string.
+     *
+     * @param source The data to convert
+     * @return The Base64-encoded data.
+     * @throws NullPointerException if source array is null
+     * @since 2.0
+     */
+    public static byte[] encode(byte[] source) {
+        return encode(source, 0, source.length);
+    }
+
+    /**
+     * Encodes bytes into Base64 chars in a given char array. The destination
+     * must have room for <code>(len * 4 + 2) / 3</code> chars from the
+     * destination offset, which is checked before anything is written.
+     *
+     * @param source The data to convert
+     * @param off The data offset of what to encode.
+     * @param len The number of bytes to encode.
+     * @param dest The char array to write the encoded data to.
+     * @param destOff The offset in the destination to start writing.
+     * @return The number of chars written.
+     */
+    public static int encode(final byte[] source, final int off, final int len,
+                             final char[] dest, final int destOff) {
+        return ENCODER.encode(source, off, len, dest, destOff);
+    }
+
+    /**
+     * Encodes bytes into Base64 data in a given byte array. The destination
+     * must have room for <code>(len * 4 + 2) / 3</code> bytes from the
+     * destination offset, which is checked before anything is written.
+     *
+     * @param source The data to convert
+     * @param off The data offset of what to encode.
+     * @param len The number of bytes to encode.
+     * @param dest The byte array to write the encoded data to.
+     * @param destOff The offset in the destination to start writing.
+     * @return The number of bytes written.
+     */
+    public static int encode(final byte[] source, final int off, final int len,
+                             final byte[] dest, final int destOff) {
+        return ENCODER.encode(source, off, len, dest, destOff);
+    }
+
+    /**
+     * Encodes bytes between the source offset and end into the destination.
+     * Whole 6 byte groups are encoded as 48 bit words, and the remaining
+     * one to five bytes as 3 byte groups.
+     *
+     * @return The destination position after the encoded data.
+     */
+    private static int encodeLine(final boolean padding,
+                                  final byte[] source,
+                                  int srcPos,
+                                  final int end,
+                                  final byte[] dest,
+                                  int destPos) {
+        final int end6 = end - 5;
+        for (; srcPos < end6; srcPos += 6, destPos += 8) {
+            final long bits = (source[srcPos] & 0xffL) << 40 |
+                              (source[srcPos + 1] & 0xffL) << 32 |
+                              (source[srcPos + 2] & 0xffL) << 24 |
+                              (source[srcPos + 3] & 0xffL) << 16 |
+                              (source[srcPos + 4] & 0xffL) << 8 |
+                              (source[srcPos + 5] & 0xffL);
+            dest[destPos]     = ALPHABET[(int) (bits >>> 42) & 0x3f];
+            dest[destPos + 1] = ALPHABET[(int) (bits >>> 36) & 0x3f];
+            dest[destPos + 2] = ALPHABET[(int) (bits >>> 30) & 0x3f];
+            dest[destPos + 3] = ALPHABET[(int) (bits >>> 24) & 0x3f];
+            dest[destPos + 4] = ALPHABET[(int) (bits >>> 18) & 0x3f];
+            dest[destPos + 5] = ALPHABET[(int) (bits >>> 12) & 0x3f];
+            dest[destPos + 6] = ALPHABET[(int) (bits >>> 6) & 0x3f];
+            dest[destPos + 7] = ALPHABET[(int) bits & 0x3f];
+        }
+        if (end - srcPos >= 3) {
+            final int bits = (source[srcPos] & 0xff) << 16 |
+                             (source[srcPos + 1] & 0xff) << 8 |
+                             (source[srcPos + 2] & 0xff);
+            dest[destPos++] = ALPHABET[bits >>> 18];
+            dest[destPos++] = ALPHABET[(bits >>> 12) & 0x3f];
+            dest[destPos++] = ALPHABET[(bits >>> 6) & 0x3f];
+            dest[destPos++] = ALPHABET[bits & 0x3f];
+            srcPos += 3;
+        }
+        if (srcPos < end) {
+            final boolean two = srcPos + 1 < end;
+            final int bits = (source[srcPos] & 0xff) << 16 |
+                             (two ? (source[srcPos + 1] & 0xff) << 8 : 0);
+            dest[destPos++] = ALPHABET[bits >>> 18];
+            dest[destPos++] = ALPHABET[(bits >>> 12) & 0x3f];
+            if (two) {
+                dest[destPos++] = ALPHABET[(bits >>> 6) & 0x3f];
+            } else if (padding) {
+                dest[destPos++] = EQUALS_SIGN;
+            }
+            if (padding) {
+                dest[destPos++] = EQUALS_SIGN;
+            }
+        }
+        return destPos;
+    }
+
+    /**
+     * Same as {@link #encodeLine(boolean, byte[], int, int, byte[], int)},
+     * but encoding into a char array.
+     *
+     * @return The destination position after the encoded data.
+     */
+    private static int encodeLine(final boolean padding,
+                                  final byte[] source,
+                                  int srcPos,
+                                  final int end,
+                                  final char[] dest,
+                                  int destPos) {
+        final int end6 = end - 5;
+        for (; srcPos < end6; srcPos += 6, destPos += 8) {
+            final long bits = (source[srcPos] & 0xffL) << 40 |
+                              (source[srcPos + 1] & 0xffL) << 32 |
+                              (source[srcPos + 2] & 0xffL) << 24 |
+                              (source[srcPos + 3] & 0xffL) << 16 |
+                              (source[srcPos + 4] & 0xffL) << 8 |
+                              (source[srcPos + 5] & 0xffL);
+            dest[destPos]     = (char) ALPHABET[(int) (bits >>> 42) & 0x3f];
+            dest[destPos + 1] = (char) ALPHABET[(int) (bits >>> 36) & 0x3f];
+            dest[destPos + 2] = (char) ALPHABET[(int) (bits >>> 30) & 0x3f];
+            dest[destPos + 3] = (char) ALPHABET[(int) (bits >>> 24) & 0x3f];
+            dest[destPos + 4] = (char) ALPHABET[(int) (bits >>> 18) & 0x3f];
+            dest[destPos + 5] = (char) ALPHABET[(int) (bits >>> 12) & 0x3f];
+            dest[destPos + 6] = (char) ALPHABET[(int) (bits >>> 6) & 0x3f];
+            dest[destPos + 7] = (char) ALPHABET[(int) bits & 0x3f];
+        }
+        if (end - srcPos >= 3) {
+            final int bits = (source[srcPos] & 0xff) << 16 |
+                             (source[srcPos + 1] & 0xff) << 8 |
+                             (source[srcPos + 2] & 0xff);
+            dest[destPos++] = (char) ALPHABET[bits >>> 18];
+            dest[destPos++] = (char) ALPHABET[(bits >>> 12) & 0x3f];
+            dest[destPos++] = (char) ALPHABET[(bits >>> 6) & 0x3f];
+            dest[destPos++] = (char) ALPHABET[bits & 0x3f];
+            srcPos += 3;
+        }
+        if (srcPos < end) {
+            final boolean two = srcPos + 1 < end;
+            final int bits = (source[srcPos] & 0xff) << 16 |
+                             (two ? (source[srcPos + 1] & 0xff) << 8 : 0);
+            dest[destPos++] = (char) ALPHABET[bits >>> 18];
+            dest[destPos++] = (char) ALPHABET[(bits >>> 12) & 0x3f];
+            if (two) {
+                dest[destPos++] = (char) ALPHABET[(bits >>> 6) & 0x3f];
+            } else if (padding) {
+                dest[destPos++] = (char) EQUALS_SIGN;
+            }
+            if (padding) {
+                dest[destPos++] = (char) EQUALS_SIGN;
+            }
+        }
+        return destPos;
+    }
+
+    private static void checkEncodeInput(final byte[] source, final int off, final int len) {
         if (source == null) {
             throw new NullPointerException("Cannot serialize a null array.");
         }
@@ -222,47 +649,16 @@ public class Base64 {
                     len,
                     source.length));
         }
-
-        if (len == 0) {
-            return new byte[0];
-        }
-
-        //int    len43   = len * 4 / 3;
-        //byte[] outBuff = new byte[   ( len43 )                      // Main 4:3
-        //                           + ( (len % 3) > 0 ? 4 : 0 )      // Account for padding
-        //                           + (breakLines ? ( len43 / MAX_LINE_LENGTH ) : 0) ]; // New lines
-        // Try to determine more precisely how big the array needs to be.
-        // If we get it right, we don't have to do an array copy, and
-        // we save a bunch of memory.
-        int blocks = len / 3;
-        int extra = len % 3;
-        int bufLen = blocks * 4 + (extra > 0 ? extra + 1 : 0); // Bytes needed for actual encoding
-        byte[] dest = new byte[bufLen];
-
-        int srcPos = 0;
-        int destPos = 0;
-        final int len2 = len - 2;
-        for (; srcPos < len2; srcPos += 3) {
-            destPos += encode3to4(source, srcPos + off, 3, dest, destPos);
-        }
-
-        if (srcPos < len) {
-            encode3to4(source, srcPos + off, len - srcPos, dest, destPos);
-        }
-
-        return dest;
     }
 
-    /**
-     * Encodes a byte array into Base64 string.
-     *
-     * @param source The data to convert
-     * @return The Base64-encoded data.
-     * @throws NullPointerException if source array is null
-     * @since 2.0
-     */
-    public static byte[] encode(byte[] source) {
-        return encode(source, 0, source.length);
+    private static void checkEncodeRoom(final int encodedLen, final int destOff, final int destLength) {
+        if (destOff < 0 || destOff + encodedLen > destLength) {
+            throw new IllegalArgumentException(String.format(
+                    "Not room for %d chars at offset %d in array of length %d",
+                    encodedLen,
+                    destOff,
+                    destLength));
+        }
     }
 
     /* ********  D E C O D I N G   M E T H O D S  ******** */
@@ -335,6 +731,21 @@ public class Base64 {
         return b;
     }
 
+    /**
+     * Get the max number of bytes the given number of base64 chars may
+     * decode to. The actual number is lower if the data contains padding
+     * or white space.
+     *
+     * @param len The number of base64 chars.
+     * @return The max decoded length.
+     */
+    public static int maxDecodedLength(int len) {
+        if (len < 0) {
+            throw new IllegalArgumentException("Cannot have negative length: " + len);
+        }
+        return (int) (len * 3L / 4);
+    }
+
     /**
      * Decode the Base64-encoded data in input and return the data in a new
      * byte array.
@@ -364,6 +775,114 @@ public class Base64 {
     public static byte[] decode(final byte[] source,
                                 final int off,
                                 final int len) {
+        checkDecodeInput(source, off, len);
+
+        if (len == 0) {
+            return new byte[0];
+        }
+
+        byte[] outBuff = new byte[maxDecodedLength(len)]; // Upper limit on size of output
+        int outBuffPosn = decodeInto(source, off, len, outBuff, 0);
+        if (outBuffPosn < outBuff.length) {
+            byte[] out = new byte[outBuffPosn];
+            System.arraycopy(outBuff, 0, out, 0, outBuffPosn);
+            return out;
+        }
+        return outBuff;
+    }
+
+    /**
+     * Decode the Base64-encoded data in input into the given byte array. The
+     * destination must have room for {@link #maxDecodedLength(int)} bytes
+     * from the destination offset, which is checked before anything is
+     * written.
+     *
+     * @param source The data to decode
+     * @param off The offset within the input array at which to start
+     * @param len The number of bytes of input to decode.
+     * @param dest The byte array to write the decoded data to.
+     * @param destOff The offset in the destination to start writing.
+     * @return The number of bytes written.
+     */
+    public static int decode(final byte[] source, final int off, final int len,
+                             final byte[] dest, final int destOff) {
+        checkDecodeInput(source, off, len);
+        if (dest == null) {
+            throw new NullPointerException("Cannot decode into a null array.");
+        }
+        final int maxLen = maxDecodedLength(len);
+        if (destOff < 0 || destOff + maxLen > dest.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Not room for %d bytes at offset %d in array of length %d",
+                    maxLen,
+                    destOff,
+                    dest.length));
+        }
+        return decodeInto(source, off, len, dest, destOff) - destOff;
+    }
+
+    /**
+     * Decode the remaining Base64-encoded data in the source buffer into the
+     * destination buffer. The destination must have
+     * {@link #maxDecodedLength(int)} bytes remaining. Both buffers are moved
+     * past the data read and written. Heap buffers are decoded in place,
+     * while direct buffers have to be copied.
+     *
+     * @param source The data to decode.
+     * @param dest The buffer to write the decoded data to.
+     * @return The number of bytes written.
+     */
+    public static int decode(@Nonnull ByteBuffer source, @Nonnull ByteBuffer dest) {
+        final int len = source.remaining();
+        final int maxLen = maxDecodedLength(len);
+        if (maxLen > dest.remaining()) {
+            throw new IllegalArgumentException(String.format(
+                    "Not room for %d bytes in buffer with %d remaining",
+                    maxLen,
+                    dest.remaining()));
+        }
+
+        final byte[] src;
+        final int srcOff;
+        if (source.hasArray()) {
+            src = source.array();
+            srcOff = source.arrayOffset() + source.position();
+        } else {
+            src = new byte[len];
+            source.duplicate().get(src);
+            srcOff = 0;
+        }
+        final int n;
+        if (dest.hasArray()) {
+            final int destOff = dest.arrayOffset() + dest.position();
+            n = decodeInto(src, srcOff, len, dest.array(), destOff) - destOff;
+            dest.position(dest.position() + n);
+        } else {
+            byte[] decoded = new byte[maxLen];
+            n = decodeInto(src, srcOff, len, decoded, 0);
+            dest.put(decoded, 0, n);
+        }
+        source.position(source.limit());
+        return n;
+    }
+
+    /**
+     * Decodes data from Base64 notation.
+     *
+     * @param s the string to decode
+     * @return the decoded data
+     * @throws NullPointerException if <code>s</code> is null
+     */
+    public static byte[] decode(String s) {
+        if (s == null) {
+            throw new NullPointerException("Input string was null.");
+        }
+
+        byte[] bytes = s.getBytes(UTF_8);
+        return decode(bytes, 0, bytes.length);
+    }
+
+    private static void checkDecodeInput(final byte[] source, final int off, final int len) {
         if (source == null) {
             throw new NullPointerException("Cannot decode null source array.");
         }
@@ -383,31 +902,66 @@ public class Base64 {
                     off,
                     len));
         }
+    }
 
-        if (len == 0) {
-            return new byte[0];
-        }
-
-        int len34 = len * 3 / 4;          // Estimate on array size
-        byte[] outBuff = new byte[len34]; // Upper limit on size of output
-        int outBuffPosn = 0;              // Keep track of where we're writing
-
-        byte[] b4 = new byte[4]; // Four byte buffer from source, eliminating white space
-        int b4Posn = 0;          // Keep track of four byte input buffer
-        int i;                   // Source array counter
-        byte sbiDecode;          // Special value from DECODABET
+    /**
+     * Decode the source data into the destination. Whenever at a 4 char
+     * boundary with 8 plain base64 chars ahead, they are decoded as a 48 bit
+     * word. White space, padding and errors are handled one char at a time.
+     *
+     * @return The destination position after the decoded data.
+     */
+    private static int decodeInto(final byte[] source,
+                                  final int off,
+                                  final int len,
+                                  final byte[] dest,
+                                  int destPos) {
+        final int end = off + len;
+        final int end8 = end - 7;
+
+        byte[] b4 = null; // Four byte buffer from source, eliminating white space
+        int b4Posn = 0;   // Keep track of four byte input buffer
+        int i = off;      // Source array counter
+        while (i < end) {
+            if (b4Posn == 0 && i < end8) {
+                final byte s0 = source[i], s1 = source[i + 1], s2 = source[i + 2], s3 = source[i + 3];
+                final byte s4 = source[i + 4], s5 = source[i + 5], s6 = source[i + 6], s7 = source[i + 7];
+                final int d0 = DECODABET[s0 & 0x7F], d1 = DECODABET[s1 & 0x7F];
+                final int d2 = DECODABET[s2 & 0x7F], d3 = DECODABET[s3 & 0x7F];
+                final int d4 = DECODABET[s4 & 0x7F], d5 = DECODABET[s5 & 0x7F];
+                final int d6 = DECODABET[s6 & 0x7F], d7 = DECODABET[s7 & 0x7F];
+                // Non-ASCII bytes and special chars are all negative.
+                if ((s0 | s1 | s2 | s3 | s4 | s5 | s6 | s7 | d0 | d1 | d2 | d3 | d4 | d5 | d6 | d7) >= 0) {
+                    final long bits = (long) d0 << 42 |
+                                      (long) d1 << 36 |
+                                      (long) d2 << 30 |
+                                      (long) d3 << 24 |
+                                      (d4 << 18 | d5 << 12 | d6 << 6 | d7);
+                    dest[destPos]     = (byte) (bits >>> 40);
+                    dest[destPos + 1] = (byte) (bits >>> 32);
+                    dest[destPos + 2] = (byte) (bits >>> 24);
+                    dest[destPos + 3] = (byte) (bits >>> 16);
+                    dest[destPos + 4] = (byte) (bits >>> 8);
+                    dest[destPos + 5] = (byte) bits;
+                    destPos += 6;
+                    i += 8;
+                    continue;
+                }
+            }
 
-        for (i = off; i < off + len; i++) {  // Loop through source
-            sbiDecode = DECODABET[source[i] & 0x7F];
+            byte sbiDecode = DECODABET[source[i] & 0x7F];
 
             // White space, Equals sign, or legit Base64 character
             // Note the values such as -5 and -9 in the
             // DECODABET at the top of the file.
             if (sbiDecode >= WHITE_SPACE_ENC) {
                 if (sbiDecode >= EQUALS_SIGN_ENC) {
+                    if (b4 == null) {
+                        b4 = new byte[4];
+                    }
                     b4[b4Posn++] = source[i];
                     if (b4Posn > 3) {
-                        outBuffPosn += decode4to3(b4, 4, outBuff, outBuffPosn);
+                        destPos += decode4to3(b4, 4, dest, destPos);
                         b4Posn = 0;
                     }
                 }
@@ -424,33 +978,12 @@ public class Base64 {
                         Strings.escape((char) source[i]),
                         i));
             }
+            ++i;
         }
 
         if (b4Posn > 0) {
-            outBuffPosn += decode4to3(b4, b4Posn, outBuff, outBuffPosn);
+            destPos += decode4to3(b4, b4Posn, dest, destPos);
         }
-
-        if (outBuffPosn < outBuff.length) {
-            byte[] out = new byte[outBuffPosn];
-            System.arraycopy(outBuff, 0, out, 0, outBuffPosn);
-            return out;
-        }
-        return outBuff;
-    }
-
-    /**
-     * Decodes data from Base64 notation.
-     *
-     * @param s the string to decode
-     * @return the decoded data
-     * @throws NullPointerException if <code>s</code> is null
-     */
-    public static byte[] decode(String s) {
-        if (s == null) {
-            throw new NullPointerException("Input string was null.");
-        }
-
-        byte[] bytes = s.getBytes(UTF_8);
-        return decode(bytes, 0, bytes.length);
+        return destPos;
     }
 }
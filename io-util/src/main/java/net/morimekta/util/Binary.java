@@ -25,6 +25,7 @@ import net.morimekta.util.io.BigEndianBinaryReader;
 import net.morimekta.util.io.BigEndianBinaryWriter;
 import net.morimekta.util.io.BinaryReader;
 import net.morimekta.util.io.BinaryWriter;
+import net.morimekta.util.io.ByteBufferInputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -34,16 +35,26 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.nio.channels.WritableByteChannel;
 import java.util.Locale;
 import java.util.UUID;
 
 /**
  * Simplistic byte sequence wrapper with lots of convenience methods. Used to
  * wrap byte arrays for the binary data type.
+ * <p>
+ * The binary can also wrap a part of a byte array, or the content of a
+ * {@link ByteBuffer}, and be sliced, without copying the content. Note that
+ * a wrapped binary will see any changes made to the content it wraps.
  */
 public class Binary implements Comparable<Binary>, Stringable, Serializable {
-    private final byte[] bytes;
+    private static final long serialVersionUID = 5755300198618835003L;
+
+    // Only the bytes are serialized, see writeReplace() and readResolve().
+    private final           byte[]     bytes;
+    private final transient int        offset;
+    private final transient int        length;
+    private final transient ByteBuffer buffer;
 
     /**
      * Create a binary instance that wraps a created byte array. Exposed so
@@ -54,7 +65,7 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
     @SuppressFBWarnings(justification = "Wrapping of byte array is intentional.",
                         value = {"EI_EXPOSE_REP2"})
     public Binary(byte[] bytes) {
-        this.bytes = bytes;
+        this(bytes, 0, bytes.length, null);
     }
 
     /**
@@ -67,6 +78,33 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
         return new Binary(bytes);
     }
 
+    /**
+     * Wrap a part of a byte array into a byte sequence, without copying.
+     *
+     * @param bytes Bytes to wrap.
+     * @param off   Offset of the content in the array.
+     * @param len   Number of bytes to wrap.
+     * @return The wrapped byte sequence.
+     */
+    public static Binary wrap(byte[] bytes, int off, int len) {
+        checkRange(bytes.length, off, len);
+        return new Binary(bytes, off, len, null);
+    }
+
+    /**
+     * Wrap the remaining content of a byte buffer into a byte sequence,
+     * without copying. The position of the buffer is not changed.
+     *
+     * @param buffer The buffer to wrap.
+     * @return The wrapped byte sequence.
+     */
+    public static Binary wrap(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return new Binary(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), null);
+        }
+        return new Binary(null, 0, buffer.remaining(), buffer.slice().asReadOnlyBuffer());
+    }
+
     /**
      * Convenience method to copy a byte array into a byte sequence.
      *
@@ -106,7 +144,7 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
      * @return Byte count.
      */
     public int length() {
-        return bytes.length;
+        return length;
     }
 
     /**
@@ -115,8 +153,8 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
      * @return The copy.
      */
     public byte[] get() {
-        byte[] cpy = new byte[bytes.length];
-        System.arraycopy(bytes, 0, cpy, 0, bytes.length);
+        byte[] cpy = new byte[length];
+        get(cpy);
         return cpy;
     }
 
@@ -127,11 +165,33 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
      * @return Number of bytes written.
      */
     public int get(byte[] into) {
-        int len = Math.min(into.length, bytes.length);
-        System.arraycopy(bytes, 0, into, 0, len);
+        int len = Math.min(into.length, length);
+        if (buffer != null) {
+            buffer.duplicate().get(into, 0, len);
+        } else {
+            System.arraycopy(bytes, offset, into, 0, len);
+        }
         return len;
     }
 
+    /**
+     * Get a part of the byte sequence, sharing the content with this.
+     *
+     * @param off Offset of the slice in this binary.
+     * @param len Length of the slice.
+     * @return The slice.
+     */
+    public Binary slice(int off, int len) {
+        checkRange(length, off, len);
+        if (buffer != null) {
+            ByteBuffer tmp = buffer.duplicate();
+            tmp.position(off);
+            tmp.limit(off + len);
+            return new Binary(null, 0, len, tmp.slice());
+        }
+        return new Binary(bytes, offset + off, len, null);
+    }
+
     /**
      * Decode base64 string and wrap the result in a byte sequence.
      *
@@ -149,7 +209,10 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
      * @return The encoded string.
      */
     public String toBase64() {
-        return Base64.encodeToString(bytes);
+        if (buffer != null) {
+            return Base64.encodeToString(get());
+        }
+        return Base64.encodeToString(bytes, offset, length);
     }
 
     /**
@@ -226,19 +289,20 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
      */
     public String toHexString() {
         StringBuilder builder = new StringBuilder();
-        for (byte b : bytes) {
-            builder.append(String.format("%02x", b));
+        for (int i = 0; i < length; ++i) {
+            builder.append(String.format("%02x", byteAt(i)));
         }
         return builder.toString();
     }
 
     /**
-     * Get a byte buffer wrapping the binary data.
+     * Get a read-only byte buffer over the binary data. The content is not
+     * copied.
      *
      * @return A byte buffer.
      */
     public ByteBuffer getByteBuffer() {
-        return ByteBuffer.wrap(get());
+        return view().asReadOnlyBuffer();
     }
 
     /**
@@ -247,7 +311,10 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
      * @return An input stream.
      */
     public InputStream getInputStream() {
-        return new ByteArrayInputStream(bytes);
+        if (buffer != null) {
+            return new ByteBufferInputStream(buffer.duplicate());
+        }
+        return new ByteArrayInputStream(bytes, offset, length);
     }
 
     /**
@@ -280,8 +347,34 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
      * @throws IOException When unable to write to stream.
      */
     public int write(OutputStream out) throws IOException {
-        out.write(bytes);
-        return bytes.length;
+        if (buffer != null) {
+            ByteBuffer tmp = buffer.duplicate();
+            byte[] chunk = new byte[Math.min(length, 1 << 13)];
+            while (tmp.hasRemaining()) {
+                int len = Math.min(chunk.length, tmp.remaining());
+                tmp.get(chunk, 0, len);
+                out.write(chunk, 0, len);
+            }
+        } else {
+            out.write(bytes, offset, length);
+        }
+        return length;
+    }
+
+    /**
+     * Write bytes to a channel. Direct buffer content is written without
+     * copying it to the heap.
+     *
+     * @param channel Channel to write to.
+     * @return Number of bytes written.
+     * @throws IOException When unable to write to channel.
+     */
+    public int writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer tmp = view();
+        while (tmp.hasRemaining()) {
+            channel.write(tmp);
+        }
+        return length;
     }
 
     @Override
@@ -294,42 +387,130 @@ public class Binary implements Comparable<Binary>, Stringable, Serializable {
         }
         Binary other = (Binary) o;
 
-        return Arrays.equals(bytes, other.bytes);
+        return length == other.length && mismatch(other, length) < 0;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(bytes);
+        // Same as Arrays.hashCode(get()).
+        int result = 1;
+        for (int i = 0; i < length; ++i) {
+            result = 31 * result + byteAt(i);
+        }
+        return result;
     }
 
     @Override
     public int compareTo(Binary other) {
-        final int c = Math.min(bytes.length, other.bytes.length);
-        for (int i = 0; i < c; ++i) {
-            if (bytes[i] != other.bytes[i]) {
-                return bytes[i] > other.bytes[i] ? 1 : -1;
-            }
+        final int c = Math.min(length, other.length);
+        final int i = mismatch(other, c);
+        if (i >= 0) {
+            return byteAt(i) > other.byteAt(i) ? 1 : -1;
         }
-        if (bytes.length == other.bytes.length) {
+        if (length == other.length) {
             return 0;
         }
-        return bytes.length > other.bytes.length ? 1 : -1;
+        return length > other.length ? 1 : -1;
     }
 
     @Override
     public String toString() {
-        StringBuilder buffer = new StringBuilder();
-        buffer.append("binary(");
-        for (byte b : bytes) {
-            int i = b < 0 ? 0x100 + b : b;
-            buffer.append(String.format(Locale.ENGLISH, "%02x", i));
+        StringBuilder builder = new StringBuilder();
+        builder.append("binary(");
+        for (int i = 0; i < length; ++i) {
+            builder.append(String.format(Locale.ENGLISH, "%02x", byteAt(i) & 0xff));
         }
-        buffer.append(")");
-        return buffer.toString();
+        builder.append(")");
+        return builder.toString();
     }
 
     @Override
     public String asString() {
         return "[" + toBase64() + "]";
     }
+
+    // --- INTERNAL ---
+
+    private Binary(byte[] bytes, int offset, int length, ByteBuffer buffer) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.buffer = buffer;
+    }
+
+    private static void checkRange(int size, int off, int len) {
+        if (off < 0 || len < 0 || off + len > size) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal range off:%d, len:%d for %d bytes", off, len, size));
+        }
+    }
+
+    private byte byteAt(int i) {
+        return buffer != null ? buffer.get(i) : bytes[offset + i];
+    }
+
+    /**
+     * @return A byte buffer with position 0 over the content.
+     */
+    private ByteBuffer view() {
+        if (buffer != null) {
+            return buffer.duplicate();
+        }
+        return ByteBuffer.wrap(bytes, offset, length).slice();
+    }
+
+    /**
+     * Find the first index where the content of this and the other binary
+     * differ, comparing 8 bytes at a time.
+     *
+     * @param other The binary to compare with.
+     * @param len Number of bytes to compare.
+     * @return The index of the first differing byte, or -1 if none differ.
+     */
+    private int mismatch(Binary other, int len) {
+        if (bytes != null && bytes == other.bytes && offset == other.offset) {
+            return -1;
+        }
+        int i = 0;
+        if (len >= 8) {
+            // Big endian, so the first differing byte is the highest
+            // differing bits.
+            final ByteBuffer a = view();
+            final ByteBuffer b = other.view();
+            for (final int end = len - 7; i < end; i += 8) {
+                final long diff = a.getLong(i) ^ b.getLong(i);
+                if (diff != 0) {
+                    return i + Long.numberOfLeadingZeros(diff) / 8;
+                }
+            }
+        }
+        for (; i < len; ++i) {
+            if (byteAt(i) != other.byteAt(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Only the bytes field is serialized, so the wrapped content is copied
+     * into a plain array unless it is one already.
+     *
+     * @return The binary to serialize.
+     */
+    private Object writeReplace() {
+        if (buffer == null && offset == 0 && length == bytes.length) {
+            return this;
+        }
+        return new Binary(get());
+    }
+
+    /**
+     * The transient fields are not set on deserialization.
+     *
+     * @return The deserialized binary.
+     */
+    private Object readResolve() {
+        return new Binary(bytes);
+    }
 }
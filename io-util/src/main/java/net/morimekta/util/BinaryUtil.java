@@ -2,12 +2,17 @@ package net.morimekta.util;
 
 import net.morimekta.util.io.BigEndianBinaryReader;
 import net.morimekta.util.io.BigEndianBinaryWriter;
+import net.morimekta.util.io.BinaryRecordReader;
+import net.morimekta.util.io.BinaryRecordWriter;
+import net.morimekta.util.io.ByteBufferOutputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Utility class for Binary conversion from and to binary array from Collections.
@@ -21,15 +26,21 @@ public class BinaryUtil {
      * @return Array of bytes.
      */
     public static byte[] fromBinaryCollection(Collection<Binary> binaryList) throws IOException {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             BigEndianBinaryWriter writer = new BigEndianBinaryWriter(baos)) {
+        // The exact size is known, so the content is written directly into
+        // the result array.
+        int size = 4;
+        for (Binary binary : binaryList) {
+            size += 4 + binary.length();
+        }
+        byte[] bytes = new byte[size];
+        try (BigEndianBinaryWriter writer = new BigEndianBinaryWriter(new ByteBufferOutputStream(ByteBuffer.wrap(bytes)))) {
             writer.writeInt(binaryList.size());
             for (Binary binary : binaryList) {
                 writer.writeInt(binary.length());
                 writer.writeBinary(binary);
             }
-            return baos.toByteArray();
         }
+        return bytes;
     }
 
     /**
@@ -52,4 +63,39 @@ public class BinaryUtil {
         }
     }
 
+    /**
+     * Method to convert a Collection of Binary to a record sequence, with
+     * varint lengths and a block index. See {@link BinaryRecordWriter}.
+     *
+     * @param binaryList Collection containing Binary elements.
+     * @throws IOException If unable to write the records.
+     * @return Array of bytes.
+     */
+    public static byte[] fromBinaryRecords(Collection<Binary> binaryList) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryRecordWriter writer = new BinaryRecordWriter(out)) {
+            for (Binary binary : binaryList) {
+                writer.write(binary);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Method to convert a record sequence to a List of Binary. The binaries
+     * share the content of the byte array. Use {@link BinaryRecordReader}
+     * directly to read records lazily or by index.
+     *
+     * @param bytes Array of bytes.
+     * @throws IOException If unable to read the records.
+     * @return List of Binary.
+     */
+    public static List<Binary> toBinaryRecords(byte[] bytes) throws IOException {
+        BinaryRecordReader reader = new BinaryRecordReader(ByteBuffer.wrap(bytes));
+        List<Binary> result = new ArrayList<>((int) reader.size());
+        for (Binary binary : reader) {
+            result.add(binary);
+        }
+        return result;
+    }
 }
@@ -23,18 +23,26 @@ package net.morimekta.util;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import javax.annotation.Nonnull;
-import java.util.Objects;
 
 /**
  * A slice of a byte array.
  *
  * Note that all the helper methods assume UTF_8 encoding.
+ * <p>
+ * Slices are equal if they have the same content, and are ordered by their
+ * content the same way as strings. The hash code is the same as for the
+ * string with the same content, and is calculated when first needed and
+ * cached, so the content should not be changed after the slice is used as a
+ * hash key.
  */
 public class CharSlice implements Comparable<CharSlice>, Stringable, CharSequence {
     protected final char[] fb;
     protected final int    off;
     protected final int    len;
 
+    // Cached content hash, 0 if not calculated.
+    private int hash;
+
     /**
      * Create a slice instance. The slice is only meant to be internal state
      * immutable, and not representing an immutable byte content.
@@ -179,15 +187,7 @@ public class CharSlice implements Comparable<CharSlice>, Stringable, CharSequenc
      * @return True if equal.
      */
     public final boolean strEquals(char[] a, int aOff, int aLen) {
-        if (aLen != len) {
-            return false;
-        }
-        for (int i = 0; i < len; ++i) {
-            if (a[aOff + i] != fb[off + i]) {
-                return false;
-            }
-        }
-        return true;
+        return aLen == len && mismatch(fb, off, a, aOff, len) < 0;
     }
 
     /**
@@ -250,7 +250,20 @@ public class CharSlice implements Comparable<CharSlice>, Stringable, CharSequenc
 
     @Override
     public int hashCode() {
-        return Objects.hash(off, len);
+        int h = hash;
+        if (h == 0 && len > 0) {
+            // Same as String.hashCode(), with 4 chars per step.
+            int i = off;
+            final int end = off + len;
+            for (final int end4 = end - 3; i < end4; i += 4) {
+                h = 923521 * h + 29791 * fb[i] + 961 * fb[i + 1] + 31 * fb[i + 2] + fb[i + 3];
+            }
+            for (; i < end; ++i) {
+                h = 31 * h + fb[i];
+            }
+            hash = h;
+        }
+        return h;
     }
 
     @Override
@@ -262,29 +275,51 @@ public class CharSlice implements Comparable<CharSlice>, Stringable, CharSequenc
             return false;
         }
         CharSlice other = (CharSlice) o;
-        return other.fb == fb &&
-               other.off == off &&
-               other.len == len;
+        if (other.len != len) {
+            return false;
+        }
+        if (other.fb == fb && other.off == off) {
+            return true;
+        }
+        if (hash != 0 && other.hash != 0 && hash != other.hash) {
+            return false;
+        }
+        return mismatch(fb, off, other.fb, other.off, len) < 0;
     }
 
     /**
-     * Compare slice with other slice.
-     *
-     * Slice ordering:
-     *  - Firstly ordered by start (offset) position.
-     *  - Secondly ordered by reverse length (longest slice first).
-     *
-     * Result is undefined of the two slices point to different byte buffers.
+     * Compare slice with other slice by content, the same way as
+     * {@link String#compareTo(String)}. If one slice is a prefix of the other,
+     * the shortest slice is first.
      *
      * @param o The other slice.
      * @return Compared value.
      */
     @Override
     public int compareTo(CharSlice o) {
-        if (o.off != off) {
-            return Integer.compare(off, o.off);
+        final int c = Math.min(len, o.len);
+        final int i = mismatch(fb, off, o.fb, o.off, c);
+        if (i >= 0) {
+            return fb[off + i] < o.fb[o.off + i] ? -1 : 1;
+        }
+        return Integer.compare(len, o.len);
+    }
+
+    /**
+     * Find the first index where the two char ranges differ.
+     *
+     * @return The index of the first differing char, or -1 if none differ.
+     */
+    private static int mismatch(char[] a, int aOff, char[] b, int bOff, int len) {
+        if (a == b && aOff == bOff) {
+            return -1;
+        }
+        for (int i = 0; i < len; ++i) {
+            if (a[aOff + i] != b[bOff + i]) {
+                return i;
+            }
         }
-        return Integer.compare(o.len, len);
+        return -1;
     }
 
     private static int validate(char c, int value, int radix) {
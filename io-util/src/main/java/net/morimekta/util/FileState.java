@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Compact state of a file, used to see if a file has changed without
+ * reading it. Two states are equal if the file key (e.g. the inode on
+ * unix), modified time and size are all the same.
+ */
+final class FileState {
+    private final Object fileKey;
+    private final long   modifiedMs;
+    private final long   size;
+
+    FileState(Object fileKey, long modifiedMs, long size) {
+        this.fileKey = fileKey;
+        this.modifiedMs = modifiedMs;
+        this.size = size;
+    }
+
+    static FileState of(BasicFileAttributes attributes) {
+        return new FileState(attributes.fileKey(),
+                             attributes.lastModifiedTime().toMillis(),
+                             attributes.size());
+    }
+
+    /**
+     * Get the files that differ between two snapshots, which are the
+     * files added, removed or changed.
+     *
+     * @param before The snapshot before.
+     * @param after The snapshot after.
+     * @return The changed files.
+     */
+    static Set<Path> diff(Map<Path, FileState> before, Map<Path, FileState> after) {
+        Set<Path> changed = new HashSet<>();
+        after.forEach((path, state) -> {
+            if (!state.equals(before.get(path))) {
+                changed.add(path);
+            }
+        });
+        for (Path path : before.keySet()) {
+            if (!after.containsKey(path)) {
+                changed.add(path);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o == null || !getClass().equals(o.getClass())) {
+            return false;
+        }
+        FileState other = (FileState) o;
+        return modifiedMs == other.modifiedMs &&
+               size == other.size &&
+               Objects.equals(fileKey, other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileKey, modifiedMs, size);
+    }
+
+    @Override
+    public String toString() {
+        return "FileState{key=" + fileKey + ", modified=" + modifiedMs + ", size=" + size + "}";
+    }
+}
@@ -20,6 +20,7 @@
  */
 package net.morimekta.util;
 
+import net.morimekta.util.concurrent.SerialExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,28 +30,42 @@ import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.lang.ref.WeakReference;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
@@ -93,6 +108,21 @@ import static net.morimekta.util.FileUtil.readCanonicalPath;
  *
  * The important case here is the middle one, as this is the way kubernetes
  * handles its configMaps and Secrets.
+ * <p>
+ * By default each batch of events from the watch service is notified right
+ * away. With {@link #setDebounce(long, long)} the updates are collected
+ * until there has been no new events for a quiet period, or the max latency
+ * is reached, and each updated path is then notified only once. This avoids
+ * a storm of duplicate updates when many files are written at once, and
+ * a {@link BatchListener} can then handle all the updated files in one go.
+ * <p>
+ * All callbacks are run in order on a single callback thread, unless a
+ * shared pool is set with {@link #setCallbackPool(Executor)}. Then each
+ * listener has its own serial queue on the pool, so a slow listener only
+ * delays its own updates.
+ * <p>
+ * On file systems where the native watch service does not work, like some
+ * network mounts, a {@link PollingWatchService} can be used instead.
  */
 public class FileWatcher implements AutoCloseable {
     /**
@@ -118,6 +148,18 @@ public class FileWatcher implements AutoCloseable {
         void onPathUpdate(Path path);
     }
 
+    @FunctionalInterface
+    public interface BatchListener {
+        /**
+         * Called when one or more of the requested file paths are updated.
+         * With debouncing all the paths updated within the same quiet period
+         * is in the same batch.
+         *
+         * @param paths The updated file paths, in sorted order.
+         */
+        void onPathsUpdate(SortedSet<Path> paths);
+    }
+
     /**
      * Create a FileWatcher with default watch service.
      */
@@ -141,11 +183,22 @@ public class FileWatcher implements AutoCloseable {
                           ExecutorService callbackExecutor) {
         this.mutex = new Object();
 
-        this.watchers = new ArrayList<>();
+        this.watchers = new CopyOnWriteArrayList<>();
+        this.batchWatchers = new CopyOnWriteArrayList<>();
+
+        this.trees = new CopyOnWriteArrayList<>();
 
-        this.watchDirKeys = new HashMap<>();
-        this.watchKeyDirs = new HashMap<>();
-        this.watchedFiles = Collections.synchronizedMap(new HashMap<>());
+        this.watchDirKeys = new ConcurrentHashMap<>();
+        this.watchKeyDirs = new ConcurrentHashMap<>();
+        this.watchedFiles = new ConcurrentHashMap<>();
+        this.pendingFiles = new TreeSet<>();
+        this.pendingRequests = new TreeSet<>();
+        this.pendingTreeFiles = new HashMap<>();
+        this.listenerQueues = new WeakHashMap<>();
+        this.queuedCallbacks = new AtomicInteger();
+        this.completedCallbacks = new AtomicLong();
+        this.totalCallbackNs = new AtomicLong();
+        this.maxCallbackNs = new AtomicLong();
         this.requestToTarget = new HashMap<>();
         this.targetToRequests = new HashMap<>();
         this.watchService = watchService;
@@ -154,6 +207,86 @@ public class FileWatcher implements AutoCloseable {
         this.watcherExecutor.submit(this::watchFilesTask);
     }
 
+    /**
+     * Collect updates and notify them in batches. The updates are notified
+     * when there has been no new events for the quiet period, or when the
+     * oldest pending update is max latency old, whichever comes first. Each
+     * updated file is notified only once per batch. A quiet period of 0
+     * disables the debouncing, which is the default.
+     *
+     * @param quietPeriodMs Milliseconds with no events before notifying.
+     * @param maxLatencyMs Max milliseconds to delay an update.
+     * @return The file watcher.
+     */
+    public FileWatcher setDebounce(long quietPeriodMs, long maxLatencyMs) {
+        if (quietPeriodMs < 0 || maxLatencyMs < quietPeriodMs) {
+            throw new IllegalArgumentException(
+                    "Invalid debounce quiet period " + quietPeriodMs + "ms with max latency " + maxLatencyMs + "ms");
+        }
+        synchronized (mutex) {
+            this.quietPeriodNs = TimeUnit.MILLISECONDS.toNanos(quietPeriodMs);
+            this.maxLatencyNs = TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+        }
+        return this;
+    }
+
+    /**
+     * Run the callbacks on a shared pool instead of the single callback
+     * thread. Each listener then has its own serial queue on the pool, so
+     * the updates to each listener is still notified in order, but a slow
+     * listener does not delay the others. The pool is not shut down when the
+     * file watcher is closed.
+     *
+     * @param pool The pool to run callbacks on, or null to use the callback
+     *             thread.
+     * @return The file watcher.
+     */
+    public FileWatcher setCallbackPool(@Nullable Executor pool) {
+        synchronized (mutex) {
+            this.callbackPool = pool;
+            this.listenerQueues.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Get the number of callbacks queued or running.
+     *
+     * @return The callback queue depth.
+     */
+    public int getCallbackQueueDepth() {
+        return queuedCallbacks.get();
+    }
+
+    /**
+     * Get the number of callbacks completed.
+     *
+     * @return The callback count.
+     */
+    public long getCallbackCount() {
+        return completedCallbacks.get();
+    }
+
+    /**
+     * Get the total time spent in listener callbacks.
+     *
+     * @param unit The time unit to get the time in.
+     * @return The total callback time.
+     */
+    public long getTotalCallbackTime(TimeUnit unit) {
+        return unit.convert(totalCallbackNs.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the longest time spent in a single listener callback.
+     *
+     * @param unit The time unit to get the time in.
+     * @return The max callback time.
+     */
+    public long getMaxCallbackTime(TimeUnit unit) {
+        return unit.convert(maxCallbackNs.get(), TimeUnit.NANOSECONDS);
+    }
+
     /**
      * Start watching file path and notify watcher for updates on that file.
      *
@@ -203,6 +336,27 @@ public class FileWatcher implements AutoCloseable {
         }
     }
 
+    /**
+     * Start watching the file paths, and notify the watcher with all the
+     * updated paths of each batch in one call.
+     *
+     * @param files The file paths to watch.
+     * @param watcher The watcher to be notified.
+     */
+    public void addBatchWatcher(Collection<Path> files, BatchListener watcher) {
+        if (files == null) throw new IllegalArgumentException("Null files argument");
+        if (watcher == null) throw new IllegalArgumentException("Null watcher argument");
+        synchronized (mutex) {
+            Set<Path> requests = new HashSet<>();
+            for (Path file : files) {
+                if (file == null) throw new IllegalArgumentException("Null file argument");
+                startWatchingInternal(file);
+                requests.add(requestPath(file));
+            }
+            batchWatchers.add(new BatchEntry(Collections.unmodifiableSet(requests), watcher));
+        }
+    }
+
     /**
      * Add a file watcher that is persistent. If the reference from the
      * file watcher to the watcher itself should not prevent garbage collection,
@@ -348,6 +502,9 @@ public class FileWatcher implements AutoCloseable {
 
         synchronized (mutex) {
             AtomicBoolean removed = new AtomicBoolean(removeFromListeners(watchers, watcher));
+            if (trees.removeIf(tree -> tree.listener == watcher)) {
+                removed.set(true);
+            }
             watchedFiles.forEach((path, suppliers) -> {
                 if (removeFromListeners(suppliers, watcher)) {
                     removed.set(true);
@@ -357,6 +514,80 @@ public class FileWatcher implements AutoCloseable {
         }
     }
 
+    /**
+     * Watch all files in a directory tree. See
+     * {@link #watchTree(Path, PathMatcher, Listener)}.
+     *
+     * @param root The root directory of the tree.
+     * @param watcher The watcher to be notified.
+     */
+    public void watchTree(Path root, Listener watcher) {
+        watchTree(root, path -> true, watcher);
+    }
+
+    /**
+     * Watch the matching files in a directory tree. All directories in the
+     * tree are scanned and registered in parallel, and new directories are
+     * watched as they are created. The matcher is given the file path
+     * relative to the root, and the watcher is notified with the absolute
+     * file path when a matching file is created, modified or deleted.
+     * <p>
+     * The state of the matching files (file key, modified time and size) is
+     * kept, so if the watch service overflows and updates are lost, the tree
+     * is rescanned and only the files that actually changed are notified.
+     * Symbolic links are not followed within the tree.
+     *
+     * @param root The root directory of the tree.
+     * @param matcher The matcher for files to notify updates on.
+     * @param watcher The watcher to be notified.
+     */
+    public void watchTree(Path root, PathMatcher matcher, Listener watcher) {
+        if (root == null) throw new IllegalArgumentException("Null root argument");
+        if (matcher == null) throw new IllegalArgumentException("Null matcher argument");
+        if (watcher == null) throw new IllegalArgumentException("Null watcher argument");
+        if (watcherExecutor.isShutdown()) {
+            throw new IllegalStateException("Starts to watch on closed FileWatcher");
+        }
+        try {
+            Path canonical = readCanonicalPath(root.toAbsolutePath());
+            if (!Files.isDirectory(canonical)) {
+                throw new IllegalArgumentException("Not a directory: " + root);
+            }
+            TreeWatch tree = new TreeWatch(canonical, matcher, watcher);
+            // Add the tree before the directories are registered, so events
+            // handled while scanning are applied to the tree.
+            synchronized (mutex) {
+                if (watcherExecutor.isShutdown()) {
+                    throw new IllegalStateException("Starts to watch on closed FileWatcher");
+                }
+                trees.add(tree);
+            }
+            try {
+                scanTree(tree, canonical, tree.files);
+            } catch (IOException | RuntimeException e) {
+                trees.remove(tree);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Remove a batch watcher. The files it watched are still watched.
+     *
+     * @param watcher The watcher to be removed.
+     * @return True if the watcher was removed.
+     */
+    public boolean removeBatchWatcher(BatchListener watcher) {
+        if (watcher == null) {
+            throw new IllegalArgumentException("Null watcher removed");
+        }
+        synchronized (mutex) {
+            return batchWatchers.removeIf(entry -> entry.listener == watcher);
+        }
+    }
+
     /**
      * Start watching a specific file. Note that this will watch the
      * file as seen in the directory as it is pointed to. This means that
@@ -401,6 +632,8 @@ public class FileWatcher implements AutoCloseable {
             }
 
             watchers.clear();
+            batchWatchers.clear();
+            trees.clear();
             targetToRequests.clear();
             requestToTarget.clear();
             watchedFiles.clear();
@@ -432,17 +665,21 @@ public class FileWatcher implements AutoCloseable {
 
     private <T> boolean removeFromListeners(@Nonnull List<Supplier<T>> listeners,
                                             @Nullable T listener) {
-        Iterator<Supplier<T>> iterator = listeners.iterator();
+        // The lists are copy-on-write, so collect and remove all in one go.
+        List<Supplier<T>> remove = new ArrayList<>();
         boolean removed = false;
-        while (iterator.hasNext()) {
-            T next = iterator.next().get();
+        for (Supplier<T> supplier : listeners) {
+            T next = supplier.get();
             if (next == listener) {
-                iterator.remove();
+                remove.add(supplier);
                 removed = true;
             } else if (next == null) {
-                iterator.remove();
+                remove.add(supplier);
             }
         }
+        if (!remove.isEmpty()) {
+            listeners.removeAll(remove);
+        }
         return removed;
     }
 
@@ -462,14 +699,7 @@ public class FileWatcher implements AutoCloseable {
                 throw new IllegalStateException("Starts to watch on closed FileWatcher");
             }
 
-            path = path.toAbsolutePath();
-            // Resolve directory to canonical directory.
-            Path parent = readCanonicalPath(path.getParent());
-            // But do not canonical file, as if this is a symlink, we want to listen
-            // to changes to the symlink, not just the file it points to. If that is wanted
-            // the file should be made canonical (resolve symlinks) before calling
-            // startWatching(file).
-            path = parent.resolve(path.getFileName());
+            path = requestPath(path);
 
             for (Path add : linkTargets(path)) {
                 if (Files.isSymbolicLink(add.getParent())) {
@@ -479,7 +709,29 @@ public class FileWatcher implements AutoCloseable {
             }
             addLinkTargetting(path);
 
-            return watchedFiles.computeIfAbsent(path, fp -> new ArrayList<>());
+            return watchedFiles.computeIfAbsent(path, fp -> new CopyOnWriteArrayList<>());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Get the path as it is registered as a request, which is the absolute
+     * path with canonical parent directory.
+     *
+     * @param path The requested path.
+     * @return The request path.
+     */
+    private static Path requestPath(@Nonnull Path path) {
+        try {
+            path = path.toAbsolutePath();
+            // Resolve directory to canonical directory.
+            Path parent = readCanonicalPath(path.getParent());
+            // But do not canonical file, as if this is a symlink, we want to listen
+            // to changes to the symlink, not just the file it points to. If that is wanted
+            // the file should be made canonical (resolve symlinks) before calling
+            // startWatching(file).
+            return parent.resolve(path.getFileName());
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -488,9 +740,17 @@ public class FileWatcher implements AutoCloseable {
     private void addDirectoryWatcher(Path directory) {
         watchDirKeys.computeIfAbsent(directory, dir -> {
             try {
-                WatchKey key = directory.register(
-                        watchService,
-                        ENTRY_MODIFY, ENTRY_CREATE, ENTRY_DELETE);
+                WatchKey key;
+                if (watchService instanceof PollingWatchService) {
+                    // The polling watch service is not bound to a file system provider.
+                    key = ((PollingWatchService) watchService).register(
+                            directory,
+                            ENTRY_MODIFY, ENTRY_CREATE, ENTRY_DELETE);
+                } else {
+                    key = directory.register(
+                            watchService,
+                            ENTRY_MODIFY, ENTRY_CREATE, ENTRY_DELETE);
+                }
                 watchKeyDirs.put(key, directory);
                 return key;
             } catch (IOException e) {
@@ -523,14 +783,34 @@ public class FileWatcher implements AutoCloseable {
     private void watchFilesTask() {
         while (!watcherExecutor.isShutdown()) {
             try {
-                WatchKey key = watchService.take();
+                WatchKey key;
+                if (!hasPendingUpdates()) {
+                    key = watchService.take();
+                } else {
+                    // Wait for more events until the pending updates are due.
+                    long flushAt = Math.min(lastEventNs + quietPeriodNs, firstEventNs + maxLatencyNs);
+                    long waitNs = flushAt - System.nanoTime();
+                    key = waitNs > 0 ? watchService.poll(waitNs, TimeUnit.NANOSECONDS) : null;
+                    if (key == null) {
+                        flushUpdates();
+                        continue;
+                    }
+                }
                 Path parent = watchKeyDirs.get(key);
                 if (parent == null) {
                     key.reset();
                     continue;
                 }
 
+                List<TreeWatch> keyTrees = new ArrayList<>();
+                for (TreeWatch tree : trees) {
+                    if (parent.startsWith(tree.root)) {
+                        keyTrees.add(tree);
+                    }
+                }
+
                 Set<Path> updates = new TreeSet<>();
+                boolean overflow = false;
                 for (WatchEvent<?> ev : key.pollEvents()) {
                     WatchEvent.Kind<?> kind = ev.kind();
 
@@ -539,7 +819,7 @@ public class FileWatcher implements AutoCloseable {
                         kind != ENTRY_CREATE &&
                         kind != ENTRY_DELETE) {
                         if (kind == OVERFLOW) {
-                            LOGGER.warn("Overflow event, file updates may have been lost");
+                            overflow = true;
                         }
                         continue;
                     }
@@ -552,59 +832,31 @@ public class FileWatcher implements AutoCloseable {
                         LOGGER.trace("Watched file " + file + " event " + kind);
                         updates.add(file);
                     }
+                    for (TreeWatch tree : keyTrees) {
+                        updateTree(tree, file, kind == ENTRY_CREATE);
+                    }
                 }
                 // Ready the key again so it wil signal more events.
-                key.reset();
+                if (!key.reset()) {
+                    // The directory is no longer accessible.
+                    watchKeyDirs.remove(key);
+                    watchDirKeys.remove(parent, key);
+                }
 
-                if (updates.size() > 0) {
-                    List<Supplier<Listener>>           watcherList;
-                    Map<Path,List<Supplier<Listener>>> watcherMap;
-                    Set<Path>                          updatedRequests = new TreeSet<>();
-                    synchronized (mutex) {
-                        watcherList = new ArrayList<>(this.watchers);
-                        watcherMap = deepCopy(watchedFiles);
-
-                        for (final Path file : updates) {
-                            updatedRequests.addAll(targetToRequests.getOrDefault(file, Collections.emptySet()));
-                        }
-                        for (final Path file : updates) {
-                            try {
-                                updateLinkTargetting(file);
-                            } catch (IOException e) {
-                                LOGGER.warn("Failed to update link targeting: {}", e.getMessage(), e);
-                            }
-                        }
+                if (overflow) {
+                    if (keyTrees.isEmpty()) {
+                        LOGGER.warn("Overflow event, file updates may have been lost");
+                    }
+                    for (TreeWatch tree : keyTrees) {
+                        LOGGER.info("Overflow event, rescanning {}", tree.root);
+                        rescanTree(tree);
                     }
-
-                    callbackExecutor.submit(() -> {
-                        for (final Path file : updates) {
-                            for (final Supplier<Listener> supplier : watcherList) {
-                                Listener watcher = supplier.get();
-                                if (watcher != null) {
-                                    try {
-                                        watcher.onPathUpdate(file);
-                                    } catch (RuntimeException e) {
-                                        LOGGER.error("Exception when notifying update on " + file, e);
-                                    }
-                                }
-                            }
-                        }
-                        for (Path request : updatedRequests) {
-                            Optional.ofNullable(watcherMap.get(request))
-                                    .ifPresent(list -> {
-                                        for (final Supplier<Listener> supplier : list) {
-                                            Listener watcher = supplier.get();
-                                            if (watcher != null) {
-                                                try {
-                                                    watcher.onPathUpdate(request);
-                                                } catch (RuntimeException e) {
-                                                    LOGGER.error("Exception when notifying update on " + request, e);
-                                                }
-                                            }
-                                        }
-                                    });
-                        }
-                    });
+                }
+                if (updates.size() > 0) {
+                    addUpdates(updates);
+                }
+                if (quietPeriodNs == 0 && hasPendingUpdates()) {
+                    flushUpdates();
                 }
             } catch (InterruptedException interruptedEx) {
                 LOGGER.error("Interrupted in service file watch thread: " + interruptedEx.getMessage(), interruptedEx);
@@ -613,11 +865,264 @@ public class FileWatcher implements AutoCloseable {
         }
     }
 
-    @Nonnull
-    private static Map<Path,List<Supplier<Listener>>> deepCopy(@Nonnull Map<Path,List<Supplier<Listener>>> in) {
-        Map<Path,List<Supplier<Listener>>> out = new HashMap<>();
-        in.forEach((path, suppliers) -> out.put(path, new ArrayList<>(suppliers)));
-        return in;
+    /**
+     * Add updated files to the pending updates. The requests affected by
+     * the update is resolved right away, as the update may change the link
+     * targeting.
+     *
+     * @param updates The updated files.
+     */
+    private void addUpdates(Set<Path> updates) {
+        markPendingUpdate();
+        pendingFiles.addAll(updates);
+        synchronized (mutex) {
+            for (final Path file : updates) {
+                pendingRequests.addAll(targetToRequests.getOrDefault(file, Collections.emptySet()));
+            }
+            for (final Path file : updates) {
+                try {
+                    updateLinkTargetting(file);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to update link targeting: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private boolean hasPendingUpdates() {
+        return !pendingFiles.isEmpty() || !pendingTreeFiles.isEmpty();
+    }
+
+    private void markPendingUpdate() {
+        long now = System.nanoTime();
+        if (!hasPendingUpdates()) {
+            firstEventNs = now;
+        }
+        lastEventNs = now;
+    }
+
+    private void addTreeUpdate(TreeWatch tree, Path file) {
+        markPendingUpdate();
+        pendingTreeFiles.computeIfAbsent(tree, t -> new TreeSet<>()).add(file);
+    }
+
+    /**
+     * Update the tree state for an event on a file or directory in the tree.
+     *
+     * @param tree The tree watch.
+     * @param file The file or directory of the event.
+     * @param created If the event was a create event.
+     */
+    private void updateTree(TreeWatch tree, Path file, boolean created) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            attributes = null;
+        }
+
+        if (attributes == null) {
+            if (tree.files.remove(file) != null) {
+                addTreeUpdate(tree, file);
+            } else if (watchDirKeys.containsKey(file)) {
+                // A deleted directory, drop all the files and directories in it.
+                watchDirKeys.keySet().removeIf(dir -> dir.startsWith(file));
+                watchKeyDirs.values().removeIf(dir -> dir.startsWith(file));
+                Iterator<Path> iterator = tree.files.keySet().iterator();
+                while (iterator.hasNext()) {
+                    Path removed = iterator.next();
+                    if (removed.startsWith(file)) {
+                        iterator.remove();
+                        addTreeUpdate(tree, removed);
+                    }
+                }
+            }
+        } else if (attributes.isDirectory()) {
+            if (created) {
+                try {
+                    Map<Path, FileState> added = new ConcurrentHashMap<>();
+                    scanTree(tree, file, added);
+                    tree.files.putAll(added);
+                    for (Path path : added.keySet()) {
+                        addTreeUpdate(tree, path);
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to scan new directory {}: {}", file, e.getMessage(), e);
+                }
+            }
+        } else if (attributes.isRegularFile() && tree.matches(file)) {
+            tree.files.put(file, FileState.of(attributes));
+            addTreeUpdate(tree, file);
+        }
+    }
+
+    /**
+     * Scan the whole tree, and notify all files that differ from the known
+     * state of the tree.
+     *
+     * @param tree The tree to rescan.
+     */
+    private void rescanTree(TreeWatch tree) {
+        try {
+            Map<Path, FileState> files = new ConcurrentHashMap<>();
+            scanTree(tree, tree.root, files);
+            for (Path changed : FileState.diff(tree.files, files)) {
+                addTreeUpdate(tree, changed);
+            }
+            tree.files = files;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to rescan {}: {}", tree.root, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Scan a directory in a watched tree, registering all directories and
+     * getting the state of all matching files. Each directory is listed as
+     * a separate task on the common fork-join pool.
+     *
+     * @param tree The tree watch.
+     * @param dir The directory to scan.
+     * @param files Concurrent map to put the state of the matching files in.
+     * @throws IOException If unable to scan the directory.
+     */
+    private void scanTree(TreeWatch tree, Path dir, Map<Path, FileState> files) throws IOException {
+        try {
+            ForkJoinPool.commonPool().invoke(new ScanTask(this, tree, dir, files));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class ScanTask extends RecursiveAction {
+        // Never serialized, but RecursiveAction is serializable.
+        private static final long serialVersionUID = 1L;
+
+        private final FileWatcher          watcher;
+        private final TreeWatch            tree;
+        private final Path                 dir;
+        private final Map<Path, FileState> files;
+
+        private ScanTask(FileWatcher watcher, TreeWatch tree, Path dir, Map<Path, FileState> files) {
+            this.watcher = watcher;
+            this.tree = tree;
+            this.dir = dir;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            // Register before listing, so no new file is missed.
+            watcher.addDirectoryWatcher(dir);
+            List<ScanTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        subTasks.add(new ScanTask(watcher, tree, path, files));
+                    } else if (attributes.isRegularFile() && tree.matches(path)) {
+                        files.put(path, FileState.of(attributes));
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted while scanning.
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+            invokeAll(subTasks);
+        }
+    }
+
+    /**
+     * Notify all pending updates to the listeners. By default all the
+     * callbacks are run in order on the callback executor. With a callback
+     * pool each listener gets the callbacks in order on its own serial queue.
+     * The listener lists are copy-on-write, so they are iterated without
+     * copying.
+     */
+    private void flushUpdates() {
+        List<Callback> callbacks = new ArrayList<>();
+        for (final Path file : pendingFiles) {
+            addCallbacks(callbacks, watchers, file);
+        }
+        for (final Path request : pendingRequests) {
+            List<Supplier<Listener>> listeners = watchedFiles.get(request);
+            if (listeners != null) {
+                addCallbacks(callbacks, listeners, request);
+            }
+        }
+        for (BatchEntry entry : batchWatchers) {
+            SortedSet<Path> batch = new TreeSet<>();
+            for (Path request : pendingRequests) {
+                if (entry.requests.contains(request)) {
+                    batch.add(request);
+                }
+            }
+            if (!batch.isEmpty()) {
+                SortedSet<Path> paths = Collections.unmodifiableSortedSet(batch);
+                callbacks.add(new Callback(entry.listener, paths, () -> entry.listener.onPathsUpdate(paths)));
+            }
+        }
+        pendingTreeFiles.forEach((tree, files) -> {
+            for (Path file : files) {
+                callbacks.add(new Callback(tree.listener, file, () -> tree.listener.onPathUpdate(file)));
+            }
+        });
+        pendingFiles.clear();
+        pendingRequests.clear();
+        pendingTreeFiles.clear();
+        if (callbacks.isEmpty()) {
+            return;
+        }
+
+        queuedCallbacks.addAndGet(callbacks.size());
+        Executor pool = callbackPool;
+        if (pool == null) {
+            callbackExecutor.submit(() -> callbacks.forEach(this::runCallback));
+        } else {
+            Map<Object, List<Callback>> byListener = new LinkedHashMap<>();
+            for (Callback callback : callbacks) {
+                byListener.computeIfAbsent(callback.listener, l -> new ArrayList<>()).add(callback);
+            }
+            for (Map.Entry<Object, List<Callback>> entry : byListener.entrySet()) {
+                SerialExecutor queue;
+                synchronized (mutex) {
+                    queue = listenerQueues.computeIfAbsent(entry.getKey(), l -> new SerialExecutor(pool));
+                }
+                queue.execute(() -> entry.getValue().forEach(this::runCallback));
+            }
+        }
+    }
+
+    private static void addCallbacks(List<Callback> callbacks,
+                                     List<Supplier<Listener>> listeners,
+                                     Path path) {
+        for (final Supplier<Listener> supplier : listeners) {
+            Listener watcher = supplier.get();
+            if (watcher != null) {
+                callbacks.add(new Callback(watcher, path, () -> watcher.onPathUpdate(path)));
+            }
+        }
+    }
+
+    private void runCallback(Callback callback) {
+        long start = System.nanoTime();
+        try {
+            callback.task.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Exception when notifying update on " + callback.subject, e);
+        } finally {
+            long latency = System.nanoTime() - start;
+            queuedCallbacks.decrementAndGet();
+            completedCallbacks.incrementAndGet();
+            totalCallbackNs.addAndGet(latency);
+            maxCallbackNs.accumulateAndGet(latency, Math::max);
+        }
     }
 
     private static WatchService newWatchService() {
@@ -706,13 +1211,60 @@ public class FileWatcher implements AutoCloseable {
         }
     }
 
+    private static class BatchEntry {
+        private final Set<Path>     requests;
+        private final BatchListener listener;
+
+        private BatchEntry(Set<Path> requests, BatchListener listener) {
+            this.requests = requests;
+            this.listener = listener;
+        }
+    }
+
+    private static class TreeWatch {
+        private final Path        root;
+        private final PathMatcher matcher;
+        private final Listener    listener;
+
+        // The state of the matching files. Filled by the initial scan, and
+        // kept up to date from the watcher thread, also while scanning.
+        private volatile Map<Path, FileState> files;
+
+        private TreeWatch(Path root, PathMatcher matcher, Listener listener) {
+            this.root = root;
+            this.matcher = matcher;
+            this.listener = listener;
+            this.files = new ConcurrentHashMap<>();
+        }
+
+        private boolean matches(Path file) {
+            return matcher.matches(root.relativize(file));
+        }
+    }
+
+    private static class Callback {
+        private final Object   listener;
+        private final Object   subject;
+        private final Runnable task;
+
+        private Callback(Object listener, Object subject, Runnable task) {
+            this.listener = listener;
+            this.subject = subject;
+            this.task = task;
+        }
+    }
+
     private static final Logger LOGGER = LoggerFactory.getLogger(FileWatcher.class);
 
     private final Object                              mutex;
     // List of listeners.
-    private final ArrayList<Supplier<Listener>>       watchers;
+    private final List<Supplier<Listener>>            watchers;
+    // List of batch listeners with the requested files of each.
+    private final List<BatchEntry>                    batchWatchers;
     // Watched files, as a map from requested file path to list of watchers.
     private final Map<Path, List<Supplier<Listener>>> watchedFiles;
+    // Watched directory trees.
+    private final List<TreeWatch>                     trees;
 
     // Directory to watcher KEY.
     private final Map<Path, WatchKey> watchDirKeys;
@@ -726,4 +1278,23 @@ public class FileWatcher implements AutoCloseable {
     private final ExecutorService                    callbackExecutor;
     private final ExecutorService                    watcherExecutor;
     private final WatchService                       watchService;
+
+    // Pending updates, only used from the watcher thread.
+    private final Set<Path> pendingFiles;
+    private final Set<Path> pendingRequests;
+    private final Map<TreeWatch, Set<Path>> pendingTreeFiles;
+    private       long      firstEventNs;
+    private       long      lastEventNs;
+
+    private volatile long quietPeriodNs;
+    private volatile long maxLatencyNs;
+
+    // Serial callback queue per listener, when using a callback pool.
+    private final Map<Object, SerialExecutor> listenerQueues;
+    private final AtomicInteger               queuedCallbacks;
+    private final AtomicLong                  completedCallbacks;
+    private final AtomicLong                  totalCallbackNs;
+    private final AtomicLong                  maxCallbackNs;
+
+    private volatile Executor callbackPool;
 }
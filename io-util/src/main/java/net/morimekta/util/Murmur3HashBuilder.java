@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Strong hash builder using the x64 128 bit variant of the
+ * <a href="https://github.com/aappleby/smhasher">Murmur3</a> algorithm. Words
+ * are collected into 16 byte blocks, and the strong hash is the first 64
+ * bits of the hash, same as {@code Hashing.murmur3_128().asLong()} in guava.
+ */
+final class Murmur3HashBuilder extends WordHashBuilder {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long    h1;
+    private long    h2;
+    private long    w0;
+    private boolean pending;
+    private long    blocks;
+
+    Murmur3HashBuilder(long seed) {
+        this.h1 = seed;
+        this.h2 = seed;
+    }
+
+    @Override
+    void update(long word) {
+        if (pending) {
+            block(w0, word);
+            pending = false;
+        } else {
+            w0 = word;
+            pending = true;
+        }
+    }
+
+    @Override
+    void update(ByteBuffer words, int off, int count) {
+        if (pending && count > 0) {
+            update(words.getLong(off));
+            off += 8;
+            --count;
+        }
+        final int end = off + (count & ~1) * 8;
+        for (; off < end; off += 16) {
+            block(words.getLong(off), words.getLong(off + 8));
+        }
+        if ((count & 1) != 0) {
+            update(words.getLong(off));
+        }
+    }
+
+    @Override
+    long hash(long tail, int tailBytes) {
+        long a = h1;
+        long b = h2;
+        long len = blocks * 16 + tailBytes;
+        if (pending) {
+            len += 8;
+            if (tailBytes > 0) {
+                b ^= mixK2(tail);
+            }
+            a ^= mixK1(w0);
+        } else if (tailBytes > 0) {
+            a ^= mixK1(tail);
+        }
+
+        a ^= len;
+        b ^= len;
+        a += b;
+        b += a;
+        a = fmix(a);
+        b = fmix(b);
+        a += b;
+        return a;
+    }
+
+    private void block(long k1, long k2) {
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+        ++blocks;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
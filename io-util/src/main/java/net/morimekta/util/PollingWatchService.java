@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.Watchable;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * A watch service that polls the registered directories for changes, for
+ * file systems where the native watch service does not work, like many
+ * network mounts and container overlays. Use it with the file watcher
+ * like this:
+ *
+ * <pre>{@code
+ * FileWatcher watcher = new FileWatcher(new PollingWatchService());
+ * }</pre>
+ *
+ * Each poll lists and stats the registered directories in batches on a
+ * small pool, and compares the file key, modified time and size of each
+ * entry with the previous snapshot. The poll interval adapts to how
+ * recently there were changes: it is the min interval right after a
+ * change, and grows towards the max interval while nothing changes.
+ */
+public class PollingWatchService implements WatchService {
+    public static final long DEFAULT_MIN_INTERVAL_MS = 250;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 5000;
+    /**
+     * Number of directories to list and stat in each task on the stat pool.
+     */
+    public static final int STAT_BATCH_SIZE = 16;
+
+    /**
+     * Create a polling watch service with default intervals, using its own
+     * poll thread and stat pool.
+     */
+    public PollingWatchService() {
+        this(Clock.systemUTC(),
+             Executors.newSingleThreadScheduledExecutor(makeThreadFactory("PollingWatchService")),
+             Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())),
+                                          makeThreadFactory("PollingWatchServiceStat")),
+             DEFAULT_MIN_INTERVAL_MS,
+             DEFAULT_MAX_INTERVAL_MS);
+    }
+
+    /**
+     * Create a polling watch service. The executors are shut down when the
+     * watch service is closed.
+     *
+     * @param clock The clock to get the time of changes from.
+     * @param scheduler The executor to schedule the polling on.
+     * @param statPool The executor to list and stat directories on.
+     * @param minIntervalMs The min interval between polls in milliseconds.
+     * @param maxIntervalMs The max interval between polls in milliseconds.
+     */
+    public PollingWatchService(@Nonnull Clock clock,
+                               @Nonnull ScheduledExecutorService scheduler,
+                               @Nonnull ExecutorService statPool,
+                               long minIntervalMs,
+                               long maxIntervalMs) {
+        if (minIntervalMs < 1 || maxIntervalMs < minIntervalMs) {
+            throw new IllegalArgumentException(
+                    "Invalid poll interval min " + minIntervalMs + "ms with max " + maxIntervalMs + "ms");
+        }
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.statPool = statPool;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.keys = new CopyOnWriteArrayList<>();
+        this.signalled = new LinkedBlockingQueue<>();
+        this.closedKey = new PollingKey(null, null, null);
+        this.lastChangeMs = clock.millis();
+        this.intervalMs = minIntervalMs;
+
+        scheduler.schedule(this::pollTask, minIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Register a directory to be polled. Only the create, modify and delete
+     * event kinds are supported. If the directory is already registered the
+     * same key is returned.
+     *
+     * @param directory The directory to watch.
+     * @param kinds The event kinds to watch for.
+     * @return The watch key for the directory.
+     * @throws IOException If unable to read the directory.
+     */
+    public WatchKey register(@Nonnull Path directory, WatchEvent.Kind<?>... kinds) throws IOException {
+        checkOpen();
+        Set<WatchEvent.Kind<?>> kindSet = new HashSet<>(Arrays.asList(kinds));
+        for (WatchEvent.Kind<?> kind : kindSet) {
+            if (kind != ENTRY_CREATE && kind != ENTRY_MODIFY && kind != ENTRY_DELETE) {
+                throw new UnsupportedOperationException("Unsupported event kind: " + kind);
+            }
+        }
+        synchronized (keys) {
+            for (PollingKey key : keys) {
+                if (key.directory.equals(directory)) {
+                    key.kinds = kindSet;
+                    return key;
+                }
+            }
+            PollingKey key = new PollingKey(directory, kindSet, snapshot(directory));
+            keys.add(key);
+            return key;
+        }
+    }
+
+    /**
+     * @param unit The unit of the interval.
+     * @return The interval until the next poll.
+     */
+    public long getPollInterval(TimeUnit unit) {
+        return unit.convert(intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Poll all the registered directories right away, and signal the keys
+     * with changes. This is normally called from the poll thread.
+     *
+     * @return The number of changed files.
+     */
+    public int pollNow() {
+        checkOpen();
+        List<PollingKey> polled = new ArrayList<>(keys);
+        List<Future<Integer>> batches = new ArrayList<>();
+        for (int i = 0; i < polled.size(); i += STAT_BATCH_SIZE) {
+            List<PollingKey> batch = polled.subList(i, Math.min(polled.size(), i + STAT_BATCH_SIZE));
+            batches.add(statPool.submit(() -> {
+                int changes = 0;
+                for (PollingKey key : batch) {
+                    changes += key.poll();
+                }
+                return changes;
+            }));
+        }
+
+        int changes = 0;
+        try {
+            for (Future<Integer> batch : batches) {
+                changes += batch.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return changes;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+        }
+
+        long now = clock.millis();
+        if (changes > 0) {
+            lastChangeMs = now;
+        }
+        // Poll often right after changes, and back off while nothing changes.
+        intervalMs = Math.max(minIntervalMs, Math.min(maxIntervalMs, (now - lastChangeMs) / 2));
+        return changes;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (PollingKey key : keys) {
+            key.cancel();
+        }
+        // Wake up any thread waiting for keys.
+        signalled.add(closedKey);
+        scheduler.shutdownNow();
+        statPool.shutdownNow();
+    }
+
+    @Override
+    public WatchKey poll() {
+        checkOpen();
+        return checkKey(signalled.poll());
+    }
+
+    @Override
+    public WatchKey poll(long timeout, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        return checkKey(signalled.poll(timeout, unit));
+    }
+
+    @Override
+    public WatchKey take() throws InterruptedException {
+        checkOpen();
+        return checkKey(signalled.take());
+    }
+
+    // --- INTERNAL ---
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PollingWatchService.class);
+
+    private final Clock                           clock;
+    private final ScheduledExecutorService        scheduler;
+    private final ExecutorService                 statPool;
+    private final long                            minIntervalMs;
+    private final long                            maxIntervalMs;
+    private final List<PollingKey>                keys;
+    private final LinkedBlockingQueue<PollingKey> signalled;
+    // Sentinel key to wake up threads waiting for keys on close.
+    private final PollingKey                      closedKey;
+
+    private volatile boolean closed;
+    private volatile long    lastChangeMs;
+    private volatile long    intervalMs;
+
+    private void pollTask() {
+        try {
+            pollNow();
+        } catch (ClosedWatchServiceException e) {
+            return;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to poll directories: {}", e.getMessage(), e);
+        }
+        if (!closed) {
+            scheduler.schedule(this::pollTask, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new ClosedWatchServiceException();
+        }
+    }
+
+    private WatchKey checkKey(PollingKey key) {
+        if (key == closedKey) {
+            signalled.add(closedKey);
+            throw new ClosedWatchServiceException();
+        }
+        return key;
+    }
+
+    private static Map<Path, FileState> snapshot(Path directory) throws IOException {
+        Map<Path, FileState> out = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(
+                            path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    out.put(path.getFileName(), FileState.of(attributes));
+                } catch (NoSuchFileException e) {
+                    // Deleted while listing.
+                }
+            }
+        }
+        return out;
+    }
+
+    private static ThreadFactory makeThreadFactory(String name) {
+        AtomicInteger idx = new AtomicInteger();
+        return runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName(name + "-" + idx.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class PollEvent implements WatchEvent<Path> {
+        private final Kind<Path> kind;
+        private final Path       context;
+
+        private PollEvent(Kind<Path> kind, Path context) {
+            this.kind = kind;
+            this.context = context;
+        }
+
+        @Override
+        public Kind<Path> kind() {
+            return kind;
+        }
+
+        @Override
+        public int count() {
+            return 1;
+        }
+
+        @Override
+        public Path context() {
+            return context;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ": " + context;
+        }
+    }
+
+    private class PollingKey implements WatchKey {
+        private final Path directory;
+
+        private volatile Set<WatchEvent.Kind<?>> kinds;
+
+        // Only used from the stat pool, one batch at a time.
+        private Map<Path, FileState> snapshot;
+
+        // Guarded by this.
+        private List<WatchEvent<?>> events;
+        private boolean             ready;
+        private boolean             valid;
+
+        private PollingKey(Path directory, Set<WatchEvent.Kind<?>> kinds, Map<Path, FileState> snapshot) {
+            this.directory = directory;
+            this.kinds = kinds;
+            this.snapshot = snapshot;
+            this.events = new ArrayList<>();
+            this.ready = true;
+            this.valid = true;
+        }
+
+        /**
+         * List the directory and signal the changes since last poll.
+         *
+         * @return The number of changed files.
+         */
+        private int poll() {
+            if (!isValid()) {
+                return 0;
+            }
+            Map<Path, FileState> current;
+            try {
+                current = snapshot(directory);
+            } catch (NoSuchFileException e) {
+                // The directory is gone, so the key is no longer valid.
+                cancel();
+                signal(new ArrayList<>());
+                return 1;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+
+            List<WatchEvent<?>> changes = new ArrayList<>();
+            current.forEach((name, state) -> {
+                FileState old = snapshot.get(name);
+                if (old == null) {
+                    addEvent(changes, ENTRY_CREATE, name);
+                } else if (!old.equals(state)) {
+                    addEvent(changes, ENTRY_MODIFY, name);
+                }
+            });
+            for (Path name : snapshot.keySet()) {
+                if (!current.containsKey(name)) {
+                    addEvent(changes, ENTRY_DELETE, name);
+                }
+            }
+            snapshot = current;
+            if (!changes.isEmpty()) {
+                signal(changes);
+            }
+            return changes.size();
+        }
+
+        private void addEvent(List<WatchEvent<?>> changes, WatchEvent.Kind<Path> kind, Path name) {
+            if (kinds.contains(kind)) {
+                changes.add(new PollEvent(kind, name));
+            }
+        }
+
+        private synchronized void signal(List<WatchEvent<?>> changes) {
+            events.addAll(changes);
+            if (ready) {
+                ready = false;
+                signalled.add(this);
+            }
+        }
+
+        @Override
+        public synchronized boolean isValid() {
+            return valid;
+        }
+
+        @Override
+        public synchronized List<WatchEvent<?>> pollEvents() {
+            List<WatchEvent<?>> out = events;
+            events = new ArrayList<>();
+            return out;
+        }
+
+        @Override
+        public synchronized boolean reset() {
+            if (!valid) {
+                return false;
+            }
+            if (!ready) {
+                if (events.isEmpty()) {
+                    ready = true;
+                } else {
+                    signalled.add(this);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                valid = false;
+            }
+            keys.remove(this);
+        }
+
+        @Override
+        public Watchable watchable() {
+            return directory;
+        }
+    }
+}
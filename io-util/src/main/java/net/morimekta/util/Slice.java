@@ -22,7 +22,7 @@ package net.morimekta.util;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
-import java.util.Objects;
+import java.nio.ByteBuffer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -30,12 +30,21 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * A slice of a byte array.
  *
  * Note that all the helper methods assume UTF_8 encoding.
+ * <p>
+ * Slices are equal if they have the same content, and are ordered by their
+ * content, comparing unsigned bytes, which is the same as the code point
+ * order of UTF_8 strings. The content hash is calculated when first needed
+ * and cached, so the content should not be changed after the slice is used
+ * as a hash key.
  */
 public class Slice implements Comparable<Slice>, Stringable {
     protected final byte[] fb;
     protected final int    off;
     protected final int    len;
 
+    // Cached content hash, 0 if not calculated.
+    private int hash;
+
     /**
      * Create a slice instance. The slice is only meant to be internal state
      * immutable, and not representing an immutable byte content.
@@ -171,15 +180,7 @@ public class Slice implements Comparable<Slice>, Stringable {
      * @return True if equal.
      */
     public final boolean strEquals(byte[] a, int aOff, int aLen) {
-        if (aLen != len) {
-            return false;
-        }
-        for (int i = 0; i < len; ++i) {
-            if (a[aOff + i] != fb[off + i]) {
-                return false;
-            }
-        }
-        return true;
+        return aLen == len && mismatch(fb, off, a, aOff, len) < 0;
     }
 
     /**
@@ -241,7 +242,20 @@ public class Slice implements Comparable<Slice>, Stringable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(off, len);
+        int h = hash;
+        if (h == 0 && len > 0) {
+            // Same as Arrays.hashCode(), with 4 bytes per step.
+            int i = off;
+            final int end = off + len;
+            for (final int end4 = end - 3; i < end4; i += 4) {
+                h = 923521 * h + 29791 * fb[i] + 961 * fb[i + 1] + 31 * fb[i + 2] + fb[i + 3];
+            }
+            for (; i < end; ++i) {
+                h = 31 * h + fb[i];
+            }
+            hash = h;
+        }
+        return h;
     }
 
     @Override
@@ -253,29 +267,65 @@ public class Slice implements Comparable<Slice>, Stringable {
             return false;
         }
         Slice other = (Slice) o;
-        return other.fb == fb &&
-               other.off == off &&
-               other.len == len;
+        if (other.len != len) {
+            return false;
+        }
+        if (other.fb == fb && other.off == off) {
+            return true;
+        }
+        if (hash != 0 && other.hash != 0 && hash != other.hash) {
+            return false;
+        }
+        return mismatch(fb, off, other.fb, other.off, len) < 0;
     }
 
     /**
-     * Compare slice with other slice.
-     *
-     * Slice ordering:
-     *  - Firstly ordered by start (offset) position.
-     *  - Secondly ordered by reverse length (longest slice first).
-     *
-     * Result is undefined of the two slices point to different byte buffers.
+     * Compare slice with other slice by content, comparing unsigned bytes.
+     * If one slice is a prefix of the other, the shortest slice is first.
      *
      * @param o The other slice.
      * @return Compared value.
      */
     @Override
     public int compareTo(Slice o) {
-        if (o.off != off) {
-            return Integer.compare(off, o.off);
+        final int c = Math.min(len, o.len);
+        final int i = mismatch(fb, off, o.fb, o.off, c);
+        if (i >= 0) {
+            return (fb[off + i] & 0xff) < (o.fb[o.off + i] & 0xff) ? -1 : 1;
+        }
+        return Integer.compare(len, o.len);
+    }
+
+    /**
+     * Find the first index where the two byte ranges differ, comparing 8
+     * bytes at a time.
+     *
+     * @return The index of the first differing byte, or -1 if none differ.
+     */
+    private static int mismatch(byte[] a, int aOff, byte[] b, int bOff, int len) {
+        if (a == b && aOff == bOff) {
+            return -1;
+        }
+        int i = 0;
+        if (len >= 16) {
+            // Big endian, so the first differing byte is the highest
+            // differing bits. Short ranges are faster to compare a byte
+            // at a time.
+            final ByteBuffer aView = ByteBuffer.wrap(a);
+            final ByteBuffer bView = ByteBuffer.wrap(b);
+            for (final int end = len - 7; i < end; i += 8) {
+                final long diff = aView.getLong(aOff + i) ^ bView.getLong(bOff + i);
+                if (diff != 0) {
+                    return i + Long.numberOfLeadingZeros(diff) / 8;
+                }
+            }
+        }
+        for (; i < len; ++i) {
+            if (a[aOff + i] != b[bOff + i]) {
+                return i;
+            }
         }
-        return Integer.compare(o.len, len);
+        return -1;
     }
 
     private static int validate(byte c, int value, int radix) {
@@ -27,11 +27,17 @@ import java.util.Map;
  * Helper for making strong hash values. The hash output is 64bit int
  * calculated from a base of large prime numbers. Note that this may be
  * significantly more process intensive than ordinary hash.
+ * <p>
+ * The default builder mixes in one value at a time. For better distribution
+ * and throughput on larger content, use a builder with the {@link #xxHash64()}
+ * or {@link #murmur3()} backend. These pack the values into 8 byte words, so
+ * primitive arrays and strings are hashed 8 bytes at a time. The hash values
+ * of the different backends are not compatible.
  */
 public class StrongHashBuilder {
-    private static final long NULL  = 4283;
-    private static final long FALSE = 42683;
-    private static final long TRUE  = 427283;
+    static final long NULL  = 4283;
+    static final long FALSE = 42683;
+    static final long TRUE  = 427283;
 
     private final long mul;
 
@@ -60,147 +66,173 @@ public class StrongHashBuilder {
         i = 0;
     }
 
+    /**
+     * Create a strong hash builder using the xxHash64 algorithm with seed 0.
+     *
+     * @return The hash builder.
+     */
+    public static StrongHashBuilder xxHash64() {
+        return xxHash64(0L);
+    }
+
+    /**
+     * Create a strong hash builder using the xxHash64 algorithm.
+     *
+     * @param seed The hash seed.
+     * @return The hash builder.
+     */
+    public static StrongHashBuilder xxHash64(long seed) {
+        return new XxHash64Builder(seed);
+    }
+
+    /**
+     * Create a strong hash builder using the x64 128 bit variant of the
+     * Murmur3 algorithm with seed 0. The strong hash is the first 64 bits
+     * of the 128 bit hash.
+     *
+     * @return The hash builder.
+     */
+    public static StrongHashBuilder murmur3() {
+        return murmur3(0L);
+    }
+
+    /**
+     * Create a strong hash builder using the x64 128 bit variant of the
+     * Murmur3 algorithm. The strong hash is the first 64 bits of the 128 bit
+     * hash.
+     *
+     * @param seed The hash seed.
+     * @return The hash builder.
+     */
+    public static StrongHashBuilder murmur3(long seed) {
+        return new Murmur3HashBuilder(seed);
+    }
+
     public StrongHashBuilder add(boolean b) {
-        cur = (cur ^ (b ? TRUE : FALSE) ^ ++i) * mul;
+        mix(b ? TRUE : FALSE);
         return this;
     }
 
     public StrongHashBuilder add(byte b) {
-        cur = (cur ^ b ^ ++i) * mul;
+        mix(b);
         return this;
     }
 
     public StrongHashBuilder add(short b) {
-        cur = (cur ^ b ^ ++i) * mul;
+        mix(b);
         return this;
     }
 
     public StrongHashBuilder add(int b) {
-        cur = (cur ^ b ^ ++i) * mul;
+        mix(b);
         return this;
     }
 
     public StrongHashBuilder add(long b) {
-        cur = (cur ^ b ^ ++i) * mul;
+        mix(b);
         return this;
     }
 
     public StrongHashBuilder add(char b) {
-        cur = (cur ^ b ^ ++i) * mul;
+        mix(b);
         return this;
     }
 
     public StrongHashBuilder add(double b) {
-        cur = (cur ^ Double.doubleToLongBits(b) ^ ++i) * mul;
+        mix(Double.doubleToLongBits(b));
         return this;
     }
 
     public StrongHashBuilder add(float b) {
-        cur = (cur ^ Float.floatToIntBits(b) ^ ++i) * mul;
+        mix(Float.floatToIntBits(b));
         return this;
     }
 
     public StrongHashBuilder add(boolean[] arr) {
         if (arr == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ arr.length ^ ++i) * mul;
-            for (boolean b : arr) {
-                cur = (cur ^ (b ? TRUE : FALSE) ^ ++i) * mul;
-            }
+            mix(arr.length);
+            mixArray(arr);
         }
         return this;
     }
 
     public StrongHashBuilder add(byte[] arr) {
         if (arr == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ arr.length ^ ++i) * mul;
-            for (byte b : arr) {
-                cur = (cur ^ b ^ ++i) * mul;
-            }
+            mix(arr.length);
+            mixArray(arr);
         }
         return this;
     }
 
     public StrongHashBuilder add(short[] arr) {
         if (arr == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ arr.length ^ ++i) * mul;
-            for (short b : arr) {
-                cur = (cur ^ b ^ ++i) * mul;
-            }
+            mix(arr.length);
+            mixArray(arr);
         }
         return this;
     }
 
     public StrongHashBuilder add(int[] arr) {
         if (arr == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ arr.length ^ ++i) * mul;
-            for (int b : arr) {
-                cur = (cur ^ b ^ ++i) * mul;
-            }
+            mix(arr.length);
+            mixArray(arr);
         }
         return this;
     }
 
     public StrongHashBuilder add(long[] arr) {
         if (arr == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ arr.length ^ ++i) * mul;
-            for (long b : arr) {
-                cur = (cur ^ b ^ ++i) * mul;
-            }
+            mix(arr.length);
+            mixArray(arr);
         }
         return this;
     }
 
     public StrongHashBuilder add(char[] arr) {
         if (arr == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ arr.length ^ ++i) * mul;
-            for (char b : arr) {
-                cur = (cur ^ b ^ ++i) * mul;
-            }
+            mix(arr.length);
+            mixArray(arr);
         }
         return this;
     }
 
     public StrongHashBuilder add(float[] arr) {
         if (arr == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ arr.length ^ ++i) * mul;
-            for (float b : arr) {
-                cur = (cur ^ Float.floatToIntBits(b) ^ ++i) * mul;
-            }
+            mix(arr.length);
+            mixArray(arr);
         }
         return this;
     }
 
     public StrongHashBuilder add(double[] arr) {
         if (arr == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ arr.length ^ ++i) * mul;
-            for (double b : arr) {
-                cur = (cur ^ Double.doubleToLongBits(b) ^ ++i) * mul;
-            }
+            mix(arr.length);
+            mixArray(arr);
         }
         return this;
     }
 
     public <T> StrongHashBuilder add(T[] arr) {
         if (arr == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ arr.length ^ ++i) * mul;
+            mix(arr.length);
             for (Object b : arr) {
                 add(b);
             }
@@ -210,31 +242,28 @@ public class StrongHashBuilder {
 
     public StrongHashBuilder add(CharSequence c) {
         if (c == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            final int l = c.length();
-            cur = (cur ^ l ^ ++i) * mul;
-            for (int j = 0; j < l; ++j) {
-                cur = (cur ^ c.charAt(j) ^ ++i) * mul;
-            }
+            mix(c.length());
+            mixChars(c);
         }
         return this;
     }
 
     public StrongHashBuilder add(StrongHashable o) {
         if (o == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ o.strongHash() ^ ++i) * mul;
+            mix(o.strongHash());
         }
         return this;
     }
 
     public StrongHashBuilder add(Collection c) {
         if (c == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ c.size() ^ ++i) * mul;
+            mix(c.size());
             for (Object b : c) {
                 add(b);
             }
@@ -244,9 +273,9 @@ public class StrongHashBuilder {
 
     public StrongHashBuilder add(Map map) {
         if (map == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else {
-            cur = (cur ^ map.size() ^ ++i) * mul;
+            mix(map.size());
             for (Map.Entry b : ((Map<?,?>) map).entrySet()) {
                 add(b.getKey());
                 add(b.getValue());
@@ -257,7 +286,7 @@ public class StrongHashBuilder {
 
     public StrongHashBuilder add(Object o) {
         if (o == null) {
-            cur = (cur ^ NULL ^ ++i) * mul;
+            mix(NULL);
         } else if (o instanceof StrongHashable) {
             add((StrongHashable) o);
         } else if (o instanceof CharSequence) {
@@ -301,7 +330,7 @@ public class StrongHashBuilder {
         } else if (o instanceof Map) {
             add((Map) o);
         } else {
-            cur = (cur ^ o.hashCode() ^ ++i) * mul;
+            mix(o.hashCode());
         }
         return this;
     }
@@ -309,4 +338,71 @@ public class StrongHashBuilder {
     public long strongHash() {
         return cur;
     }
+
+    // --- INTERNAL ---
+
+    /**
+     * Mix a single value into the hash. This and the array mixing methods
+     * are overridden by the hash backends.
+     *
+     * @param value The value to mix in.
+     */
+    void mix(long value) {
+        cur = (cur ^ value ^ ++i) * mul;
+    }
+
+    void mixArray(boolean[] arr) {
+        for (boolean b : arr) {
+            cur = (cur ^ (b ? TRUE : FALSE) ^ ++i) * mul;
+        }
+    }
+
+    void mixArray(byte[] arr) {
+        for (byte b : arr) {
+            cur = (cur ^ b ^ ++i) * mul;
+        }
+    }
+
+    void mixArray(short[] arr) {
+        for (short b : arr) {
+            cur = (cur ^ b ^ ++i) * mul;
+        }
+    }
+
+    void mixArray(int[] arr) {
+        for (int b : arr) {
+            cur = (cur ^ b ^ ++i) * mul;
+        }
+    }
+
+    void mixArray(long[] arr) {
+        for (long b : arr) {
+            cur = (cur ^ b ^ ++i) * mul;
+        }
+    }
+
+    void mixArray(char[] arr) {
+        for (char b : arr) {
+            cur = (cur ^ b ^ ++i) * mul;
+        }
+    }
+
+    void mixArray(float[] arr) {
+        for (float b : arr) {
+            cur = (cur ^ Float.floatToIntBits(b) ^ ++i) * mul;
+        }
+    }
+
+    void mixArray(double[] arr) {
+        for (double b : arr) {
+            cur = (cur ^ Double.doubleToLongBits(b) ^ ++i) * mul;
+        }
+    }
+
+    void mixChars(CharSequence c) {
+        final int l = c.length();
+        for (int j = 0; j < l; ++j) {
+            cur = (cur ^ c.charAt(j) ^ ++i) * mul;
+        }
+    }
 }
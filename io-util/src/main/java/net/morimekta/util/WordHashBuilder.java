@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Base for hash builders that hash a stream of 8 byte little endian words.
+ * Each value is mixed in as a single word, and arrays and strings are
+ * packed into words, with the last word zero padded. As the length of
+ * arrays are mixed in first, the padding does not make arrays with
+ * different content hash the same.
+ */
+abstract class WordHashBuilder extends StrongHashBuilder {
+    WordHashBuilder() {
+        super(0L, 0L);
+    }
+
+    @Override
+    public long strongHash() {
+        return hash(0L, 0);
+    }
+
+    /**
+     * Update the hash with a single word.
+     *
+     * @param word The word.
+     */
+    abstract void update(long word);
+
+    /**
+     * Update the hash with a number of words from a little endian buffer.
+     * Backends may override this to handle whole blocks directly.
+     *
+     * @param words Little endian buffer.
+     * @param off The byte offset of the first word.
+     * @param count The number of words.
+     */
+    void update(ByteBuffer words, int off, int count) {
+        for (int end = off + count * 8; off < end; off += 8) {
+            update(words.getLong(off));
+        }
+    }
+
+    /**
+     * Calculate the hash of the words so far, followed by a partial word.
+     * This must not change the state of the builder.
+     *
+     * @param tail The partial word.
+     * @param tailBytes Number of bytes in the partial word, 0 to 7.
+     * @return The hash value.
+     */
+    abstract long hash(long tail, int tailBytes);
+
+    /**
+     * Hash the bytes as is, without length prefix or padding, so the hash
+     * is the same as the plain hash function.
+     *
+     * @param bytes The bytes to hash.
+     * @param off The offset of the bytes.
+     * @param len The number of bytes.
+     * @return The hash value.
+     */
+    long hashBytes(byte[] bytes, int off, int len) {
+        final int words = len / 8;
+        update(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), off, words);
+        return hash(tailWord(bytes, off + words * 8, len % 8), len % 8);
+    }
+
+    @Override
+    void mix(long value) {
+        update(value);
+    }
+
+    @Override
+    void mixArray(boolean[] arr) {
+        long word = 0;
+        for (int j = 0; j < arr.length; ++j) {
+            if (arr[j]) {
+                word |= 1L << ((j & 7) * 8);
+            }
+            if ((j & 7) == 7) {
+                update(word);
+                word = 0;
+            }
+        }
+        if ((arr.length & 7) != 0) {
+            update(word);
+        }
+    }
+
+    @Override
+    void mixArray(byte[] arr) {
+        final int words = arr.length / 8;
+        update(ByteBuffer.wrap(arr).order(ByteOrder.LITTLE_ENDIAN), 0, words);
+        if ((arr.length & 7) != 0) {
+            update(tailWord(arr, words * 8, arr.length & 7));
+        }
+    }
+
+    @Override
+    void mixArray(short[] arr) {
+        final int end4 = arr.length & ~3;
+        int j = 0;
+        for (; j < end4; j += 4) {
+            update((arr[j] & 0xffffL) |
+                   (arr[j + 1] & 0xffffL) << 16 |
+                   (arr[j + 2] & 0xffffL) << 32 |
+                   (long) arr[j + 3] << 48);
+        }
+        if (j < arr.length) {
+            long word = 0;
+            for (int shift = 0; j < arr.length; ++j, shift += 16) {
+                word |= (arr[j] & 0xffffL) << shift;
+            }
+            update(word);
+        }
+    }
+
+    @Override
+    void mixArray(int[] arr) {
+        final int end2 = arr.length & ~1;
+        for (int j = 0; j < end2; j += 2) {
+            update((arr[j] & 0xffffffffL) | (long) arr[j + 1] << 32);
+        }
+        if (end2 < arr.length) {
+            update(arr[end2] & 0xffffffffL);
+        }
+    }
+
+    @Override
+    void mixArray(long[] arr) {
+        for (long word : arr) {
+            update(word);
+        }
+    }
+
+    @Override
+    void mixArray(char[] arr) {
+        final int end4 = arr.length & ~3;
+        int j = 0;
+        for (; j < end4; j += 4) {
+            update((long) arr[j] |
+                   (long) arr[j + 1] << 16 |
+                   (long) arr[j + 2] << 32 |
+                   (long) arr[j + 3] << 48);
+        }
+        if (j < arr.length) {
+            long word = 0;
+            for (int shift = 0; j < arr.length; ++j, shift += 16) {
+                word |= (long) arr[j] << shift;
+            }
+            update(word);
+        }
+    }
+
+    @Override
+    void mixArray(float[] arr) {
+        final int end2 = arr.length & ~1;
+        for (int j = 0; j < end2; j += 2) {
+            update((Float.floatToIntBits(arr[j]) & 0xffffffffL) |
+                   (long) Float.floatToIntBits(arr[j + 1]) << 32);
+        }
+        if (end2 < arr.length) {
+            update(Float.floatToIntBits(arr[end2]) & 0xffffffffL);
+        }
+    }
+
+    @Override
+    void mixArray(double[] arr) {
+        for (double d : arr) {
+            update(Double.doubleToLongBits(d));
+        }
+    }
+
+    @Override
+    void mixChars(CharSequence c) {
+        final int l = c.length();
+        final int end4 = l & ~3;
+        int j = 0;
+        for (; j < end4; j += 4) {
+            update((long) c.charAt(j) |
+                   (long) c.charAt(j + 1) << 16 |
+                   (long) c.charAt(j + 2) << 32 |
+                   (long) c.charAt(j + 3) << 48);
+        }
+        if (j < l) {
+            long word = 0;
+            for (int shift = 0; j < l; ++j, shift += 16) {
+                word |= (long) c.charAt(j) << shift;
+            }
+            update(word);
+        }
+    }
+
+    private static long tailWord(byte[] bytes, int off, int len) {
+        long word = 0;
+        for (int j = 0; j < len; ++j) {
+            word |= (bytes[off + j] & 0xffL) << (j * 8);
+        }
+        return word;
+    }
+}
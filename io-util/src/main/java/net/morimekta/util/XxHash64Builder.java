@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Strong hash builder using the
+ * <a href="https://github.com/Cyan4973/xxHash">xxHash64</a> algorithm.
+ * Words are collected into 32 byte stripes, one word for each of the four
+ * accumulator lanes.
+ */
+final class XxHash64Builder extends WordHashBuilder {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long w0;
+    private long w1;
+    private long w2;
+    private int  pending;
+    private long stripes;
+
+    XxHash64Builder(long seed) {
+        this.seed = seed;
+        this.v1 = seed + P1 + P2;
+        this.v2 = seed + P2;
+        this.v3 = seed;
+        this.v4 = seed - P1;
+    }
+
+    @Override
+    void update(long word) {
+        switch (pending) {
+            case 0:
+                w0 = word;
+                pending = 1;
+                break;
+            case 1:
+                w1 = word;
+                pending = 2;
+                break;
+            case 2:
+                w2 = word;
+                pending = 3;
+                break;
+            default:
+                v1 = round(v1, w0);
+                v2 = round(v2, w1);
+                v3 = round(v3, w2);
+                v4 = round(v4, word);
+                pending = 0;
+                ++stripes;
+                break;
+        }
+    }
+
+    @Override
+    void update(ByteBuffer words, int off, int count) {
+        while (pending != 0 && count > 0) {
+            update(words.getLong(off));
+            off += 8;
+            --count;
+        }
+        long a = v1, b = v2, c = v3, d = v4;
+        final int end = off + (count & ~3) * 8;
+        for (; off < end; off += 32) {
+            a = round(a, words.getLong(off));
+            b = round(b, words.getLong(off + 8));
+            c = round(c, words.getLong(off + 16));
+            d = round(d, words.getLong(off + 24));
+        }
+        v1 = a;
+        v2 = b;
+        v3 = c;
+        v4 = d;
+        stripes += count >>> 2;
+        super.update(words, off, count & 3);
+    }
+
+    @Override
+    long hash(long tail, int tailBytes) {
+        long h;
+        if (stripes > 0) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += stripes * 32 + pending * 8 + tailBytes;
+
+        if (pending > 0) {
+            h = word(h, w0);
+        }
+        if (pending > 1) {
+            h = word(h, w1);
+        }
+        if (pending > 2) {
+            h = word(h, w2);
+        }
+        if (tailBytes >= 4) {
+            h ^= (tail & 0xffffffffL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            tail >>>= 32;
+            tailBytes -= 4;
+        }
+        for (; tailBytes > 0; --tailBytes, tail >>>= 8) {
+            h ^= (tail & 0xff) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long merge(long h, long v) {
+        h ^= round(0, v);
+        return h * P1 + P4;
+    }
+
+    private static long word(long h, long word) {
+        h ^= round(0, word);
+        return Long.rotateLeft(h, 27) * P1 + P4;
+    }
+}
@@ -27,11 +27,19 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -54,28 +62,56 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * get the output snapshot at that time. <i><b>NOTE: </b>It is not
  * possible to get a simultaneous snapshot of stdout and stderr.</i>
  *
- * Also note that all program output is cached in byte arrays, so running
- * programs with exceedingly large outputs can cause OOM errors.
+ * By default all program output is cached in byte arrays, so running
+ * programs with exceedingly large outputs can cause OOM errors. For such
+ * programs the output can be streamed to a chunk or line consumer instead,
+ * optionally keeping only a bounded tail of the output for
+ * <code>getOutput()</code> and <code>getError()</code>:
+ *
+ * <pre>{@code
+ * ProcessExecutor build = new ProcessExecutor("make", "all")
+ *         .setOutputLineConsumer(LOGGER::info)
+ *         .setErrorLineConsumer(LOGGER::warn)
+ *         .setTailBufferSize(64 * 1024);
+ * }</pre>
+ *
+ * The consumers are called on the IO threads as the output is read, so a
+ * slow consumer will stop the output from being read, and the program will
+ * block when the pipe buffer is full. The IO threads are taken from a pool
+ * shared between all process executors, so running many programs at once
+ * does not create new thread pools.
  */
 public class ProcessExecutor implements Callable<Integer> {
-    private final String[]              cmd;
-    private final Runtime               runtime;
-    private final ExecutorService       executor;
-    private final ByteArrayOutputStream out;
-    private final ByteArrayOutputStream err;
+    /**
+     * Consumer of chunks of program output. The buffer is reused for the
+     * next chunk, so the content must be copied if it is kept.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(byte[] buffer, int off, int len) throws IOException;
+    }
+
+    private final String[]        cmd;
+    private final Runtime         runtime;
+    private final ExecutorService executor;
+    private final TailBuffer      out;
+    private final TailBuffer      err;
 
     private final AtomicReference<IOException> ioException;
 
     private final AtomicReference<InputStream> in;
 
-    private long    deadlineMs;
-    private long    deadlineFlushMs;
-    private boolean javaOptionsWorkaround;
+    private long          deadlineMs;
+    private long          deadlineFlushMs;
+    private boolean       javaOptionsWorkaround;
+    private int           tailBufferSize;
+    private ChunkConsumer outConsumer;
+    private ChunkConsumer errConsumer;
 
     public ProcessExecutor(String... cmd) {
         this(cmd,
              Runtime.getRuntime(),
-             Executors.newFixedThreadPool(3));
+             IO_POOL);
     }
 
     ProcessExecutor(String[] cmd, Runtime runtime, ExecutorService executor) {
@@ -85,12 +121,13 @@ public class ProcessExecutor implements Callable<Integer> {
         this.runtime = runtime;
         this.executor = executor;
 
-        this.out = new ByteArrayOutputStream();
-        this.err = new ByteArrayOutputStream();
+        this.out = new TailBuffer();
+        this.err = new TailBuffer();
         this.in = new AtomicReference<>();
         this.deadlineMs = TimeUnit.SECONDS.toMillis(1L);
         this.deadlineFlushMs = 100L;
         this.javaOptionsWorkaround = "java".equalsIgnoreCase(cmd[0]);
+        this.tailBufferSize = -1;
     }
 
     /**
@@ -167,6 +204,71 @@ public class ProcessExecutor implements Callable<Integer> {
         return this;
     }
 
+    /**
+     * Stream the program output to a chunk consumer. Unless a tail buffer
+     * size is set, the output is then not available from
+     * <code>getOutput()</code>.
+     *
+     * @param consumer The output consumer.
+     * @return The process executor.
+     */
+    public ProcessExecutor setOutputConsumer(ChunkConsumer consumer) {
+        this.outConsumer = consumer;
+        return this;
+    }
+
+    /**
+     * Stream the program output to a consumer one line at a time. The lines
+     * are decoded as UTF-8, without the line separator.
+     *
+     * @param consumer The output line consumer.
+     * @return The process executor.
+     */
+    public ProcessExecutor setOutputLineConsumer(Consumer<String> consumer) {
+        return setOutputConsumer(consumer == null ? null : new LineSplitter(consumer));
+    }
+
+    /**
+     * Stream the program error output to a chunk consumer. Unless a tail
+     * buffer size is set, the output is then not available from
+     * <code>getError()</code>.
+     *
+     * @param consumer The error output consumer.
+     * @return The process executor.
+     */
+    public ProcessExecutor setErrorConsumer(ChunkConsumer consumer) {
+        this.errConsumer = consumer;
+        return this;
+    }
+
+    /**
+     * Stream the program error output to a consumer one line at a time. The
+     * lines are decoded as UTF-8, without the line separator.
+     *
+     * @param consumer The error output line consumer.
+     * @return The process executor.
+     */
+    public ProcessExecutor setErrorLineConsumer(Consumer<String> consumer) {
+        return setErrorConsumer(consumer == null ? null : new LineSplitter(consumer));
+    }
+
+    /**
+     * Keep only the last bytes of each of the output streams for
+     * <code>getOutput()</code> and <code>getError()</code>. By default all
+     * the output is kept, unless it is streamed to a consumer, where none
+     * of the output is kept.
+     *
+     * @param maxBytes Max number of bytes to keep of each output stream.
+     * @return The process executor.
+     */
+    public ProcessExecutor setTailBufferSize(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Negative tail buffer size: " + maxBytes);
+        }
+        this.tailBufferSize = maxBytes;
+        return this;
+    }
+
     /**
      * Handles the process' standard output stream.
      *
@@ -174,11 +276,7 @@ public class ProcessExecutor implements Callable<Integer> {
      * @throws IOException If reading stdout failed.
      */
     protected void handleOutput(InputStream stdout) throws IOException {
-        byte[] buffer = new byte[4 * 1024];
-        int    b;
-        while ((b = stdout.read(buffer)) > 0) {
-            out.write(buffer, 0, b);
-        }
+        pump(stdout, out, outConsumer);
     }
 
     /**
@@ -188,11 +286,7 @@ public class ProcessExecutor implements Callable<Integer> {
      * @throws IOException If reading stderr failed.
      */
     protected void handleError(InputStream stderr) throws IOException {
-        byte[] buffer = new byte[4 * 1024];
-        int    b;
-        while ((b = stderr.read(buffer)) > 0) {
-            err.write(buffer, 0, b);
-        }
+        pump(stderr, err, errConsumer);
     }
 
     /**
@@ -230,8 +324,13 @@ public class ProcessExecutor implements Callable<Integer> {
     @Override
     public Integer call() throws IOException {
         try {
-            out.reset();
-            err.reset();
+            out.reset(tailBufferSize >= 0 ? tailBufferSize : outConsumer == null ? -1 : 0);
+            err.reset(tailBufferSize >= 0 ? tailBufferSize : errConsumer == null ? -1 : 0);
+            // Drop any error or partial line left by a failed or cancelled
+            // earlier call.
+            ioException.set(null);
+            resetLines(outConsumer);
+            resetLines(errConsumer);
 
             Process process = runtime.exec(cmd);
 
@@ -239,11 +338,12 @@ public class ProcessExecutor implements Callable<Integer> {
             // the read and writing of both std-in and std-out/-err in separate
             // threads, while we at the same time we wait (to handle the
             // execution deadline).
-            executor.submit(() -> handleOutputInternal(process.getInputStream()));
-            executor.submit(() -> handleErrorInternal(process.getErrorStream()));
+            List<Future<?>> pumps = new ArrayList<>();
+            pumps.add(executor.submit(() -> handleOutputInternal(process.getInputStream())));
+            pumps.add(executor.submit(() -> handleErrorInternal(process.getErrorStream())));
 
             if (in.get() != null) {
-                executor.submit(() -> handleInputInternal(process.getOutputStream()));
+                pumps.add(executor.submit(() -> handleInputInternal(process.getOutputStream())));
             } else {
                 // Always close the program's input stream to force it to stop reading.
                 // NOTE: This is not identical to how interactive apps work, but avoids
@@ -262,11 +362,20 @@ public class ProcessExecutor implements Callable<Integer> {
                 process.waitFor();
             }
 
-            executor.shutdown();
+            // The executor may be shared, so wait for the IO tasks and not
+            // for the executor to terminate.
             long flushDeadline = deadlineFlushMs == 0 ? TimeUnit.MINUTES.toMillis(3L) : deadlineFlushMs;
-            if (!executor.awaitTermination(flushDeadline, TimeUnit.MILLISECONDS)) {
-                executor.shutdownNow();
-                throw new IOException("IO thread handling timeout");
+            long flushUntil = System.currentTimeMillis() + flushDeadline;
+            for (Future<?> pump : pumps) {
+                try {
+                    pump.get(Math.max(0L, flushUntil - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    pumps.forEach(f -> f.cancel(true));
+                    throw new IOException("IO thread handling timeout");
+                } catch (ExecutionException e) {
+                    ioException.updateAndGet(old -> maybeSuppress(
+                            old, new IOException(e.getCause().getMessage(), e.getCause())));
+                }
             }
 
             if (ioException.get() != null) {
@@ -311,6 +420,166 @@ public class ProcessExecutor implements Callable<Integer> {
         }
     }
 
+    // --- INTERNAL ---
+
+    private static final ExecutorService IO_POOL = Executors.newCachedThreadPool(makeThreadFactory());
+
+    private static final int CHUNK_SIZE = 4 * 1024;
+
+    private void pump(InputStream stream, TailBuffer buffer, ChunkConsumer consumer) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int    b;
+        while ((b = stream.read(chunk)) > 0) {
+            buffer.write(chunk, 0, b);
+            if (consumer != null) {
+                try {
+                    consumer.accept(chunk, 0, b);
+                } catch (IOException | RuntimeException e) {
+                    // Keep reading the output, so the program does not block
+                    // on a full pipe, but stop calling the failed consumer.
+                    ioException.updateAndGet(old -> maybeSuppress(old, asIOException(e)));
+                    consumer = null;
+                }
+            }
+        }
+        if (consumer instanceof LineSplitter) {
+            ((LineSplitter) consumer).flush();
+        }
+    }
+
+    private static void resetLines(ChunkConsumer consumer) {
+        if (consumer instanceof LineSplitter) {
+            ((LineSplitter) consumer).line.reset();
+        }
+    }
+
+    private static IOException asIOException(Exception e) {
+        if (e instanceof IOException) {
+            return (IOException) e;
+        }
+        return new IOException("Output consumer failed: " + e.getMessage(), e);
+    }
+
+    private static ThreadFactory makeThreadFactory() {
+        AtomicInteger idx = new AtomicInteger();
+        return runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("ProcessExecutorIO-" + idx.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Buffer that keeps all the bytes written to it, or the last max bytes
+     * written to it when bounded.
+     */
+    private static class TailBuffer {
+        private byte[] buffer = new byte[0];
+        private int    max    = -1;
+        private int    start;
+        private int    len;
+
+        /**
+         * @param max The max bytes to keep, or -1 for unbounded.
+         */
+        synchronized void reset(int max) {
+            this.max = max;
+            this.buffer = new byte[0];
+            this.start = 0;
+            this.len = 0;
+        }
+
+        synchronized void write(byte[] bytes, int off, int n) {
+            if (max < 0 || len + n <= max) {
+                // Not full yet, so the content always starts at 0.
+                ensureCapacity(len + n);
+                System.arraycopy(bytes, off, buffer, len, n);
+                len += n;
+            } else if (n >= max) {
+                ensureCapacity(max);
+                System.arraycopy(bytes, off + n - max, buffer, 0, max);
+                start = 0;
+                len = max;
+            } else {
+                ensureCapacity(max);
+                int pos   = (start + len) % max;
+                int first = Math.min(n, max - pos);
+                System.arraycopy(bytes, off, buffer, pos, first);
+                System.arraycopy(bytes, off + first, buffer, 0, n - first);
+                start = (start + len + n - max) % max;
+                len = max;
+            }
+        }
+
+        synchronized byte[] toByteArray() {
+            byte[] out   = new byte[len];
+            int    first = Math.min(len, buffer.length - start);
+            System.arraycopy(buffer, start, out, 0, first);
+            System.arraycopy(buffer, 0, out, first, len - first);
+            return out;
+        }
+
+        private void ensureCapacity(int size) {
+            if (size > buffer.length) {
+                int capacity = Math.max(size, Math.max(CHUNK_SIZE, buffer.length * 2));
+                if (max >= 0) {
+                    capacity = Math.min(capacity, max);
+                }
+                byte[] tmp = new byte[capacity];
+                System.arraycopy(buffer, 0, tmp, 0, len);
+                buffer = tmp;
+            }
+        }
+    }
+
+    /**
+     * Chunk consumer that splits the content into UTF-8 lines.
+     */
+    private static class LineSplitter implements ChunkConsumer {
+        private final Consumer<String>      consumer;
+        private final ByteArrayOutputStream line;
+
+        private LineSplitter(Consumer<String> consumer) {
+            this.consumer = consumer;
+            this.line = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void accept(byte[] buffer, int off, int len) {
+            int lineStart = off;
+            int end       = off + len;
+            for (int i = off; i < end; ++i) {
+                if (buffer[i] == '\n') {
+                    if (line.size() == 0) {
+                        // Whole line in buffer, no need to copy.
+                        emit(buffer, lineStart, i - lineStart);
+                    } else {
+                        line.write(buffer, lineStart, i - lineStart);
+                        emit(line.toByteArray(), 0, line.size());
+                        line.reset();
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            line.write(buffer, lineStart, end - lineStart);
+        }
+
+        private void flush() {
+            if (line.size() > 0) {
+                emit(line.toByteArray(), 0, line.size());
+                line.reset();
+            }
+        }
+
+        private void emit(byte[] buffer, int off, int len) {
+            if (len > 0 && buffer[off + len - 1] == '\r') {
+                --len;
+            }
+            consumer.accept(new String(buffer, off, len, UTF_8));
+        }
+    }
+
     private static IOException maybeSuppress(IOException old, IOException e) {
         if (old != null) {
             old.addSuppressed(e);
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.concurrent;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor that runs its tasks one at a time and in order, on top of a
+ * shared executor. Many serial executors can share the same pool, each
+ * keeping the order of its own tasks, while a slow task only holds up the
+ * tasks of its own executor.
+ * <p>
+ * After running a number of tasks in a row, the executor gives the thread
+ * back to the pool and queues the rest as a new pool task, so busy serial
+ * executors do not starve the others.
+ */
+public class SerialExecutor implements Executor {
+    private static final int MAX_TASKS_IN_A_ROW = 16;
+
+    private final Executor             executor;
+    private final ArrayDeque<Runnable> queue;
+
+    private boolean running;
+
+    /**
+     * Create a serial executor.
+     *
+     * @param executor The executor to run the tasks on.
+     */
+    public SerialExecutor(@Nonnull Executor executor) {
+        this.executor = executor;
+        this.queue = new ArrayDeque<>();
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable task) {
+        synchronized (queue) {
+            queue.add(task);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        schedule();
+    }
+
+    /**
+     * Get the number of tasks waiting to be run, not including a task that
+     * is currently running.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    // --- INTERNAL ---
+
+    private void schedule() {
+        try {
+            executor.execute(this::runTasks);
+        } catch (RejectedExecutionException e) {
+            synchronized (queue) {
+                queue.clear();
+                running = false;
+            }
+            throw e;
+        }
+    }
+
+    private void runTasks() {
+        for (int i = 0; i < MAX_TASKS_IN_A_ROW; ++i) {
+            Runnable task;
+            synchronized (queue) {
+                task = queue.poll();
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+            boolean done = false;
+            try {
+                task.run();
+                done = true;
+            } finally {
+                if (!done) {
+                    // Keep running the rest after the exception is passed
+                    // on to the pool.
+                    continueOrStop();
+                }
+            }
+        }
+        continueOrStop();
+    }
+
+    private void continueOrStop() {
+        synchronized (queue) {
+            if (queue.isEmpty()) {
+                running = false;
+                return;
+            }
+        }
+        try {
+            schedule();
+        } catch (RejectedExecutionException e) {
+            // The pool is shut down, so the tasks are dropped.
+        }
+    }
+}
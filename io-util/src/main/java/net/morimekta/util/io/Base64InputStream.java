@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.io;
+
+import net.morimekta.util.Base64;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * An input stream that decodes base64 data read from another input stream.
+ * It accepts both the standard and URL-safe alphabets, with or without
+ * padding, and ignores white space like line breaks. The encoded data is
+ * read and decoded in blocks of whole 4 char groups.
+ * <p>
+ * Invalid base64 data is reported as an {@link IOException}.
+ */
+public class Base64InputStream extends InputStream {
+    private static final int BLOCK_SIZE = 4 << 10;
+
+    private final InputStream in;
+
+    private byte[]  encoded;
+    private byte[]  decoded;
+    private int     encodedLen;
+    private int     pos;
+    private int     limit;
+    private boolean eof;
+
+    /**
+     * Create a base64 input stream.
+     *
+     * @param in The input stream to read the encoded data from.
+     */
+    public Base64InputStream(@Nonnull InputStream in) {
+        this.in = in;
+        this.encoded = new byte[BLOCK_SIZE];
+        this.decoded = new byte[Base64.maxDecodedLength(BLOCK_SIZE)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return decoded[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] bytes, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > bytes.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal arguments for read: byte[%d], off:%d, len:%d",
+                    bytes.length, off, len));
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(decoded, pos, bytes, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // --- INTERNAL ---
+
+    /**
+     * Read and decode the next block of encoded data. Encoded chars after
+     * the last whole 4 char group are kept until more data is read.
+     *
+     * @return True if decoded data is available, false on end of stream.
+     * @throws IOException If unable to read, or the data is not valid base64.
+     */
+    private boolean fill() throws IOException {
+        while (pos == limit) {
+            if (eof) {
+                return false;
+            }
+            if (encodedLen == encoded.length) {
+                // No whole group in the block, only possible with a lot of
+                // white space.
+                encoded = Arrays.copyOf(encoded, encoded.length * 2);
+                decoded = new byte[Base64.maxDecodedLength(encoded.length)];
+            }
+
+            int r = in.read(encoded, encodedLen, encoded.length - encodedLen);
+            int end;
+            if (r < 0) {
+                eof = true;
+                end = encodedLen;
+            } else {
+                encodedLen += r;
+                end = groupEnd();
+            }
+            if (end > 0) {
+                try {
+                    limit = Base64.decode(encoded, 0, end, decoded, 0);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                pos = 0;
+                encodedLen -= end;
+                System.arraycopy(encoded, end, encoded, 0, encodedLen);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The index after the last whole 4 char group in the encoded
+     *         buffer, not counting white space.
+     */
+    private int groupEnd() {
+        int chars = 0;
+        for (int i = 0; i < encodedLen; ++i) {
+            if (!isWhiteSpace(encoded[i])) {
+                ++chars;
+            }
+        }
+        int end = encodedLen;
+        for (int drop = chars % 4; drop > 0; ) {
+            if (!isWhiteSpace(encoded[--end])) {
+                --drop;
+            }
+        }
+        return end;
+    }
+
+    private static boolean isWhiteSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+}
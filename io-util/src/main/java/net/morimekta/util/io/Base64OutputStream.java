@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.io;
+
+import net.morimekta.util.Base64;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * An output stream that base64 encodes the data written to it, and writes
+ * the encoded data to another output stream. The data is encoded in blocks
+ * of whole lines (or 3 byte groups when not wrapping lines), and large
+ * writes are encoded directly from the written array.
+ * <p>
+ * The encoded data is only complete when the stream is closed, as flushing
+ * the stream will not encode the bytes of an incomplete block.
+ */
+public class Base64OutputStream extends OutputStream {
+    private static final int BLOCK_SIZE = 3 << 10;
+
+    private final OutputStream   out;
+    private final Base64.Encoder encoder;
+    private final byte[]         block;
+    private final byte[]         separator;
+    private final byte[]         encoded;
+
+    private int     pos;
+    private boolean separate;
+    private boolean closed;
+
+    /**
+     * Create a base64 output stream with the standard encoder, without
+     * padding or line wrapping.
+     *
+     * @param out The output stream to write the encoded data to.
+     */
+    public Base64OutputStream(@Nonnull OutputStream out) {
+        this(out, Base64.encoder());
+    }
+
+    /**
+     * Create a base64 output stream.
+     *
+     * @param out The output stream to write the encoded data to.
+     * @param encoder The base64 encoder to use.
+     */
+    public Base64OutputStream(@Nonnull OutputStream out, @Nonnull Base64.Encoder encoder) {
+        int lineBytes = encoder.getLineLength() / 4 * 3;
+        int blockSize = lineBytes > 0 ? Math.max(1, BLOCK_SIZE / lineBytes) * lineBytes : BLOCK_SIZE;
+
+        this.out = out;
+        this.encoder = encoder;
+        this.block = new byte[blockSize];
+        this.separator = encoder.getLineSeparator().getBytes(US_ASCII);
+        this.encoded = new byte[separator.length + encoder.encodedLength(blockSize)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[pos++] = (byte) b;
+        if (pos == block.length) {
+            encodeBlock(block, 0, pos);
+            pos = 0;
+        }
+    }
+
+    @Override
+    public void write(@Nonnull byte[] bytes, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > bytes.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal arguments for write: byte[%d], off:%d, len:%d",
+                    bytes.length, off, len));
+        }
+        ensureOpen();
+        if (pos > 0) {
+            int n = Math.min(len, block.length - pos);
+            System.arraycopy(bytes, off, block, pos, n);
+            pos += n;
+            off += n;
+            len -= n;
+            if (pos < block.length) {
+                return;
+            }
+            encodeBlock(block, 0, pos);
+            pos = 0;
+        }
+        while (len >= block.length) {
+            encodeBlock(bytes, off, block.length);
+            off += block.length;
+            len -= block.length;
+        }
+        if (len > 0) {
+            System.arraycopy(bytes, off, block, 0, len);
+            pos = len;
+        }
+    }
+
+    /**
+     * Flush the output stream. Bytes not making a complete block are not
+     * encoded until more data is written or the stream is closed.
+     *
+     * @throws IOException If unable to flush the output stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Encode the remaining bytes, including padding if the encoder uses
+     * that, and close the output stream.
+     *
+     * @throws IOException If unable to write or close the output stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (pos > 0) {
+                encodeBlock(block, 0, pos);
+                pos = 0;
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    // --- INTERNAL ---
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Writing to closed base64 stream");
+        }
+    }
+
+    /**
+     * Encode a block of bytes. As blocks are whole lines, the line separator
+     * is written before the next block, not after the last line.
+     */
+    private void encodeBlock(byte[] bytes, int off, int len) throws IOException {
+        int n = 0;
+        if (separate) {
+            System.arraycopy(separator, 0, encoded, 0, separator.length);
+            n = separator.length;
+        }
+        n += encoder.encode(bytes, off, len, encoded, n);
+        out.write(encoded, 0, n);
+        separate = separator.length > 0;
+    }
+}
@@ -21,13 +21,63 @@
 package net.morimekta.util.io;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * IO-Optimized binary reader using big-endian integer encoding.
  */
 public class BigEndianBinaryReader extends BinaryReader {
     public BigEndianBinaryReader(InputStream in) {
-        super(in);
+        super(in, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Create a binary reader with an internal buffer that is refilled from
+     * the input stream. Note that this reads ahead of what is consumed.
+     *
+     * @param in The input stream to read.
+     * @param bufferSize The buffer size, at least 16 bytes.
+     */
+    public BigEndianBinaryReader(InputStream in, int bufferSize) {
+        super(in, bufferSize, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Create a binary reader over the content of a byte array.
+     *
+     * @param content The content to read.
+     */
+    public BigEndianBinaryReader(byte[] content) {
+        this(content, 0, content.length);
+    }
+
+    /**
+     * Create a binary reader over a part of a byte array.
+     *
+     * @param content The content array.
+     * @param off The offset of the content in the array.
+     * @param len The length of the content.
+     */
+    public BigEndianBinaryReader(byte[] content, int off, int len) {
+        super(content, off, len, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Create a binary reader over the remaining content of a byte buffer.
+     * Array backed buffers are read in place, other buffers are read in
+     * blocks. The position of the buffer is not changed.
+     *
+     * @param content The content to read.
+     * @return The binary reader.
+     */
+    public static BigEndianBinaryReader forBuffer(ByteBuffer content) {
+        if (content.hasArray()) {
+            return new BigEndianBinaryReader(content.array(),
+                                             content.arrayOffset() + content.position(),
+                                             content.remaining());
+        }
+        return new BigEndianBinaryReader(new ByteBufferInputStream(content.slice()), 1 << 12);
     }
 
     @Override
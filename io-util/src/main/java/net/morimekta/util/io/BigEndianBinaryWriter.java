@@ -22,17 +22,32 @@ package net.morimekta.util.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteOrder;
 
 /**
  * IO-Optimized binary writer using big-endian integer encoding.
  */
 public class BigEndianBinaryWriter extends BinaryWriter {
     public BigEndianBinaryWriter(OutputStream out) {
-        super(out);
+        super(out, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Create a binary writer that encodes into a growable block, which is
+     * written to the output stream when full, flushed or closed.
+     *
+     * @param out The output stream to write to.
+     * @param blockSize The initial block size, at least 16 bytes.
+     */
+    public BigEndianBinaryWriter(OutputStream out, int blockSize) {
+        super(out, blockSize, ByteOrder.BIG_ENDIAN);
     }
 
     @Override
     public int writeShort(short integer) throws IOException {
+        if (isBuffered()) {
+            return putShort(integer);
+        }
         out.write(integer >>> 8);
         out.write(integer);
         return 2;
@@ -40,6 +55,9 @@ public class BigEndianBinaryWriter extends BinaryWriter {
 
     @Override
     public int writeInt(int integer) throws IOException {
+        if (isBuffered()) {
+            return putInt(integer);
+        }
         out.write(integer >>> 24);
         out.write(integer >>> 16);
         out.write(integer >>> 8);
@@ -49,6 +67,9 @@ public class BigEndianBinaryWriter extends BinaryWriter {
 
     @Override
     public int writeLong(long integer) throws IOException {
+        if (isBuffered()) {
+            return putLong(integer);
+        }
         out.write((int) (integer >>> 56));
         out.write((int) (integer >>> 48));
         out.write((int) (integer >>> 40));
@@ -62,6 +83,9 @@ public class BigEndianBinaryWriter extends BinaryWriter {
 
     @Override
     public int writeUInt16(int number) throws IOException {
+        if (isBuffered()) {
+            return putShort((short) number);
+        }
         out.write(number >>> 8);
         out.write(number);
         return 2;
@@ -69,14 +93,17 @@ public class BigEndianBinaryWriter extends BinaryWriter {
 
     @Override
     public int writeUInt24(int number) throws IOException {
-        out.write(number >>> 16);
-        out.write(number >>> 8);
-        out.write(number);
+        write(number >>> 16);
+        write(number >>> 8);
+        write(number);
         return 3;
     }
 
     @Override
     public int writeUInt32(int number) throws IOException {
+        if (isBuffered()) {
+            return putInt(number);
+        }
         out.write(number >>> 24);
         out.write(number >>> 16);
         out.write(number >>> 8);
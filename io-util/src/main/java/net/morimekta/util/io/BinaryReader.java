@@ -25,15 +25,92 @@ import net.morimekta.util.Binary;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * IO-Optimized binary reader.
+ * <p>
+ * By default the reader reads each byte from the input stream as needed, and
+ * never reads ahead. It can also be backed by a byte array window, either
+ * over content already in memory, or as a buffer that is refilled from the
+ * input stream. Then fixed width numbers are decoded from the window with a
+ * single bounds check, and varints without a call per byte. Note that a
+ * buffered reader will read ahead of what is consumed from the stream.
  */
 public abstract class BinaryReader extends InputStream {
     private final InputStream in;
+    private final byte[]      buffer;
+    private final ByteBuffer  view;
+    private final boolean     refill;
+    private final ByteOrder   order;
+
+    private int    pos;
+    private int    limit;
+    private byte[] scratch;
 
     public BinaryReader(InputStream in) {
+        this(in, null);
+    }
+
+    /**
+     * Create an unbuffered binary reader with known byte order, so arrays of
+     * fixed width numbers can be read in blocks.
+     *
+     * @param in The input stream to read.
+     * @param order The byte order of the fixed width numbers.
+     */
+    protected BinaryReader(InputStream in, ByteOrder order) {
+        this.in = in;
+        this.buffer = null;
+        this.view = null;
+        this.refill = false;
+        this.order = order;
+    }
+
+    /**
+     * Create a binary reader over a buffer that is refilled from the input
+     * stream.
+     *
+     * @param in The input stream to read.
+     * @param bufferSize The buffer size, at least 16 bytes.
+     * @param order The byte order of the fixed width numbers.
+     */
+    protected BinaryReader(InputStream in, int bufferSize, ByteOrder order) {
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("Too small buffer size: " + bufferSize);
+        }
         this.in = in;
+        this.buffer = new byte[bufferSize];
+        this.view = ByteBuffer.wrap(buffer).order(order);
+        this.refill = true;
+        this.order = order;
+        this.pos = 0;
+        this.limit = 0;
+    }
+
+    /**
+     * Create a binary reader over the fixed content of a byte array. The
+     * array is not copied.
+     *
+     * @param content The content array.
+     * @param off The offset of the content in the array.
+     * @param len The length of the content.
+     * @param order The byte order of the fixed width numbers.
+     */
+    protected BinaryReader(byte[] content, int off, int len, ByteOrder order) {
+        if (off < 0 || len < 0 || off + len > content.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal arguments for content: byte[%d], off:%d, len:%d",
+                    content.length, off, len));
+        }
+        this.in = null;
+        this.buffer = content;
+        this.view = ByteBuffer.wrap(content).order(order);
+        this.refill = false;
+        this.order = order;
+        this.pos = off;
+        this.limit = off + len;
     }
 
     /**
@@ -44,7 +121,10 @@ public abstract class BinaryReader extends InputStream {
      */
     @Override
     public int read() throws IOException {
-        return in.read();
+        if (pos < limit) {
+            return buffer[pos++] & 0xFF;
+        }
+        return readSlow();
     }
 
     /**
@@ -55,11 +135,7 @@ public abstract class BinaryReader extends InputStream {
      */
     @Override
     public int read(byte[] out) throws IOException {
-        int i, off = 0;
-        while (off < out.length && (i = in.read(out, off, out.length - off)) > 0) {
-            off += i;
-        }
-        return off;
+        return readFully(out, 0, out.length);
     }
 
     /**
@@ -77,14 +153,7 @@ public abstract class BinaryReader extends InputStream {
                     "Illegal arguments for read: byte[%d], off:%d, len:%d",
                     out.length, off, len));
         }
-
-        final int end = off + len;
-        int pos = off;
-        int i;
-        while (pos < end && (i = in.read(out, off, end - off)) >= 0) {
-            pos += i;
-        }
-        return pos - off;
+        return readFully(out, off, len);
     }
 
     /**
@@ -94,15 +163,17 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException if unable to read from stream.
      */
     public void expect(byte[] out) throws IOException {
-        int i, off = 0;
-        while (off < out.length && (i = in.read(out, off, out.length - off)) > 0) {
-            off += i;
-        }
+        int off = readFully(out, 0, out.length);
         if (off < out.length) {
             throw new IOException("Not enough data available on stream: " + off + " < " + out.length);
         }
     }
 
+    @Override
+    public int available() throws IOException {
+        return (limit - pos) + (in == null ? 0 : in.available());
+    }
+
     @Override
     public void close() {}
 
@@ -113,7 +184,7 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException If no byte to read.
      */
     public byte expectByte() throws IOException {
-        int read = in.read();
+        int read = read();
         if (read < 0) {
             throw new IOException("Missing expected byte");
         }
@@ -127,11 +198,16 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException if unable to read from stream.
      */
     public short expectShort() throws IOException {
-        int b1 = in.read();
+        if (ensure(2)) {
+            short value = view.getShort(pos);
+            pos += 2;
+            return value;
+        }
+        int b1 = read();
         if (b1 < 0) {
             throw new IOException("Missing byte 1 to expected short");
         }
-        int b2 = in.read();
+        int b2 = read();
         if (b2 < 0) {
             throw new IOException("Missing byte 2 to expected short");
         }
@@ -145,19 +221,24 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException if unable to read from stream.
      */
     public int expectInt() throws IOException {
-        int b1 = in.read();
+        if (ensure(4)) {
+            int value = view.getInt(pos);
+            pos += 4;
+            return value;
+        }
+        int b1 = read();
         if (b1 < 0) {
             throw new IOException("Missing byte 1 to expected int");
         }
-        int b2 = in.read();
+        int b2 = read();
         if (b2 < 0) {
             throw new IOException("Missing byte 2 to expected int");
         }
-        int b3 = in.read();
+        int b3 = read();
         if (b3 < 0) {
             throw new IOException("Missing byte 3 to expected int");
         }
-        int b4 = in.read();
+        int b4 = read();
         if (b4 < 0) {
             throw new IOException("Missing byte 4 to expected int");
         }
@@ -171,35 +252,40 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException if unable to read from stream.
      */
     public long expectLong() throws IOException {
-        int b1 = in.read();
+        if (ensure(8)) {
+            long value = view.getLong(pos);
+            pos += 8;
+            return value;
+        }
+        int b1 = read();
         if (b1 < 0) {
             throw new IOException("Missing byte 1 to expected long");
         }
-        int b2 = in.read();
+        int b2 = read();
         if (b2 < 0) {
             throw new IOException("Missing byte 2 to expected long");
         }
-        int b3 = in.read();
+        int b3 = read();
         if (b3 < 0) {
             throw new IOException("Missing byte 3 to expected long");
         }
-        long b4 = in.read();
+        long b4 = read();
         if (b4 < 0) {
             throw new IOException("Missing byte 4 to expected long");
         }
-        long b5 = in.read();
+        long b5 = read();
         if (b5 < 0) {
             throw new IOException("Missing byte 5 to expected long");
         }
-        long b6 = in.read();
+        long b6 = read();
         if (b6 < 0) {
             throw new IOException("Missing byte 6 to expected long");
         }
-        long b7 = in.read();
+        long b7 = read();
         if (b7 < 0) {
             throw new IOException("Missing byte 7 to expected long");
         }
-        long b8 = in.read();
+        long b8 = read();
         if (b8 < 0) {
             throw new IOException("Missing byte 8 to expected long");
         }
@@ -218,13 +304,142 @@ public abstract class BinaryReader extends InputStream {
     }
 
     /**
-     * Read binary data from stream.
+     * Read an array of ints from the input stream.
+     *
+     * @param values The array to read into.
+     * @throws IOException if unable to read from stream.
+     */
+    public void expectInts(int[] values) throws IOException {
+        expectInts(values, 0, values.length);
+    }
+
+    /**
+     * Read ints from the input stream.
+     *
+     * @param values The array to read into.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to read.
+     * @throws IOException if unable to read from stream.
+     */
+    public void expectInts(int[] values, int off, int len) throws IOException {
+        checkArray("int", values.length, off, len);
+        if (order == null) {
+            for (int i = off; i < off + len; ++i) {
+                values[i] = expectInt();
+            }
+            return;
+        }
+        int done = 0;
+        while (done < len) {
+            ByteBuffer chunk = nextChunk(4, len - done);
+            if (chunk == null) {
+                throw missing("int", done, len);
+            }
+            int n = chunk.remaining() / 4;
+            for (int i = off + done, end = i + n, p = chunk.position(); i < end; ++i, p += 4) {
+                values[i] = chunk.getInt(p);
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Read an array of longs from the input stream.
+     *
+     * @param values The array to read into.
+     * @throws IOException if unable to read from stream.
+     */
+    public void expectLongs(long[] values) throws IOException {
+        expectLongs(values, 0, values.length);
+    }
+
+    /**
+     * Read longs from the input stream.
+     *
+     * @param values The array to read into.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to read.
+     * @throws IOException if unable to read from stream.
+     */
+    public void expectLongs(long[] values, int off, int len) throws IOException {
+        checkArray("long", values.length, off, len);
+        if (order == null) {
+            for (int i = off; i < off + len; ++i) {
+                values[i] = expectLong();
+            }
+            return;
+        }
+        int done = 0;
+        while (done < len) {
+            ByteBuffer chunk = nextChunk(8, len - done);
+            if (chunk == null) {
+                throw missing("long", done, len);
+            }
+            int n = chunk.remaining() / 8;
+            for (int i = off + done, end = i + n, p = chunk.position(); i < end; ++i, p += 8) {
+                values[i] = chunk.getLong(p);
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Read an array of doubles from the input stream.
+     *
+     * @param values The array to read into.
+     * @throws IOException if unable to read from stream.
+     */
+    public void expectDoubles(double[] values) throws IOException {
+        expectDoubles(values, 0, values.length);
+    }
+
+    /**
+     * Read doubles from the input stream.
+     *
+     * @param values The array to read into.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to read.
+     * @throws IOException if unable to read from stream.
+     */
+    public void expectDoubles(double[] values, int off, int len) throws IOException {
+        checkArray("double", values.length, off, len);
+        if (order == null) {
+            for (int i = off; i < off + len; ++i) {
+                values[i] = expectDouble();
+            }
+            return;
+        }
+        int done = 0;
+        while (done < len) {
+            ByteBuffer chunk = nextChunk(8, len - done);
+            if (chunk == null) {
+                throw missing("double", done, len);
+            }
+            int n = chunk.remaining() / 8;
+            for (int i = off + done, end = i + n, p = chunk.position(); i < end; ++i, p += 8) {
+                values[i] = chunk.getDouble(p);
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Read binary data from stream. Readers over fixed content return a
+     * binary sharing the content array, and do not copy the bytes.
      *
      * @param bytes Number of bytes to read.
      * @return The binary wrapper.
      * @throws IOException if unable to read from stream.
      */
     public Binary expectBinary(int bytes) throws IOException {
+        if (buffer != null && !refill) {
+            if (bytes > limit - pos) {
+                throw new IOException("Not enough data available on stream: " + (limit - pos) + " < " + bytes);
+            }
+            Binary binary = Binary.wrap(buffer, pos, bytes);
+            pos += bytes;
+            return binary;
+        }
         return Binary.wrap(expectBytes(bytes));
     }
 
@@ -236,14 +451,14 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException if unable to read from stream.
      */
     public byte[] expectBytes(final int bytes) throws IOException {
-        if (bytes > (128 * 1024)) {  // more than 128 kB, be cautious.
+        if (bytes > (128 * 1024) && bytes > limit - pos) {  // more than 128 kB, be cautious.
             ByteArrayOutputStream tmp = new ByteArrayOutputStream(128 * 1024);
             int remaining = bytes;
-            byte[] buffer = new byte[4 * 1024];  // 1 page in memory.
+            byte[] page = new byte[4 * 1024];  // 1 page in memory.
             int r;
             while (remaining > 0 &&
-                   (r = in.read(buffer, 0, Math.min(remaining, buffer.length))) > 0) {
-                tmp.write(buffer, 0, r);
+                   (r = readFully(page, 0, Math.min(remaining, page.length))) > 0) {
+                tmp.write(page, 0, r);
                 remaining -= r;
             }
             if (tmp.size() < bytes) {
@@ -263,7 +478,7 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException If no number to read.
      */
     public int expectUInt8() throws IOException {
-        int read = in.read();
+        int read = read();
         if (read < 0) {
             throw new IOException("Missing unsigned byte");
         }
@@ -277,11 +492,16 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException If no number to read.
      */
     public int expectUInt16() throws IOException {
-        int b1 = in.read();
+        if (ensure(2)) {
+            int value = view.getShort(pos) & 0xFFFF;
+            pos += 2;
+            return value;
+        }
+        int b1 = read();
         if (b1 < 0) {
             throw new IOException("Missing byte 1 to expected uint16");
         }
-        int b2 = in.read();
+        int b2 = read();
         if (b2 < 0) {
             throw new IOException("Missing byte 2 to expected uint16");
         }
@@ -295,11 +515,11 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException If no number to read.
      */
     public int readUInt16() throws IOException {
-        int b1 = in.read();
+        int b1 = read();
         if (b1 < 0) {
             return 0;
         }
-        int b2 = in.read();
+        int b2 = read();
         if (b2 < 0) {
             throw new IOException("Missing byte 2 to read uint16");
         }
@@ -313,15 +533,15 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException If no number to read.
      */
     public int expectUInt24() throws IOException {
-        int b1 = in.read();
+        int b1 = read();
         if (b1 < 0) {
             throw new IOException("Missing byte 1 to expected uint24");
         }
-        int b2 = in.read();
+        int b2 = read();
         if (b2 < 0) {
             throw new IOException("Missing byte 2 to expected uint24");
         }
-        int b3 = in.read();
+        int b3 = read();
         if (b3 < 0) {
             throw new IOException("Missing byte 3 to expected uint24");
         }
@@ -418,11 +638,242 @@ public abstract class BinaryReader extends InputStream {
      * @throws IOException if unable to read from stream.
      */
     public int readIntVarint() throws IOException {
-        int i = in.read();
+        prefetch(5);
+        // Decode directly from the buffer if the varint ends within it.
+        int shift = 0;
+        int value = 0;
+        final int end = Math.min(limit, pos + 5);
+        for (int p = pos; p < end; ++p) {
+            final int b = buffer[p];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                pos = p + 1;
+                return value;
+            }
+            shift += 7;
+        }
+
+        int i = read();
         if (i < 0) {
             return 0;
         }
+        return continueIntVarint(i);
+    }
+
+    /**
+     * Write a signed number as varint (integer with variable number of bytes,
+     * determined as part of the bytes themselves.
+     *
+     * NOTE: Reading varint accepts end of stream as '0'.
+     *
+     * @return The varint read from stream.
+     * @throws IOException if unable to read from stream.
+     */
+    public long readLongVarint() throws IOException {
+        prefetch(10);
+        // Decode directly from the buffer if the varint ends within it.
+        int shift = 0;
+        long value = 0;
+        final int end = Math.min(limit, pos + 10);
+        for (int p = pos; p < end; ++p) {
+            final int b = buffer[p];
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                pos = p + 1;
+                return value;
+            }
+            shift += 7;
+        }
+
+        int i = read();
+        if (i < 0) {
+            return 0L;
+        }
+        return continueLongVarint(i);
+    }
+
+    /**
+     * Read packed varints, that is varints written back to back with no
+     * separator, as written by {@link BinaryWriter#writePackedVarints(int[], int, int)}.
+     * The number of values must be known, e.g. from a length prefix.
+     *
+     * @param values The array to read into.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to read.
+     * @throws IOException if unable to read from stream.
+     */
+    public void expectPackedVarints(int[] values, int off, int len) throws IOException {
+        checkArray("int", values.length, off, len);
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            if (prefetch(5)) {
+                // Unrolled decoding of varints of up to 5 bytes.
+                int p = pos;
+                int b = buffer[p++];
+                int value = b & 0x7f;
+                if (b < 0) {
+                    b = buffer[p++];
+                    value |= (b & 0x7f) << 7;
+                    if (b < 0) {
+                        b = buffer[p++];
+                        value |= (b & 0x7f) << 14;
+                        if (b < 0) {
+                            b = buffer[p++];
+                            value |= (b & 0x7f) << 21;
+                            if (b < 0) {
+                                b = buffer[p++];
+                                value |= b << 28;
+                            }
+                        }
+                    }
+                }
+                if (b >= 0) {
+                    pos = p;
+                    values[i] = value;
+                    continue;
+                }
+            }
+            int first = read();
+            if (first < 0) {
+                throw missing("varint", i - off, len);
+            }
+            values[i] = continueIntVarint(first);
+        }
+    }
+
+    /**
+     * Read packed varints, that is varints written back to back with no
+     * separator, as written by {@link BinaryWriter#writePackedVarints(long[], int, int)}.
+     * The number of values must be known, e.g. from a length prefix.
+     *
+     * @param values The array to read into.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to read.
+     * @throws IOException if unable to read from stream.
+     */
+    public void expectPackedVarints(long[] values, int off, int len) throws IOException {
+        checkArray("long", values.length, off, len);
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            if (prefetch(10)) {
+                // Unrolled decoding of the first 3 bytes, which covers values
+                // up to 21 bits, then a loop for the rest.
+                int p = pos;
+                int b = buffer[p++];
+                long value = b & 0x7f;
+                if (b < 0) {
+                    b = buffer[p++];
+                    value |= (b & 0x7f) << 7;
+                    if (b < 0) {
+                        b = buffer[p++];
+                        value |= (b & 0x7f) << 14;
+                        for (int shift = 21; b < 0 && shift < 70; shift += 7) {
+                            b = buffer[p++];
+                            value |= (long) (b & 0x7f) << shift;
+                        }
+                    }
+                }
+                if (b >= 0) {
+                    pos = p;
+                    values[i] = value;
+                    continue;
+                }
+            }
+            int first = read();
+            if (first < 0) {
+                throw missing("varint", i - off, len);
+            }
+            values[i] = continueLongVarint(first);
+        }
+    }
+
+    protected abstract int unshift2bytes(int b1, int b2);
+
+    protected abstract int unshift3bytes(int b1, int b2, int b3);
+
+    protected abstract int unshift4bytes(int b1, int b2, int b3, int b4);
+
+    protected abstract long unshift8bytes(long b1, long b2, long b3, long b4, long b5, long b6, long b7, long b8);
+
+    // --- INTERNAL ---
+
+    private static final int SCRATCH_SIZE = 1 << 12;
+
+    /**
+     * Make sure there are at least the given number of bytes in the buffer,
+     * refilling it if possible.
+     *
+     * @param bytes The number of bytes needed.
+     * @return True if the bytes are available in the buffer.
+     * @throws IOException If unable to refill the buffer.
+     */
+    private boolean ensure(int bytes) throws IOException {
+        if (limit - pos >= bytes) {
+            return true;
+        }
+        return refill && fill(bytes);
+    }
+
+    /**
+     * Check if there are at least the given number of bytes in the buffer,
+     * for reading values of variable length. Unlike {@link #ensure(int)}
+     * this does not wait for the bytes, as the value may be shorter than
+     * that. Only if the buffer is empty is there one read from the input
+     * stream, which blocks only until some byte is available.
+     *
+     * @param bytes The max number of bytes that may be needed.
+     * @return True if the bytes are available in the buffer.
+     * @throws IOException If unable to read from stream.
+     */
+    private boolean prefetch(int bytes) throws IOException {
+        if (limit - pos >= bytes) {
+            return true;
+        }
+        if (refill && pos == limit) {
+            pos = 0;
+            limit = 0;
+            int r = in.read(buffer, 0, buffer.length);
+            if (r > 0) {
+                limit = r;
+            }
+        }
+        return limit - pos >= bytes;
+    }
 
+    /**
+     * Move the remaining bytes to the start of the buffer, and read from the
+     * input stream until the buffer has the needed bytes, or the stream
+     * ends.
+     *
+     * @param bytes The number of bytes needed.
+     * @return True if the bytes are available in the buffer.
+     * @throws IOException If unable to read from stream.
+     */
+    private boolean fill(int bytes) throws IOException {
+        final int remaining = limit - pos;
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, remaining);
+            pos = 0;
+            limit = remaining;
+        }
+        while (limit < bytes) {
+            int r = in.read(buffer, limit, buffer.length - limit);
+            if (r < 0) {
+                return false;
+            }
+            limit += r;
+        }
+        return true;
+    }
+
+    /**
+     * Read the remaining bytes of a varint.
+     *
+     * @param i The first byte of the varint.
+     * @return The varint value.
+     * @throws IOException If unable to read from stream.
+     */
+    private int continueIntVarint(int i) throws IOException {
         boolean c = (i & 0x80) > 0;
         int out = (i & 0x7f);
 
@@ -437,20 +888,13 @@ public abstract class BinaryReader extends InputStream {
     }
 
     /**
-     * Write a signed number as varint (integer with variable number of bytes,
-     * determined as part of the bytes themselves.
-     *
-     * NOTE: Reading varint accepts end of stream as '0'.
+     * Read the remaining bytes of a varint.
      *
-     * @return The varint read from stream.
-     * @throws IOException if unable to read from stream.
+     * @param i The first byte of the varint.
+     * @return The varint value.
+     * @throws IOException If unable to read from stream.
      */
-    public long readLongVarint() throws IOException {
-        int i = in.read();
-        if (i < 0) {
-            return 0L;
-        }
-
+    private long continueLongVarint(int i) throws IOException {
         boolean c = (i & 0x80) > 0;
         long out = (i & 0x7f);
 
@@ -464,11 +908,93 @@ public abstract class BinaryReader extends InputStream {
         return out;
     }
 
-    protected abstract int unshift2bytes(int b1, int b2);
+    /**
+     * Get the next chunk of whole fixed width values, either in place from
+     * the buffer, or read from the stream into a scratch array.
+     *
+     * @param width The byte width of each value.
+     * @param count The max number of values to get.
+     * @return The chunk content with the reader byte order, or null if not
+     *         a single value is available.
+     * @throws IOException If unable to read from stream.
+     */
+    private ByteBuffer nextChunk(int width, int count) throws IOException {
+        if (buffer != null) {
+            int want = Math.min(count * width, buffer.length);
+            if (limit - pos < want && refill) {
+                fill(want);
+            }
+            int n = Math.min(count, (limit - pos) / width);
+            if (n == 0) {
+                return null;
+            }
+            ByteBuffer chunk = ByteBuffer.wrap(buffer, pos, n * width).order(order);
+            pos += n * width;
+            return chunk;
+        }
 
-    protected abstract int unshift3bytes(int b1, int b2, int b3);
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        int n = readFully(scratch, 0, Math.min(count, SCRATCH_SIZE / width) * width) / width;
+        if (n == 0) {
+            return null;
+        }
+        return ByteBuffer.wrap(scratch, 0, n * width).order(order);
+    }
 
-    protected abstract int unshift4bytes(int b1, int b2, int b3, int b4);
+    private static void checkArray(String type, int length, int off, int len) {
+        if (off < 0 || len < 0 || off + len > length) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal arguments for %s array: %s[%d], off:%d, len:%d",
+                    type, type, length, off, len));
+        }
+    }
 
-    protected abstract long unshift8bytes(long b1, long b2, long b3, long b4, long b5, long b6, long b7, long b8);
+    private static IOException missing(String type, int done, int len) {
+        return new IOException(String.format("Missing expected %s %d of %d", type, done + 1, len));
+    }
+
+    private int readSlow() throws IOException {
+        if (buffer == null) {
+            return in.read();
+        }
+        if (refill && fill(1)) {
+            return buffer[pos++] & 0xFF;
+        }
+        return -1;
+    }
+
+    /**
+     * Read as many bytes as possible into the array, first from the buffer,
+     * and then from the input stream.
+     *
+     * @param out The array to read into.
+     * @param off The offset in the array.
+     * @param len The number of bytes to read.
+     * @return The number of bytes read.
+     * @throws IOException If unable to read from stream.
+     */
+    private int readFully(byte[] out, int off, int len) throws IOException {
+        int done = Math.min(len, limit - pos);
+        if (done > 0) {
+            System.arraycopy(buffer, pos, out, off, done);
+            pos += done;
+        }
+        if (done < len && in != null) {
+            if (refill && len - done < buffer.length) {
+                // Read small remains through the buffer.
+                fill(Math.min(len - done, buffer.length));
+                int more = Math.min(len - done, limit - pos);
+                System.arraycopy(buffer, pos, out, off + done, more);
+                pos += more;
+                done += more;
+            }
+            int r;
+            while (done < len && (r = in.read(out, off + done, len - done)) > 0) {
+                done += r;
+            }
+        }
+        return done;
+    }
 }
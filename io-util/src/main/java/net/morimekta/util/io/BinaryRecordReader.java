@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.io;
+
+import net.morimekta.util.Binary;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * Reader for records written by {@link BinaryRecordWriter}. The reader works
+ * on the whole content in a byte buffer, e.g. a memory mapped file, and uses
+ * the block index to go directly to the block containing a given record. The
+ * records are returned as {@link Binary} slices of the buffer, so nothing is
+ * copied. Block checksums are verified the first time each block is used.
+ *
+ * <pre>{@code
+ * try (FileChannel channel = FileChannel.open(file)) {
+ *     BinaryRecordReader reader = new BinaryRecordReader(
+ *             channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+ *     Binary record = reader.get(12345);
+ * }
+ * }</pre>
+ * <p>
+ * Records can also be read in order directly from an input stream with
+ * {@link #iterate(InputStream)}, which reads one block at a time.
+ */
+public class BinaryRecordReader implements Iterable<Binary> {
+    private final ByteBuffer buffer;
+    private final boolean    checksums;
+    private final int[]      blockOffsets;
+    private final long[]     blockFirst;
+    private final boolean[]  verified;
+    private final long       recordCount;
+
+    /**
+     * Create a record reader for the content of the buffer, from position to
+     * limit. The buffer position is not changed.
+     *
+     * @param buffer The buffer with the records.
+     * @throws IOException If the content is not a valid record sequence.
+     */
+    public BinaryRecordReader(@Nonnull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.slice();
+        if (this.buffer.limit() < BinaryRecordWriter.HEADER_SIZE + 2 + BinaryRecordWriter.TRAILER_SIZE ||
+            this.buffer.getInt(0) != BinaryRecordWriter.MAGIC ||
+            this.buffer.getInt(this.buffer.limit() - 4) != BinaryRecordWriter.INDEX_MAGIC) {
+            throw new IOException("Not a binary record sequence");
+        }
+        this.checksums = (this.buffer.get(4) & BinaryRecordWriter.FLAG_CHECKSUMS) != 0;
+
+        long indexOffset = this.buffer.getLong(this.buffer.limit() - BinaryRecordWriter.TRAILER_SIZE);
+        int indexEnd = this.buffer.limit() - BinaryRecordWriter.TRAILER_SIZE;
+        if (indexOffset < BinaryRecordWriter.HEADER_SIZE || indexOffset >= indexEnd) {
+            throw new IOException("Invalid block index offset: " + indexOffset);
+        }
+        try {
+            int pos = (int) indexOffset;
+            int blocks = VarintUtil.readIntVarint(this.buffer, pos);
+            pos += VarintUtil.varintLength(this.buffer, pos);
+            if (blocks < 0 || blocks > indexEnd - pos) {
+                throw new IOException("Invalid block count: " + blocks);
+            }
+            this.blockOffsets = new int[blocks];
+            this.blockFirst = new long[blocks + 1];
+            long offset = 0;
+            for (int i = 0; i < blocks; ++i) {
+                offset += VarintUtil.readLongVarint(this.buffer, pos);
+                pos += VarintUtil.varintLength(this.buffer, pos);
+                if (offset < BinaryRecordWriter.HEADER_SIZE || offset >= indexOffset) {
+                    throw new IOException("Invalid offset of block " + i + ": " + offset);
+                }
+                blockOffsets[i] = (int) offset;
+                blockFirst[i + 1] = blockFirst[i] + VarintUtil.readIntVarint(this.buffer, pos);
+                pos += VarintUtil.varintLength(this.buffer, pos);
+            }
+            if (pos != indexEnd) {
+                throw new IOException("Invalid block index size: " + (indexEnd - indexOffset));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid block index: " + e.getMessage(), e);
+        }
+        this.verified = new boolean[blockOffsets.length];
+        this.recordCount = blockFirst[blockOffsets.length];
+    }
+
+    /**
+     * Create a record reader for the content of the binary.
+     *
+     * @param binary The binary with the records.
+     * @throws IOException If the content is not a valid record sequence.
+     */
+    public BinaryRecordReader(@Nonnull Binary binary) throws IOException {
+        this(binary.getByteBuffer());
+    }
+
+    /**
+     * Get the total number of records.
+     *
+     * @return The record count.
+     */
+    public long size() {
+        return recordCount;
+    }
+
+    /**
+     * Get the number of blocks.
+     *
+     * @return The block count.
+     */
+    public int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * Get a record. Only the block containing the record is decoded.
+     *
+     * @param index The index of the record.
+     * @return The record content, sharing the content of the reader buffer.
+     * @throws IOException If the block is not valid.
+     */
+    @Nonnull
+    public Binary get(long index) throws IOException {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+        }
+        int block = Arrays.binarySearch(blockFirst, index);
+        if (block < 0) {
+            block = -block - 2;
+        } else {
+            // Skip any empty blocks, though the writer does not write them.
+            while (blockFirst[block + 1] == index) {
+                ++block;
+            }
+        }
+        int pos = blockStart(block);
+        for (long skip = index - blockFirst[block]; skip > 0; --skip) {
+            int len = VarintUtil.readIntVarint(buffer, pos);
+            pos += VarintUtil.varintLength(buffer, pos) + len;
+        }
+        return record(pos);
+    }
+
+    /**
+     * Iterate over all records in order.
+     *
+     * @return The record iterator. It throws {@link UncheckedIOException}
+     *         if a block is not valid.
+     */
+    @Nonnull
+    @Override
+    public Iterator<Binary> iterator() {
+        return new Iterator<Binary>() {
+            private int block = 0;
+            private int remaining = 0;
+            private int pos = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0 && block < blockOffsets.length) {
+                    try {
+                        pos = blockStart(block);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e.getMessage(), e);
+                    }
+                    remaining = (int) (blockFirst[block + 1] - blockFirst[block]);
+                    ++block;
+                }
+                return remaining > 0;
+            }
+
+            @Override
+            public Binary next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                --remaining;
+                Binary record = record(pos);
+                pos += VarintUtil.varintLength(buffer, pos) + record.length();
+                return record;
+            }
+        };
+    }
+
+    /**
+     * Iterate over the records of a record sequence as they are read from the
+     * input stream. This does not use the block index, and the block
+     * checksums are verified as each block is read. The records of each block
+     * share a single array. The block index and trailer are still required
+     * at the end, so a truncated stream is not mistaken for a shorter one.
+     *
+     * @param in The input stream to read.
+     * @return The record iterator. It throws {@link UncheckedIOException}
+     *         if unable to read a valid block.
+     * @throws IOException If unable to read the header.
+     */
+    @Nonnull
+    public static Iterator<Binary> iterate(@Nonnull InputStream in) throws IOException {
+        BinaryReader reader = new BigEndianBinaryReader(in);
+        if (reader.expectInt() != BinaryRecordWriter.MAGIC) {
+            throw new IOException("Not a binary record sequence");
+        }
+        boolean checksums = (reader.expectByte() & BinaryRecordWriter.FLAG_CHECKSUMS) != 0;
+        return new Iterator<Binary>() {
+            private byte[]  block;
+            private int     remaining = 0;
+            private int     pos = 0;
+            private int     blocks = 0;
+            private boolean end = false;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (remaining == 0 && !end) {
+                        readBlock();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e.getMessage(), e);
+                }
+                return remaining > 0;
+            }
+
+            @Override
+            public Binary next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                --remaining;
+                int len = VarintUtil.readIntVarint(block, pos);
+                pos += VarintUtil.varintLength(block, pos);
+                Binary record = Binary.wrap(block, pos, len);
+                pos += len;
+                return record;
+            }
+
+            private void readBlock() throws IOException {
+                // The varint reader accepts end of stream as 0, which is
+                // also the end marker, so check the first byte explicitly.
+                int count = reader.read();
+                if (count < 0) {
+                    throw new IOException("Truncated record sequence");
+                }
+                if (count >= 0x80) {
+                    count = (count & 0x7f) | (reader.readIntVarint() << 7);
+                }
+                if (count == 0) {
+                    readIndex();
+                    end = true;
+                    return;
+                }
+                int size = reader.readIntVarint();
+                if (count < 0 || size < count) {
+                    throw new IOException("Invalid block of " + count + " records in " + size + " bytes");
+                }
+                block = reader.expectBytes(size);
+                if (checksums) {
+                    CRC32 crc = new CRC32();
+                    crc.update(block, 0, size);
+                    if (reader.expectInt() != (int) crc.getValue()) {
+                        throw new IOException("Checksum mismatch in block of " + count + " records");
+                    }
+                }
+                remaining = count;
+                pos = 0;
+                ++blocks;
+            }
+
+            private void readIndex() throws IOException {
+                int indexBlocks = reader.readIntVarint();
+                if (indexBlocks != blocks) {
+                    throw new IOException("Block index of " + indexBlocks + " blocks, but read " + blocks);
+                }
+                for (int i = 0; i < indexBlocks; ++i) {
+                    reader.readLongVarint();
+                    reader.readIntVarint();
+                }
+                reader.expectLong();
+                if (reader.expectInt() != BinaryRecordWriter.INDEX_MAGIC) {
+                    throw new IOException("Invalid record sequence trailer");
+                }
+            }
+        };
+    }
+
+    // --- INTERNAL ---
+
+    /**
+     * Get the position of the first record of a block, and verify the block
+     * checksum if not done before.
+     *
+     * @param block The block number.
+     * @return The position of the first record.
+     * @throws IOException If the block header or checksum is not valid.
+     */
+    private int blockStart(int block) throws IOException {
+        try {
+            int pos = blockOffsets[block];
+            int count = VarintUtil.readIntVarint(buffer, pos);
+            pos += VarintUtil.varintLength(buffer, pos);
+            int size = VarintUtil.readIntVarint(buffer, pos);
+            pos += VarintUtil.varintLength(buffer, pos);
+            if (count != blockFirst[block + 1] - blockFirst[block] ||
+                size < count ||
+                pos + size + (checksums ? 4 : 0) > buffer.limit()) {
+                throw new IOException("Invalid header of block " + block + " at " + blockOffsets[block]);
+            }
+            if (checksums && !verified[block]) {
+                ByteBuffer content = buffer.duplicate();
+                content.position(pos);
+                content.limit(pos + size);
+                if (checksum(content) != buffer.getInt(pos + size)) {
+                    throw new IOException("Checksum mismatch in block " + block + " at " + blockOffsets[block]);
+                }
+                verified[block] = true;
+            }
+            return pos;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid header of block " + block + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Binary record(int pos) {
+        int len = VarintUtil.readIntVarint(buffer, pos);
+        ByteBuffer content = buffer.duplicate();
+        content.position(pos + VarintUtil.varintLength(buffer, pos));
+        content.limit(content.position() + len);
+        return Binary.wrap(content);
+    }
+
+    private static int checksum(ByteBuffer content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.io;
+
+import net.morimekta.util.Binary;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Writer for a compact and seekable sequence of {@link Binary} records.
+ * The records are written with varint length prefixes in blocks of about
+ * the given block size, each optionally followed by a checksum. A block
+ * index is written at the end, so {@link BinaryRecordReader} can go to any
+ * record by only decoding the block that contains it.
+ *
+ * <pre>
+ * file    := magic(4) flags(1) block* varint(0) index trailer
+ * block   := varint(count) varint(size) record* [crc32(4)]
+ * record  := varint(length) bytes
+ * index   := varint(blocks) (varint(offset delta) varint(count))*
+ * trailer := index offset(8) index magic(4)
+ * </pre>
+ * <p>
+ * The fixed width numbers are big endian, and the checksum is the CRC-32 of
+ * the records of the block. Note that nothing is readable as records before
+ * the writer is closed.
+ */
+public class BinaryRecordWriter implements Closeable {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;  // 64 kB
+
+    static final int  MAGIC           = 0x4d425231;  // "MBR1"
+    static final int  INDEX_MAGIC     = 0x4d425249;  // "MBRI"
+    static final int  HEADER_SIZE     = 5;
+    static final int  TRAILER_SIZE    = 12;
+    static final byte FLAG_CHECKSUMS  = 0x01;
+
+    private final OutputStream out;
+    private final int          blockSize;
+    private final CRC32        crc;
+    private final byte[]       header;
+
+    private byte[]  block;
+    private int     blockLen;
+    private int     blockCount;
+    private long    written;
+    private long    recordCount;
+    private long[]  indexOffsets;
+    private int[]   indexCounts;
+    private int     indexLen;
+    private boolean closed;
+
+    /**
+     * Create a record writer with checksums and the default block size.
+     *
+     * @param out The output stream to write to.
+     * @throws IOException If unable to write the header.
+     */
+    public BinaryRecordWriter(@Nonnull OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE, true);
+    }
+
+    /**
+     * Create a record writer.
+     *
+     * @param out The output stream to write to.
+     * @param blockSize The max size in bytes of the records of each block.
+     *                  A larger record gets a block of its own.
+     * @param checksums If each block should have a checksum.
+     * @throws IOException If unable to write the header.
+     */
+    public BinaryRecordWriter(@Nonnull OutputStream out, int blockSize, boolean checksums) throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        this.out = out;
+        this.blockSize = blockSize;
+        this.crc = checksums ? new CRC32() : null;
+        this.header = new byte[2 * VarintUtil.MAX_INT_VARINT_SIZE];
+        this.block = new byte[Math.min(blockSize, 1 << 12) + VarintUtil.MAX_INT_VARINT_SIZE];
+        this.indexOffsets = new long[16];
+        this.indexCounts = new int[16];
+
+        byte[] start = new byte[HEADER_SIZE];
+        ByteBuffer.wrap(start).putInt(MAGIC).put(checksums ? FLAG_CHECKSUMS : 0);
+        out.write(start);
+        written = HEADER_SIZE;
+    }
+
+    /**
+     * Get the number of records written so far.
+     *
+     * @return The record count.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Write a record.
+     *
+     * @param record The record content.
+     * @throws IOException If unable to write a completed block.
+     */
+    public void write(@Nonnull Binary record) throws IOException {
+        ByteBuffer content = record.getByteBuffer();
+        int dest = reserve(content.remaining());
+        content.get(block, dest, content.remaining());
+    }
+
+    /**
+     * Write a record.
+     *
+     * @param bytes The array with the record content.
+     * @param off Offset of the record in the array.
+     * @param len Length of the record.
+     * @throws IOException If unable to write a completed block.
+     */
+    public void write(@Nonnull byte[] bytes, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > bytes.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal arguments for write: byte[%d], off:%d, len:%d",
+                    bytes.length, off, len));
+        }
+        int dest = reserve(len);
+        System.arraycopy(bytes, off, block, dest, len);
+    }
+
+    /**
+     * Write any buffered records as a block, so the next record starts a
+     * new block.
+     *
+     * @throws IOException If unable to write the block.
+     */
+    public void flushBlock() throws IOException {
+        if (blockCount == 0) {
+            return;
+        }
+        if (indexLen == indexOffsets.length) {
+            indexOffsets = Arrays.copyOf(indexOffsets, indexLen * 2);
+            indexCounts = Arrays.copyOf(indexCounts, indexLen * 2);
+        }
+        indexOffsets[indexLen] = written;
+        indexCounts[indexLen] = blockCount;
+        ++indexLen;
+
+        int headerLen = VarintUtil.writeVarint(header, 0, blockCount);
+        headerLen = VarintUtil.writeVarint(header, headerLen, blockLen);
+        out.write(header, 0, headerLen);
+        out.write(block, 0, blockLen);
+        written += headerLen + blockLen;
+        if (crc != null) {
+            crc.reset();
+            crc.update(block, 0, blockLen);
+            ByteBuffer.wrap(header).putInt(0, (int) crc.getValue());
+            out.write(header, 0, 4);
+            written += 4;
+        }
+        blockCount = 0;
+        blockLen = 0;
+    }
+
+    /**
+     * Write the last block and the block index, and close the output stream.
+     *
+     * @throws IOException If unable to write or close the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushBlock();
+            long indexOffset = written + 1;
+            BinaryWriter writer = new BigEndianBinaryWriter(out, 1 << 12);
+            writer.writeVarint(0);
+            writer.writeVarint(indexLen);
+            long previous = 0;
+            for (int i = 0; i < indexLen; ++i) {
+                writer.writeVarint(indexOffsets[i] - previous);
+                writer.writeVarint(indexCounts[i]);
+                previous = indexOffsets[i];
+            }
+            writer.writeLong(indexOffset);
+            writer.writeInt(INDEX_MAGIC);
+            writer.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    // --- INTERNAL ---
+
+    /**
+     * Add the record length to the block, and make room for the content.
+     * The current block is written first if the record does not fit in it.
+     *
+     * @param len The record length.
+     * @return The offset in the block to put the record content.
+     * @throws IOException If unable to write the current block.
+     */
+    private int reserve(int len) throws IOException {
+        if (closed) {
+            throw new IOException("Writing to closed record writer");
+        }
+        int size = VarintUtil.varintSize(len) + len;
+        if (blockCount > 0 && blockLen + size > blockSize) {
+            flushBlock();
+        }
+        if (blockLen + size > block.length) {
+            block = Arrays.copyOf(block, Math.max(blockLen + size, Math.min(blockSize, block.length * 2)));
+        }
+        blockLen = VarintUtil.writeVarint(block, blockLen, len);
+        int dest = blockLen;
+        blockLen += len;
+        ++blockCount;
+        ++recordCount;
+        return dest;
+    }
+}
@@ -24,34 +24,221 @@ import net.morimekta.util.Binary;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * IO-Optimized binary writer.
+ * <p>
+ * By default each byte is written straight to the output stream. The writer
+ * can also encode into a growable internal block, that is written to the
+ * output stream when full, and on {@link #flush()} and {@link #close()}. A
+ * buffered writer can {@link #reserve(int)} bytes, e.g. for a length prefix,
+ * and backfill them when the content after is written. The block is not
+ * written to the stream while there are reserved bytes not backfilled, so
+ * frames can be written in a single pass.
+ *
+ * <pre>{@code
+ * int mark = writer.reserve(4);
+ * writer.writeBinary(payload);
+ * writer.backfillInt(mark, writer.position() - mark - 4);
+ * }</pre>
  */
 public abstract class BinaryWriter extends OutputStream {
     protected final OutputStream out;
 
+    private final ByteOrder             order;
+    // Open reservations, from mark to size.
+    private final Map<Integer, Integer> reserved;
+
+    private byte[]     block;
+    private ByteBuffer view;
+    private int        pos;
+    private byte[]     scratch;
+
     public BinaryWriter(OutputStream out) {
+        this(out, null);
+    }
+
+    /**
+     * Create an unbuffered binary writer with known byte order, so arrays of
+     * fixed width numbers can be written in blocks.
+     *
+     * @param out The output stream to write to.
+     * @param order The byte order of the fixed width numbers.
+     */
+    protected BinaryWriter(OutputStream out, ByteOrder order) {
         this.out = out;
+        this.order = order;
+        this.block = null;
+        this.view = null;
+        this.reserved = new HashMap<>();
+    }
+
+    /**
+     * Create a binary writer that encodes into a growable block before
+     * writing to the output stream.
+     *
+     * @param out The output stream to write to.
+     * @param blockSize The initial block size, at least 16 bytes.
+     * @param order The byte order of the fixed width numbers.
+     */
+    protected BinaryWriter(OutputStream out, int blockSize, ByteOrder order) {
+        if (blockSize < 16) {
+            throw new IllegalArgumentException("Too small block size: " + blockSize);
+        }
+        this.out = out;
+        this.order = order;
+        this.block = new byte[blockSize];
+        this.view = ByteBuffer.wrap(block).order(order);
+        this.pos = 0;
+        this.reserved = new HashMap<>();
     }
 
     @Override
     public void write(int b) throws IOException {
-        out.write(b);
+        if (block == null) {
+            out.write(b);
+            return;
+        }
+        ensure(1);
+        block[pos++] = (byte) b;
     }
 
     @Override
     public void write(byte[] bytes) throws IOException {
-        out.write(bytes);
+        write(bytes, 0, bytes.length);
     }
 
     @Override
     public void write(byte[] bytes, int off, int len) throws IOException {
-        out.write(bytes, off, len);
+        if (block == null) {
+            out.write(bytes, off, len);
+            return;
+        }
+        if (reserved.isEmpty() && len >= block.length) {
+            // No point in copying large content into the block.
+            drain();
+            out.write(bytes, off, len);
+            return;
+        }
+        ensure(len);
+        System.arraycopy(bytes, off, block, pos, len);
+        pos += len;
+    }
+
+    /**
+     * Write the block content to the output stream, and flush it.
+     *
+     * @throws IOException If unable to write to stream.
+     * @throws IllegalStateException If there are reserved bytes that are not
+     *                               backfilled.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (block != null) {
+            assertNoReserved();
+            drain();
+        }
+        out.flush();
     }
 
+    /**
+     * Write the block content to the output stream. This does not close the
+     * output stream.
+     *
+     * @throws IllegalStateException If there are reserved bytes that are not
+     *                               backfilled.
+     */
     @Override
-    public void close() {}
+    public void close() {
+        if (block != null) {
+            assertNoReserved();
+            try {
+                drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return True if the writer encodes into an internal block.
+     */
+    public boolean isBuffered() {
+        return block != null;
+    }
+
+    /**
+     * Get the position in the internal block. Positions are only comparable
+     * with marks from {@link #reserve(int)} while there are reserved bytes
+     * not backfilled, as the block may be written to the stream otherwise.
+     *
+     * @return The current block position.
+     */
+    public int position() {
+        assertBuffered();
+        return pos;
+    }
+
+    /**
+     * Reserve bytes in the block to be backfilled later. The reserved bytes
+     * are zeroed, and each reservation must be backfilled once before the
+     * block can be written to the output stream.
+     *
+     * @param bytes Number of bytes to reserve.
+     * @return The mark of the reserved bytes.
+     * @throws IOException If unable to write to stream.
+     */
+    public int reserve(int bytes) throws IOException {
+        assertBuffered();
+        if (bytes < 1) {
+            throw new IllegalArgumentException("Invalid reserve size: " + bytes);
+        }
+        ensure(bytes);
+        int mark = pos;
+        Arrays.fill(block, pos, pos + bytes, (byte) 0);
+        pos += bytes;
+        reserved.put(mark, bytes);
+        return mark;
+    }
+
+    /**
+     * Backfill a reservation with a short.
+     *
+     * @param mark The reservation mark.
+     * @param value The value to write.
+     */
+    public void backfillShort(int mark, short value) {
+        backfill(mark, 2);
+        view.putShort(mark, value);
+    }
+
+    /**
+     * Backfill a reservation with an int.
+     *
+     * @param mark The reservation mark.
+     * @param value The value to write.
+     */
+    public void backfillInt(int mark, int value) {
+        backfill(mark, 4);
+        view.putInt(mark, value);
+    }
+
+    /**
+     * Backfill a reservation with a long.
+     *
+     * @param mark The reservation mark.
+     * @param value The value to write.
+     */
+    public void backfillLong(int mark, long value) {
+        backfill(mark, 8);
+        view.putLong(mark, value);
+    }
 
     /**
      * Write a signed byte to the output stream.
@@ -61,7 +248,7 @@ public abstract class BinaryWriter extends OutputStream {
      * @throws IOException if unable to write to stream.
      */
     public int writeByte(byte integer) throws IOException {
-        out.write(integer);
+        write(integer);
         return 1;
     }
 
@@ -103,6 +290,96 @@ public abstract class BinaryWriter extends OutputStream {
         return writeLong(Double.doubleToLongBits(value));
     }
 
+    /**
+     * Write ints to the output stream.
+     *
+     * @param values The values to write.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to write.
+     * @return Number of bytes written.
+     * @throws IOException if unable to write to stream.
+     */
+    public int writeInts(int[] values, int off, int len) throws IOException {
+        checkArray("int", values.length, off, len);
+        if (order == null) {
+            for (int i = off; i < off + len; ++i) {
+                writeInt(values[i]);
+            }
+            return len * 4;
+        }
+        int done = 0;
+        while (done < len) {
+            ByteBuffer chunk = nextChunk(4, len - done);
+            int n = chunk.remaining() / 4;
+            for (int i = off + done, end = i + n, p = chunk.position(); i < end; ++i, p += 4) {
+                chunk.putInt(p, values[i]);
+            }
+            commitChunk(chunk);
+            done += n;
+        }
+        return len * 4;
+    }
+
+    /**
+     * Write longs to the output stream.
+     *
+     * @param values The values to write.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to write.
+     * @return Number of bytes written.
+     * @throws IOException if unable to write to stream.
+     */
+    public int writeLongs(long[] values, int off, int len) throws IOException {
+        checkArray("long", values.length, off, len);
+        if (order == null) {
+            for (int i = off; i < off + len; ++i) {
+                writeLong(values[i]);
+            }
+            return len * 8;
+        }
+        int done = 0;
+        while (done < len) {
+            ByteBuffer chunk = nextChunk(8, len - done);
+            int n = chunk.remaining() / 8;
+            for (int i = off + done, end = i + n, p = chunk.position(); i < end; ++i, p += 8) {
+                chunk.putLong(p, values[i]);
+            }
+            commitChunk(chunk);
+            done += n;
+        }
+        return len * 8;
+    }
+
+    /**
+     * Write doubles to the output stream.
+     *
+     * @param values The values to write.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to write.
+     * @return Number of bytes written.
+     * @throws IOException if unable to write to stream.
+     */
+    public int writeDoubles(double[] values, int off, int len) throws IOException {
+        checkArray("double", values.length, off, len);
+        if (order == null) {
+            for (int i = off; i < off + len; ++i) {
+                writeDouble(values[i]);
+            }
+            return len * 8;
+        }
+        int done = 0;
+        while (done < len) {
+            ByteBuffer chunk = nextChunk(8, len - done);
+            int n = chunk.remaining() / 8;
+            for (int i = off + done, end = i + n, p = chunk.position(); i < end; ++i, p += 8) {
+                chunk.putDouble(p, values[i]);
+            }
+            commitChunk(chunk);
+            done += n;
+        }
+        return len * 8;
+    }
+
     /**
      * Write the content of binary to output stream.
      *
@@ -111,7 +388,7 @@ public abstract class BinaryWriter extends OutputStream {
      * @throws IOException if unable to write to stream.
      */
     public int writeBinary(Binary value) throws IOException {
-        return value.write(out);
+        return value.write(block == null ? out : this);
     }
 
     /**
@@ -120,7 +397,7 @@ public abstract class BinaryWriter extends OutputStream {
      * @throws IOException if unable to write to stream.
      */
     public int writeUInt8(int number) throws IOException {
-        out.write(number);
+        write(number);
         return 1;
     }
 
@@ -242,6 +519,12 @@ public abstract class BinaryWriter extends OutputStream {
      * @throws IOException if unable to write to stream.
      */
     public int writeVarint(int varint) throws IOException {
+        if (block != null) {
+            ensure(5);
+            final int start = pos;
+            pos = VarintUtil.writeVarint(block, pos, varint);
+            return pos - start;
+        }
         int b = 1;
         boolean c = (varint ^ (varint & 0x7f)) != 0;
         out.write((c ? 0x80 : 0x00) | (varint & 0x7f));
@@ -263,6 +546,12 @@ public abstract class BinaryWriter extends OutputStream {
      * @throws IOException if unable to write to stream.
      */
     public int writeVarint(long varint) throws IOException {
+        if (block != null) {
+            ensure(10);
+            final int start = pos;
+            pos = VarintUtil.writeVarint(block, pos, varint);
+            return pos - start;
+        }
         int b = 1;
         boolean c = (varint ^ (varint & 0x7f)) != 0;
         out.write((c ? 0x80 : 0x00) | (int) (varint & 0x7f));
@@ -274,4 +563,219 @@ public abstract class BinaryWriter extends OutputStream {
         }
         return b;
     }
+
+    /**
+     * Write packed varints, that is varints back to back with no separator.
+     * The values are encoded in blocks, also when not buffered. Note that
+     * the number of values is not written.
+     *
+     * @param values The values to write.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to write.
+     * @return Number of bytes written.
+     * @throws IOException if unable to write to stream.
+     */
+    public int writePackedVarints(int[] values, int off, int len) throws IOException {
+        checkArray("int", values.length, off, len);
+        int bytes = 0;
+        int done = 0;
+        while (done < len) {
+            ByteBuffer chunk = nextChunk(5, len - done);
+            final byte[] target = chunk.array();
+            final int n = chunk.remaining() / 5;
+            int p = chunk.arrayOffset() + chunk.position();
+            for (int i = off + done, end = i + n; i < end; ++i) {
+                p = VarintUtil.writeVarint(target, p, values[i]);
+            }
+            bytes += commitChunk(chunk, p);
+            done += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * Write packed varints, that is varints back to back with no separator.
+     * The values are encoded in blocks, also when not buffered. Note that
+     * the number of values is not written.
+     *
+     * @param values The values to write.
+     * @param off Offset in the array of the first value.
+     * @param len Number of values to write.
+     * @return Number of bytes written.
+     * @throws IOException if unable to write to stream.
+     */
+    public int writePackedVarints(long[] values, int off, int len) throws IOException {
+        checkArray("long", values.length, off, len);
+        int bytes = 0;
+        int done = 0;
+        while (done < len) {
+            ByteBuffer chunk = nextChunk(10, len - done);
+            final byte[] target = chunk.array();
+            final int n = chunk.remaining() / 10;
+            int p = chunk.arrayOffset() + chunk.position();
+            for (int i = off + done, end = i + n; i < end; ++i) {
+                p = VarintUtil.writeVarint(target, p, values[i]);
+            }
+            bytes += commitChunk(chunk, p);
+            done += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * Put a short into the block. Must only be called on buffered writers.
+     *
+     * @param value The value to put.
+     * @return Number of bytes written.
+     * @throws IOException if unable to write to stream.
+     */
+    protected int putShort(short value) throws IOException {
+        ensure(2);
+        view.putShort(pos, value);
+        pos += 2;
+        return 2;
+    }
+
+    /**
+     * Put an int into the block. Must only be called on buffered writers.
+     *
+     * @param value The value to put.
+     * @return Number of bytes written.
+     * @throws IOException if unable to write to stream.
+     */
+    protected int putInt(int value) throws IOException {
+        ensure(4);
+        view.putInt(pos, value);
+        pos += 4;
+        return 4;
+    }
+
+    /**
+     * Put a long into the block. Must only be called on buffered writers.
+     *
+     * @param value The value to put.
+     * @return Number of bytes written.
+     * @throws IOException if unable to write to stream.
+     */
+    protected int putLong(long value) throws IOException {
+        ensure(8);
+        view.putLong(pos, value);
+        pos += 8;
+        return 8;
+    }
+
+    // --- INTERNAL ---
+
+    private static final int SCRATCH_SIZE = 1 << 12;
+
+    /**
+     * Make sure there is room for the given number of bytes in the block.
+     * The block is written to the stream if possible, and grown otherwise.
+     */
+    private void ensure(int bytes) throws IOException {
+        if (pos + bytes <= block.length) {
+            return;
+        }
+        if (reserved.isEmpty()) {
+            drain();
+            if (bytes <= block.length) {
+                return;
+            }
+        }
+        block = Arrays.copyOf(block, Math.max(block.length * 2, pos + bytes));
+        view = ByteBuffer.wrap(block).order(order);
+    }
+
+    /**
+     * Get space for the next chunk of fixed max width values, either in the
+     * block, or in a scratch array when not buffered.
+     *
+     * @param width The max byte width of each value.
+     * @param count The max number of values in the chunk.
+     * @return The chunk space with the writer byte order.
+     * @throws IOException If unable to write to stream.
+     */
+    private ByteBuffer nextChunk(int width, int count) throws IOException {
+        if (block != null) {
+            int n = Math.min(count, block.length / width);
+            ensure(n * width);
+            ByteBuffer chunk = ByteBuffer.wrap(block, pos, n * width).order(order);
+            pos += n * width;
+            return chunk;
+        }
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        int n = Math.min(count, SCRATCH_SIZE / width);
+        return ByteBuffer.wrap(scratch, 0, n * width).order(order);
+    }
+
+    private void commitChunk(ByteBuffer chunk) throws IOException {
+        if (block == null) {
+            out.write(chunk.array(), chunk.position(), chunk.remaining());
+        }
+    }
+
+    /**
+     * Commit a variable width chunk, where only the content up to the given
+     * end position is used.
+     *
+     * @return The number of bytes used.
+     */
+    private int commitChunk(ByteBuffer chunk, int end) throws IOException {
+        int bytes = end - chunk.position();
+        if (block == null) {
+            out.write(chunk.array(), chunk.position(), bytes);
+        } else {
+            // Give back the unused part of the chunk.
+            pos = end;
+        }
+        return bytes;
+    }
+
+    private static void checkArray(String type, int length, int off, int len) {
+        if (off < 0 || len < 0 || off + len > length) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal arguments for %s array: %s[%d], off:%d, len:%d",
+                    type, type, length, off, len));
+        }
+    }
+
+    private void drain() throws IOException {
+        if (pos > 0) {
+            out.write(block, 0, pos);
+            pos = 0;
+        }
+    }
+
+    private void backfill(int mark, int bytes) {
+        assertBuffered();
+        if (reserved.isEmpty()) {
+            throw new IllegalStateException("No reserved bytes to backfill");
+        }
+        Integer size = reserved.get(mark);
+        if (size == null) {
+            throw new IllegalArgumentException(String.format(
+                    "No open reservation at %d for backfill of %d bytes",
+                    mark, bytes));
+        }
+        if (size != bytes) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal backfill of %d bytes at %d, reserved %d",
+                    bytes, mark, size));
+        }
+        reserved.remove(mark);
+    }
+
+    private void assertBuffered() {
+        if (block == null) {
+            throw new IllegalStateException("Binary writer is not buffered");
+        }
+    }
+
+    private void assertNoReserved() {
+        if (!reserved.isEmpty()) {
+            throw new IllegalStateException("Reserved bytes not backfilled: " + reserved.size());
+        }
+    }
 }
@@ -24,7 +24,9 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 
 /**
- * Simple output stream backed by a byte buffer. If the
+ * Simple output stream backed by a byte buffer. If the buffer is full, the
+ * write will fail with an IOException. See
+ * {@link ChunkedByteBufferOutputStream} for an output stream that grows.
  */
 public class ByteBufferOutputStream extends OutputStream {
     private ByteBuffer buffer;
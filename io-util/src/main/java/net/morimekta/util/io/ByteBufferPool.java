@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.io;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A pool of equally sized byte buffer chunks. Allocating direct buffers is
+ * expensive, and their memory is only freed on garbage collection, so they
+ * should be reused. The pool is thread safe, and keeps at most a given
+ * number of free chunks, released chunks beyond that are dropped.
+ */
+public class ByteBufferPool {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 14;  // 16 kB
+    public static final int DEFAULT_MAX_POOLED = 1 << 8;
+
+    private final int                            chunkSize;
+    private final boolean                        direct;
+    private final ArrayBlockingQueue<ByteBuffer> free;
+
+    /**
+     * Create a pool of direct byte buffers with default chunk size and
+     * pool size.
+     */
+    public ByteBufferPool() {
+        this(DEFAULT_CHUNK_SIZE, true, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * Create a byte buffer pool.
+     *
+     * @param chunkSize The size of each chunk.
+     * @param direct If the chunks should be direct byte buffers.
+     * @param maxPooled Max number of free chunks to keep in the pool.
+     */
+    public ByteBufferPool(int chunkSize, boolean direct, int maxPooled) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        if (maxPooled < 1) {
+            throw new IllegalArgumentException("Invalid max pooled: " + maxPooled);
+        }
+        this.chunkSize = chunkSize;
+        this.direct = direct;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * @return The size of each chunk.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return If the pool makes direct byte buffers.
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return The number of free chunks in the pool.
+     */
+    public int getPooled() {
+        return free.size();
+    }
+
+    /**
+     * Get a cleared chunk from the pool, or allocate a new one if the pool is
+     * empty.
+     *
+     * @return The chunk.
+     */
+    @Nonnull
+    public ByteBuffer acquire() {
+        ByteBuffer chunk = free.poll();
+        if (chunk == null) {
+            return direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+        }
+        chunk.clear();
+        return chunk;
+    }
+
+    /**
+     * Return a chunk to the pool. The chunk must not be used after it is
+     * released.
+     *
+     * @param chunk The chunk to release.
+     */
+    public void release(@Nonnull ByteBuffer chunk) {
+        if (chunk.capacity() != chunkSize || chunk.isDirect() != direct || chunk.isReadOnly()) {
+            throw new IllegalArgumentException("Chunk not from pool: " + chunk);
+        }
+        free.offer(chunk);
+    }
+}
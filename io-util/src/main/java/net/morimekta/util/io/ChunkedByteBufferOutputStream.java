@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.io;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+
+/**
+ * Output stream that writes to a growing chain of byte buffer chunks from a
+ * {@link ByteBufferPool}. Unlike {@link ByteBufferOutputStream} it never
+ * overflows, and unlike {@link java.io.ByteArrayOutputStream} the content
+ * is never copied into a larger array when growing.
+ * <p>
+ * The content can be written to a {@link GatheringByteChannel} with all the
+ * chunks in a single gathering write. After {@link #reset()} the stream can
+ * be reused, and on {@link #close()} the chunks are released to the pool.
+ *
+ * <pre>{@code
+ * try (ChunkedByteBufferOutputStream out = new ChunkedByteBufferOutputStream(pool)) {
+ *     response.writeTo(out);
+ *     out.writeTo(channel);
+ * }
+ * }</pre>
+ */
+public class ChunkedByteBufferOutputStream extends OutputStream {
+    private final ByteBufferPool        pool;
+    private final ArrayList<ByteBuffer> chunks;
+
+    private ByteBuffer current;
+    private long       completed;
+    private boolean    closed;
+
+    /**
+     * Create a chunked output stream using a pool of direct byte buffers.
+     * The chunks are not shared with any other stream.
+     */
+    public ChunkedByteBufferOutputStream() {
+        this(new ByteBufferPool());
+    }
+
+    /**
+     * Create a chunked output stream.
+     *
+     * @param pool The pool to get chunks from.
+     */
+    public ChunkedByteBufferOutputStream(@Nonnull ByteBufferPool pool) {
+        this.pool = pool;
+        this.chunks = new ArrayList<>();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (current == null || !current.hasRemaining()) {
+            nextChunk();
+        }
+        current.put((byte) b);
+    }
+
+    @Override
+    public void write(@Nonnull byte[] bytes, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > bytes.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal arguments for write: byte[%d], off:%d, len:%d",
+                    bytes.length, off, len));
+        }
+        while (len > 0) {
+            if (current == null || !current.hasRemaining()) {
+                nextChunk();
+            }
+            int n = Math.min(len, current.remaining());
+            current.put(bytes, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Write the remaining content of the byte buffer to the stream.
+     *
+     * @param buffer The buffer to write.
+     * @throws IOException If the stream is closed.
+     */
+    public void write(@Nonnull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (current == null || !current.hasRemaining()) {
+                nextChunk();
+            }
+            if (buffer.remaining() <= current.remaining()) {
+                current.put(buffer);
+            } else {
+                ByteBuffer part = buffer.duplicate();
+                part.limit(part.position() + current.remaining());
+                current.put(part);
+                buffer.position(part.position());
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes written to the stream.
+     */
+    public long size() {
+        return completed + (current == null ? 0 : current.position());
+    }
+
+    /**
+     * Get the content of the stream as a list of buffers, one for each chunk.
+     * The buffers are read-only views of the chunks, and are only valid
+     * until the stream is reset or closed.
+     *
+     * @return The content buffers.
+     */
+    @Nonnull
+    public ByteBuffer[] getBuffers() {
+        ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+        for (int i = 0; i < buffers.length; ++i) {
+            ByteBuffer buffer = chunks.get(i).asReadOnlyBuffer();
+            buffer.flip();
+            buffers[i] = buffer;
+        }
+        return buffers;
+    }
+
+    /**
+     * Write the content of the stream to the channel using gathering writes,
+     * and keep writing until all of it is written. This is meant for
+     * blocking channels, as it will spin on a non-blocking channel that
+     * is not ready for writing.
+     *
+     * @param channel The channel to write to.
+     * @return The number of bytes written.
+     * @throws IOException If unable to write to the channel.
+     */
+    public long writeTo(@Nonnull GatheringByteChannel channel) throws IOException {
+        ByteBuffer[] buffers = getBuffers();
+        long total = size();
+        long written = 0;
+        int first = 0;
+        while (written < total) {
+            written += channel.write(buffers, first, buffers.length - first);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                ++first;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Write the content of the stream to another output stream.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If unable to write to the stream.
+     */
+    public void writeTo(@Nonnull OutputStream out) throws IOException {
+        byte[] tmp = null;
+        for (ByteBuffer chunk : chunks) {
+            if (chunk.hasArray()) {
+                out.write(chunk.array(), chunk.arrayOffset(), chunk.position());
+            } else {
+                if (tmp == null) {
+                    tmp = new byte[Math.min(chunk.capacity(), 1 << 13)];
+                }
+                ByteBuffer buffer = chunk.duplicate();
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    int n = Math.min(tmp.length, buffer.remaining());
+                    buffer.get(tmp, 0, n);
+                    out.write(tmp, 0, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The content of the stream copied into a byte array.
+     */
+    @Nonnull
+    public byte[] toByteArray() {
+        long size = size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too large for byte array: " + size);
+        }
+        byte[] bytes = new byte[(int) size];
+        int pos = 0;
+        for (ByteBuffer buffer : getBuffers()) {
+            int n = buffer.remaining();
+            buffer.get(bytes, pos, n);
+            pos += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * Clear the content of the stream so it can be reused. The first chunk
+     * is kept, and the rest are released to the pool.
+     */
+    public void reset() {
+        for (int i = chunks.size() - 1; i > 0; --i) {
+            pool.release(chunks.remove(i));
+        }
+        if (current != null) {
+            current = chunks.get(0);
+            current.clear();
+        }
+        completed = 0;
+    }
+
+    /**
+     * Release all the chunks to the pool. The stream can not be written to
+     * after it is closed.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ByteBuffer chunk : chunks) {
+            pool.release(chunk);
+        }
+        chunks.clear();
+        current = null;
+        completed = 0;
+    }
+
+    // --- INTERNAL ---
+
+    private void nextChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Writing to closed stream");
+        }
+        if (current != null) {
+            completed += current.position();
+        }
+        current = pool.acquire();
+        chunks.add(current);
+    }
+}
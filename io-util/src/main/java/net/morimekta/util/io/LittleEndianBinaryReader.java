@@ -21,13 +21,63 @@
 package net.morimekta.util.io;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * IO-Optimized binary reader using little-endian integer encoding.
  */
 public class LittleEndianBinaryReader extends BinaryReader {
     public LittleEndianBinaryReader(InputStream in) {
-        super(in);
+        super(in, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Create a binary reader with an internal buffer that is refilled from
+     * the input stream. Note that this reads ahead of what is consumed.
+     *
+     * @param in The input stream to read.
+     * @param bufferSize The buffer size, at least 16 bytes.
+     */
+    public LittleEndianBinaryReader(InputStream in, int bufferSize) {
+        super(in, bufferSize, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Create a binary reader over the content of a byte array.
+     *
+     * @param content The content to read.
+     */
+    public LittleEndianBinaryReader(byte[] content) {
+        this(content, 0, content.length);
+    }
+
+    /**
+     * Create a binary reader over a part of a byte array.
+     *
+     * @param content The content array.
+     * @param off The offset of the content in the array.
+     * @param len The length of the content.
+     */
+    public LittleEndianBinaryReader(byte[] content, int off, int len) {
+        super(content, off, len, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Create a binary reader over the remaining content of a byte buffer.
+     * Array backed buffers are read in place, other buffers are read in
+     * blocks. The position of the buffer is not changed.
+     *
+     * @param content The content to read.
+     * @return The binary reader.
+     */
+    public static LittleEndianBinaryReader forBuffer(ByteBuffer content) {
+        if (content.hasArray()) {
+            return new LittleEndianBinaryReader(content.array(),
+                                                content.arrayOffset() + content.position(),
+                                                content.remaining());
+        }
+        return new LittleEndianBinaryReader(new ByteBufferInputStream(content.slice()), 1 << 12);
     }
 
     @Override
@@ -22,17 +22,32 @@ package net.morimekta.util.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteOrder;
 
 /**
  * IO-Optimized binary writer using little-endian integer encoding.
  */
 public class LittleEndianBinaryWriter extends BinaryWriter {
     public LittleEndianBinaryWriter(OutputStream out) {
-        super(out);
+        super(out, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Create a binary writer that encodes into a growable block, which is
+     * written to the output stream when full, flushed or closed.
+     *
+     * @param out The output stream to write to.
+     * @param blockSize The initial block size, at least 16 bytes.
+     */
+    public LittleEndianBinaryWriter(OutputStream out, int blockSize) {
+        super(out, blockSize, ByteOrder.LITTLE_ENDIAN);
     }
 
     @Override
     public int writeShort(short integer) throws IOException {
+        if (isBuffered()) {
+            return putShort(integer);
+        }
         out.write(integer);
         out.write(integer >>> 8);
         return 2;
@@ -40,6 +55,9 @@ public class LittleEndianBinaryWriter extends BinaryWriter {
 
     @Override
     public int writeInt(int integer) throws IOException {
+        if (isBuffered()) {
+            return putInt(integer);
+        }
         out.write(integer);
         out.write(integer >>> 8);
         out.write(integer >>> 16);
@@ -49,6 +67,9 @@ public class LittleEndianBinaryWriter extends BinaryWriter {
 
     @Override
     public int writeLong(long integer) throws IOException {
+        if (isBuffered()) {
+            return putLong(integer);
+        }
         out.write((int) (integer));
         out.write((int) (integer >>> 8));
         out.write((int) (integer >>> 16));
@@ -62,6 +83,9 @@ public class LittleEndianBinaryWriter extends BinaryWriter {
 
     @Override
     public int writeUInt16(int number) throws IOException {
+        if (isBuffered()) {
+            return putShort((short) number);
+        }
         out.write(number);
         out.write(number >>> 8);
         return 2;
@@ -69,14 +93,17 @@ public class LittleEndianBinaryWriter extends BinaryWriter {
 
     @Override
     public int writeUInt24(int number) throws IOException {
-        out.write(number);
-        out.write(number >>> 8);
-        out.write(number >>> 16);
+        write(number);
+        write(number >>> 8);
+        write(number >>> 16);
         return 3;
     }
 
     @Override
     public int writeUInt32(int number) throws IOException {
+        if (isBuffered()) {
+            return putInt(number);
+        }
         out.write(number);
         out.write(number >>> 8);
         out.write(number >>> 16);
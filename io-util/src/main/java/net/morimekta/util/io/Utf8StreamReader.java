@@ -29,11 +29,17 @@ import java.util.Locale;
 
 /**
  * Similar to java native {@link java.io.InputStreamReader}, but locked to
- * utf-8, and explicitly with no buffering whatsoever. It will only read one
- * byte at a time until it has a valid unicode char.
+ * utf-8, and explicitly with no read-ahead whatsoever. It will never read
+ * more bytes from the input stream than is needed for the requested chars.
  * <p>
- * In order to make this reader more efficient, rather wrap the input stream in
- * a BufferedInputStream, which can pass on any buffered bytes to later uses.
+ * Each read will pull at most as many bytes as there are chars requested
+ * from the input stream in a single block read, which can never be more
+ * bytes than the chars they decode to. Runs of ASCII are then copied directly,
+ * and multi-byte sequences are decoded from the same block. If a sequence is
+ * split by the block end, only the missing bytes of that sequence is read.
+ * This means that reading single chars is still as inefficient as before, so
+ * rather read in as large blocks as possible, or wrap the input stream in a
+ * BufferedInputStream, which can pass on any buffered bytes to later uses.
  * E.g.:
  * </p>
  * <pre>
@@ -41,7 +47,9 @@ import java.util.Locale;
  * </pre>
  */
 public class Utf8StreamReader extends Reader {
-    private final int[]       buffer;
+    private static final int BLOCK_SIZE = 1 << 12;  // 4kb
+
+    private final byte[]      buffer;
     private final boolean     strict;
 
     private InputStream in;
@@ -54,7 +62,7 @@ public class Utf8StreamReader extends Reader {
 
     public Utf8StreamReader(InputStream in, boolean strict) {
         this.in = in;
-        this.buffer = new int[6];
+        this.buffer = new byte[BLOCK_SIZE];
         this.surrogate = 0;
         this.strict = strict;
     }
@@ -65,67 +73,95 @@ public class Utf8StreamReader extends Reader {
             throw new IOException("Reading from a closed stream.");
         }
 
-        for (int i = 0; i < len; ++i) {
-            if (surrogate != 0) {
-                char_buffer[off + i] = surrogate;
-                surrogate = 0;
-                continue;
-            }
+        int i = 0;
+        if (len > 0 && surrogate != 0) {
+            char_buffer[off] = surrogate;
+            surrogate = 0;
+            ++i;
+        }
 
-            final int r = in.read();
+        while (i < len) {
+            // Since each char is at least one byte, and 4-byte sequences
+            // are decoded to 2 chars, reading no more bytes than there are
+            // chars left ensures we never read past what is requested.
+            final int r = in.read(buffer, 0, Math.min(len - i, buffer.length));
             if (r < 0) {
                 if (i == 0) {
                     return -1;
                 }
                 return i;
-            } else if (r < 0x80) {
-                char_buffer[off + i] = (char) r;
-            } else if ((r & 0xC0) == 0x80) {
-                // 10xxxxxx: This byte pattern should not be here.
-                if (strict) {
-                    throw new UnsupportedEncodingException(String.format(Locale.ENGLISH,
-                                                                         "Unexpected utf-8 entity char: 0x%02x",
-                                                                         r));
+            }
+
+            int pos = 0;
+            while (pos < r) {
+                // ASCII fast path.
+                int o = off + i;
+                while (pos < r && buffer[pos] >= 0) {
+                    char_buffer[o++] = (char) buffer[pos++];
                 }
-                char_buffer[off + i] = '?';
-            } else if ((r & 0xFE) == 0xFE) {
-                // invalid utf-8 starting byte.
-                if (strict) {
-                    throw new UnsupportedEncodingException(String.format(Locale.ENGLISH,
-                                                                         "Unexpected utf-8 non-entity char: 0x%02x",
-                                                                         r));
+                i = o - off;
+                if (pos == r) {
+                    break;
                 }
-                char_buffer[off + i] = '?';
-            } else {
-                buffer[0] = r;
-                int c = 1;
-
-                // 110xxxxx + 1 * 10xxxxxx  = 11 bit
-                if ((r & 0xC0) == 0xC0) {
-                    buffer[c++] = in.read();
 
+                final int b = buffer[pos] & 0xFF;
+                if ((b & 0xC0) == 0x80) {
+                    // 10xxxxxx: This byte pattern should not be here.
+                    if (strict) {
+                        throw new UnsupportedEncodingException(String.format(Locale.ENGLISH,
+                                                                             "Unexpected utf-8 entity char: 0x%02x",
+                                                                             b));
+                    }
+                    char_buffer[off + i++] = '?';
+                    ++pos;
+                } else if ((b & 0xFE) == 0xFE) {
+                    // invalid utf-8 starting byte.
+                    if (strict) {
+                        throw new UnsupportedEncodingException(String.format(Locale.ENGLISH,
+                                                                             "Unexpected utf-8 non-entity char: 0x%02x",
+                                                                             b));
+                    }
+                    char_buffer[off + i++] = '?';
+                    ++pos;
+                } else {
+                    // 110xxxxx + 1 * 10xxxxxx  = 11 bit
                     // 1110xxxx + 2 * 10xxxxxx  = 16 bit
-                    if ((r & 0xE0) == 0xE0) {
-                        buffer[c++] = in.read();
-
-                        // 11110xxx + 3 * 10xxxxxx  = 21 bit
-                        if ((r & 0xF0) == 0xF0) {
-                            buffer[c++] = in.read();
-
-                            // 111110xx + 4 * 10xxxxxx  = 26 bit
-                            if ((r & 0xF8) == 0xF8) {
-                                buffer[c++] = in.read();
-
-                                // 1111110x + 5 * 10xxxxxx  = 31 bit
-                                if ((r & 0xFC) == 0xFC) {
-                                    buffer[c++] = in.read();
-                                }
+                    // 11110xxx + 3 * 10xxxxxx  = 21 bit
+                    // 111110xx + 4 * 10xxxxxx  = 26 bit
+                    // 1111110x + 5 * 10xxxxxx  = 31 bit
+                    final int num = (b & 0xE0) == 0xC0 ? 2 :
+                                    (b & 0xF0) == 0xE0 ? 3 :
+                                    (b & 0xF8) == 0xF0 ? 4 :
+                                    (b & 0xFC) == 0xF8 ? 5 : 6;
+                    if (num == 3 && pos + 3 <= r &&
+                        (buffer[pos + 1] & 0xC0) == 0x80 &&
+                        (buffer[pos + 2] & 0xC0) == 0x80) {
+                        // Common case for most non-latin scripts, decoded
+                        // inline.
+                        char_buffer[off + i++] = (char) (((b & 0x0f) << 12) |
+                                                         ((buffer[pos + 1] & 0x3f) << 6) |
+                                                         (buffer[pos + 2] & 0x3f));
+                        pos += 3;
+                    } else if (pos + num <= r) {
+                        i = put(char_buffer, off, i, len, convert(buffer, pos, num, num));
+                        pos += num;
+                    } else {
+                        // The sequence straddles the end of the block. Move
+                        // it to the start of the block and read only the
+                        // missing bytes.
+                        int avail = r - pos;
+                        System.arraycopy(buffer, pos, buffer, 0, avail);
+                        while (avail < num) {
+                            int m = in.read(buffer, avail, num - avail);
+                            if (m < 0) {
+                                break;
                             }
+                            avail += m;
                         }
+                        i = put(char_buffer, off, i, len, convert(buffer, 0, num, avail));
+                        pos = r;
                     }
                 }
-
-                char_buffer[off + i] = convert(buffer, c);
             }
         }
         return len;
@@ -145,23 +181,37 @@ public class Utf8StreamReader extends Reader {
         return in != null && in.available() > 0;
     }
 
-    private char convert(final int[] arr, final int num) throws IOException {
+    private int put(char[] char_buffer, int off, int i, int len, int cp) {
+        if (Character.isBmpCodePoint(cp)) {
+            char_buffer[off + i++] = (char) cp;
+        } else {
+            char_buffer[off + i++] = Character.highSurrogate(cp);
+            if (i < len) {
+                char_buffer[off + i++] = Character.lowSurrogate(cp);
+            } else {
+                surrogate = Character.lowSurrogate(cp);
+            }
+        }
+        return i;
+    }
+
+    private int convert(final byte[] arr, final int pos, final int num, final int avail) throws IOException {
         int cp;
         switch (num) {
             case 2:
-                cp = (arr[0] & 0x1f);
+                cp = (arr[pos] & 0x1f);
                 break;
             case 3:
-                cp = (arr[0] & 0x0f);
+                cp = (arr[pos] & 0x0f);
                 break;
             case 4:
-                cp = (arr[0] & 0x07);
+                cp = (arr[pos] & 0x07);
                 break;
             case 5:
-                cp = (arr[0] & 0x03);
+                cp = (arr[pos] & 0x03);
                 break;
             case 6:
-                cp = (arr[0] & 0x01);
+                cp = (arr[pos] & 0x01);
                 break;
             default:
                 // Should be impossible, but you never know.
@@ -169,25 +219,20 @@ public class Utf8StreamReader extends Reader {
                 throw new IOException("Unhandled utf-8 char length: " + num);
         }
         for (int i = 1; i < num; ++i) {
-            if (arr[i] == -1) {
+            if (i >= avail) {
                 throw new IOException("End of stream inside utf-8 encoded entity.");
             }
-            if ((arr[i] & 0xC0) != 0x80) {
+            final int b = arr[pos + i] & 0xFF;
+            if ((b & 0xC0) != 0x80) {
                 if (strict) {
                     throw new UnsupportedEncodingException(String.format(Locale.ENGLISH,
                                                                          "Unexpected non-entity utf-8 char in entity extra bytes: 0x%02x",
-                                                                         arr[i]));
+                                                                         b));
                 }
                 return '?';
             }
-            cp = (cp << 6) | (arr[i] & 0x3f);
-        }
-
-        if (Character.isBmpCodePoint(cp)) {
-            return (char) cp;
-        } else {
-            surrogate = Character.lowSurrogate(cp);
-            return Character.highSurrogate(cp);
+            cp = (cp << 6) | (b & 0x3f);
         }
+        return cp;
     }
 }
@@ -31,23 +31,25 @@ import static java.lang.Character.toCodePoint;
 
 /**
  * Similar to java native {@link java.io.OutputStreamWriter}, but locked to
- * utf-8, and explicitly with no buffering whatsoever, with one exception only, which
- * is catching surrogate pair chars.
+ * utf-8. The chars are encoded into an internal byte block, which is written
+ * to the output stream when full, and on {@link #flush()} and {@link #close()}.
+ * Runs of ASCII chars are copied directly into the block, and only non-ASCII
+ * chars and surrogate pairs are handled one by one.
  * <p>
- * In order to make this writer more efficient, rather wrap the output stream in
- * a BufferedOutputStream, which can handle all the byte-level buffering.
- * E.g.:
+ * Note that unlike earlier versions, nothing is guaranteed to have been written
+ * to the output stream until the writer is flushed.
  * </p>
- * <pre>
- *     Writer writer = new Utf8StreamWriter(new BufferedOutputStream(out));
- * </pre>
  */
 public class Utf8StreamWriter extends Writer {
-    private final int[] buffer;
+    private static final int BLOCK_SIZE = 1 << 12;  // 4kb
+
+    private final byte[]  block;
+    private final char[]  chars;
     private final boolean strict;
 
     private OutputStream out;
-    private char surrogate;
+    private int          blockPos;
+    private char         surrogate;
 
     public Utf8StreamWriter(OutputStream out) {
         this(out, true);
@@ -55,7 +57,9 @@ public class Utf8StreamWriter extends Writer {
 
     public Utf8StreamWriter(OutputStream out, boolean strict) {
         this.out = out;
-        this.buffer = new int[6];
+        this.block = new byte[BLOCK_SIZE];
+        this.chars = new char[BLOCK_SIZE];
+        this.blockPos = 0;
         this.surrogate = 0;
         this.strict = strict;
     }
@@ -66,76 +70,46 @@ public class Utf8StreamWriter extends Writer {
             throw new IOException("Writing to a closed stream.");
         }
 
-        for (int i = 0; i < len; ++i) {
-            final char c = chars[off + i];
-            if (isHighSurrogate(c)) {
-                if (surrogate != 0) {
-                    if (strict) {
-                        throw new UnsupportedEncodingException("High surrogate " + Integer.toHexString(c) +
-                                                               " after high: " +
-                                                               Integer.toHexString(surrogate));
-                    }
-                    out.write('?');  // for the bad high surrogate
+        final int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (surrogate == 0) {
+                // ASCII fast path, limited by the room left in the block.
+                if (blockPos == block.length) {
+                    writeBlock();
                 }
-                surrogate = c;
-            } else if (isLowSurrogate(c)) {
-                if (surrogate != 0) {
-                    writeCodePoint(toCodePoint(surrogate, c));
-                    surrogate = 0;
-                } else {
-                    if (strict) {
-                        throw new UnsupportedEncodingException("Missing high surrogate before low: " +
-                                                               Integer.toHexString(c));
-                    }
-                    out.write('?');
+                final int limit = i + Math.min(end - i, block.length - blockPos);
+                int p = blockPos;
+                char c;
+                while (i < limit && (c = chars[i]) < 0x80) {
+                    block[p++] = (byte) c;
+                    ++i;
                 }
-            } else {
-                if (surrogate != 0) {
-                    if (strict) {
-                        throw new UnsupportedEncodingException("Missing low surrogate after high: " +
-                                                               Integer.toHexString(surrogate));
-                    }
-                    out.write('?');  // for the bad high surrogate
+                blockPos = p;
+                if (i == limit) {
+                    continue;
                 }
-                writeCodePoint(c);
             }
+            writeChar(chars[i++]);
         }
     }
 
-    private void writeCodePoint(int cp) throws IOException {
-        int cp0 = cp;
-        if (cp < 0x80) {
-            // ASCII
-            out.write((byte) cp);
-        } else {
-            // UTF-8 entity.
-            int c = 0;
-            int lastOverLimit = 0x40;
-            while (cp >= lastOverLimit) {
-                buffer[c++] = (cp & 0x3f) | 0x80;
-                cp >>>= 6;
-                lastOverLimit >>>= 1;
-            }
-            switch (c) {
-                case 1: buffer[c] = 0xC0 | cp; break;
-                case 2: buffer[c] = 0xE0 | cp; break;
-                case 3: buffer[c] = 0xF0 | cp; break;
-                case 4: buffer[c] = 0xF8 | cp; break;
-                case 5: buffer[c] = 0xFC | cp; break;
-                // Should be impossible, fix write() methods if it isn't
-                default: throw new IOException("Unreachable code reached: " + Integer.toHexString(cp0));
-            }
-
-            // Write the bytes in reverse order to make it big-endian like.
-            for (int i = c; i >= 0; --i) {
-                out.write(buffer[i]);
-            }
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        // Avoids the Writer's char array allocation for long strings.
+        while (len > 0) {
+            int n = Math.min(len, chars.length);
+            str.getChars(off, off + n, chars, 0);
+            write(chars, 0, n);
+            off += n;
+            len -= n;
         }
     }
 
     @Override
     public void flush() throws IOException {
         if (out != null) {
+            writeBlock();
             if (strict && surrogate != 0) {
                 throw new IOException("Surrogate high pair written, but no low");
             }
@@ -154,4 +128,71 @@ public class Utf8StreamWriter extends Writer {
             }
         }
     }
+
+    private void writeChar(char c) throws IOException {
+        if (isHighSurrogate(c)) {
+            if (surrogate != 0) {
+                if (strict) {
+                    throw new UnsupportedEncodingException("High surrogate " + Integer.toHexString(c) +
+                                                           " after high: " +
+                                                           Integer.toHexString(surrogate));
+                }
+                writeCodePoint('?');  // for the bad high surrogate
+            }
+            surrogate = c;
+        } else if (isLowSurrogate(c)) {
+            if (surrogate != 0) {
+                writeCodePoint(toCodePoint(surrogate, c));
+                surrogate = 0;
+            } else {
+                if (strict) {
+                    throw new UnsupportedEncodingException("Missing high surrogate before low: " +
+                                                           Integer.toHexString(c));
+                }
+                writeCodePoint('?');
+            }
+        } else {
+            if (surrogate != 0) {
+                if (strict) {
+                    throw new UnsupportedEncodingException("Missing low surrogate after high: " +
+                                                           Integer.toHexString(surrogate));
+                }
+                writeCodePoint('?');  // for the bad high surrogate
+                surrogate = 0;
+            }
+            writeCodePoint(c);
+        }
+    }
+
+    private void writeCodePoint(int cp) throws IOException {
+        if (blockPos > block.length - 4) {
+            writeBlock();
+        }
+        if (cp < 0x80) {
+            // ASCII
+            block[blockPos++] = (byte) cp;
+        } else if (cp < 0x800) {
+            // 110xxxxx + 1 * 10xxxxxx  = 11 bit
+            block[blockPos++] = (byte) (0xC0 | (cp >>> 6));
+            block[blockPos++] = (byte) (0x80 | (cp & 0x3f));
+        } else if (cp < 0x10000) {
+            // 1110xxxx + 2 * 10xxxxxx  = 16 bit
+            block[blockPos++] = (byte) (0xE0 | (cp >>> 12));
+            block[blockPos++] = (byte) (0x80 | ((cp >>> 6) & 0x3f));
+            block[blockPos++] = (byte) (0x80 | (cp & 0x3f));
+        } else {
+            // 11110xxx + 3 * 10xxxxxx  = 21 bit
+            block[blockPos++] = (byte) (0xF0 | (cp >>> 18));
+            block[blockPos++] = (byte) (0x80 | ((cp >>> 12) & 0x3f));
+            block[blockPos++] = (byte) (0x80 | ((cp >>> 6) & 0x3f));
+            block[blockPos++] = (byte) (0x80 | (cp & 0x3f));
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockPos > 0) {
+            out.write(block, 0, blockPos);
+            blockPos = 0;
+        }
+    }
 }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.json;
+
+import net.morimekta.util.Slice;
+
+import javax.annotation.Nonnull;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A JSON token referencing the raw UTF-8 bytes of the parsed content. This
+ * is the token type returned by the {@link JsonByteTokenizer}, and is the
+ * byte-level equivalent of the {@link JsonToken}. String literals are kept
+ * UTF-8 encoded until {@link #decodeJsonLiteral()} is called.
+ */
+public class JsonByteToken extends Slice {
+    private static final byte[] kNull  = new byte[]{'n', 'u', 'l', 'l'};
+    private static final byte[] kTrue  = new byte[]{'t', 'r', 'u', 'e'};
+    private static final byte[] kFalse = new byte[]{'f', 'a', 'l', 's', 'e'};
+
+    public final JsonToken.Type type;
+    public final int            lineNo;
+    public final int            linePos;
+
+    public JsonByteToken(JsonToken.Type type, byte[] buffer, int offset, int len, int lineNo, int linePos) {
+        super(buffer, offset, len);
+        this.type = type;
+        this.lineNo = lineNo;
+        this.linePos = linePos;
+    }
+
+    /**
+     * @return The token type.
+     */
+    public JsonToken.Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The line number (1-indexed).
+     */
+    public int getLineNo() {
+        return lineNo;
+    }
+
+    /**
+     * @return The start position on the line (1-indexed, counted in chars).
+     */
+    public int getLinePos() {
+        return linePos;
+    }
+
+    public boolean isNull() {
+        return type == JsonToken.Type.TOKEN && strEquals(kNull);
+    }
+
+    public boolean isSymbol() {
+        return len == 1 && "{}[],:".indexOf(fb[off]) >= 0;
+    }
+
+    public final boolean isSymbol(char c) {
+        return len == 1 && fb[off] == c;
+    }
+
+    public boolean isLiteral() {
+        return type == JsonToken.Type.LITERAL && len >= 2;
+    }
+
+    public boolean isBoolean() {
+        return type == JsonToken.Type.TOKEN && (strEquals(kTrue) || strEquals(kFalse));
+    }
+
+    public boolean isNumber() {
+        return type == JsonToken.Type.NUMBER;
+    }
+
+    public boolean isInteger() {
+        return type == JsonToken.Type.NUMBER && !containsAny((byte) '.', (byte) 'e', (byte) 'E');
+    }
+
+    public boolean isDouble() {
+        return type == JsonToken.Type.NUMBER && containsAny((byte) '.', (byte) 'e', (byte) 'E');
+    }
+
+    public boolean booleanValue() {
+        return strEquals(kTrue);
+    }
+
+    public byte byteValue() {
+        return (byte) parseInteger();
+    }
+
+    public short shortValue() {
+        return (short) parseInteger();
+    }
+
+    public int intValue() {
+        return (int) parseInteger();
+    }
+
+    public long longValue() {
+        return parseInteger();
+    }
+
+    public double doubleValue() {
+        return parseDouble();
+    }
+
+    /**
+     * Get the still quoted string literal content.
+     *
+     * @return The raw string literal.
+     */
+    public String rawJsonLiteral() {
+        if (!isLiteral()) throw new IllegalStateException("No a string literal");
+        return substring(1, -1).asString();
+    }
+
+    /**
+     * Get the string literal content decoded from UTF-8 and JSON escaping.
+     * Escape handling is identical to {@link JsonToken#decodeJsonLiteral()},
+     * and malformed UTF-8 is replaced with the unicode replacement char,
+     * like {@link String#String(byte[], java.nio.charset.Charset)} does.
+     *
+     * @return The decoded string.
+     */
+    public String decodeJsonLiteral() {
+        final int end = off + len - 1;
+        int i = off + 1;
+        while (i < end && fb[i] != '\\') {
+            ++i;
+        }
+        if (i == end) {
+            // No escaping, so let the JDK do the UTF-8 decoding.
+            return new String(fb, off + 1, len - 2, UTF_8);
+        }
+
+        // Each byte decodes to at most one char, except for 4-byte UTF-8
+        // sequences, which decodes to 2 chars.
+        char[] out = new char[len];
+        int o = 0;
+        for (i = off + 1; i < end; ++i) {
+            int b = fb[i];
+            if (b >= 0) {
+                if (b != '\\') {
+                    out[o++] = (char) b;
+                    continue;
+                }
+                if (++i == end) {
+                    break;
+                }
+                switch (fb[i]) {
+                    case 'b':
+                        out[o++] = '\b';
+                        break;
+                    case 'f':
+                        out[o++] = '\f';
+                        break;
+                    case 'n':
+                        out[o++] = '\n';
+                        break;
+                    case 'r':
+                        out[o++] = '\r';
+                        break;
+                    case 't':
+                        out[o++] = '\t';
+                        break;
+                    case '\"':
+                    case '\\':
+                    case '/':
+                        out[o++] = (char) fb[i];
+                        break;
+                    case 'u':
+                        int endU = i + 5;
+                        if (end < endU) {
+                            out[o++] = '?';
+                        } else {
+                            int n = 0;
+                            for (int pos = i + 1; pos < endU; ++pos) {
+                                int ch = fb[pos];
+                                if (ch >= '0' && ch <= '9') {
+                                    n = (n << 4) + (ch - '0');
+                                } else if (ch >= 'a' && ch <= 'f') {
+                                    n = (n << 4) + (ch - ('a' - 10));
+                                } else if (ch >= 'A' && ch <= 'F') {
+                                    n = (n << 4) + (ch - ('A' - 10));
+                                } else {
+                                    n = '?';
+                                    break;
+                                }
+                            }
+                            out[o++] = (char) n;
+                        }
+                        i += 4;  // skipping 4 more characters.
+                        break;
+                    default:
+                        out[o++] = '?';
+                        break;
+                }
+            } else if ((b & 0xE0) == 0xC0 && i + 1 < end && isCont(fb[i + 1])) {
+                out[o++] = (char) (((b & 0x1F) << 6) | (fb[++i] & 0x3F));
+            } else if ((b & 0xF0) == 0xE0 && i + 2 < end && isCont(fb[i + 1]) && isCont(fb[i + 2])) {
+                out[o++] = (char) (((b & 0x0F) << 12) | ((fb[i + 1] & 0x3F) << 6) | (fb[i + 2] & 0x3F));
+                i += 2;
+            } else if ((b & 0xF8) == 0xF0 && i + 3 < end &&
+                       isCont(fb[i + 1]) && isCont(fb[i + 2]) && isCont(fb[i + 3])) {
+                int cp = ((b & 0x07) << 18) |
+                         ((fb[i + 1] & 0x3F) << 12) |
+                         ((fb[i + 2] & 0x3F) << 6) |
+                         (fb[i + 3] & 0x3F);
+                out[o++] = Character.highSurrogate(cp);
+                out[o++] = Character.lowSurrogate(cp);
+                i += 3;
+            } else {
+                out[o++] = '\uFFFD';
+            }
+        }
+        return new String(out, 0, o);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(JsonByteToken.class, super.hashCode(), type, lineNo, linePos);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o == null || !o.getClass().equals(getClass())) {
+            return false;
+        }
+        JsonByteToken other = (JsonByteToken) o;
+
+        return fb == other.fb &&
+               off == other.off &&
+               len == other.len &&
+               type == other.type &&
+               lineNo == other.lineNo &&
+               linePos == other.linePos;
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return String.format("%s('%s',%d:%d-%d)", type.toString(), asString(), lineNo, linePos, linePos + length());
+    }
+
+    private static boolean isCont(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+}
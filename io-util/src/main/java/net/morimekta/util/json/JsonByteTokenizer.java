@@ -0,0 +1,713 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.json;
+
+import net.morimekta.util.Strings;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Class for tokenizing a UTF-8 encoded JSON document directly from the raw
+ * bytes, returning one token at a time. This is the byte-level equivalent of
+ * the {@link JsonTokenizer}, and avoids decoding the input to chars entirely.
+ * Structural characters, numbers and tokens are all plain ASCII, and string
+ * literals are kept UTF-8 encoded until {@link JsonByteToken#decodeJsonLiteral()}
+ * is called.
+ * <p>
+ * The tokens are just references back to the input buffer, so are not safe
+ * to use as reference (except for token type) after the next token has been
+ * read.
+ * <p>
+ * Note that unlike the {@link JsonTokenizer} this tokenizer reads the input
+ * stream in blocks, and will read past the end of the JSON content. It should
+ * therefore be given a stream it can consume entirely.
+ * <p>
+ * Content that is already in memory can be tokenized without any stream,
+ * from a byte array, a {@link ByteBuffer} or a memory mapped file, see
+ * {@link #forFile(Path)}. With a buffer source the line content and position
+ * for exceptions is looked up in the source when the exception is made, so
+ * it is correct even if the line is no longer in the token buffer.
+ */
+public class JsonByteTokenizer {
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 12;  // 4kb
+
+    private final InputStream in;
+    // Direct or mapped source buffer, owned by the tokenizer.
+    private final ByteBuffer  source;
+
+    private byte[]        buffer;
+    private int           bufferOffset;
+    private int           bufferLimit;
+    // The absolute position in the stream of buffer[0].
+    private long          bufferStart;
+    private long          lineStart;
+    private int           lineSkew;
+    private int           lineNo;
+    // The start of the token currently being read. Used when refilling
+    // the buffer to know which bytes to keep.
+    private int           tokenStart = -1;
+    private JsonByteToken unreadToken;
+
+    /**
+     * Create a JSON tokenizer that reads from the input steam. It has no
+     * checking of whether the document follows the JSON standard, but will
+     * only accept JSON formatted tokens.
+     *
+     * @param in Input stream to parse from.
+     */
+    public JsonByteTokenizer(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a JSON tokenizer that reads from the input steam. It has no
+     * checking of whether the document follows the JSON standard, but will
+     * only accept JSON formatted tokens.
+     *
+     * @param in Input stream to parse from.
+     * @param bufferSize The initial size of the byte buffer. The buffer will
+     *                   grow if a single token does not fit. Default is 4096
+     *                   bytes.
+     */
+    public JsonByteTokenizer(InputStream in, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        }
+        this.in = in;
+        this.source = null;
+        this.buffer = new byte[bufferSize];
+        this.bufferOffset = 0;
+        this.bufferLimit = 0;
+        this.bufferStart = 0;
+        this.lineStart = 0;
+        this.lineSkew = 0;
+        this.lineNo = 1;
+    }
+
+    /**
+     * Create a JSON tokenizer that reads directly from the byte array. The
+     * content is not copied, and all tokens will reference the given array.
+     *
+     * @param content The UTF-8 encoded JSON content.
+     */
+    public JsonByteTokenizer(byte[] content) {
+        this(content, 0, content.length);
+    }
+
+    /**
+     * Create a JSON tokenizer that reads directly from a region of the byte
+     * array. The content is not copied, and all tokens will reference the
+     * given array.
+     *
+     * @param content The UTF-8 encoded JSON content.
+     * @param off The offset of the JSON content in the array.
+     * @param len The number of bytes of JSON content.
+     */
+    public JsonByteTokenizer(byte[] content, int off, int len) {
+        if (off < 0 || len < 0 || off + len > content.length) {
+            throw new IllegalArgumentException("off: " + off + " len: " + len + " > byte[" + content.length + "]");
+        }
+        this.in = null;
+        this.source = null;
+        this.buffer = content;
+        this.bufferOffset = off;
+        this.bufferLimit = off + len;
+        this.bufferStart = -off;
+        this.lineStart = 0;
+        this.lineSkew = 0;
+        this.lineNo = 1;
+    }
+
+    /**
+     * Create a JSON tokenizer that reads from the remaining content of the
+     * byte buffer. The position of the buffer is not changed. If the buffer
+     * is backed by an accessible array, the tokens reference that array and
+     * nothing is copied. Otherwise, e.g. for direct and memory mapped buffers,
+     * the content is copied into the token buffer one block at a time.
+     *
+     * @param content The UTF-8 encoded JSON content.
+     */
+    public JsonByteTokenizer(ByteBuffer content) {
+        this.in = null;
+        if (content.hasArray()) {
+            this.source = null;
+            this.buffer = content.array();
+            this.bufferOffset = content.arrayOffset() + content.position();
+            this.bufferLimit = content.arrayOffset() + content.limit();
+            this.bufferStart = -bufferOffset;
+        } else {
+            this.source = content.slice();
+            this.buffer = new byte[Math.min(DEFAULT_BUFFER_SIZE, Math.max(1, source.capacity()))];
+            this.bufferOffset = 0;
+            this.bufferLimit = 0;
+            this.bufferStart = 0;
+        }
+        this.lineStart = 0;
+        this.lineSkew = 0;
+        this.lineNo = 1;
+    }
+
+    /**
+     * Create a JSON tokenizer that reads the file memory mapped. The file is
+     * mapped read-only, so only the parts of the file being read are loaded,
+     * and it is never copied as a whole onto the heap.
+     *
+     * @param file The UTF-8 encoded JSON file.
+     * @return The tokenizer.
+     * @throws IOException If unable to map the file.
+     */
+    @Nonnull
+    public static JsonByteTokenizer forFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to be mapped: " + file + " (" + size + " bytes)");
+            }
+            // The mapping stays valid after the channel is closed.
+            return new JsonByteTokenizer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Expect a new JSON token on the stream.
+     *
+     * @param message Message to add to exception if there are no more JSON
+     *                tokens on the stream.
+     * @return The next token.
+     * @throws JsonException If no more tokens, or the token is illegally
+     *         formatted.
+     * @throws IOException If unable to read from stream.
+     */
+    @Nonnull
+    public JsonByteToken expect(String message) throws JsonException, IOException {
+        if (!hasNext()) {
+            throw newParseException(bufferOffset, "Expected %s: Got end of file", message);
+        }
+        JsonByteToken tmp = unreadToken;
+        unreadToken = null;
+        return tmp;
+    }
+
+    /**
+     * Expect a string literal JSON token. A string literal is a double-quote
+     * delimited UTF-8 encoded, JSON-escaped string.
+     *
+     * @param message Message to add to exception if there are no more JSON
+     *                tokens on the stream.
+     * @return The string literal token.
+     * @throws JsonException If no more tokens, or the token is illegally
+     *         formatted.
+     * @throws IOException If unable to read from stream.
+     */
+    @Nonnull
+    public JsonByteToken expectString(String message) throws IOException, JsonException {
+        if (!hasNext()) {
+            throw newParseException(bufferOffset, "Expected %s (string literal): Got end of file", message);
+        } else {
+            if (unreadToken.isLiteral()) {
+                JsonByteToken tmp = unreadToken;
+                unreadToken = null;
+                return tmp;
+            }
+
+            throw newMismatchException("Expected %s (string literal): but found '%s'",
+                                       message, unreadToken.asString());
+        }
+    }
+
+    /**
+     * Expect a JSON number. See {@link JsonTokenizer#expectNumber(String)}
+     * for the accepted number formats.
+     *
+     * @param message Message to add to exception if there are no more JSON
+     *                tokens on the stream.
+     * @return The number token.
+     * @throws JsonException If no more tokens, or the token is illegally
+     *         formatted.
+     * @throws IOException If unable to read from stream.
+     */
+    @Nonnull
+    public JsonByteToken expectNumber(String message) throws IOException, JsonException {
+        if (!hasNext()) {
+            throw newParseException(bufferOffset, "Expected %s (number): Got end of file", message);
+        } else {
+            if (unreadToken.isNumber()) {
+                JsonByteToken tmp = unreadToken;
+                unreadToken = null;
+                return tmp;
+            }
+
+            throw newMismatchException("Expected %s (number): but found '%s'",
+                                       message, unreadToken.asString());
+        }
+    }
+
+    /**
+     * Expect one of the given symbol characters.
+     *
+     * @param message Message to add to exception if there are no more JSON
+     *                tokens on the stream.
+     * @param symbols List of symbol characters to expect.
+     * @return The symbol that was encountered.
+     * @throws JsonException If no more tokens, or the token is illegally
+     *         formatted.
+     * @throws IOException If unable to read from stream.
+     */
+    public char expectSymbol(String message, char... symbols) throws IOException, JsonException {
+        if (symbols.length == 0) {
+            throw new IllegalArgumentException("No symbols to match.");
+        }
+        if (!hasNext()) {
+            if (symbols.length == 1) {
+                throw newParseException(bufferOffset,
+                                        "Expected %s ('%c'): Got end of file",
+                                        message,
+                                        symbols[0]);
+            }
+
+            throw newParseException(bufferOffset,
+                                    "Expected %s (one of ['%s']): Got end of file",
+                                    message,
+                                    Strings.joinP("', '", symbols));
+        } else {
+            for (char symbol : symbols) {
+                if (unreadToken.isSymbol(symbol)) {
+                    unreadToken = null;
+                    return symbol;
+                }
+            }
+
+            if (symbols.length == 1) {
+                throw newMismatchException("Expected %s ('%c'): but found '%s'",
+                                           message,
+                                           symbols[0],
+                                           unreadToken.asString());
+            }
+
+            throw newMismatchException("Expected %s (one of ['%s']): but found '%s'",
+                                       message,
+                                       Strings.joinP("', '", symbols),
+                                       unreadToken.asString());
+        }
+    }
+
+    /**
+     * Whether there is another token on the stream. This will read up until
+     * it finds a JSON token, or until the stream ends.
+     *
+     * @return True if (and only if) there is at least one more token on the
+     *         stream.
+     * @throws JsonException If the next token is illegally formatted.
+     * @throws IOException If unable to read from stream.
+     */
+    public boolean hasNext() throws IOException, JsonException {
+        if (unreadToken == null) {
+            unreadToken = next();
+        }
+        return unreadToken != null;
+    }
+
+    /**
+     * Return the next token or throw an exception. Though it does not consume
+     * that token.
+     *
+     * @param message Message to add to exception if there are no more JSON
+     *                tokens on the stream.
+     * @return The next token.
+     * @throws JsonException If the next token is illegally formatted.
+     * @throws IOException If unable to read from stream.
+     */
+    @Nonnull
+    public JsonByteToken peek(String message) throws IOException, JsonException {
+        if (!hasNext()) {
+            throw newParseException(bufferOffset, "Expected %s: Got end of file", message);
+        }
+        return unreadToken;
+    }
+
+    /**
+     * Returns the next token on the stream, or null if there are no more JSON
+     * tokens on the stream.
+     *
+     * @return The next token, or null.
+     * @throws JsonException If the next token is illegally formatted.
+     * @throws IOException If unable to read from stream.
+     */
+    @Nullable
+    public JsonByteToken next() throws IOException, JsonException {
+        if (unreadToken != null) {
+            JsonByteToken tmp = unreadToken;
+            unreadToken = null;
+            return tmp;
+        }
+
+        for (;;) {
+            if (bufferOffset >= bufferLimit && !fill(bufferOffset)) {
+                return null;
+            }
+
+            final byte b = buffer[bufferOffset];
+            if (b == JsonToken.kNewLine) {
+                ++bufferOffset;
+                newLine();
+            } else if (b == JsonToken.kSpace ||
+                       b == JsonToken.kTab ||
+                       b == JsonToken.kCarriageReturn) {
+                ++bufferOffset;
+            } else if (b == JsonToken.kDoubleQuote) {
+                return nextString();
+            } else if (b == '.' || b == '-' || (b >= '0' && b <= '9')) {
+                return nextNumber();
+            } else if (b == '_' ||
+                       (b >= 'a' && b <= 'z') ||
+                       (b >= 'A' && b <= 'Z')) {
+                return nextToken();
+            } else if (b < 0x20 || b >= 0x7F) {
+                // UTF-8 characters are only allowed inside JSON string literals.
+                // Note that all non-ASCII bytes are negative.
+                throw newParseException(bufferOffset,
+                                        "Illegal character in JSON structure: '\\u%04x'",
+                                        codePointAt(bufferOffset));
+            } else {
+                return nextSymbol();
+            }
+        }
+    }
+
+    /**
+     * @return The current line number (1-indexed).
+     */
+    public int getLineNo() {
+        return lineNo;
+    }
+
+    /**
+     * @return The position of the next unread char in the current line
+     *         (1-indexed, counted in chars).
+     */
+    public int getLinePos() {
+        return linePos(bufferOffset);
+    }
+
+    /**
+     * Returns the current line in the buffer. Or empty string if the start
+     * of the line is no longer in the buffer.
+     *
+     * @return The line string, not including the line-break.
+     */
+    @Nonnull
+    public String getLine() {
+        if (lineStart < bufferStart) {
+            if (source != null) {
+                return sourceLine();
+            }
+            return "";
+        }
+        int start = (int) (lineStart - bufferStart);
+        int end = start;
+        while (end < bufferLimit && buffer[end] != JsonToken.kNewLine) {
+            ++end;
+        }
+        return new String(buffer, start, end - start, UTF_8);
+    }
+
+    // --- INTERNAL ---
+
+    @Nonnull
+    private JsonByteToken nextSymbol() {
+        int start = bufferOffset++;
+        return new JsonByteToken(JsonToken.Type.SYMBOL, buffer, start, 1, lineNo, linePos(start));
+    }
+
+    @Nonnull
+    private JsonByteToken nextToken() throws IOException {
+        final int linePos = linePos(bufferOffset);
+        tokenStart = bufferOffset;
+
+        int b;
+        while ((b = peekByte()) == '_' || b == '.' ||
+               (b >= '0' && b <= '9') ||
+               (b >= 'a' && b <= 'z') ||
+               (b >= 'A' && b <= 'Z')) {
+            ++bufferOffset;
+        }
+        int start = tokenStart;
+        tokenStart = -1;
+
+        return new JsonByteToken(JsonToken.Type.TOKEN, buffer, start, bufferOffset - start, lineNo, linePos);
+    }
+
+    @Nonnull
+    private JsonByteToken nextNumber() throws IOException, JsonException {
+        // NOTE: This is the same state-engine as in JsonTokenizer, just over
+        // the raw bytes:
+        //
+        // dec = -?0
+        // dec = -?.0
+        // dec = -?0.0
+        // sci = (dec)[eE][+-]?[0-9]+
+        final int linePos = linePos(bufferOffset);
+        tokenStart = bufferOffset;
+
+        int b = buffer[bufferOffset] & 0xFF;
+        if (b == '-') {
+            // only base 10 decimals can be negative.
+            ++bufferOffset;
+            b = peekByte();
+            if (b < 0) {
+                throw newParseException(bufferOffset, "Negative indicator without number");
+            }
+            if (!(b == '.' || (b >= '0' && b <= '9'))) {
+                throw newParseException(bufferOffset, "No decimal after negative indicator");
+            }
+        }
+
+        // decimal part.
+        while (b >= '0' && b <= '9') {
+            ++bufferOffset;
+            b = peekByte();
+        }
+        // fraction part.
+        if (b == '.') {
+            ++bufferOffset;
+            b = peekByte();
+            while (b >= '0' && b <= '9') {
+                ++bufferOffset;
+                b = peekByte();
+            }
+        }
+        // exponent part.
+        if (b == 'e' || b == 'E') {
+            ++bufferOffset;
+            b = peekByte();
+            if (b < 0) {
+                throw newParseException(bufferOffset, "Badly terminated JSON exponent: '%s'", tokenString(0));
+            }
+
+            // The exponent can be explicitly prefixed with both '+'
+            // and '-'.
+            if (b == '-' || b == '+') {
+                ++bufferOffset;
+                b = peekByte();
+                if (b < 0) {
+                    throw newParseException(bufferOffset, "Badly terminated JSON exponent: '%s'", tokenString(0));
+                }
+            }
+            if (b >= '0' && b <= '9') {
+                while (b >= '0' && b <= '9') {
+                    ++bufferOffset;
+                    b = peekByte();
+                }
+            } else {
+                throw newParseException(bufferOffset, "Badly terminated JSON exponent: '%s'", tokenString(1));
+            }
+        }
+
+        // A number must be terminated correctly: End of stream, space or a
+        // symbol that may be after a value: ',' '}' ']'.
+        if (b < 0 ||
+            b == JsonToken.kListSep ||
+            b == JsonToken.kMapEnd ||
+            b == JsonToken.kListEnd ||
+            b == JsonToken.kSpace ||
+            b == JsonToken.kTab ||
+            b == JsonToken.kNewLine ||
+            b == JsonToken.kCarriageReturn) {
+            int start = tokenStart;
+            tokenStart = -1;
+            return new JsonByteToken(JsonToken.Type.NUMBER, buffer, start, bufferOffset - start, lineNo, linePos);
+        } else {
+            throw newParseException(bufferOffset, "Wrongly terminated JSON number: '%s'", tokenString(1));
+        }
+    }
+
+    @Nonnull
+    private JsonByteToken nextString() throws IOException, JsonException {
+        final int linePos = linePos(bufferOffset);
+        tokenStart = bufferOffset;
+
+        int i = bufferOffset + 1;
+        boolean esc = false;
+        for (;;) {
+            if (i >= bufferLimit) {
+                bufferOffset = i;
+                if (!fill(tokenStart)) {
+                    throw newParseException(bufferOffset, "Unexpected end of stream in string literal");
+                }
+                i = bufferOffset;
+            }
+            final byte b = buffer[i++];
+            if (esc) {
+                esc = false;
+            } else if (b == JsonToken.kEscape) {
+                esc = true;
+            } else if (b == JsonToken.kDoubleQuote) {
+                break;
+            } else if (b == JsonToken.kNewLine) {
+                throw newParseException(i - 1, "Unexpected newline in string literal");
+            } else if (b < 0) {
+                // Keep track of the difference between bytes and chars
+                // in the line, so we can report the char position.
+                if ((b & 0xC0) == 0x80) {
+                    ++lineSkew;
+                } else if ((b & 0xF8) == 0xF0) {
+                    // 4-byte sequences are 2 UTF-16 chars.
+                    --lineSkew;
+                }
+            }
+        }
+
+        int start = tokenStart;
+        tokenStart = -1;
+        bufferOffset = i;
+        return new JsonByteToken(JsonToken.Type.LITERAL, buffer, start, i - start, lineNo, linePos);
+    }
+
+    /**
+     * @return The byte at the current buffer offset, or -1 if end of stream.
+     *         Non-ASCII bytes are returned as unsigned values.
+     * @throws IOException If unable to read from stream.
+     */
+    private int peekByte() throws IOException {
+        if (bufferOffset >= bufferLimit && !fill(tokenStart < 0 ? bufferOffset : tokenStart)) {
+            return -1;
+        }
+        return buffer[bufferOffset] & 0xFF;
+    }
+
+    /**
+     * Read more content into the buffer, keeping everything from keepFrom
+     * and onward. If keeping the current line start is cheap, that is
+     * kept too for better exception messages.
+     *
+     * @param keepFrom The buffer offset of the first byte to keep.
+     * @return True if any more bytes was read.
+     * @throws IOException If unable to read from stream.
+     */
+    private boolean fill(int keepFrom) throws IOException {
+        if (in == null && (source == null || bufferStart + bufferLimit >= source.limit())) {
+            return false;
+        }
+
+        int lineOffset = (int) Math.max(-1, lineStart - bufferStart);
+        if (lineOffset >= 0 && lineOffset < keepFrom && (bufferLimit - lineOffset) < (buffer.length / 2)) {
+            keepFrom = lineOffset;
+        }
+
+        int keep = bufferLimit - keepFrom;
+        if (keepFrom == 0 && keep == buffer.length) {
+            byte[] tmp = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, tmp, 0, keep);
+            buffer = tmp;
+        } else if (keepFrom > 0) {
+            if (keep > 0) {
+                System.arraycopy(buffer, keepFrom, buffer, 0, keep);
+            }
+            bufferStart += keepFrom;
+            bufferOffset -= keepFrom;
+            if (tokenStart >= 0) {
+                tokenStart -= keepFrom;
+            }
+        }
+        bufferLimit = keep;
+
+        int r;
+        if (source != null) {
+            // Absolute bulk read, which is a plain memory copy from direct
+            // and mapped buffers.
+            source.position((int) (bufferStart + bufferLimit));
+            r = Math.min(source.remaining(), buffer.length - bufferLimit);
+            source.get(buffer, bufferLimit, r);
+        } else {
+            r = in.read(buffer, bufferLimit, buffer.length - bufferLimit);
+        }
+        if (r > 0) {
+            bufferLimit += r;
+            return true;
+        }
+        return false;
+    }
+
+    private void newLine() {
+        ++lineNo;
+        lineStart = bufferStart + bufferOffset;
+        lineSkew = 0;
+    }
+
+    private String sourceLine() {
+        final int start = (int) lineStart;
+        int end = start;
+        while (end < source.limit() && source.get(end) != JsonToken.kNewLine) {
+            ++end;
+        }
+        byte[] line = new byte[end - start];
+        for (int i = 0; i < line.length; ++i) {
+            line[i] = source.get(start + i);
+        }
+        return new String(line, UTF_8);
+    }
+
+    private int linePos(int offset) {
+        return (int) (bufferStart + offset - lineStart) - lineSkew + 1;
+    }
+
+    private String tokenString(int extra) {
+        int end = Math.min(bufferLimit, bufferOffset + extra);
+        return new String(buffer, tokenStart, end - tokenStart, UTF_8);
+    }
+
+    private int codePointAt(int offset) {
+        int b = buffer[offset] & 0xFF;
+        int len = b < 0xC0 ? 1 : b < 0xE0 ? 2 : b < 0xF0 ? 3 : 4;
+        len = Math.min(len, bufferLimit - offset);
+        return new String(buffer, offset, len, UTF_8).codePointAt(0);
+    }
+
+    @Nonnull
+    private JsonException newMismatchException(String format, Object... params) {
+        if (params.length > 0) {
+            format = format(format, params);
+        }
+        return new JsonException(format,
+                                 getLine(),
+                                 unreadToken.lineNo,
+                                 unreadToken.linePos,
+                                 unreadToken.asString().length());
+    }
+
+    @Nonnull
+    private JsonException newParseException(int offset, String format, Object... params) {
+        if (params.length > 0) {
+            format = format(format, params);
+        }
+        return new JsonException(format, getLine(), lineNo, linePos(offset), 1);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.json;
+
+/**
+ * Bounded cache of decoded object keys, so repeated keys resolve to the same
+ * string instance. The cache is an open-addressed table looked up with the
+ * raw chars of the key, so a cache hit does not allocate. When all the slots
+ * a key may use are taken, the first of them is replaced.
+ * <p>
+ * Keys with escaped chars, or longer than {@link #MAX_KEY_LENGTH}, are not
+ * cached. The cache is not thread safe.
+ */
+final class JsonKeyCache {
+    static final int MAX_KEY_LENGTH = 64;
+
+    private static final int MAX_PROBE = 4;
+
+    private final String[] keys;
+    private final int[]    hashes;
+    private final int      mask;
+
+    /**
+     * @param size The number of keys to hold, rounded up to a power of two.
+     */
+    JsonKeyCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Get the interned key for the raw (not decoded) key chars.
+     *
+     * @param fb The char buffer.
+     * @param off The offset of the key content, excluding the quote.
+     * @param len The length of the key content.
+     * @return The interned key, or null if the key can not be cached.
+     */
+    String intern(char[] fb, int off, int len) {
+        if (len > MAX_KEY_LENGTH) {
+            return null;
+        }
+        int hash = 0;
+        final int end = off + len;
+        for (int i = off; i < end; ++i) {
+            final char ch = fb[i];
+            if (ch == JsonToken.kEscape) {
+                return null;
+            }
+            hash = 31 * hash + ch;
+        }
+
+        int slot = hash & mask;
+        for (int probe = 0; probe < MAX_PROBE; ++probe) {
+            final int i = (slot + probe) & mask;
+            final String key = keys[i];
+            if (key == null) {
+                return put(i, hash, fb, off, len);
+            }
+            if (hashes[i] == hash && matches(key, fb, off, len)) {
+                return key;
+            }
+        }
+        return put(slot, hash, fb, off, len);
+    }
+
+    // --- INTERNAL ---
+
+    private String put(int i, int hash, char[] fb, int off, int len) {
+        String key = new String(fb, off, len);
+        keys[i] = key;
+        hashes[i] = hash;
+        return key;
+    }
+
+    private static boolean matches(String key, char[] fb, int off, int len) {
+        if (key.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; ++i) {
+            if (key.charAt(i) != fb[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
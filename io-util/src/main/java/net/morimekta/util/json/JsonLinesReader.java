@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.json;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reader for newline delimited JSON (NDJSON or JSON lines), where each line
+ * holds one JSON record. The input is split into line-aligned chunks, which
+ * are tokenized and parsed in parallel on a {@link ForkJoinPool}, and the
+ * parsed records are delivered as a {@link Stream}.
+ * <p>
+ * In ordered mode the records are delivered in the same order as they are
+ * in the input. In unordered mode the records of each chunk is delivered
+ * as soon as the chunk is parsed, regardless of the chunks before it. The
+ * records within each chunk are always kept in order.
+ * <p>
+ * If a record fails to parse, the stream will throw an
+ * {@link UncheckedJsonException} with the line number relative to the start
+ * of the whole input, not the chunk. The records before it in the same
+ * chunk are delivered before the exception is thrown.
+ *
+ * <pre>{@code
+ * try (JsonLinesReader<Event> reader = new JsonLinesReader<>(in, Event::parse)) {
+ *     reader.stream().forEach(this::handle);
+ * }
+ * }</pre>
+ *
+ * @param <T> The record type.
+ */
+public class JsonLinesReader<T> implements Closeable {
+    /**
+     * Parser for a single record. The parser is called with the tokenizer
+     * positioned before the first token of the record, and should consume
+     * exactly the tokens of that record.
+     *
+     * @param <T> The record type.
+     */
+    @FunctionalInterface
+    public interface RecordParser<T> {
+        T parse(@Nonnull JsonTokenizer tokenizer) throws IOException, JsonException;
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;  // 1 MB
+
+    private static final int KEY_CACHE_SIZE = 256;
+
+    private final InputStream     in;
+    private final RecordParser<T> parser;
+    private final ForkJoinPool    pool;
+    private final boolean         ordered;
+    private final int             chunkSize;
+    private final int             maxInFlight;
+
+    private final ArrayDeque<ForkJoinTask<Result<T>>> pending;
+    private final LinkedBlockingQueue<Result<T>>      completed;
+
+    private byte[]  carry;
+    private int     carryLen;
+    private int     nextLineNo;
+    private int     inFlight;
+    private boolean eof;
+    private boolean streamed;
+
+    /**
+     * Create an ordered JSON lines reader using the common pool.
+     *
+     * @param in The input stream to read.
+     * @param parser The record parser.
+     */
+    public JsonLinesReader(@Nonnull InputStream in, @Nonnull RecordParser<T> parser) {
+        this(in, parser, ForkJoinPool.commonPool(), true, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a JSON lines reader.
+     *
+     * @param in The input stream to read.
+     * @param parser The record parser.
+     * @param pool The pool to parse chunks in.
+     * @param ordered If the records should be delivered in input order.
+     * @param chunkSize The minimum number of bytes in each chunk. The chunks
+     *                  are extended to the end of the line.
+     */
+    public JsonLinesReader(@Nonnull InputStream in,
+                           @Nonnull RecordParser<T> parser,
+                           @Nonnull ForkJoinPool pool,
+                           boolean ordered,
+                           int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.in = in;
+        this.parser = parser;
+        this.pool = pool;
+        this.ordered = ordered;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = Math.max(2, 2 * pool.getParallelism());
+        this.pending = new ArrayDeque<>();
+        this.completed = new LinkedBlockingQueue<>();
+        this.carry = new byte[0];
+        this.carryLen = 0;
+        this.nextLineNo = 1;
+    }
+
+    /**
+     * Create an ordered JSON lines reader for the given file.
+     *
+     * @param file The file to read.
+     * @param parser The record parser.
+     * @param <T> The record type.
+     * @return The JSON lines reader.
+     * @throws IOException If unable to open the file.
+     */
+    public static <T> JsonLinesReader<T> forFile(@Nonnull Path file, @Nonnull RecordParser<T> parser)
+            throws IOException {
+        return new JsonLinesReader<>(Files.newInputStream(file), parser);
+    }
+
+    /**
+     * Stream the records of the input. This can only be called once per
+     * reader, and closing the stream will close the reader.
+     *
+     * @return The stream of records.
+     */
+    @Nonnull
+    public Stream<T> stream() {
+        if (streamed) {
+            throw new IllegalStateException("JSON lines already streamed");
+        }
+        streamed = true;
+        int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, characteristics) {
+            private Iterator<T>      current = null;
+            private RuntimeException error   = null;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                while (current == null || !current.hasNext()) {
+                    if (error != null) {
+                        // Thrown after the records before it in the chunk.
+                        RuntimeException tmp = error;
+                        error = null;
+                        throw tmp;
+                    }
+                    submitChunks();
+                    if (inFlight == 0) {
+                        return false;
+                    }
+                    Result<T> result = nextResult();
+                    current = result.records.iterator();
+                    error = result.error;
+                }
+                action.accept(current.next());
+                return true;
+            }
+        }, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        eof = true;
+        for (ForkJoinTask<Result<T>> task : pending) {
+            task.cancel(false);
+        }
+        pending.clear();
+        inFlight = 0;
+        in.close();
+    }
+
+    // --- INTERNAL ---
+
+    private static class Chunk {
+        private final byte[] bytes;
+        private final int    len;
+        private final int    lineNo;
+
+        private Chunk(byte[] bytes, int len, int lineNo) {
+            this.bytes = bytes;
+            this.len = len;
+            this.lineNo = lineNo;
+        }
+    }
+
+    private static class Result<T> {
+        private final List<T>          records;
+        private final RuntimeException error;
+
+        private Result(List<T> records, RuntimeException error) {
+            this.records = records;
+            this.error = error;
+        }
+    }
+
+    private void submitChunks() {
+        while (inFlight < maxInFlight && !eof) {
+            final Chunk chunk;
+            try {
+                chunk = readChunk();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+            if (chunk == null) {
+                return;
+            }
+            if (ordered) {
+                pending.add(pool.submit(() -> parseChunk(chunk)));
+            } else {
+                pool.execute(() -> {
+                    try {
+                        completed.add(parseChunk(chunk));
+                    } catch (Throwable e) {
+                        // Always post a result, or the reader waits forever.
+                        // The error is passed on to the reader thread.
+                        completed.add(new Result<>(Collections.emptyList(), new IllegalStateException(
+                                "Failed to parse JSON lines: " + e.getMessage(), e)));
+                    }
+                });
+            }
+            ++inFlight;
+        }
+    }
+
+    private Result<T> nextResult() {
+        --inFlight;
+        Result<T> result;
+        if (ordered) {
+            result = pending.poll().join();
+        } else {
+            try {
+                result = completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for JSON lines", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read the next chunk of complete lines from the input. Any bytes after
+     * the last line break is kept as the start of the next chunk.
+     *
+     * @return The chunk, or null if there is no more content.
+     * @throws IOException If unable to read from input.
+     */
+    private Chunk readChunk() throws IOException {
+        byte[] buffer = new byte[Math.max(chunkSize, carryLen + chunkSize / 2 + 1)];
+        System.arraycopy(carry, 0, buffer, 0, carryLen);
+        int len = carryLen;
+        int scanFrom = carryLen;
+        int end = -1;
+        while (end < 0) {
+            if (len == buffer.length) {
+                byte[] tmp = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, tmp, 0, len);
+                buffer = tmp;
+            }
+            int r = in.read(buffer, len, buffer.length - len);
+            if (r < 0) {
+                eof = true;
+                end = len;
+                break;
+            }
+            len += r;
+            if (len == buffer.length) {
+                // Full chunk, look for the last line break.
+                for (int i = len - 1; i >= scanFrom; --i) {
+                    if (buffer[i] == '\n') {
+                        end = i + 1;
+                        break;
+                    }
+                }
+                scanFrom = len;
+            }
+        }
+
+        carryLen = len - end;
+        if (carryLen > 0) {
+            if (carry.length < carryLen) {
+                carry = new byte[Math.max(carryLen, chunkSize / 2)];
+            }
+            System.arraycopy(buffer, end, carry, 0, carryLen);
+        }
+        if (end == 0) {
+            return null;
+        }
+
+        Chunk chunk = new Chunk(buffer, end, nextLineNo);
+        for (int i = 0; i < end; ++i) {
+            if (buffer[i] == '\n') {
+                ++nextLineNo;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Parse all records in the chunk. Exceptions are returned as part of
+     * the result together with the records parsed before the failure, as
+     * {@link ForkJoinTask#join()} would otherwise re-wrap them.
+     *
+     * @param chunk The chunk to parse.
+     * @return The parse result.
+     */
+    private Result<T> parseChunk(Chunk chunk) {
+        List<T> records = new ArrayList<>();
+        JsonTokenizer tokenizer = new JsonTokenizer(new ByteArrayInputStream(chunk.bytes, 0, chunk.len));
+        tokenizer.setKeyCacheSize(KEY_CACHE_SIZE);
+        try {
+            while (tokenizer.hasNext()) {
+                records.add(parser.parse(tokenizer));
+            }
+        } catch (JsonException e) {
+            JsonException moved = new JsonException(e.getMessage(),
+                                                    e.getLine(),
+                                                    e.getLineNo() + chunk.lineNo - 1,
+                                                    e.getLinePos(),
+                                                    e.getLen());
+            moved.initCause(e);
+            return new Result<>(records, new UncheckedJsonException(moved));
+        } catch (IOException e) {
+            return new Result<>(records, new UncheckedIOException(e.getMessage(), e));
+        } catch (RuntimeException e) {
+            return new Result<>(records, e);
+        }
+        return new Result<>(records, null);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.json;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+
+/**
+ * Writer for newline delimited JSON (NDJSON or JSON lines), where each record
+ * is written as a single JSON value on its own line.
+ * <p>
+ * Lists of records can be serialized in parallel with {@link #writeAll(List)}.
+ * The list is split into batches that are serialized on a {@link ForkJoinPool},
+ * each task borrowing a {@link JsonWriter} and buffer from a pool owned by
+ * the writer, and the batch buffers are then written to the output in the
+ * original order. Closing the writer clears the buffer pool.
+ *
+ * <pre>{@code
+ * try (JsonLinesWriter<Event> writer = new JsonLinesWriter<>(out, Event::write)) {
+ *     writer.writeAll(events);
+ * }
+ * }</pre>
+ *
+ * @param <T> The record type.
+ */
+public class JsonLinesWriter<T> implements Closeable {
+    public static final int DEFAULT_BATCH_SIZE = 1 << 10;
+
+    private final OutputStream                      out;
+    private final BiConsumer<JsonWriter, ? super T> recordWriter;
+    private final ForkJoinPool                      pool;
+    private final int                               batchSize;
+    private final Queue<LineBuffer>                 buffers;
+
+    /**
+     * Create a JSON lines writer using the common pool.
+     *
+     * @param out The output stream to write to.
+     * @param recordWriter Writes a single record as one JSON value.
+     */
+    public JsonLinesWriter(@Nonnull OutputStream out, @Nonnull BiConsumer<JsonWriter, ? super T> recordWriter) {
+        this(out, recordWriter, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Create a JSON lines writer.
+     *
+     * @param out The output stream to write to.
+     * @param recordWriter Writes a single record as one JSON value.
+     * @param pool The pool to serialize batches in.
+     * @param batchSize Number of records in each batch.
+     */
+    public JsonLinesWriter(@Nonnull OutputStream out,
+                           @Nonnull BiConsumer<JsonWriter, ? super T> recordWriter,
+                           @Nonnull ForkJoinPool pool,
+                           int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.out = out;
+        this.recordWriter = recordWriter;
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.buffers = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Write a single record in the calling thread.
+     *
+     * @param record The record to write.
+     * @throws IOException If unable to write to output.
+     */
+    public void write(@Nonnull T record) throws IOException {
+        writeTo(Collections.singletonList(record));
+    }
+
+    /**
+     * Write all the records in order, serializing batches of them in parallel.
+     *
+     * @param records The records to write.
+     * @throws IOException If unable to write to output.
+     */
+    public void writeAll(@Nonnull List<? extends T> records) throws IOException {
+        if (records.size() <= batchSize) {
+            writeTo(records);
+            return;
+        }
+
+        List<ForkJoinTask<Object>> batches = new ArrayList<>();
+        for (int start = 0; start < records.size(); start += batchSize) {
+            List<? extends T> batch = records.subList(start, Math.min(records.size(), start + batchSize));
+            batches.add(pool.submit(() -> {
+                // Return the exception, as join() would re-wrap it.
+                try {
+                    return serialize(batch);
+                } catch (RuntimeException e) {
+                    return e;
+                }
+            }));
+        }
+        try {
+            for (ForkJoinTask<Object> batch : batches) {
+                Object result = batch.join();
+                if (result instanceof RuntimeException) {
+                    throw (RuntimeException) result;
+                }
+                out.write((byte[]) result);
+            }
+        } finally {
+            for (ForkJoinTask<Object> batch : batches) {
+                batch.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Flush the output stream.
+     *
+     * @throws IOException If unable to flush.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffers.clear();
+        out.close();
+    }
+
+    // --- INTERNAL ---
+
+    private void writeTo(List<? extends T> records) throws IOException {
+        LineBuffer buffer = acquire();
+        try {
+            for (T record : records) {
+                buffer.append(recordWriter, record);
+            }
+            buffer.bytes.writeTo(out);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private byte[] serialize(List<? extends T> records) {
+        LineBuffer buffer = acquire();
+        try {
+            for (T record : records) {
+                buffer.append(recordWriter, record);
+            }
+            return buffer.bytes.toByteArray();
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private LineBuffer acquire() {
+        LineBuffer buffer = buffers.poll();
+        return buffer == null ? new LineBuffer() : buffer;
+    }
+
+    private void release(LineBuffer buffer) {
+        buffer.bytes.reset();
+        buffers.offer(buffer);
+    }
+
+    /**
+     * Output buffer and JSON writer, borrowed from the writer's pool for
+     * each record or batch. Both are kept and reused between them.
+     */
+    private static class LineBuffer {
+        private final ByteArrayOutputStream bytes;
+        private final JsonWriter            writer;
+
+        private LineBuffer() {
+            this.bytes = new ByteArrayOutputStream(1 << 12);
+            this.writer = new JsonWriter(bytes);
+        }
+
+        private <R> void append(BiConsumer<JsonWriter, ? super R> recordWriter, R record) {
+            try {
+                recordWriter.accept(writer, record);
+            } finally {
+                // Flushes the record into the bytes buffer, and makes sure
+                // the writer is ready for the next record even on failure.
+                writer.reset();
+            }
+            bytes.write('\n');
+        }
+    }
+}
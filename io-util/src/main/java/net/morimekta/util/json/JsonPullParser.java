@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.json;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pull parser for a single JSON document on top of the {@link JsonTokenizer}.
+ * Each call to {@link #next()} returns the next structural event, and the
+ * current key or value token is available from {@link #getToken()} until the
+ * next call. Whole values can be skipped with {@link #skipValue()}, which
+ * scans over the content without making tokens for it.
+ * <p>
+ * The parser can also be given a path filter, which makes it only return
+ * the events of the values matching the path. Everything that can not
+ * contain a match is skipped. The filter is a simple subset of JSON path:
+ * </p>
+ * <ul>
+ *     <li><code>$</code>: The root value, which is the start of all paths.
+ *     <li><code>.name</code> or <code>['name']</code>: A named field in an
+ *         object.
+ *     <li><code>[1]</code>: The element with the given index in an array.
+ *     <li><code>.*</code> or <code>[*]</code>: Any field or element.
+ * </ul>
+ * E.g. <code>$.items[*].id</code> will return the <code>id</code> value of
+ * each of the objects in the <code>items</code> array, and nothing else.
+ * <pre>{@code
+ * JsonPullParser parser = new JsonPullParser(tokenizer, "$.items[*].id");
+ * while (parser.next() != null) {
+ *     ids.add(parser.getToken().decodeJsonLiteral());
+ * }
+ * }</pre>
+ */
+public class JsonPullParser {
+    /**
+     * The structural events of a JSON document.
+     */
+    public enum Event {
+        START_OBJECT,
+        END_OBJECT,
+        START_ARRAY,
+        END_ARRAY,
+        /** An object key, the token is the key string literal. */
+        KEY,
+        /** A simple value, the token is the value. */
+        VALUE,
+    }
+
+    private static final int FIRST = 0;  // after '{' or '[' or before the root value.
+    private static final int NEXT  = 1;  // after a value.
+    private static final int COLON = 2;  // after an object key.
+
+    private final JsonTokenizer tokenizer;
+    private final Segment[]     filter;
+
+    private boolean[] objects;
+    private int[]     counts;
+    private String[]  keys;
+    private int       depth;
+    private int       state;
+    private int       matchDepth;
+    private Event     event;
+    private JsonToken token;
+
+    /**
+     * Create a pull parser returning all events of the document.
+     *
+     * @param tokenizer The tokenizer to read from.
+     */
+    public JsonPullParser(@Nonnull JsonTokenizer tokenizer) {
+        this(tokenizer, null);
+    }
+
+    /**
+     * Create a pull parser only returning the events of values matching
+     * the path filter.
+     *
+     * @param tokenizer The tokenizer to read from.
+     * @param path The path filter, or null for no filter.
+     * @throws IllegalArgumentException If the path filter is not valid.
+     */
+    public JsonPullParser(@Nonnull JsonTokenizer tokenizer, @Nullable String path) {
+        this.tokenizer = tokenizer;
+        this.filter = path == null ? null : parseFilter(path);
+        this.objects = new boolean[8];
+        this.counts = new int[8];
+        this.keys = new String[8];
+        this.depth = 0;
+        this.state = FIRST;
+        this.matchDepth = -1;
+    }
+
+    /**
+     * Read the next event of the document.
+     *
+     * @return The next event, or null if the document is complete.
+     * @throws JsonException If the document is not valid JSON.
+     * @throws IOException If unable to read from stream.
+     */
+    @Nullable
+    public Event next() throws IOException, JsonException {
+        token = null;
+        event = null;
+        while (event == null) {
+            if (depth == 0) {
+                if (state == NEXT || !tokenizer.hasNext()) {
+                    state = NEXT;
+                    return null;
+                }
+                startValue("value");
+                continue;
+            }
+
+            final int top = depth - 1;
+            if (state == COLON) {
+                tokenizer.expectSymbol("key value separator", JsonToken.kKeyValSep);
+                startValue("map value");
+            } else if (objects[top]) {
+                JsonToken next = tokenizer.expect("map key or end");
+                if (next.isSymbol(JsonToken.kMapEnd)) {
+                    endContainer(Event.END_OBJECT);
+                    continue;
+                }
+                if (state == NEXT) {
+                    if (!next.isSymbol(JsonToken.kListSep)) {
+                        throw new JsonException("Expected entry separator or end: but found '" + next.asString() + "'",
+                                                tokenizer, next);
+                    }
+                    next = tokenizer.expect("map key");
+                }
+                if (!next.isLiteral()) {
+                    throw new JsonException("Expected map key (string literal): but found '" + next.asString() + "'",
+                                            tokenizer, next);
+                }
+                ++counts[top];
+                state = COLON;
+                if (matchDepth < 0 && filter != null) {
+                    if (!filter[top].matchesKey(next)) {
+                        tokenizer.expectSymbol("key value separator", JsonToken.kKeyValSep);
+                        tokenizer.skipValue();
+                        state = NEXT;
+                        continue;
+                    }
+                    keys[top] = tokenizer.decodeKey(next);
+                } else {
+                    keys[top] = tokenizer.decodeKey(next);
+                    token = next;
+                    event = Event.KEY;
+                }
+            } else {
+                JsonToken next = tokenizer.peek("list value or end");
+                if (next.isSymbol(JsonToken.kListEnd)) {
+                    tokenizer.next();
+                    endContainer(Event.END_ARRAY);
+                    continue;
+                }
+                if (state == NEXT) {
+                    if (!next.isSymbol(JsonToken.kListSep)) {
+                        throw new JsonException("Expected list separator or end: but found '" + next.asString() + "'",
+                                                tokenizer, next);
+                    }
+                    tokenizer.next();
+                }
+                ++counts[top];
+                startValue("list value");
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Skip the current value. If the last event was a key, the value of
+     * that key is skipped. If the last event was the start of an object or
+     * array, the rest of that object or array is skipped, including the end.
+     * Otherwise nothing happens.
+     *
+     * @throws JsonException If the skipped content is not terminated.
+     * @throws IOException If unable to read from stream.
+     */
+    public void skipValue() throws IOException, JsonException {
+        if (event == Event.KEY) {
+            tokenizer.expectSymbol("key value separator", JsonToken.kKeyValSep);
+            tokenizer.skipValue();
+            state = NEXT;
+        } else if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+            --depth;
+            tokenizer.skipRestOfContainer();
+            state = NEXT;
+            if (matchDepth == depth) {
+                matchDepth = -1;
+            }
+        } else {
+            return;
+        }
+        token = null;
+        event = null;
+    }
+
+    /**
+     * @return The last returned event, or null if none.
+     */
+    @Nullable
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Get the token of the current key or value. The token is only valid
+     * until the next call to the parser.
+     *
+     * @return The current token, or null if the last event was not a key or
+     *         value.
+     */
+    @Nullable
+    public JsonToken getToken() {
+        return token;
+    }
+
+    /**
+     * @return The number of objects and arrays the parser is currently in.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the path of the current value, e.g. <code>$.items[4].id</code>. For
+     * the start and end of objects and arrays it is the path of the object or
+     * array itself.
+     *
+     * @return The current path.
+     */
+    @Nonnull
+    public String getPath() {
+        StringBuilder builder = new StringBuilder("$");
+        for (int i = 0; i < depth; ++i) {
+            if (counts[i] == 0) {
+                // Start of object or array.
+                break;
+            }
+            if (objects[i]) {
+                builder.append('.').append(keys[i]);
+            } else {
+                builder.append('[').append(counts[i] - 1).append(']');
+            }
+        }
+        return builder.toString();
+    }
+
+    // --- INTERNAL ---
+
+    private void startValue(String message) throws IOException, JsonException {
+        final JsonToken next = tokenizer.peek(message);
+        final boolean object = next.isSymbol(JsonToken.kMapStart);
+        final boolean container = object || next.isSymbol(JsonToken.kListStart);
+        if (!container && !next.isLiteral() && !next.isNumber() && !next.isBoolean() && !next.isNull()) {
+            throw new JsonException("Expected " + message + ": but found '" + next.asString() + "'",
+                                    tokenizer, next);
+        }
+
+        if (matchDepth < 0 && filter != null) {
+            if (depth > 0 && !objects[depth - 1] &&
+                !filter[depth - 1].matchesIndex(counts[depth - 1] - 1)) {
+                tokenizer.skipValue();
+                state = NEXT;
+                return;
+            }
+            if (depth < filter.length) {
+                if (container) {
+                    // On the path to a match, but not matching itself.
+                    tokenizer.next();
+                    push(object);
+                } else {
+                    tokenizer.skipValue();
+                    state = NEXT;
+                }
+                return;
+            }
+            matchDepth = depth;
+        }
+
+        tokenizer.next();
+        if (container) {
+            push(object);
+            event = object ? Event.START_OBJECT : Event.START_ARRAY;
+        } else {
+            state = NEXT;
+            token = next;
+            event = Event.VALUE;
+            if (matchDepth == depth) {
+                matchDepth = -1;
+            }
+        }
+    }
+
+    private void push(boolean object) {
+        if (depth == objects.length) {
+            objects = Arrays.copyOf(objects, depth * 2);
+            counts = Arrays.copyOf(counts, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+        }
+        objects[depth] = object;
+        counts[depth] = 0;
+        keys[depth] = null;
+        ++depth;
+        state = FIRST;
+    }
+
+    private void endContainer(Event end) {
+        --depth;
+        state = NEXT;
+        if (matchDepth < 0 && filter != null) {
+            return;
+        }
+        if (matchDepth == depth) {
+            matchDepth = -1;
+        }
+        event = end;
+    }
+
+    private static Segment[] parseFilter(String path) {
+        if (!path.startsWith("$")) {
+            throw new IllegalArgumentException("Path filter must start with '$': " + path);
+        }
+        List<Segment> segments = new ArrayList<>();
+        int i = 1;
+        while (i < path.length()) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                int end = i + 1;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    ++end;
+                }
+                if (end == i + 1) {
+                    throw new IllegalArgumentException("Empty field name at position " + i + " in path filter: " + path);
+                }
+                String name = path.substring(i + 1, end);
+                segments.add(name.equals("*") ? new Segment(null, -1) : new Segment(name, -1));
+                i = end;
+            } else if (c == '[') {
+                int end = path.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated '[' at position " + i + " in path filter: " + path);
+                }
+                String inner = path.substring(i + 1, end);
+                if (inner.equals("*")) {
+                    segments.add(new Segment(null, -1));
+                } else if (inner.length() >= 2 &&
+                           (inner.charAt(0) == '\'' || inner.charAt(0) == '\"') &&
+                           inner.charAt(inner.length() - 1) == inner.charAt(0)) {
+                    segments.add(new Segment(inner.substring(1, inner.length() - 1), -1));
+                } else {
+                    try {
+                        int index = Integer.parseInt(inner);
+                        if (index < 0) {
+                            throw new NumberFormatException();
+                        }
+                        segments.add(new Segment(null, index));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid index '" + inner + "' in path filter: " + path);
+                    }
+                }
+                i = end + 1;
+            } else {
+                throw new IllegalArgumentException("Unexpected '" + c + "' at position " + i + " in path filter: " + path);
+            }
+        }
+        return segments.toArray(new Segment[0]);
+    }
+
+    /**
+     * A single step of the path filter. A segment with neither name nor
+     * index matches anything.
+     */
+    private static class Segment {
+        private final String name;
+        private final int    index;
+
+        private Segment(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        private boolean matchesKey(JsonToken key) {
+            if (index >= 0) {
+                return false;
+            }
+            if (name == null) {
+                return true;
+            }
+            if (key.contains(JsonToken.kEscape)) {
+                return name.equals(key.decodeJsonLiteral());
+            }
+            // Compare the raw literal content without decoding it.
+            if (key.length() != name.length() + 2) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); ++i) {
+                if (key.charAt(i + 1) != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matchesIndex(int i) {
+            return name == null && (index < 0 || index == i);
+        }
+    }
+}
@@ -23,6 +23,7 @@ package net.morimekta.util.json;
 import net.morimekta.util.CharSlice;
 
 import javax.annotation.Nonnull;
+import java.math.BigDecimal;
 import java.util.Objects;
 
 /**
@@ -59,15 +60,41 @@ public class JsonToken extends CharSlice {
     static final char kNewLine        = '\n';
     static final char kCarriageReturn = '\r';
 
+    // Doubles that can be represented exactly, and are exactly multiplied
+    // or divided with an exact power of 10, are correctly rounded.
+    private static final long     MAX_EXACT_DOUBLE = 1L << 53;
+    private static final double[] POWERS_OF_TEN    = new double[]{
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+            1e21, 1e22};
+    private static final long[]   LONG_POWERS_OF_TEN = new long[]{
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+            100000000L, 1000000000L, 10000000000L, 100000000000L,
+            1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L};
+
     public final Type type;
     public final int  lineNo;
     public final int  linePos;
 
+    // The number value as accumulated by the tokenizer, the absolute value
+    // is mantissa * 10^exponent. Only used if exact is true.
+    private final long    mantissa;
+    private final int     exponent;
+    private final boolean exact;
+
     public JsonToken(Type type, char[] lineBuffer, int offset, int len, int lineNo, int linePos) {
+        this(type, lineBuffer, offset, len, lineNo, linePos, 0L, 0, false);
+    }
+
+    JsonToken(Type type, char[] lineBuffer, int offset, int len, int lineNo, int linePos,
+              long mantissa, int exponent, boolean exact) {
         super(lineBuffer, offset, len);
         this.type = type;
         this.lineNo = lineNo;
         this.linePos = linePos;
+        this.mantissa = mantissa;
+        this.exponent = exponent;
+        this.exact = exact;
     }
 
     /**
@@ -140,13 +167,66 @@ public class JsonToken extends CharSlice {
     }
 
     public long longValue() {
+        // Only plain integers, as numbers with fraction or exponent are not
+        // accepted by the parse, even if they are integral.
+        if (exact && exponent == 0 && !containsAny('.', 'e', 'E')) {
+            return isNegative() ? -mantissa : mantissa;
+        }
         return parseInteger();
     }
 
+    /**
+     * Get the number as a long, if it can be represented exactly as a long.
+     * Unlike {@link #longValue()} this also accepts numbers with a fraction
+     * or exponent, as long as the value is integral, e.g. <code>1.5e2</code>.
+     *
+     * @return The long value.
+     * @throws ArithmeticException If the number is not an exact long value.
+     */
+    public long longValueExact() {
+        if (exact && exponent == 0) {
+            return isNegative() ? -mantissa : mantissa;
+        }
+        return decimalValue().longValueExact();
+    }
+
     public double doubleValue() {
+        if (exact && mantissa <= MAX_EXACT_DOUBLE) {
+            double value;
+            if (exponent == 0) {
+                value = (double) mantissa;
+            } else if (exponent < 0 && exponent >= -22) {
+                value = (double) mantissa / POWERS_OF_TEN[-exponent];
+            } else if (exponent > 0 && exponent <= 22) {
+                value = (double) mantissa * POWERS_OF_TEN[exponent];
+            } else if (exponent > 22 && exponent <= 22 + 15 &&
+                       mantissa <= MAX_EXACT_DOUBLE / LONG_POWERS_OF_TEN[exponent - 22]) {
+                // Move part of the exponent into the mantissa, as long as
+                // it is still exact.
+                value = (double) (mantissa * LONG_POWERS_OF_TEN[exponent - 22]) * POWERS_OF_TEN[22];
+            } else {
+                return parseDouble();
+            }
+            return isNegative() ? -value : value;
+        }
         return parseDouble();
     }
 
+    /**
+     * Get the number as an exact decimal value, e.g. for monetary values
+     * that should not be rounded to a double.
+     *
+     * @return The decimal value.
+     * @throws NumberFormatException If the token is not a valid number.
+     */
+    @Nonnull
+    public BigDecimal decimalValue() {
+        if (exact) {
+            return BigDecimal.valueOf(isNegative() ? -mantissa : mantissa, -exponent);
+        }
+        return new BigDecimal(fb, off, len);
+    }
+
     /**
      * Get the still quoted string literal content.
      *
@@ -231,6 +311,21 @@ public class JsonToken extends CharSlice {
         return out.toString();
     }
 
+    /**
+     * Decode the string literal as an object key, using the key cache for
+     * keys that can be cached.
+     *
+     * @param cache The key cache.
+     * @return The decoded key.
+     */
+    String decodeJsonKey(@Nonnull JsonKeyCache cache) {
+        String key = cache.intern(fb, off + 1, len - 2);
+        if (key == null) {
+            return decodeJsonLiteral();
+        }
+        return key;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(JsonToken.class, super.hashCode(), type, lineNo, linePos);
@@ -259,4 +354,10 @@ public class JsonToken extends CharSlice {
     public String toString() {
         return String.format("%s('%s',%d:%d-%d)", type.toString(), asString(), lineNo, linePos, linePos + length());
     }
+
+    // --- INTERNAL ---
+
+    private boolean isNegative() {
+        return len > 0 && fb[off] == '-';
+    }
 }
@@ -40,9 +40,12 @@ import static java.lang.String.format;
  * token type) after the next token has been read.
  */
 public class JsonTokenizer extends LineBufferedReader {
-    private static final int DEFAULT_BUFFER_SIZE = 1 << 11; // 2048 chars --> 4kb
+    private static final int  DEFAULT_BUFFER_SIZE = 1 << 11; // 2048 chars --> 4kb
+    private static final long MANTISSA_LIMIT      = Long.MAX_VALUE / 10;
+    private static final int  EXPONENT_LIMIT      = 100000;
 
-    private JsonToken unreadToken;
+    private JsonToken    unreadToken;
+    private JsonKeyCache keyCache;
 
     /**
      * Create a JSON tokenizer that reads from the input steam. It will only
@@ -339,6 +342,64 @@ public class JsonTokenizer extends LineBufferedReader {
         return null;
     }
 
+    /**
+     * Skip the next JSON value on the stream, including the whole content if
+     * it is an object or an array. If the next token has been peeked, the
+     * skipping starts with that token. The skipped content is only scanned for
+     * string literals and the object and array boundaries, and no tokens are
+     * made for it, so it does not validate the skipped content beyond that.
+     *
+     * @throws JsonException If there is no value to skip, or the value is
+     *         not terminated.
+     * @throws IOException If unable to read from stream.
+     */
+    public void skipValue() throws IOException, JsonException {
+        skip(0);
+    }
+
+    /**
+     * Skip the rest of the object or array whose start symbol was the last
+     * token read, including its end symbol.
+     *
+     * @throws JsonException If the object or array is not terminated.
+     * @throws IOException If unable to read from stream.
+     */
+    void skipRestOfContainer() throws IOException, JsonException {
+        skip(1);
+    }
+
+    /**
+     * Enable interning of object keys decoded with {@link #decodeKey(JsonToken)}.
+     * Repeated keys are then returned as the same string instance, found
+     * without allocating anything.
+     *
+     * @param size The max number of keys to keep, or 0 to disable.
+     */
+    public void setKeyCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative key cache size: " + size);
+        }
+        keyCache = size == 0 ? null : new JsonKeyCache(size);
+    }
+
+    /**
+     * Decode an object key string literal. If the key cache is enabled,
+     * repeated keys are interned.
+     *
+     * @param key The key string literal token.
+     * @return The decoded key.
+     */
+    @Nonnull
+    public String decodeKey(@Nonnull JsonToken key) {
+        if (!key.isLiteral()) {
+            throw new IllegalArgumentException("Not a string literal key: " + key.asString());
+        }
+        if (keyCache == null) {
+            return key.decodeJsonLiteral();
+        }
+        return key.decodeJsonKey(keyCache);
+    }
+
     /**
      * Returns the last line in the buffer. Or empty string if not usable.
      *
@@ -352,6 +413,78 @@ public class JsonTokenizer extends LineBufferedReader {
 
     // --- INTERNAL ---
 
+    private void skip(int depth) throws IOException, JsonException {
+        if (unreadToken != null) {
+            JsonToken tmp = unreadToken;
+            unreadToken = null;
+            if (tmp.isSymbol(JsonToken.kMapStart) || tmp.isSymbol(JsonToken.kListStart)) {
+                ++depth;
+            } else if (tmp.isSymbol()) {
+                if (depth == 0) {
+                    throw new JsonException("Expected value to skip: but found '" + tmp.asString() + "'",
+                                            this, tmp);
+                }
+                if ((tmp.isSymbol(JsonToken.kMapEnd) || tmp.isSymbol(JsonToken.kListEnd)) && --depth == 0) {
+                    return;
+                }
+            } else if (depth == 0) {
+                return;
+            }
+        }
+
+        while (lastChar >= 0) {
+            if (lastChar == 0) {
+                if (!readNextChar()) {
+                    break;
+                }
+            }
+
+            if (lastChar == JsonToken.kNewLine ||
+                lastChar == JsonToken.kCarriageReturn ||
+                lastChar == JsonToken.kSpace ||
+                lastChar == JsonToken.kTab) {
+                lastChar = 0;
+            } else if (lastChar == JsonToken.kDoubleQuote) {
+                skipString();
+                if (depth == 0) {
+                    return;
+                }
+            } else if (lastChar == JsonToken.kMapStart || lastChar == JsonToken.kListStart) {
+                ++depth;
+                lastChar = 0;
+            } else if (lastChar == JsonToken.kMapEnd || lastChar == JsonToken.kListEnd ||
+                       lastChar == JsonToken.kListSep || lastChar == JsonToken.kKeyValSep) {
+                if (depth == 0) {
+                    throw newParseException("Expected value to skip: but found '%c'", (char) lastChar);
+                }
+                final boolean end = lastChar == JsonToken.kMapEnd || lastChar == JsonToken.kListEnd;
+                lastChar = 0;
+                if (end && --depth == 0) {
+                    return;
+                }
+            } else if (isValueChar(lastChar)) {
+                // Numbers and tokens end on the first char that is not part
+                // of them, which is left as the last char.
+                while (readNextChar() && isValueChar(lastChar)) {
+                    // skip.
+                }
+                if (depth == 0) {
+                    return;
+                }
+            } else if (lastChar < 0x20 || lastChar >= 0x7F) {
+                // UTF-8 characters are only allowed inside JSON string literals.
+                throw newParseException("Illegal character in JSON structure: '\\u%04x'", lastChar);
+            } else {
+                throw newParseException("Unexpected symbol in skipped value: '%c'", (char) lastChar);
+            }
+        }
+
+        if (depth == 0) {
+            throw newParseException("Expected value to skip: Got end of file");
+        }
+        throw newParseException("Unexpected end of stream in skipped value");
+    }
+
     @Nonnull
     private JsonToken nextSymbol() {
         lastChar = 0;
@@ -401,6 +534,12 @@ public class JsonTokenizer extends LineBufferedReader {
         int startLine = lineNo;
         // number (any type).
         int len = 0;
+        // The value is accumulated while validating, so the token does not
+        // have to parse the number again. It is only exact as long as the
+        // significant digits fits in the mantissa.
+        long mantissa = 0;
+        int exponent = 0;
+        boolean exact = true;
 
         if (lastChar == '-') {
             // only base 10 decimals can be negative.
@@ -415,13 +554,24 @@ public class JsonTokenizer extends LineBufferedReader {
         }
 
         // decimal part.
+        final int intStart = len;
+        final boolean leadingZero = lastChar == '0';
         while (lastChar >= '0' && lastChar <= '9') {
             ++len;
+            if (mantissa < MANTISSA_LIMIT) {
+                mantissa = mantissa * 10 + (lastChar - '0');
+            } else {
+                exact = false;
+            }
             // numbers are terminated by first non-numeric character.
             if (!readNextChar()) {
                 break;
             }
         }
+        if (leadingZero && len - intStart > 1) {
+            // Leading zeros are parsed as octal by JsonToken.longValue().
+            exact = false;
+        }
         // fraction part.
         if (lastChar == '.') {
             ++len;
@@ -429,6 +579,12 @@ public class JsonTokenizer extends LineBufferedReader {
             if (readNextChar()) {
                 while (lastChar >= '0' && lastChar <= '9') {
                     ++len;
+                    if (mantissa < MANTISSA_LIMIT) {
+                        mantissa = mantissa * 10 + (lastChar - '0');
+                        --exponent;
+                    } else {
+                        exact = false;
+                    }
                     // numbers are terminated by first non-numeric character.
                     if (!readNextChar()) {
                         break;
@@ -447,6 +603,7 @@ public class JsonTokenizer extends LineBufferedReader {
 
             // The exponent can be explicitly prefixed with both '+'
             // and '-'.
+            boolean negativeExponent = lastChar == '-';
             if (lastChar == '-' || lastChar == '+') {
                 ++len;
                 // numbers are terminated by first non-numeric character.
@@ -456,13 +613,20 @@ public class JsonTokenizer extends LineBufferedReader {
                 }
             }
             if (lastChar >= '0' && lastChar <= '9') {
+                int e = 0;
                 while (lastChar >= '0' && lastChar <= '9') {
                     ++len;
+                    if (e < EXPONENT_LIMIT) {
+                        e = e * 10 + (lastChar - '0');
+                    } else {
+                        exact = false;
+                    }
                     // numbers are terminated by first non-numeric character.
                     if (!readNextChar()) {
                         break;
                     }
                 }
+                exponent += negativeExponent ? -e : e;
             } else {
                 String tmp = new String(buffer, startOffset, len + 1);
                 throw newParseException("Badly terminated JSON exponent: '%s'", tmp);
@@ -479,7 +643,8 @@ public class JsonTokenizer extends LineBufferedReader {
             lastChar == JsonToken.kTab ||
             lastChar == JsonToken.kNewLine ||
             lastChar == JsonToken.kCarriageReturn) {
-            return new JsonToken(JsonToken.Type.NUMBER, buffer, startOffset, len, startLine, startPos);
+            return new JsonToken(JsonToken.Type.NUMBER, buffer, startOffset, len, startLine, startPos,
+                                 mantissa, exponent, exact);
         } else {
             String tmp = new String(buffer, startOffset, len + 1);
             throw newParseException("Wrongly terminated JSON number: '%s'", tmp);
@@ -541,6 +706,47 @@ public class JsonTokenizer extends LineBufferedReader {
         }
     }
 
+    private static boolean isValueChar(int ch) {
+        return ch == '_' || ch == '.' || ch == '-' || ch == '+' ||
+               (ch >= '0' && ch <= '9') ||
+               (ch >= 'a' && ch <= 'z') ||
+               (ch >= 'A' && ch <= 'Z');
+    }
+
+    private void skipString() throws IOException, JsonException {
+        boolean esc = false;
+        for (; ; ) {
+            if (!readNextChar()) {
+                throw newParseException("Unexpected end of stream in string literal");
+            }
+
+            if (esc) {
+                esc = false;
+            } else if (lastChar == JsonToken.kEscape) {
+                esc = true;
+            } else if (lastChar == JsonToken.kDoubleQuote) {
+                break;
+            } else if (lastChar == JsonToken.kNewLine) {
+                throw newParseException("Unexpected newline in string literal");
+            } else {
+                // Fast forward over plain chars already in the buffer.
+                final int last = bufferLimit - 1;
+                int off = bufferOffset;
+                while (off < last) {
+                    char ch = buffer[off + 1];
+                    if (ch == JsonToken.kDoubleQuote || ch == JsonToken.kEscape || ch == JsonToken.kNewLine) {
+                        break;
+                    }
+                    ++off;
+                }
+                linePos += off - bufferOffset;
+                bufferOffset = off;
+                lastChar = buffer[off];
+            }
+        }
+        lastChar = 0;
+    }
+
     @Nonnull
     private JsonException newMismatchException(String format, Object... params) throws IOException {
         if (params.length > 0) {
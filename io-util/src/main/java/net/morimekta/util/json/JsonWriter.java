@@ -20,11 +20,15 @@
  */
 package net.morimekta.util.json;
 
+import net.morimekta.util.Base64;
 import net.morimekta.util.Binary;
 import net.morimekta.util.io.Utf8StreamWriter;
 
+import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.util.Stack;
 
 import static java.lang.Character.isSurrogate;
@@ -32,14 +36,42 @@ import static net.morimekta.util.Strings.isConsolePrintable;
 
 /**
  * IO-optimized JSON writer.
+ * <p>
+ * Escaped strings, numbers and binary values are built in a small internal
+ * char buffer, which is handed to the print writer in bulk at the end of each
+ * call. Escapes are looked up from a precomputed table, and numbers and base64
+ * are written directly to the buffer, so none of the common key and value
+ * calls create intermediate strings.
  */
 public class JsonWriter {
     public static final String kNull  = "null";
     public static final String kTrue  = "true";
     public static final String kFalse = "false";
 
+    private static final int      BUFFER_SIZE = 1 << 10;  // 1k chars
+    private static final char[]   HEX         = "0123456789abcdef".toCharArray();
+    private static final char[][] ESCAPES     = new char[0x80][];
+    static {
+        for (char c = 0; c < 0x20; ++c) {
+            ESCAPES[c] = new char[]{'\\', 'u', '0', '0', HEX[c >>> 4], HEX[c & 0xf]};
+        }
+        ESCAPES[0x7f] = new char[]{'\\', 'u', '0', '0', '7', 'f'};
+        ESCAPES['\b'] = new char[]{'\\', 'b'};
+        ESCAPES['\t'] = new char[]{'\\', 't'};
+        ESCAPES['\n'] = new char[]{'\\', 'n'};
+        ESCAPES['\f'] = new char[]{'\\', 'f'};
+        ESCAPES['\r'] = new char[]{'\\', 'r'};
+        ESCAPES['\"'] = new char[]{'\\', '\"'};
+        ESCAPES['\\'] = new char[]{'\\', '\\'};
+    }
+
     private final PrintWriter        writer;
     private final Stack<JsonContext> stack;
+    private final char[]             buffer;
+    private final StringBuilder      doubleBuilder;
+    private final Base64Sink         base64Sink;
+
+    private int bufferPos;
 
     protected JsonContext context;
 
@@ -50,6 +82,9 @@ public class JsonWriter {
     public JsonWriter(PrintWriter writer) {
         this.writer = writer;
         this.stack = new Stack<>();
+        this.buffer = new char[BUFFER_SIZE];
+        this.doubleBuilder = new StringBuilder(32);
+        this.base64Sink = new Base64Sink();
 
         context = new JsonContext(JsonContext.Mode.VALUE);
     }
@@ -153,10 +188,11 @@ public class JsonWriter {
     public JsonWriter key(byte key) {
         startKey();
 
-        writer.write('\"');
-        writer.print((int) key);
-        writer.write('\"');
-        writer.write(':');
+        append('\"');
+        appendLong(key);
+        append('\"');
+        append(':');
+        flushBuffer();
         return this;
     }
 
@@ -169,10 +205,11 @@ public class JsonWriter {
     public JsonWriter key(short key) {
         startKey();
 
-        writer.write('\"');
-        writer.print((int) key);
-        writer.write('\"');
-        writer.write(':');
+        append('\"');
+        appendLong(key);
+        append('\"');
+        append(':');
+        flushBuffer();
         return this;
     }
 
@@ -185,10 +222,11 @@ public class JsonWriter {
     public JsonWriter key(int key) {
         startKey();
 
-        writer.write('\"');
-        writer.print(key);
-        writer.write('\"');
-        writer.write(':');
+        append('\"');
+        appendLong(key);
+        append('\"');
+        append(':');
+        flushBuffer();
         return this;
     }
 
@@ -201,10 +239,11 @@ public class JsonWriter {
     public JsonWriter key(long key) {
         startKey();
 
-        writer.write('\"');
-        writer.print(key);
-        writer.write('\"');
-        writer.write(':');
+        append('\"');
+        appendLong(key);
+        append('\"');
+        append(':');
+        flushBuffer();
         return this;
     }
 
@@ -217,15 +256,11 @@ public class JsonWriter {
     public JsonWriter key(double key) {
         startKey();
 
-        writer.write('\"');
-        final long i = (long) key;
-        if (key == (double) i) {
-            writer.print(i);
-        } else {
-            writer.print(key);
-        }
-        writer.write('\"');
-        writer.write(':');
+        append('\"');
+        appendDouble(key);
+        append('\"');
+        append(':');
+        flushBuffer();
         return this;
     }
 
@@ -260,10 +295,11 @@ public class JsonWriter {
             throw new IllegalArgumentException("Expected map key, but got null.");
         }
 
-        writer.write('\"');
-        writer.write(key.toString());
-        writer.write('\"');
-        writer.write(':');
+        append('\"');
+        appendRaw(key);
+        append('\"');
+        append(':');
+        flushBuffer();
         return this;
 
     }
@@ -281,10 +317,11 @@ public class JsonWriter {
             throw new IllegalArgumentException("Expected map key, but got null.");
         }
 
-        writer.write('\"');
-        writer.write(key.toBase64());
-        writer.write('\"');
-        writer.write(':');
+        append('\"');
+        appendBase64(key);
+        append('\"');
+        append(':');
+        flushBuffer();
         return this;
     }
 
@@ -301,8 +338,9 @@ public class JsonWriter {
             throw new IllegalArgumentException("Expected map key, but got null.");
         }
 
-        writer.write(key.toString());
-        writer.write(':');
+        appendRaw(key);
+        append(':');
+        flushBuffer();
         return this;
     }
 
@@ -328,7 +366,8 @@ public class JsonWriter {
     public JsonWriter value(byte value) {
         startValue();
 
-        writer.print((int) value);
+        appendLong(value);
+        flushBuffer();
         return this;
     }
 
@@ -341,7 +380,8 @@ public class JsonWriter {
     public JsonWriter value(short value) {
         startValue();
 
-        writer.print((int) value);
+        appendLong(value);
+        flushBuffer();
         return this;
     }
 
@@ -354,7 +394,8 @@ public class JsonWriter {
     public JsonWriter value(int value) {
         startValue();
 
-        writer.print(value);
+        appendLong(value);
+        flushBuffer();
         return this;
     }
 
@@ -367,7 +408,8 @@ public class JsonWriter {
     public JsonWriter value(long value) {
         startValue();
 
-        writer.print(value);
+        appendLong(value);
+        flushBuffer();
         return this;
     }
 
@@ -380,12 +422,8 @@ public class JsonWriter {
     public JsonWriter value(double value) {
         startValue();
 
-        final long i = (long) value;
-        if (value == (double) i) {
-            writer.print(i);
-        } else {
-            writer.print(value);
-        }
+        appendDouble(value);
+        flushBuffer();
         return this;
     }
 
@@ -418,9 +456,10 @@ public class JsonWriter {
         if (value == null) {
             writer.write(kNull);
         } else {
-            writer.write('\"');
-            writer.write(value.toString());
-            writer.write('\"');
+            append('\"');
+            appendRaw(value);
+            append('\"');
+            flushBuffer();
         }
         return this;
     }
@@ -437,9 +476,10 @@ public class JsonWriter {
         if (value == null) {
             writer.write(kNull);
         } else {
-            writer.write('\"');
-            writer.write(value.toBase64());
-            writer.write('\"');
+            append('\"');
+            appendBase64(value);
+            append('\"');
+            flushBuffer();
         }
         return this;
     }
@@ -456,7 +496,8 @@ public class JsonWriter {
         if (value == null) {
             writer.write(kNull);
         } else {
-            writer.write(value.toString());
+            appendRaw(value);
+            flushBuffer();
         }
         return this;
     }
@@ -499,62 +540,201 @@ public class JsonWriter {
         return false;
     }
 
-    // Ported from org.json JSONObject.quote and modified for local use.
     private void writeQuotedAndEscaped(CharSequence string) {
-        if (string != null && string.length() != 0) {
-            int len = string.length();
-            writer.write('\"');
-
-            for (int i = 0; i < len; ++i) {
-                char cp = string.charAt(i);
-                if ((cp < 0x7f &&
-                     cp >= 0x20 &&
-                     cp != '\"' &&
-                     cp != '\\') ||
-                    (cp > 0x7f &&
-                     isConsolePrintable(cp) &&
-                     !isSurrogate(cp))) {
-                    // quick bypass for direct printable chars.
-                    writer.write(cp);
-                } else {
-                    switch (cp) {
-                        case '\b':
-                            writer.write("\\b");
-                            break;
-                        case '\t':
-                            writer.write("\\t");
-                            break;
-                        case '\n':
-                            writer.write("\\n");
-                            break;
-                        case '\f':
-                            writer.write("\\f");
-                            break;
-                        case '\r':
-                            writer.write("\\r");
-                            break;
-                        case '\"':
-                        case '\\':
-                            writer.write('\\');
-                            writer.write(cp);
-                            break;
-                        default:
-                            if (isSurrogate(cp) && (i + 1) < len) {
-                                char c2 = string.charAt(i + 1);
-                                writer.format("\\u%04x", (int) cp);
-                                writer.format("\\u%04x", (int) c2);
-                                ++i;
-                            } else {
-                                writer.format("\\u%04x", (int) cp);
-                            }
-                            break;
-                    }
+        final int len = string.length();
+        append('\"');
+        int i = 0;
+        while (i < len) {
+            // Copy the run of chars that need no escaping, as far as there
+            // is room in the buffer.
+            if (bufferPos == buffer.length) {
+                flushBuffer();
+            }
+            final int end = Math.min(len, i + buffer.length - bufferPos);
+            char c = 0;
+            while (i < end) {
+                c = string.charAt(i);
+                if (c < 0x80 ? ESCAPES[c] != null : (isSurrogate(c) || !isConsolePrintable(c))) {
+                    break;
                 }
+                buffer[bufferPos++] = c;
+                ++i;
+            }
+            if (i == end) {
+                continue;
+            }
+
+            ensureRoom(12);
+            if (c < 0x80) {
+                final char[] escape = ESCAPES[c];
+                System.arraycopy(escape, 0, buffer, bufferPos, escape.length);
+                bufferPos += escape.length;
+            } else if (isSurrogate(c) && (i + 1) < len) {
+                appendUnicodeEscape(c);
+                appendUnicodeEscape(string.charAt(++i));
+            } else {
+                appendUnicodeEscape(c);
             }
+            ++i;
+        }
+        append('\"');
+        flushBuffer();
+    }
+
+    private void appendUnicodeEscape(char c) {
+        buffer[bufferPos++] = '\\';
+        buffer[bufferPos++] = 'u';
+        buffer[bufferPos++] = HEX[(c >>> 12) & 0xf];
+        buffer[bufferPos++] = HEX[(c >>> 8) & 0xf];
+        buffer[bufferPos++] = HEX[(c >>> 4) & 0xf];
+        buffer[bufferPos++] = HEX[c & 0xf];
+    }
 
-            writer.write('\"');
+    private void appendRaw(CharSequence string) {
+        final int len = string.length();
+        int i = 0;
+        while (i < len) {
+            if (bufferPos == buffer.length) {
+                flushBuffer();
+            }
+            final int n = Math.min(len - i, buffer.length - bufferPos);
+            if (string instanceof String) {
+                ((String) string).getChars(i, i + n, buffer, bufferPos);
+            } else {
+                for (int j = 0; j < n; ++j) {
+                    buffer[bufferPos + j] = string.charAt(i + j);
+                }
+            }
+            bufferPos += n;
+            i += n;
+        }
+    }
+
+    private void appendLong(long value) {
+        ensureRoom(20);
+        // Digits are generated from the negative value, as that also
+        // covers Long.MIN_VALUE.
+        long rest = value;
+        if (value < 0) {
+            buffer[bufferPos++] = '-';
         } else {
-            writer.write("\"\"");
+            rest = -value;
+        }
+        final int start = bufferPos;
+        do {
+            buffer[bufferPos++] = (char) ('0' - (rest % 10));
+            rest /= 10;
+        } while (rest != 0);
+        for (int lo = start, hi = bufferPos - 1; lo < hi; ++lo, --hi) {
+            char tmp = buffer[lo];
+            buffer[lo] = buffer[hi];
+            buffer[hi] = tmp;
+        }
+    }
+
+    private void appendDouble(double value) {
+        final long i = (long) value;
+        if (value == (double) i) {
+            appendLong(i);
+        } else {
+            // The string builder appends the digits without making a
+            // String, and the result is the same as Double.toString().
+            doubleBuilder.setLength(0);
+            doubleBuilder.append(value);
+            ensureRoom(doubleBuilder.length());
+            doubleBuilder.getChars(0, doubleBuilder.length(), buffer, bufferPos);
+            bufferPos += doubleBuilder.length();
+        }
+    }
+
+    private void appendBase64(Binary binary) {
+        try {
+            // Binary writes its backing array or buffer directly to the sink.
+            binary.write(base64Sink);
+            base64Sink.finish();
+        } catch (IOException e) {
+            // Not thrown by the sink.
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+
+    private void append(char c) {
+        if (bufferPos == buffer.length) {
+            flushBuffer();
+        }
+        buffer[bufferPos++] = c;
+    }
+
+    private void ensureRoom(int chars) {
+        if (bufferPos + chars > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() {
+        if (bufferPos > 0) {
+            writer.write(buffer, 0, bufferPos);
+            bufferPos = 0;
+        }
+    }
+
+    /**
+     * Output stream encoding base64 directly into the char buffer. Only
+     * whole 3-byte groups are encoded as they are written, and the last
+     * partial group is kept until {@link #finish()}, so a binary can be
+     * written in any number of chunks.
+     */
+    private class Base64Sink extends OutputStream {
+        private final byte[] group = new byte[3];
+        private int          groupLen;
+
+        @Override
+        public void write(int b) {
+            group[groupLen++] = (byte) b;
+            if (groupLen == 3) {
+                encodeGroup();
+            }
+        }
+
+        @Override
+        public void write(@Nonnull byte[] bytes, int off, int len) {
+            // Complete the partial group from the last write first.
+            while (groupLen > 0 && len > 0) {
+                write(bytes[off++]);
+                --len;
+            }
+            // Then encode the whole groups, and keep the rest.
+            int whole = len - len % 3;
+            while (whole > 0) {
+                // Each 3 byte group is 4 chars.
+                int room = ((buffer.length - bufferPos) / 4) * 3;
+                if (room == 0) {
+                    flushBuffer();
+                    room = (buffer.length / 4) * 3;
+                }
+                final int n = Math.min(whole, room);
+                bufferPos += Base64.encode(bytes, off, n, buffer, bufferPos);
+                off += n;
+                len -= n;
+                whole -= n;
+            }
+            System.arraycopy(bytes, off, group, 0, len);
+            groupLen = len;
+        }
+
+        /**
+         * Encode the last partial group, ending the binary.
+         */
+        private void finish() {
+            if (groupLen > 0) {
+                encodeGroup();
+            }
+        }
+
+        private void encodeGroup() {
+            ensureRoom(4);
+            bufferPos += Base64.encode(group, 0, groupLen, buffer, bufferPos);
+            groupLen = 0;
         }
     }
 }
@@ -24,8 +24,12 @@ import org.junit.Test;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
@@ -56,6 +60,27 @@ public class Base64Test {
         assertEquals("YWFhYWFhYWE", new String(Base64.encode(Strings.times("a", 8).getBytes(UTF_8))));
     }
 
+    @Test
+    public void testEncodeToChars() {
+        byte[] source = lorem.getBytes(UTF_8);
+        for (int len = 0; len < 10; ++len) {
+            char[] dest = new char[20];
+            int n = Base64.encode(source, 3, len, dest, 2);
+            assertEquals(Base64.encodeToString(source, 3, len), new String(dest, 2, n));
+        }
+
+        char[] dest = new char[source.length * 2];
+        int n = Base64.encode(source, 0, source.length, dest, 0);
+        assertEquals(Base64.encodeToString(source), new String(dest, 0, n));
+
+        try {
+            Base64.encode(source, 0, 4, new char[6], 1);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not room for 6 chars at offset 1 in array of length 6", e.getMessage());
+        }
+    }
+
     @Test
     public void testEncodeBadInput() {
         assertBadEncodeInput("Cannot serialize a null array.", null, 0, 1);
@@ -65,6 +90,136 @@ public class Base64Test {
                              lorem.getBytes(UTF_8), 100, 500);
     }
 
+    @Test
+    public void testEncoders() {
+        Random random = new Random(1234);
+        for (int size = 0; size < 200; ++size) {
+            byte[] source = new byte[size + 5];
+            random.nextBytes(source);
+
+            assertEncoder(java.util.Base64.getEncoder().withoutPadding(), Base64.encoder(), source, 3, size);
+            assertEncoder(java.util.Base64.getEncoder(), Base64.encoder().withPadding(true), source, 3, size);
+            assertEncoder(java.util.Base64.getUrlEncoder().withoutPadding(), Base64.urlSafeEncoder(), source, 3, size);
+            assertEncoder(java.util.Base64.getMimeEncoder(), Base64.mimeEncoder(), source, 3, size);
+            assertEncoder(java.util.Base64.getMimeEncoder(8, "\n".getBytes(US_ASCII)).withoutPadding(),
+                          Base64.mimeEncoder().withPadding(false).withLineWrapping(10, "\n"),
+                          source, 3, size);
+        }
+
+        assertEquals(0, Base64.mimeEncoder().withLineWrapping(3, "\n").getLineLength());
+        assertEquals("", Base64.mimeEncoder().withLineWrapping(3, "\n").getLineSeparator());
+        assertEquals(76, Base64.mimeEncoder().getLineLength());
+        assertEquals("\r\n", Base64.mimeEncoder().getLineSeparator());
+
+        try {
+            Base64.encoder().withLineWrapping(-1, "\n");
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Negative line length: -1", e.getMessage());
+        }
+        try {
+            Base64.encoder().withLineWrapping(76, "\n-");
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid line separator \"\\n-\"", e.getMessage());
+        }
+        try {
+            Base64.mimeEncoder().encode(new byte[4], 0, 4, new byte[8], 1);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not room for 8 chars at offset 1 in array of length 8", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testEncodeByteBuffer() {
+        byte[] source = lorem.getBytes(UTF_8);
+        String expected = Base64.mimeEncoder().encodeToString(source, 0, source.length);
+
+        for (ByteBuffer src : new ByteBuffer[]{ByteBuffer.wrap(source), direct(source)}) {
+            for (ByteBuffer dest : new ByteBuffer[]{ByteBuffer.allocate(1000), ByteBuffer.allocateDirect(1000)}) {
+                dest.put((byte) '_');
+                assertEquals(expected.length(), Base64.mimeEncoder().encode(src, dest));
+                assertEquals(0, src.remaining());
+                assertEquals(1 + expected.length(), dest.position());
+                dest.flip();
+                byte[] encoded = new byte[dest.remaining()];
+                dest.get(encoded);
+                assertEquals("_" + expected, new String(encoded, US_ASCII));
+                src.rewind();
+            }
+        }
+
+        try {
+            Base64.encoder().encode(ByteBuffer.wrap(source), ByteBuffer.allocate(10));
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not room for 594 chars in buffer with 10 remaining", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeInto() {
+        Random random = new Random(4321);
+        for (int size = 0; size < 200; ++size) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+
+            for (String encoded : new String[]{
+                    java.util.Base64.getEncoder().encodeToString(data),
+                    java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(data),
+                    java.util.Base64.getMimeEncoder().encodeToString(data),
+                    java.util.Base64.getMimeEncoder(4, " ".getBytes(US_ASCII)).encodeToString(data)}) {
+                byte[] source = ("__" + encoded).getBytes(US_ASCII);
+                byte[] dest = new byte[1 + Base64.maxDecodedLength(encoded.length())];
+                int n = Base64.decode(source, 2, encoded.length(), dest, 1);
+                assertEquals(size, n);
+                byte[] decoded = new byte[n];
+                System.arraycopy(dest, 1, decoded, 0, n);
+                assertArrayEquals(data, decoded);
+                assertArrayEquals(data, Base64.decode(encoded));
+            }
+        }
+
+        try {
+            Base64.decode("YWFh".getBytes(US_ASCII), 0, 4, new byte[3], 1);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not room for 3 bytes at offset 1 in array of length 3", e.getMessage());
+        }
+        try {
+            Base64.decode("YWFh".getBytes(US_ASCII), 0, 4, null, 0);
+            fail("no exception");
+        } catch (NullPointerException e) {
+            assertEquals("Cannot decode into a null array.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeByteBuffer() {
+        byte[] data = lorem.getBytes(UTF_8);
+        byte[] source = Base64.mimeEncoder().encode(data, 0, data.length);
+
+        for (ByteBuffer src : new ByteBuffer[]{ByteBuffer.wrap(source), direct(source)}) {
+            for (ByteBuffer dest : new ByteBuffer[]{ByteBuffer.allocate(500), ByteBuffer.allocateDirect(500)}) {
+                assertEquals(data.length, Base64.decode(src, dest));
+                assertEquals(0, src.remaining());
+                dest.flip();
+                byte[] decoded = new byte[dest.remaining()];
+                dest.get(decoded);
+                assertArrayEquals(data, decoded);
+                src.rewind();
+            }
+        }
+
+        try {
+            Base64.decode(ByteBuffer.wrap(source), ByteBuffer.allocate(10));
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not room for 457 bytes in buffer with 10 remaining", e.getMessage());
+        }
+    }
+
     @Test
     public void testDecodeSizes() {
         assertEquals("", new String(Base64.decode("")));
@@ -145,6 +300,32 @@ public class Base64Test {
         constructor.setAccessible(false);
     }
 
+    private void assertEncoder(java.util.Base64.Encoder expected, Base64.Encoder encoder,
+                               byte[] source, int off, int len) {
+        byte[] slice = new byte[len];
+        System.arraycopy(source, off, slice, 0, len);
+        String encoded = expected.encodeToString(slice);
+
+        assertEquals(encoded.length(), encoder.encodedLength(len));
+        assertEquals(encoded, encoder.encodeToString(source, off, len));
+        assertEquals(encoded, new String(encoder.encode(source, off, len), US_ASCII));
+
+        byte[] bytes = new byte[encoded.length() + 2];
+        assertEquals(encoded.length(), encoder.encode(source, off, len, bytes, 2));
+        assertEquals(encoded, new String(bytes, 2, encoded.length(), US_ASCII));
+
+        char[] chars = new char[encoded.length() + 2];
+        assertEquals(encoded.length(), encoder.encode(source, off, len, chars, 2));
+        assertEquals(encoded, new String(chars, 2, encoded.length()));
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
     private void assertBadEncodeInput(String message, byte[] source, int off, int len) {
         try {
             Base64.encode(source, off, len);
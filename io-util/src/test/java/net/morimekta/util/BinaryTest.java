@@ -27,9 +27,15 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.TreeSet;
 import java.util.UUID;
 
@@ -39,7 +45,6 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
-import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -184,11 +189,156 @@ public class BinaryTest {
 
     @Test
     public void testGetByteBuffer() {
-        // Just test that the byte buffer contains a copy, and not the
-        // original array.
-        Binary a = Binary.wrap(a1);
+        // The byte buffer is a read-only view of the content, so the
+        // original array is not exposed.
+        Binary a = Binary.wrap(c1, 1, 2);
         ByteBuffer b = a.getByteBuffer();
-        assertNotSame(a1, b.array());
+        assertTrue(b.isReadOnly());
+        assertFalse(b.hasArray());
+        assertThat(b.remaining(), is(2));
+        assertThat(b.get(0), is((byte) 'b'));
+        assertThat(b.get(1), is((byte) 'c'));
+    }
+
+    @Test
+    public void testWrapRange() {
+        Binary a = Binary.wrap(c1, 0, 3);
+        Binary b = Binary.wrap(c1, 1, 3);
+
+        assertThat(a, is(Binary.wrap(a1)));
+        assertThat(a.hashCode(), is(Binary.wrap(a1).hashCode()));
+        assertThat(a.length(), is(3));
+        assertThat(b.toHexString(), is("626364"));
+        assertThat(b.toBase64(), is(Binary.wrap(new byte[]{'b', 'c', 'd'}).toBase64()));
+        assertArrayEquals(new byte[]{'b', 'c', 'd'}, b.get());
+
+        // Shares the original array.
+        c1[1] = 'x';
+        assertThat(b.toString(), is("binary(786364)"));
+
+        try {
+            Binary.wrap(c1, 2, 3);
+            fail("No exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Illegal range off:2, len:3 for 4 bytes"));
+        }
+    }
+
+    @Test
+    public void testWrapByteBuffer() throws IOException {
+        ByteBuffer heap = ByteBuffer.wrap(c1);
+        heap.position(1);
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.put(c2);
+        direct.position(1);
+
+        Binary a = Binary.wrap(heap);
+        Binary b = Binary.wrap(direct);
+        assertThat(heap.position(), is(1));
+        assertThat(direct.position(), is(1));
+
+        assertThat(a, is(b));
+        assertThat(b, is(a));
+        assertThat(b.hashCode(), is(a.hashCode()));
+        assertThat(b.compareTo(a), is(0));
+        assertThat(b.toString(), is("binary(626364)"));
+        assertThat(b.toHexString(), is("626364"));
+        assertThat(b.toBase64(), is(a.toBase64()));
+        assertArrayEquals(new byte[]{'b', 'c', 'd'}, b.get());
+        assertThat(b.getByteBuffer(), is(a.getByteBuffer()));
+        assertThat(b.slice(1, 2), is(Binary.wrap(new byte[]{'c', 'd'})));
+        assertThat(b.slice(1, 2).compareTo(a.slice(0, 2)), is(1));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        b.write(baos);
+        IOUtils.copy(b.getInputStream(), baos);
+        assertThat(baos.toString("UTF-8"), is("bcdbcd"));
+
+        try {
+            b.getByteBuffer().put((byte) 0);
+            fail("No exception");
+        } catch (ReadOnlyBufferException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testSlice() {
+        byte[] content = new byte[100];
+        new Random(42).nextBytes(content);
+        Binary binary = Binary.wrap(content);
+
+        for (int off = 0; off < 30; ++off) {
+            for (int len = 0; len < 30; ++len) {
+                Binary slice = binary.slice(off, len);
+                Binary copy = Binary.copy(content, off, len);
+                assertThat(slice, is(copy));
+                assertThat(slice.hashCode(), is(copy.hashCode()));
+                assertThat(slice.slice(0, len / 2), is(copy.slice(0, len / 2)));
+            }
+        }
+
+        try {
+            binary.slice(90, 11);
+            fail("No exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Illegal range off:90, len:11 for 100 bytes"));
+        }
+    }
+
+    @Test
+    public void testCompareLong() {
+        // Long enough to be compared 8 bytes at a time.
+        byte[] content = new byte[40];
+        new Random(42).nextBytes(content);
+        Binary a = Binary.copy(content);
+        for (int i = 0; i < content.length; ++i) {
+            byte[] other = Arrays.copyOf(content, content.length);
+            other[i] = (byte) (other[i] + 1);
+            int expected = content[i] < other[i] ? -1 : 1;
+            ByteBuffer direct = ByteBuffer.allocateDirect(other.length);
+            direct.put(other);
+            direct.flip();
+
+            assertNotEquals(a, Binary.wrap(other));
+            assertThat(a.compareTo(Binary.wrap(other)), is(expected));
+            assertThat(a.compareTo(Binary.wrap(direct)), is(expected));
+            assertThat(Binary.wrap(direct).compareTo(a), is(-expected));
+        }
+        assertThat(a.compareTo(Binary.wrap(content, 0, 39)), is(1));
+        assertThat(Binary.wrap(content, 0, 39).compareTo(a), is(-1));
+    }
+
+    @Test
+    public void testWriteTo() throws IOException {
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.put(c1);
+        direct.flip();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(baos);
+        assertThat(Binary.wrap(direct).writeTo(channel), is(4));
+        assertThat(Binary.wrap(a1).slice(1, 2).writeTo(channel), is(2));
+        assertThat(baos.toString("UTF-8"), is("abcdbc"));
+    }
+
+    @Test
+    public void testSerializable() throws IOException, ClassNotFoundException {
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.put(c1);
+        direct.flip();
+
+        for (Binary binary : new Binary[]{Binary.wrap(c1), Binary.wrap(c1, 1, 2), Binary.wrap(direct)}) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+                out.writeObject(binary);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+                Binary read = (Binary) in.readObject();
+                assertThat(read, is(binary));
+                assertThat(read.length(), is(binary.length()));
+            }
+        }
     }
 
     @Test
@@ -12,7 +12,9 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static net.morimekta.util.BinaryUtil.fromBinaryCollection;
+import static net.morimekta.util.BinaryUtil.fromBinaryRecords;
 import static net.morimekta.util.BinaryUtil.toBinaryCollection;
+import static net.morimekta.util.BinaryUtil.toBinaryRecords;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -46,4 +48,18 @@ public class BinaryUtilTest {
         assertThat(expected, is(actual));
     }
 
+    @Test
+    public void testReadWriteRecords() throws IOException {
+        List<Binary> expected = IntStream.range(0, random.nextInt(5) + 5)
+                                         .mapToObj(i -> {
+                                             byte[] bytes = new byte[random.nextInt(50) + 50];
+                                             random.nextBytes(bytes);
+                                             return Binary.wrap(bytes);
+                                         }).collect(Collectors.toList());
+        byte[] converted = fromBinaryRecords(expected);
+        List<Binary> actual = toBinaryRecords(converted);
+        assertThat(expected, is(actual));
+        // Varint lengths instead of 4 byte lengths.
+        assertThat(converted.length < fromBinaryCollection(expected).length + 32, is(true));
+    }
 }
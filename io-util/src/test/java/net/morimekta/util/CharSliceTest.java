@@ -255,9 +255,15 @@ public class CharSliceTest {
         CharSlice slice = new CharSlice(data, 11, 6);
 
         int hc1 = slice.hashCode();
+        assertEquals("123.45".hashCode(), hc1);
+        assertEquals(hc1, new CharSlice(Arrays.copyOf(data, data.length), 11, 6).hashCode());
+        assertEquals(0, new CharSlice(data, 11, 0).hashCode());
+        assertNotEquals(hc1, new CharSlice(data, 11, 5).hashCode());
+
         data[12] = 'c';
-        // Hash code is not reading data content, only position.
+        // Hash code is cached, so it does not see content changes.
         assertEquals(hc1, slice.hashCode());
+        assertNotEquals(hc1, new CharSlice(data, 11, 6).hashCode());
     }
 
     @Test
@@ -273,7 +279,8 @@ public class CharSliceTest {
         assertTrue(slice.equals(slice));
         assertFalse(slice.equals(null));
         assertFalse(slice.equals(new Object()));
-        assertFalse(slice.equals(diffFb));
+        // Equal content in a different buffer.
+        assertTrue(slice.equals(diffFb));
         assertFalse(slice.equals(diffLen));
         assertFalse(slice.equals(diffOff));
     }
@@ -285,14 +292,34 @@ public class CharSliceTest {
         CharSlice b = new CharSlice(data, 11, 5);
         CharSlice c = new CharSlice(data, 14, 3);
 
+        // "123.45", "123.4" and ".45"
         assertEquals(0, a.compareTo(a2));
 
-        assertEquals(-1, a.compareTo(b));
-        assertEquals(-1, a.compareTo(c));
-        assertEquals(-1, b.compareTo(c));
+        assertEquals(1, a.compareTo(b));
+        assertEquals(1, a.compareTo(c));
+        assertEquals(1, b.compareTo(c));
+
+        assertEquals(-1, b.compareTo(a));
+        assertEquals(-1, c.compareTo(a));
+        assertEquals(-1, c.compareTo(b));
+    }
 
-        assertEquals(1, b.compareTo(a));
-        assertEquals(1, c.compareTo(a));
-        assertEquals(1, c.compareTo(b));
+    @Test
+    public void testCompareTo_content() {
+        String[] strings = {"", "a", "ab", "abcdefgh", "abcdefghi", "abcdefgj", "b",
+                            "abcdefghijklmnopq", "abcdefghijklmnopr", "\u00e6", "~", "\u20ac"};
+        for (String s1 : strings) {
+            for (String s2 : strings) {
+                CharSlice a1 = new CharSlice(s1.toCharArray(), 0, s1.length());
+                CharSlice a2 = new CharSlice(s2.toCharArray(), 0, s2.length());
+                assertEquals(s1 + " <> " + s2,
+                             Integer.signum(s1.compareTo(s2)),
+                             a1.compareTo(a2));
+                assertEquals(s1.equals(s2), a1.equals(a2));
+                if (s1.equals(s2)) {
+                    assertEquals(a1.hashCode(), a2.hashCode());
+                }
+            }
+        }
     }
 }
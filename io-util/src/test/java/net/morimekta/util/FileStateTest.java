@@ -0,0 +1,49 @@
+package net.morimekta.util;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class FileStateTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testDiff() throws IOException {
+        Path a = temp.newFile("a").toPath();
+        Path b = temp.newFile("b").toPath();
+        Path c = temp.newFile("c").toPath();
+
+        FileState stateA = state(a);
+        FileState stateB = state(b);
+        FileState stateC = state(c);
+        assertThat(stateA, is(state(a)));
+        assertThat(stateA.hashCode(), is(state(a).hashCode()));
+
+        Files.write(b, "content".getBytes(UTF_8));
+        FileState stateB2 = state(b);
+        assertThat(stateB2, is(not(stateB)));
+
+        Map<Path, FileState> before = ImmutableMap.of(a, stateA, b, stateB);
+        Map<Path, FileState> after = ImmutableMap.of(b, stateB2, c, stateC);
+        assertThat(FileState.diff(before, after), is(ImmutableSet.of(a, b, c)));
+        assertThat(FileState.diff(before, before), is(ImmutableSet.of()));
+    }
+
+    private static FileState state(Path file) throws IOException {
+        return FileState.of(Files.readAttributes(file, BasicFileAttributes.class));
+    }
+}
@@ -3,6 +3,8 @@ package net.morimekta.util;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
 import org.awaitility.Awaitility;
 import org.awaitility.Duration;
 import org.junit.After;
@@ -16,12 +18,26 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -30,6 +46,7 @@ import static java.lang.Thread.sleep;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.awaitility.Awaitility.await;
@@ -40,10 +57,12 @@ import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
@@ -669,6 +688,218 @@ public class FileWatcherTest {
                    is("[WARN] CallbackExecutor failed to terminate in 10 seconds"));
     }
 
+    @Test
+    public void testDebounce() throws IOException, InterruptedException {
+        Path file1 = temp.newFile().getCanonicalFile().toPath();
+        Path file2 = temp.newFile().getCanonicalFile().toPath();
+
+        AtomicInteger        called  = new AtomicInteger();
+        FileWatcher.Listener watcher = mock(FileWatcher.Listener.class);
+        doAnswer(i -> called.incrementAndGet()).when(watcher).onPathUpdate(eq(file2));
+
+        sut.setDebounce(300, 5000);
+        sut.addWatcher(file1, watcher);
+        sut.addWatcher(file2, watcher);
+
+        for (int i = 0; i < 10; ++i) {
+            write("a" + i, file1);
+            writeAndMove("b" + i, file2);
+        }
+
+        await().atMost(Duration.ONE_MINUTE).untilAtomic(called, is(1));
+        sleep(500L);
+
+        // Only one update per file, even though each was written many times.
+        verify(watcher).onPathUpdate(file1);
+        verify(watcher).onPathUpdate(file2);
+        verifyNoMoreInteractions(watcher);
+    }
+
+    @Test
+    public void testBatchListener() throws IOException, InterruptedException {
+        Path file1 = temp.newFile().getCanonicalFile().toPath();
+        Path file2 = temp.newFile().getCanonicalFile().toPath();
+        Path file3 = temp.newFile().getCanonicalFile().toPath();
+
+        List<SortedSet<Path>>     batches = new CopyOnWriteArrayList<>();
+        FileWatcher.BatchListener watcher = batches::add;
+
+        sut.setDebounce(300, 5000);
+        sut.addBatchWatcher(ImmutableList.of(file1, file2), watcher);
+
+        writeAndMove("1", file1);
+        writeAndMove("2", file2);
+        writeAndMove("3", file3);
+
+        await().atMost(Duration.ONE_MINUTE).until(() -> batches.size() > 0);
+        sleep(500L);
+
+        assertThat(batches, hasSize(1));
+        assertThat(batches.get(0), is(ImmutableSortedSet.of(file1, file2)));
+
+        assertThat(sut.removeBatchWatcher(watcher), is(true));
+        assertThat(sut.removeBatchWatcher(watcher), is(false));
+
+        try {
+            sut.setDebounce(100, 10);
+            fail("No exception on bad debounce");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid debounce quiet period 100ms with max latency 10ms", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testWatchTree() throws IOException {
+        Path root = temp.newFolder("tree").getCanonicalFile().toPath();
+        Path sub = Files.createDirectories(root.resolve("a/b"));
+        Path file1 = root.resolve("file1.txt");
+        Path file2 = sub.resolve("file2.txt");
+        Path other = sub.resolve("other.dat");
+        write("1", file1);
+        write("2", file2);
+        write("3", other);
+
+        List<Path> updates = new CopyOnWriteArrayList<>();
+        FileWatcher.Listener watcher = updates::add;
+        sut.watchTree(root, FileSystems.getDefault().getPathMatcher("glob:**.txt"), watcher);
+
+        writeAndMove("4", other);
+        writeAndMove("5", file2);
+        await().atMost(Duration.ONE_MINUTE).until(() -> updates.contains(file2));
+        assertThat(updates.contains(other), is(false));
+
+        // New directories in the tree are watched.
+        updates.clear();
+        Path newDir = Files.createDirectories(root.resolve("c"));
+        Path file3 = newDir.resolve("file3.txt");
+        write("6", file3);
+        await().atMost(Duration.ONE_MINUTE).until(() -> updates.contains(file3));
+
+        updates.clear();
+        Files.delete(file1);
+        await().atMost(Duration.ONE_MINUTE).until(() -> updates.contains(file1));
+
+        assertThat(sut.removeWatcher(watcher), is(true));
+
+        try {
+            sut.watchTree(file2, watcher);
+            fail("No exception on file root");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not a directory: " + file2, e.getMessage());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWatchTree_overflow() throws IOException, InterruptedException {
+        sut.close();
+
+        // Only the polling watch service can be registered with directly, so
+        // mock it to control which keys are signalled.
+        Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+        LinkedBlockingQueue<WatchKey> signalled = new LinkedBlockingQueue<>();
+        WatchKey closedKey = mock(WatchKey.class);
+        PollingWatchService service = mock(PollingWatchService.class);
+        doAnswer(i -> keys.computeIfAbsent(i.getArgument(0), dir -> mock(WatchKey.class)))
+                .when(service).register(any(Path.class), any());
+        doAnswer(i -> {
+            WatchKey key = signalled.take();
+            if (key == closedKey) {
+                throw new ClosedWatchServiceException();
+            }
+            return key;
+        }).when(service).take();
+        doAnswer(i -> signalled.add(closedKey)).when(service).close();
+
+        sut = new FileWatcher(service, Executors.newSingleThreadExecutor(), Executors.newSingleThreadExecutor());
+
+        Path root = temp.newFolder("tree").getCanonicalFile().toPath();
+        Path sub = Files.createDirectories(root.resolve("a"));
+        Path changed = root.resolve("changed.txt");
+        Path same = sub.resolve("same.txt");
+        Path deleted = sub.resolve("deleted.txt");
+        Path other = sub.resolve("other.dat");
+        write("1", changed);
+        write("2", same);
+        write("3", deleted);
+        write("4", other);
+
+        List<Path> updates = new CopyOnWriteArrayList<>();
+        sut.watchTree(root, FileSystems.getDefault().getPathMatcher("glob:**.txt"), updates::add);
+        assertThat(keys.keySet(), is(new HashSet<>(ImmutableList.of(root, sub))));
+
+        // Changes with no events, as if they were lost in the overflow.
+        write("changed", changed);
+        Files.delete(deleted);
+        Path added = Files.createDirectories(root.resolve("b")).resolve("added.txt");
+        write("5", added);
+        write("changed", other);
+
+        WatchKey key = keys.get(root);
+        WatchEvent<Object> overflow = mock(WatchEvent.class);
+        when(overflow.kind()).thenReturn(OVERFLOW);
+        doReturn(Collections.singletonList(overflow)).when(key).pollEvents();
+        when(key.reset()).thenReturn(true);
+        signalled.add(key);
+
+        await().atMost(Duration.ONE_MINUTE).until(() -> updates.size() >= 3);
+        sleep(100L);
+        assertThat(new HashSet<>(updates), is(new HashSet<>(ImmutableList.of(changed, deleted, added))));
+        assertThat(updates, hasSize(3));
+        // The new directory is watched after the rescan.
+        assertThat(keys.containsKey(added.getParent()), is(true));
+    }
+
+    @Test
+    public void testCallbackPool() throws IOException, InterruptedException {
+        Path file1 = temp.newFile().getCanonicalFile().toPath();
+        Path file2 = temp.newFile().getCanonicalFile().toPath();
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            sut.setCallbackPool(pool);
+
+            CountDownLatch       release = new CountDownLatch(1);
+            AtomicInteger        slowCalls = new AtomicInteger();
+            FileWatcher.Listener slow = f -> {
+                slowCalls.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            List<Path>           fastUpdates = new CopyOnWriteArrayList<>();
+            FileWatcher.Listener fast = fastUpdates::add;
+
+            sut.addWatcher(file1, slow);
+            sut.addWatcher(file2, fast);
+
+            writeAndMove("a", file1);
+            await().atMost(Duration.ONE_MINUTE).untilAtomic(slowCalls, is(1));
+
+            // The slow listener does not block updates to the fast one.
+            writeAndMove("b", file2);
+            await().atMost(Duration.ONE_MINUTE).until(() -> fastUpdates.size() > 0);
+            writeAndMove("c", file1);
+            sleep(200L);
+
+            assertThat(slowCalls.get(), is(1));
+            assertThat(sut.getCallbackQueueDepth() >= 2, is(true));
+
+            release.countDown();
+            await().atMost(Duration.ONE_MINUTE).until(() -> sut.getCallbackQueueDepth() == 0);
+            assertThat(slowCalls.get() >= 2, is(true));
+            assertThat(sut.getCallbackCount() >= 3, is(true));
+            assertThat(sut.getMaxCallbackTime(TimeUnit.MILLISECONDS) >= 150, is(true));
+            assertThat(sut.getTotalCallbackTime(TimeUnit.NANOSECONDS) >=
+                       sut.getMaxCallbackTime(TimeUnit.NANOSECONDS), is(true));
+        } finally {
+            sut.close();
+            pool.shutdown();
+        }
+    }
+
     private void write(String content, Path file) throws IOException {
         try (FileOutputStream fos = new FileOutputStream(file.toFile())) {
             fos.write(content.getBytes(UTF_8));
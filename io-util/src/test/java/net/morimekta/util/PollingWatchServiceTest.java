@@ -0,0 +1,155 @@
+package net.morimekta.util;
+
+import net.morimekta.util.test_utils.FakeClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class PollingWatchServiceTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FakeClock                clock;
+    private ScheduledExecutorService scheduler;
+    private PollingWatchService      sut;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        scheduler = mock(ScheduledExecutorService.class);
+        sut = new PollingWatchService(clock, scheduler, Executors.newFixedThreadPool(2), 100, 2000);
+    }
+
+    @After
+    public void tearDown() {
+        sut.close();
+    }
+
+    @Test
+    public void testPollEvents() throws IOException {
+        verify(scheduler).schedule(any(Runnable.class), eq(100L), eq(MILLISECONDS));
+
+        Path dir = temp.newFolder("dir").toPath();
+        Path file = dir.resolve("file.txt");
+        WatchKey key = sut.register(dir, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        assertThat(sut.register(dir, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), is(sameInstance(key)));
+        assertThat(key.watchable(), is(dir));
+
+        assertThat(sut.pollNow(), is(0));
+        assertThat(sut.poll(), is(nullValue()));
+
+        Files.write(file, "a".getBytes(UTF_8));
+        assertThat(sut.pollNow(), is(1));
+        assertThat(sut.poll(), is(sameInstance(key)));
+        assertEvent(key.pollEvents(), ENTRY_CREATE);
+
+        // Not signalled again until reset.
+        Files.write(file, "bb".getBytes(UTF_8));
+        assertThat(sut.pollNow(), is(1));
+        assertThat(sut.poll(), is(nullValue()));
+        assertThat(key.reset(), is(true));
+        assertThat(sut.poll(), is(sameInstance(key)));
+        assertEvent(key.pollEvents(), ENTRY_MODIFY);
+        assertThat(key.reset(), is(true));
+
+        Files.delete(file);
+        assertThat(sut.pollNow(), is(1));
+        assertThat(sut.poll(), is(sameInstance(key)));
+        assertEvent(key.pollEvents(), ENTRY_DELETE);
+        assertThat(key.reset(), is(true));
+
+        // Deleting the directory invalidates the key.
+        Files.delete(dir);
+        sut.pollNow();
+        assertThat(sut.poll(), is(sameInstance(key)));
+        assertThat(key.reset(), is(false));
+        assertThat(key.isValid(), is(false));
+    }
+
+    @Test
+    public void testAdaptiveInterval() throws IOException {
+        Path dir = temp.newFolder("dir").toPath();
+        sut.register(dir, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        assertThat(sut.getPollInterval(MILLISECONDS), is(100L));
+
+        clock.tick(1000);
+        sut.pollNow();
+        assertThat(sut.getPollInterval(MILLISECONDS), is(500L));
+
+        clock.tick(10000);
+        sut.pollNow();
+        assertThat(sut.getPollInterval(MILLISECONDS), is(2000L));
+
+        Files.write(dir.resolve("file.txt"), "a".getBytes(UTF_8));
+        clock.tick(1000);
+        sut.pollNow();
+        assertThat(sut.getPollInterval(MILLISECONDS), is(100L));
+
+        try {
+            new PollingWatchService(clock, scheduler, Executors.newSingleThreadExecutor(), 100, 10);
+            fail("No exception on bad interval");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid poll interval min 100ms with max 10ms", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFileWatcher() throws IOException {
+        Path file = temp.newFile("file.txt").getCanonicalFile().toPath();
+        List<Path>           updates  = new CopyOnWriteArrayList<>();
+        FileWatcher.Listener listener = updates::add;
+        try (FileWatcher watcher = new FileWatcher(sut)) {
+            watcher.addWatcher(file, listener);
+
+            Files.write(file, "updated".getBytes(UTF_8));
+            sut.pollNow();
+            await().atMost(1, MINUTES).until(() -> updates.contains(file));
+        }
+
+        try {
+            sut.take();
+            fail("No exception on closed watch service");
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Expected.
+        }
+    }
+
+    private static void assertEvent(List<WatchEvent<?>> events, WatchEvent.Kind<?> kind) {
+        assertThat(events, hasSize(1));
+        assertThat(events.get(0).kind(), is(kind));
+        assertThat(events.get(0).context(), is(Paths.get("file.txt")));
+    }
+}
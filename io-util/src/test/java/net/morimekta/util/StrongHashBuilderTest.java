@@ -2,16 +2,22 @@ package net.morimekta.util;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
 import org.junit.Test;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
 
 public class StrongHashBuilderTest {
@@ -140,4 +146,126 @@ public class StrongHashBuilderTest {
         assertThat(a.strongHash(), is(not(b.strongHash())));
         assertThat(a.strongHash(), is(5691625950207156708L));
     }
+
+    @Test
+    public void testXxHash64() {
+        assertThat(xxHash64(""), is(0xEF46DB3751D8E999L));
+        assertThat(xxHash64("a"), is(0xD24EC4F1A98C6E5BL));
+        assertThat(xxHash64("abc"), is(0x44BC2CF5AD770999L));
+        assertThat(xxHash64("The quick brown fox jumps over the lazy dog"), is(0x0B242D361FDA71BCL));
+
+        // Bulk updates give the same hash as single words.
+        Random random = new Random(4321);
+        for (int words = 0; words < 20; ++words) {
+            long[] values = new long[words];
+            byte[] bytes = new byte[words * 8];
+            for (int i = 0; i < words; ++i) {
+                values[i] = random.nextLong();
+                for (int b = 0; b < 8; ++b) {
+                    bytes[i * 8 + b] = (byte) (values[i] >>> (b * 8));
+                }
+            }
+            for (Supplier<WordHashBuilder> backend : ImmutableList.<Supplier<WordHashBuilder>>of(
+                    () -> new XxHash64Builder(7L), () -> new Murmur3HashBuilder(7L))) {
+                WordHashBuilder single = backend.get();
+                WordHashBuilder bulk = backend.get();
+                single.update(42L);
+                bulk.update(42L);
+                for (long value : values) {
+                    single.update(value);
+                }
+                bulk.mixArray(bytes);
+                assertThat(bulk.strongHash(), is(single.strongHash()));
+            }
+        }
+    }
+
+    @Test
+    public void testMurmur3() {
+        Random random = new Random(1234);
+        for (int len = 0; len < 100; ++len) {
+            byte[] bytes = new byte[len + 3];
+            random.nextBytes(bytes);
+            long expected = Hashing.murmur3_128(0).newHasher().putBytes(bytes, 3, len).hash().asLong();
+            assertThat(new Murmur3HashBuilder(0L).hashBytes(bytes, 3, len), is(expected));
+        }
+    }
+
+    @Test
+    public void testBackends() {
+        for (Supplier<StrongHashBuilder> backend : ImmutableList.<Supplier<StrongHashBuilder>>of(
+                StrongHashBuilder::xxHash64, StrongHashBuilder::murmur3)) {
+            StrongHashBuilder a = backend.get();
+            StrongHashBuilder b = backend.get();
+            StrongHashBuilder c = backend.get();
+
+            Stream.of(a, b).forEach(bld -> {
+                bld.add((Object) true);
+                bld.add((Object) 3);
+                bld.add((Object) "string");
+                bld.add((Object) new boolean[]{false, true, true, false, true, false, true, true, false});
+                bld.add((Object) new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+                bld.add((Object) new short[]{1, 2, 3, 4, 5});
+                bld.add((Object) new int[]{1, 2, 3});
+                bld.add((Object) new long[]{1, 2, 3});
+                bld.add((Object) new char[]{'1', '2', '3', '4', '5'});
+                bld.add((Object) new float[]{1, 2, 3});
+                bld.add((Object) new double[]{1, 2, 3});
+                bld.add((Object) new MyHashable("test"));
+            });
+            c.add((Object) true);
+            c.add((Object) 3);
+            c.add((Object) "string");
+            c.add((Object) new boolean[]{false, true, true, false, true, false, true, true, false});
+            c.add((Object) new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+            c.add((Object) new short[]{1, 2, 3, 4, 5});
+            c.add((Object) new int[]{1, 2, 3});
+            c.add((Object) new long[]{1, 2, 3});
+            c.add((Object) "12345");  // Same chars as the char[] above.
+            c.add((Object) new float[]{1, 2, 3});
+            c.add((Object) new double[]{1, 2, 3});
+            c.add((Object) new MyHashable("test"));
+
+            assertThat(a.strongHash(), is(b.strongHash()));
+            assertThat(a.strongHash(), is(a.strongHash()));
+            // Strings and char arrays are hashed the same.
+            assertThat(a.strongHash(), is(c.strongHash()));
+
+            // Padding of the last word does not collide with zero values.
+            assertThat(backend.get().add(new byte[]{1, 2}).strongHash(),
+                       is(not(backend.get().add(new byte[]{1, 2, 0}).strongHash())));
+            assertThat(backend.get().add(new int[]{1}).strongHash(),
+                       is(not(backend.get().add(new int[]{1, 0}).strongHash())));
+            // Array content vs single values.
+            assertThat(backend.get().add(new long[]{1, 2}).strongHash(),
+                       is(not(backend.get().add(1L).add(2L).strongHash())));
+            // Adding after calculating the hash.
+            assertThat(a.add(4).strongHash(), is(not(b.strongHash())));
+            assertThat(a.strongHash(), is(b.add(4).strongHash()));
+        }
+    }
+
+    @Test
+    public void testDistribution() {
+        for (Supplier<StrongHashBuilder> backend : ImmutableList.<Supplier<StrongHashBuilder>>of(
+                StrongHashBuilder::new, StrongHashBuilder::xxHash64, StrongHashBuilder::murmur3)) {
+            Set<Long> hashes = new HashSet<>();
+            int[] buckets = new int[1024];
+            for (int i = 0; i < 102400; ++i) {
+                long hash = backend.get().add("key-" + i).strongHash();
+                hashes.add(hash);
+                ++buckets[(int) (hash & 1023)];
+            }
+            assertThat(hashes.size(), is(102400));
+            for (int bucket : buckets) {
+                // Mean of 100, and the std dev is about 10.
+                assertThat(Math.abs(bucket - 100), is(lessThan(60)));
+            }
+        }
+    }
+
+    private static long xxHash64(String str) {
+        byte[] bytes = str.getBytes(UTF_8);
+        return new XxHash64Builder(0L).hashBytes(bytes, 0, bytes.length);
+    }
 }
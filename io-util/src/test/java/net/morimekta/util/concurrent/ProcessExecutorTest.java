@@ -14,11 +14,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.endsWith;
@@ -154,6 +159,133 @@ public class ProcessExecutorTest {
                                        "second line\n"));
     }
 
+    @Test
+    public void testRun_lineConsumer() throws IOException {
+        File sh = tmp.newFile("tmp.sh");
+        try (OutputStream out = new FileOutputStream(sh)) {
+            out.write(("#!/bin/sh\n" +
+                       "echo first line\n" +
+                       "echo error >&2\n" +
+                       "printf 'second line\\r\\nno newline'\n").getBytes(UTF_8));
+        }
+        List<String> lines  = new CopyOnWriteArrayList<>();
+        List<String> errors = new CopyOnWriteArrayList<>();
+        ProcessExecutor sut = new ProcessExecutor("sh", sh.getAbsolutePath())
+                .setOutputLineConsumer(lines::add)
+                .setErrorLineConsumer(errors::add)
+                .setDeadlineMs(10000L);
+
+        assertThat(sut.call(), is(0));
+        assertThat(lines, is(Arrays.asList("first line", "second line", "no newline")));
+        assertThat(errors, is(Arrays.asList("error")));
+        // Streamed output is not kept by default.
+        assertThat(sut.getOutput(), is(""));
+        assertThat(sut.getError(), is(""));
+    }
+
+    @Test
+    public void testRun_tailBuffer() throws IOException, InterruptedException {
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; ++i) {
+            content[i] = (byte) ('a' + (i % 26));
+        }
+        ByteArrayInputStream out = new ByteArrayInputStream(content);
+        ByteArrayInputStream err = new ByteArrayInputStream("error\n".getBytes(UTF_8));
+
+        Process process = mock(Process.class);
+        when(process.getErrorStream()).thenReturn(err);
+        when(process.getInputStream()).thenReturn(out);
+        when(process.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(process.waitFor(anyLong(), eq(TimeUnit.MILLISECONDS))).thenReturn(true);
+
+        Runtime runtime = mock(Runtime.class);
+        when(runtime.exec(any(String[].class))).thenReturn(process);
+
+        AtomicInteger   total = new AtomicInteger();
+        ProcessExecutor sut   = new ProcessExecutor(new String[]{"ls"}, runtime, executor)
+                .setOutputConsumer((buffer, off, len) -> total.addAndGet(len))
+                .setTailBufferSize(10000);
+
+        assertThat(sut.call(), is(0));
+        assertThat(total.get(), is(content.length));
+        assertThat(sut.getOutput(), is(new String(content, content.length - 10000, 10000, UTF_8)));
+        assertThat(sut.getError(), is("error\n"));
+
+        try {
+            sut.setTailBufferSize(-1);
+            fail("No exception on negative tail buffer size");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Negative tail buffer size: -1"));
+        }
+    }
+
+    @Test
+    public void testConsumerError() throws IOException, InterruptedException {
+        ByteArrayInputStream out = new ByteArrayInputStream("some output\n".getBytes(UTF_8));
+        ByteArrayInputStream err = new ByteArrayInputStream(new byte[]{});
+
+        Process process = mock(Process.class);
+        when(process.getErrorStream()).thenReturn(err);
+        when(process.getInputStream()).thenReturn(out);
+        when(process.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(process.waitFor(anyLong(), eq(TimeUnit.MILLISECONDS))).thenReturn(true);
+
+        Runtime runtime = mock(Runtime.class);
+        when(runtime.exec(any(String[].class))).thenReturn(process);
+
+        ProcessExecutor sut = new ProcessExecutor(new String[]{"ls"}, runtime, executor)
+                .setOutputLineConsumer(line -> {
+                    throw new IllegalStateException("consumer");
+                });
+        try {
+            sut.call();
+            fail("no exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Output consumer failed: consumer"));
+        }
+    }
+
+    @Test
+    public void testConsumerError_partialLine() throws IOException, InterruptedException {
+        // Two reads, so the partial line is buffered when the consumer fails.
+        InputStream out1 = new SequenceInputStream(new ByteArrayInputStream("a\npar".getBytes(UTF_8)),
+                                                   new ByteArrayInputStream("tial\nb\n".getBytes(UTF_8)));
+        InputStream out2 = new ByteArrayInputStream("next\n".getBytes(UTF_8));
+
+        Process process1 = mock(Process.class);
+        when(process1.getErrorStream()).thenReturn(new ByteArrayInputStream(new byte[]{}));
+        when(process1.getInputStream()).thenReturn(out1);
+        when(process1.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(process1.waitFor(anyLong(), eq(TimeUnit.MILLISECONDS))).thenReturn(true);
+        Process process2 = mock(Process.class);
+        when(process2.getErrorStream()).thenReturn(new ByteArrayInputStream(new byte[]{}));
+        when(process2.getInputStream()).thenReturn(out2);
+        when(process2.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(process2.waitFor(anyLong(), eq(TimeUnit.MILLISECONDS))).thenReturn(true);
+
+        Runtime runtime = mock(Runtime.class);
+        when(runtime.exec(any(String[].class))).thenReturn(process1, process2);
+
+        List<String> lines = new CopyOnWriteArrayList<>();
+        ProcessExecutor sut = new ProcessExecutor(new String[]{"ls"}, runtime, executor)
+                .setOutputLineConsumer(line -> {
+                    if (line.equals("partial")) {
+                        throw new IllegalStateException("consumer");
+                    }
+                    lines.add(line);
+                });
+        try {
+            sut.call();
+            fail("no exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Output consumer failed: consumer"));
+        }
+
+        // The partial line from the failed call is not carried over.
+        assertThat(sut.call(), is(0));
+        assertThat(lines, is(Arrays.asList("a", "next")));
+    }
+
     @Test
     public void testOutputError() throws IOException, InterruptedException {
 
@@ -0,0 +1,120 @@
+package net.morimekta.util.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the serial executor.
+ */
+public class SerialExecutorTest {
+    private ExecutorService pool;
+    private List<Throwable> uncaught;
+    private CountDownLatch uncaughtLatch;
+
+    @Before
+    public void setUp() {
+        uncaught = new CopyOnWriteArrayList<>();
+        uncaughtLatch = new CountDownLatch(1);
+        pool = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setUncaughtExceptionHandler((t, e) -> {
+                uncaught.add(e);
+                uncaughtLatch.countDown();
+            });
+            return thread;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testOrderPerExecutor() throws InterruptedException {
+        List<SerialExecutor> executors = new ArrayList<>();
+        List<List<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            executors.add(new SerialExecutor(pool));
+            results.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+
+        CountDownLatch done = new CountDownLatch(8 * 1000);
+        for (int n = 0; n < 1000; ++n) {
+            for (int i = 0; i < 8; ++i) {
+                final int value = n;
+                final List<Integer> result = results.get(i);
+                executors.get(i).execute(() -> {
+                    result.add(value);
+                    done.countDown();
+                });
+            }
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+
+        for (List<Integer> result : results) {
+            assertThat(result.size(), is(1000));
+            for (int n = 0; n < 1000; ++n) {
+                assertThat(result.get(n), is(n));
+            }
+        }
+    }
+
+    @Test
+    public void testSlowTaskDoesNotBlockOthers() throws InterruptedException {
+        SerialExecutor slow = new SerialExecutor(pool);
+        SerialExecutor fast = new SerialExecutor(pool);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+        slow.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        slow.execute(() -> {});
+        fast.execute(fastDone::countDown);
+
+        assertThat(fastDone.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(slow.getQueueDepth(), is(1));
+
+        release.countDown();
+        CountDownLatch slowDone = new CountDownLatch(1);
+        slow.execute(slowDone::countDown);
+        assertThat(slowDone.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(slow.getQueueDepth(), is(0));
+    }
+
+    @Test
+    public void testContinuesAfterException() throws InterruptedException {
+        SerialExecutor executor = new SerialExecutor(pool);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            throw new IllegalStateException("test");
+        });
+        executor.execute(done::countDown);
+        assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+
+        // The exception is passed on to the pool thread.
+        assertThat(uncaughtLatch.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(uncaught.size(), is(1));
+        assertThat(uncaught.get(0), is(instanceOf(IllegalStateException.class)));
+        assertThat(uncaught.get(0).getMessage(), is("test"));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.io;
+
+import net.morimekta.util.Base64;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class Base64IOTest {
+    @Test
+    public void testOutputStream() throws IOException {
+        Random random = new Random(1234);
+        for (int size : new int[]{0, 1, 2, 3, 56, 57, 58, 1000, 3072, 10000}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+
+            assertThat(encode(data, Base64.encoder()),
+                       is(java.util.Base64.getEncoder().withoutPadding().encodeToString(data)));
+            assertThat(encode(data, Base64.urlSafeEncoder().withPadding(true)),
+                       is(java.util.Base64.getUrlEncoder().encodeToString(data)));
+            assertThat(encode(data, Base64.mimeEncoder()),
+                       is(java.util.Base64.getMimeEncoder().encodeToString(data)));
+        }
+    }
+
+    @Test
+    public void testOutputStream_closed() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream out = new Base64OutputStream(baos);
+        out.write(new byte[]{1, 2, 3, 4});
+        out.flush();
+        // Incomplete blocks are not written on flush.
+        assertThat(baos.size(), is(0));
+        out.close();
+        out.close();
+        assertThat(new String(baos.toByteArray(), US_ASCII), is("AQIDBA"));
+
+        try {
+            out.write(5);
+            fail("no exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Writing to closed base64 stream"));
+        }
+    }
+
+    @Test
+    public void testInputStream() throws IOException {
+        Random random = new Random(4321);
+        for (int size : new int[]{0, 1, 2, 3, 56, 57, 58, 1000, 3072, 10000}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+
+            assertArrayEquals(data, decode(java.util.Base64.getEncoder().encodeToString(data), random));
+            assertArrayEquals(data, decode(java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(data), random));
+            assertArrayEquals(data, decode(java.util.Base64.getMimeEncoder().encodeToString(data), random));
+        }
+
+        // A block with less than a whole group besides white space.
+        StringBuilder spaced = new StringBuilder();
+        for (int i = 0; i < 5000; ++i) {
+            spaced.append(' ');
+        }
+        spaced.append("YWFhYQ");
+        assertThat(new String(decode(spaced.toString(), random), US_ASCII), is("aaaa"));
+    }
+
+    @Test
+    public void testInputStream_bad() throws IOException {
+        try (InputStream in = new Base64InputStream(new ByteArrayInputStream("YWFhY.WE".getBytes(US_ASCII)))) {
+            in.read();
+            fail("no exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Bad Base64 input character '.' in array position 5"));
+        }
+    }
+
+    private static String encode(byte[] data, Base64.Encoder encoder) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Base64OutputStream out = new Base64OutputStream(baos, encoder)) {
+            // Mix single byte and array writes of different sizes.
+            int i = 0;
+            while (i < data.length) {
+                if (i % 7 == 0) {
+                    out.write(data[i++]);
+                } else {
+                    int n = Math.min(data.length - i, i * 3);
+                    out.write(data, i, n);
+                    i += n;
+                }
+            }
+        }
+        return new String(baos.toByteArray(), US_ASCII);
+    }
+
+    private static byte[] decode(String encoded, Random random) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Base64InputStream in = new Base64InputStream(new ByteArrayInputStream(encoded.getBytes(US_ASCII)))) {
+            byte[] buffer = new byte[100];
+            int r;
+            while ((r = in.read(buffer, 0, 1 + random.nextInt(buffer.length))) > 0) {
+                baos.write(buffer, 0, r);
+                int b = in.read();
+                if (b < 0) {
+                    break;
+                }
+                baos.write(b);
+            }
+        }
+        return baos.toByteArray();
+    }
+}
@@ -23,16 +23,22 @@ package net.morimekta.util.io;
 import net.morimekta.util.Binary;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Random;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
@@ -44,7 +50,19 @@ import static org.mockito.Mockito.verifyZeroInteractions;
  * Test testing the pairing between BinaryWriter and BinaryReader, and that
  * what it writes will be read back exactly the same.
  */
+@RunWith(Parameterized.class)
 public class BigEndianBinaryIOTest {
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> params() {
+        return Arrays.asList(new Object[]{"stream"},
+                             new Object[]{"buffered"},
+                             new Object[]{"array"},
+                             new Object[]{"direct"});
+    }
+
+    @Parameterized.Parameter
+    public String mode;
+
     ByteArrayOutputStream out;
     BinaryWriter writer;
 
@@ -55,9 +73,29 @@ public class BigEndianBinaryIOTest {
     }
 
     private BinaryReader getReader() {
-        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        byte[] data = out.toByteArray();
         out.reset();
-        return new BigEndianBinaryReader(in);
+        return getReader(data);
+    }
+
+    private BinaryReader getReader(byte[] data) {
+        switch (mode) {
+            case "buffered":
+                // Small buffer to test refills.
+                return new BigEndianBinaryReader(new ByteArrayInputStream(data), 16);
+            case "array":
+                // Content in the middle of a larger array.
+                byte[] content = new byte[data.length + 10];
+                System.arraycopy(data, 0, content, 5, data.length);
+                return new BigEndianBinaryReader(content, 5, data.length);
+            case "direct":
+                ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+                buffer.put(data);
+                buffer.flip();
+                return BigEndianBinaryReader.forBuffer(buffer);
+            default:
+                return new BigEndianBinaryReader(new ByteArrayInputStream(data));
+        }
     }
 
     @Test
@@ -215,9 +253,8 @@ public class BigEndianBinaryIOTest {
     }
 
     private void assertBadExpectShort(String message, byte[] data) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
         try {
-            BinaryReader reader = new BigEndianBinaryReader(bais);
+            BinaryReader reader = getReader(data);
             reader.expectShort();
             fail("No exception on bad short");
         } catch (IOException e) {
@@ -252,9 +289,8 @@ public class BigEndianBinaryIOTest {
     }
 
     private void assertBadExpectInt(String message, byte[] data) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
         try {
-            BinaryReader reader = new BigEndianBinaryReader(bais);
+            BinaryReader reader = getReader(data);
             reader.expectInt();
             fail("No exception on bad int");
         } catch (IOException e) {
@@ -293,9 +329,8 @@ public class BigEndianBinaryIOTest {
     }
 
     private void assertBadExpectLong(String message, byte[] data) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
         try {
-            BinaryReader reader = new BigEndianBinaryReader(bais);
+            BinaryReader reader = getReader(data);
             reader.expectLong();
             fail("No exception on bad long");
         } catch (IOException e) {
@@ -432,9 +467,8 @@ public class BigEndianBinaryIOTest {
     }
 
     private void assertBadExpectUnsigned(String message, byte[] data, int bytes) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
         try {
-            BinaryReader reader = new BigEndianBinaryReader(bais);
+            BinaryReader reader = getReader(data);
             reader.expectUnsigned(bytes);
             fail("No exception on bad short");
         } catch (IOException e) {
@@ -552,6 +586,51 @@ public class BigEndianBinaryIOTest {
         assertEquals(0L, getReader().readLongVarint());
     }
 
+    @Test
+    public void testVarint_noReadAhead() throws IOException {
+        writer.writeVarint(5);
+        writer.writeVarint(300);
+        writer.writeVarint(5L);
+        writer.writePackedVarints(new int[]{1, 300, 2}, 0, 3);
+        writer.writePackedVarints(new long[]{7L, 1L << 40}, 0, 2);
+        byte[] data = out.toByteArray();
+
+        // Like a socket or pipe, where the next byte is not there yet. Each
+        // read gives one byte, and reading past the data fails instead of
+        // blocking.
+        InputStream in = new InputStream() {
+            private int pos = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (pos >= data.length) {
+                    throw new IOException("Blocked on read");
+                }
+                return data[pos++] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                bytes[off] = (byte) read();
+                return 1;
+            }
+        };
+
+        BinaryReader reader = new BigEndianBinaryReader(in, 16);
+        assertEquals(5, reader.readIntVarint());
+        assertEquals(300, reader.readIntVarint());
+        assertEquals(5L, reader.readLongVarint());
+        int[] ints = new int[3];
+        reader.expectPackedVarints(ints, 0, 3);
+        assertArrayEquals(new int[]{1, 300, 2}, ints);
+        long[] longs = new long[2];
+        reader.expectPackedVarints(longs, 0, 2);
+        assertArrayEquals(new long[]{7L, 1L << 40}, longs);
+    }
+
     private void testVarint(int value, int bytes) throws IOException {
         out.reset();
         writer.writeVarint(value);
@@ -568,12 +647,249 @@ public class BigEndianBinaryIOTest {
         assertEquals(value, reader.readLongVarint());
     }
 
+    @Test
+    public void testMixedSequence() throws IOException {
+        Random random = new Random(42);
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = random.nextLong() >> random.nextInt(64);
+            writer.writeVarint(values[i]);
+            writer.writeInt((int) values[i]);
+            writer.writeZigzag(values[i]);
+            writer.writeByte((byte) i);
+            writer.writeLong(values[i]);
+        }
+
+        BinaryReader reader = getReader();
+        for (int i = 0; i < values.length; ++i) {
+            assertThat(reader.readLongVarint(), is(values[i]));
+            assertThat(reader.expectInt(), is((int) values[i]));
+            assertThat(reader.readLongZigzag(), is(values[i]));
+            assertThat(reader.expectByte(), is((byte) i));
+            assertThat(reader.expectLong(), is(values[i]));
+        }
+        assertThat(reader.read(), is(-1));
+    }
+
+    @Test
+    public void testArrays() throws IOException {
+        Random random = new Random(42);
+        int[] ints = new int[3000];
+        long[] longs = new long[3000];
+        double[] doubles = new double[3000];
+        for (int i = 0; i < ints.length; ++i) {
+            ints[i] = random.nextInt() >> random.nextInt(32);
+            longs[i] = random.nextLong() >> random.nextInt(64);
+            doubles[i] = random.nextDouble();
+        }
+
+        ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+        BinaryWriter bufferedWriter = new BigEndianBinaryWriter(buffered, 16);
+        for (BinaryWriter w : new BinaryWriter[]{writer, bufferedWriter}) {
+            assertThat(w.writeInts(ints, 0, ints.length), is(ints.length * 4));
+            assertThat(w.writeLongs(longs, 1, longs.length - 1), is(longs.length * 8 - 8));
+            assertThat(w.writeDoubles(doubles, 0, doubles.length), is(doubles.length * 8));
+            int packedInts = w.writePackedVarints(ints, 0, ints.length);
+            int packedLongs = w.writePackedVarints(longs, 0, longs.length);
+            w.writeInt(packedInts);
+            w.writeInt(packedLongs);
+        }
+        bufferedWriter.flush();
+        assertArrayEquals(out.toByteArray(), buffered.toByteArray());
+
+        // Compare with writing each value on its own.
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        BinaryWriter singleWriter = new BigEndianBinaryWriter(single);
+        for (int i : ints) {
+            singleWriter.writeInt(i);
+        }
+        for (int i = 1; i < longs.length; ++i) {
+            singleWriter.writeLong(longs[i]);
+        }
+        for (double d : doubles) {
+            singleWriter.writeDouble(d);
+        }
+        for (int i : ints) {
+            singleWriter.writeVarint(i);
+        }
+        for (long l : longs) {
+            singleWriter.writeVarint(l);
+        }
+        byte[] expected = single.toByteArray();
+        byte[] actual = out.toByteArray();
+        assertArrayEquals(expected, Arrays.copyOf(actual, actual.length - 8));
+
+        BinaryReader reader = getReader();
+        int[] readInts = new int[ints.length];
+        long[] readLongs = new long[longs.length];
+        double[] readDoubles = new double[doubles.length];
+        reader.expectInts(readInts);
+        reader.expectLongs(readLongs, 1, readLongs.length - 1);
+        reader.expectDoubles(readDoubles);
+        assertArrayEquals(ints, readInts);
+        assertThat(readLongs[0], is(0L));
+        assertArrayEquals(Arrays.copyOfRange(longs, 1, longs.length),
+                          Arrays.copyOfRange(readLongs, 1, readLongs.length));
+        assertArrayEquals(doubles, readDoubles, 0.0);
+
+        Arrays.fill(readInts, 0);
+        Arrays.fill(readLongs, 0);
+        reader.expectPackedVarints(readInts, 0, readInts.length);
+        reader.expectPackedVarints(readLongs, 0, readLongs.length);
+        assertArrayEquals(ints, readInts);
+        assertArrayEquals(longs, readLongs);
+        reader.expectInt();
+        reader.expectInt();
+        assertThat(reader.read(), is(-1));
+    }
+
+    @Test
+    public void testBadArrays() throws IOException {
+        writer.writeInts(new int[]{1, 2, 3}, 0, 3);
+        byte[] data = out.toByteArray();
+
+        try {
+            getReader(data).expectInts(new int[4]);
+            fail("no exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Missing expected int 4 of 4"));
+        }
+        try {
+            getReader(data).expectLongs(new long[2]);
+            fail("no exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Missing expected long 2 of 2"));
+        }
+        try {
+            getReader(data).expectPackedVarints(new int[20], 0, 20);
+            fail("no exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Missing expected varint 13 of 20"));
+        }
+        try {
+            getReader(data).expectDoubles(new double[2], 1, 2);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Illegal arguments for double array: double[2], off:1, len:2"));
+        }
+        try {
+            writer.writePackedVarints(new long[2], -1, 2);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Illegal arguments for long array: long[2], off:-1, len:2"));
+        }
+    }
+
+    @Test
+    public void testBufferedWriter() throws IOException {
+        ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+        BinaryWriter bufferedWriter = new BigEndianBinaryWriter(buffered, 16);
+        assertThat(bufferedWriter.isBuffered(), is(true));
+        assertThat(writer.isBuffered(), is(false));
+
+        Random random = new Random(42);
+        for (BinaryWriter w : new BinaryWriter[]{writer, bufferedWriter}) {
+            random.setSeed(42);
+            for (int i = 0; i < 100; ++i) {
+                long value = random.nextLong() >> random.nextInt(64);
+                w.writeVarint(value);
+                w.writeVarint((int) value);
+                w.writeShort((short) value);
+                w.writeInt((int) value);
+                w.writeLong(value);
+                w.writeUInt16((int) value & 0xffff);
+                w.writeUInt24((int) value & 0xffffff);
+                w.writeUInt32((int) value);
+                w.writeDouble(random.nextDouble());
+                w.writeBinary(Binary.wrap(new byte[random.nextInt(40)]));
+                w.write(new byte[]{1, 2, 3}, 1, 2);
+            }
+        }
+        // Content is not written until the block is full.
+        assertThat(buffered.size(), is(lessThan(out.size())));
+        bufferedWriter.flush();
+        assertArrayEquals(out.toByteArray(), buffered.toByteArray());
+    }
+
+    @Test
+    public void testReserveBackfill() throws IOException {
+        BinaryWriter bufferedWriter = new BigEndianBinaryWriter(out, 16);
+        int outer = bufferedWriter.reserve(4);
+        for (int i = 0; i < 10; ++i) {
+            int inner = bufferedWriter.reserve(2);
+            bufferedWriter.writeBinary(Binary.wrap(new byte[i * 5]));
+            bufferedWriter.backfillShort(inner, (short) (bufferedWriter.position() - inner - 2));
+        }
+        // Nothing is written while bytes are reserved.
+        assertThat(out.size(), is(0));
+        bufferedWriter.backfillInt(outer, bufferedWriter.position() - outer - 4);
+        bufferedWriter.close();
+
+        BinaryReader reader = getReader();
+        assertThat(reader.expectInt(), is(245));
+        for (int i = 0; i < 10; ++i) {
+            assertThat(reader.expectShort(), is((short) (i * 5)));
+            assertThat(reader.expectBytes(i * 5).length, is(i * 5));
+        }
+        assertThat(reader.read(), is(-1));
+    }
+
+    @Test
+    public void testBadReserve() throws IOException {
+        try {
+            writer.reserve(4);
+            fail("no exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("Binary writer is not buffered"));
+        }
+
+        BinaryWriter bufferedWriter = new BigEndianBinaryWriter(out, 16);
+        try {
+            bufferedWriter.backfillInt(0, 4);
+            fail("no exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("No reserved bytes to backfill"));
+        }
+
+        int mark = bufferedWriter.reserve(2);
+        try {
+            bufferedWriter.backfillInt(mark, 4);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Illegal backfill of 4 bytes at 0, reserved 2"));
+        }
+        try {
+            bufferedWriter.backfillShort(1, (short) 4);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("No open reservation at 1 for backfill of 2 bytes"));
+        }
+
+        // Backfilling twice must not close another open reservation.
+        int other = bufferedWriter.reserve(2);
+        bufferedWriter.backfillShort(mark, (short) 4);
+        try {
+            bufferedWriter.backfillShort(mark, (short) 4);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("No open reservation at 0 for backfill of 2 bytes"));
+        }
+        try {
+            bufferedWriter.flush();
+            fail("no exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("Reserved bytes not backfilled: 1"));
+        }
+        bufferedWriter.backfillShort(other, (short) 5);
+        bufferedWriter.flush();
+        assertArrayEquals(new byte[]{0, 4, 0, 5}, out.toByteArray());
+    }
+
     @Test
     public void tesExpectLarge() throws IOException {
         byte[] arr = new byte[1024 * 1024]; // 1 MB.
         new Random().nextBytes(arr);
-        ByteArrayInputStream in = new ByteArrayInputStream(arr);
-        BigEndianBinaryReader reader = new BigEndianBinaryReader(in);
+        BinaryReader reader = getReader(arr);
 
         byte[] res = reader.expectBytes(arr.length);
 
@@ -585,8 +901,7 @@ public class BigEndianBinaryIOTest {
     public void tesExpectTooLarge() throws IOException {
         byte[] arr = new byte[1024 * 10]; // 10 kB.
         new Random().nextBytes(arr);
-        ByteArrayInputStream in = new ByteArrayInputStream(arr);
-        BigEndianBinaryReader reader = new BigEndianBinaryReader(in);
+        BinaryReader reader = getReader(arr);
 
         try {
             reader.expectBytes(1024 * 1024 * 10);
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.io;
+
+import net.morimekta.util.Binary;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BinaryRecordIOTest {
+    private final Random random = new Random(42);
+
+    @Test
+    public void testRecords() throws IOException {
+        List<Binary> records = records(1000, 100);
+        byte[] bytes = write(records, 1024, true);
+
+        BinaryRecordReader reader = new BinaryRecordReader(Binary.wrap(bytes));
+        assertThat(reader.size(), is(1000L));
+        assertThat(reader.getBlockCount() > 10, is(true));
+        for (int i = 0; i < 100; ++i) {
+            int index = random.nextInt(records.size());
+            assertThat(reader.get(index), is(records.get(index)));
+        }
+        assertThat(reader.get(0), is(records.get(0)));
+        assertThat(reader.get(999), is(records.get(999)));
+        assertThat(toList(reader.iterator()), is(records));
+        assertThat(toList(BinaryRecordReader.iterate(new ByteArrayInputStream(bytes))), is(records));
+
+        try {
+            reader.get(1000);
+            fail("No exception on bad index");
+        } catch (IndexOutOfBoundsException e) {
+            assertEquals("Record 1000 of 1000", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDirectBuffer() throws IOException {
+        List<Binary> records = records(100, 300);
+        byte[] bytes = write(records, 500, false);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 10);
+        direct.position(10);
+        direct.put(bytes);
+        direct.position(10);
+
+        BinaryRecordReader reader = new BinaryRecordReader(direct);
+        assertThat(reader.size(), is(100L));
+        assertThat(reader.get(57), is(records.get(57)));
+        assertThat(toList(reader.iterator()), is(records));
+        assertThat(direct.position(), is(10));
+    }
+
+    @Test
+    public void testLargeAndEmptyRecords() throws IOException {
+        List<Binary> records = new ArrayList<>();
+        records.add(Binary.empty());
+        records.add(records(1, 5000).get(0));
+        records.add(Binary.empty());
+        byte[] bytes = write(records, 100, true);
+
+        BinaryRecordReader reader = new BinaryRecordReader(ByteBuffer.wrap(bytes));
+        assertThat(reader.getBlockCount(), is(3));
+        assertThat(reader.get(1), is(records.get(1)));
+        assertThat(reader.get(2), is(Binary.empty()));
+        assertThat(toList(BinaryRecordReader.iterate(new ByteArrayInputStream(bytes))), is(records));
+
+        BinaryRecordReader empty = new BinaryRecordReader(ByteBuffer.wrap(write(new ArrayList<>(), 100, true)));
+        assertThat(empty.size(), is(0L));
+        assertThat(empty.iterator().hasNext(), is(false));
+    }
+
+    @Test
+    public void testChecksumMismatch() throws IOException {
+        List<Binary> records = records(100, 50);
+        byte[] bytes = write(records, 1024, true);
+        // Flip a byte in the last record of the first block.
+        bytes[1000] ^= 0x01;
+
+        BinaryRecordReader reader = new BinaryRecordReader(ByteBuffer.wrap(bytes));
+        try {
+            reader.get(0);
+            fail("No exception on bad checksum");
+        } catch (IOException e) {
+            assertEquals("Checksum mismatch in block 0 at 5", e.getMessage());
+        }
+        try {
+            toList(BinaryRecordReader.iterate(new ByteArrayInputStream(bytes)));
+            fail("No exception on bad checksum");
+        } catch (UncheckedIOException e) {
+            assertThat(e.getMessage().startsWith("Checksum mismatch in block of "), is(true));
+        }
+
+        // Without checksums, the content is not checked.
+        bytes = write(records, 1024, false);
+        bytes[1000] ^= 0x01;
+        assertThat(toList(new BinaryRecordReader(ByteBuffer.wrap(bytes)).iterator()).size(), is(100));
+    }
+
+    @Test
+    public void testBadContent() throws IOException {
+        try {
+            new BinaryRecordReader(ByteBuffer.wrap(new byte[30]));
+            fail("No exception on bad content");
+        } catch (IOException e) {
+            assertEquals("Not a binary record sequence", e.getMessage());
+        }
+
+        byte[] bytes = write(records(10, 10), 1024, true);
+        try {
+            new BinaryRecordReader(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+            fail("No exception on truncated content");
+        } catch (IOException e) {
+            assertEquals("Not a binary record sequence", e.getMessage());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRecordWriter writer = new BinaryRecordWriter(out);
+        writer.close();
+        try {
+            writer.write(new byte[1], 0, 1);
+            fail("No exception on closed writer");
+        } catch (IOException e) {
+            assertEquals("Writing to closed record writer", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testTruncatedStream() throws IOException {
+        byte[] bytes = write(records(100, 10), 64, true);
+        for (int len = BinaryRecordWriter.HEADER_SIZE; len < bytes.length; ++len) {
+            try {
+                toList(BinaryRecordReader.iterate(new ByteArrayInputStream(bytes, 0, len)));
+                fail("No exception on stream truncated at " + len + " of " + bytes.length);
+            } catch (UncheckedIOException e) {
+                // Expected.
+            }
+        }
+
+        // The header alone is not a valid (empty) sequence.
+        try {
+            BinaryRecordReader.iterate(new ByteArrayInputStream(bytes, 0, BinaryRecordWriter.HEADER_SIZE)).hasNext();
+            fail("No exception on header only");
+        } catch (UncheckedIOException e) {
+            assertEquals("Truncated record sequence", e.getMessage());
+        }
+    }
+
+    private List<Binary> records(int count, int maxSize) {
+        List<Binary> records = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            byte[] bytes = new byte[random.nextInt(maxSize)];
+            random.nextBytes(bytes);
+            records.add(Binary.wrap(bytes));
+        }
+        return records;
+    }
+
+    private static byte[] write(List<Binary> records, int blockSize, boolean checksums) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryRecordWriter writer = new BinaryRecordWriter(out, blockSize, checksums)) {
+            for (Binary record : records) {
+                writer.write(record);
+            }
+            assertThat(writer.getRecordCount(), is((long) records.size()));
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Binary> toList(Iterator<Binary> iterator) {
+        List<Binary> list = new ArrayList<>();
+        iterator.forEachRemaining(list::add);
+        return list;
+    }
+}
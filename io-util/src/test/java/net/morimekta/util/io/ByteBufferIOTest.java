@@ -2,18 +2,23 @@ package net.morimekta.util.io;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Random;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
- * Testing for the ByteBufferInputStream and ByteBufferOutputStream.
+ * Testing for the ByteBufferInputStream and ByteBufferOutputStream, and the
+ * ChunkedByteBufferOutputStream.
  */
 public class ByteBufferIOTest {
     @Test
@@ -190,4 +195,131 @@ public class ByteBufferIOTest {
         assertThat(bbis.read(), is(5));
         assertThat(bbis.read(), is(-1));
     }
+
+    @Test
+    public void testChunkedStream() throws IOException {
+        ByteBufferPool pool = new ByteBufferPool(16, true, 4);
+        byte[] data = new byte[100];
+        new Random(42).nextBytes(data);
+
+        ChunkedByteBufferOutputStream out = new ChunkedByteBufferOutputStream(pool);
+        assertThat(out.size(), is(0L));
+        assertThat(out.getBuffers().length, is(0));
+
+        out.write(data[0]);
+        out.write(data, 1, 40);
+        out.write(ByteBuffer.wrap(data, 41, 30));
+        out.write(data, 71, 29);
+        assertThat(out.size(), is(100L));
+        assertArrayEquals(data, out.toByteArray());
+
+        ByteBuffer[] buffers = out.getBuffers();
+        assertThat(buffers.length, is(7));
+        assertThat(buffers[0].remaining(), is(16));
+        assertThat(buffers[6].remaining(), is(4));
+        assertTrue(buffers[0].isReadOnly());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        out.writeTo(baos);
+        assertArrayEquals(data, baos.toByteArray());
+
+        out.reset();
+        assertThat(out.size(), is(0L));
+        assertThat(pool.getPooled(), is(4));
+        out.write(data, 0, 20);
+        ByteBuffer second = out.getBuffers()[1];
+        assertThat(second.remaining(), is(4));
+        assertThat(second.get(0), is(data[16]));
+
+        out.close();
+        assertThat(pool.getPooled(), is(4));
+        try {
+            out.write(1);
+            fail("No exception");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Writing to closed stream"));
+        }
+    }
+
+    @Test
+    public void testChunkedGatheringWrite() throws IOException {
+        byte[] data = new byte[1000];
+        new Random(42).nextBytes(data);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int[] calls = {0};
+        // Channel writing at most 100 bytes per call.
+        GatheringByteChannel channel = new GatheringByteChannel() {
+            @Override
+            public long write(ByteBuffer[] srcs, int offset, int length) {
+                ++calls[0];
+                long written = 0;
+                for (int i = offset; i < offset + length && written < 100; ++i) {
+                    while (srcs[i].hasRemaining() && written < 100) {
+                        baos.write(srcs[i].get());
+                        ++written;
+                    }
+                }
+                return written;
+            }
+
+            @Override
+            public long write(ByteBuffer[] srcs) {
+                return write(srcs, 0, srcs.length);
+            }
+
+            @Override
+            public int write(ByteBuffer src) {
+                return (int) write(new ByteBuffer[]{src});
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {}
+        };
+
+        try (ChunkedByteBufferOutputStream out = new ChunkedByteBufferOutputStream(new ByteBufferPool(64, false, 2))) {
+            out.write(data);
+            assertThat(out.writeTo(channel), is(1000L));
+            // Writing does not consume the content.
+            assertThat(out.size(), is(1000L));
+        }
+        assertThat(calls[0], is(10));
+        assertArrayEquals(data, baos.toByteArray());
+    }
+
+    @Test
+    public void testBufferPool() {
+        ByteBufferPool pool = new ByteBufferPool(32, false, 1);
+        assertThat(pool.getChunkSize(), is(32));
+        assertThat(pool.isDirect(), is(false));
+
+        ByteBuffer a = pool.acquire();
+        ByteBuffer b = pool.acquire();
+        a.put((byte) 1);
+        pool.release(a);
+        pool.release(b);
+        assertThat(pool.getPooled(), is(1));
+
+        ByteBuffer c = pool.acquire();
+        assertSame(a, c);
+        assertThat(c.position(), is(0));
+        assertThat(pool.getPooled(), is(0));
+
+        try {
+            pool.release(ByteBuffer.allocate(16));
+            fail("No exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Chunk not from pool: java.nio.HeapByteBuffer[pos=0 lim=16 cap=16]"));
+        }
+        try {
+            new ByteBufferPool(0, true, 1);
+            fail("No exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Invalid chunk size: 0"));
+        }
+    }
 }
@@ -24,12 +24,17 @@ import net.morimekta.util.Binary;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -41,7 +46,19 @@ import static org.mockito.Mockito.verifyZeroInteractions;
  * Test testing the pairing between BinaryWriter and BinaryReader, and that
  * what it writes will be read back exactly the same.
  */
+@RunWith(Parameterized.class)
 public class LittleEndinanBinaryIOTest {
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> params() {
+        return Arrays.asList(new Object[]{"stream"},
+                             new Object[]{"buffered"},
+                             new Object[]{"array"},
+                             new Object[]{"direct"});
+    }
+
+    @Parameterized.Parameter
+    public String mode;
+
     ByteArrayOutputStream out;
     BinaryWriter writer;
 
@@ -52,9 +69,29 @@ public class LittleEndinanBinaryIOTest {
     }
 
     private BinaryReader getReader() {
-        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        byte[] data = out.toByteArray();
         out.reset();
-        return new LittleEndianBinaryReader(in);
+        return getReader(data);
+    }
+
+    private BinaryReader getReader(byte[] data) {
+        switch (mode) {
+            case "buffered":
+                // Small buffer to test refills.
+                return new LittleEndianBinaryReader(new ByteArrayInputStream(data), 16);
+            case "array":
+                // Content in the middle of a larger array.
+                byte[] content = new byte[data.length + 10];
+                System.arraycopy(data, 0, content, 5, data.length);
+                return new LittleEndianBinaryReader(content, 5, data.length);
+            case "direct":
+                ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+                buffer.put(data);
+                buffer.flip();
+                return LittleEndianBinaryReader.forBuffer(buffer);
+            default:
+                return new LittleEndianBinaryReader(new ByteArrayInputStream(data));
+        }
     }
 
     @Test
@@ -78,6 +115,35 @@ public class LittleEndinanBinaryIOTest {
         assertEquals((short) 4, getReader().expectUInt32());
     }
 
+    @Test
+    public void testBufferedWriteEndianNess() throws IOException {
+        BinaryWriter bufferedWriter = new LittleEndianBinaryWriter(out, 16);
+        bufferedWriter.writeShort((short) 4);
+        bufferedWriter.writeInt(4);
+        bufferedWriter.writeUInt24(4);
+        int mark = bufferedWriter.reserve(8);
+        bufferedWriter.backfillLong(mark, 4L);
+        bufferedWriter.flush();
+        assertArrayEquals(new byte[]{4, 0, 4, 0, 0, 0, 4, 0, 0, 4, 0, 0, 0, 0, 0, 0, 0},
+                          out.toByteArray());
+    }
+
+    @Test
+    public void testArrayEndianNess() throws IOException {
+        writer.writeInts(new int[]{4, 5}, 0, 2);
+        writer.writeLongs(new long[]{6L}, 0, 1);
+        assertArrayEquals(new byte[]{4, 0, 0, 0, 5, 0, 0, 0, 6, 0, 0, 0, 0, 0, 0, 0},
+                          out.toByteArray());
+
+        int[] ints = new int[2];
+        long[] longs = new long[1];
+        BinaryReader reader = getReader();
+        reader.expectInts(ints);
+        reader.expectLongs(longs);
+        assertArrayEquals(new int[]{4, 5}, ints);
+        assertArrayEquals(new long[]{6L}, longs);
+    }
+
     @Test
     public void testWriteEndianNess() throws IOException {
         writer.writeShort((short) 4);
@@ -213,9 +279,8 @@ public class LittleEndinanBinaryIOTest {
     }
 
     private void assertBadExpectShort(String message, byte[] data) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
         try {
-            BinaryReader reader = new LittleEndianBinaryReader(bais);
+            BinaryReader reader = getReader(data);
             reader.expectShort();
             fail("No exception on bad short");
         } catch (IOException e) {
@@ -250,9 +315,8 @@ public class LittleEndinanBinaryIOTest {
     }
 
     private void assertBadExpectInt(String message, byte[] data) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
         try {
-            BinaryReader reader = new LittleEndianBinaryReader(bais);
+            BinaryReader reader = getReader(data);
             reader.expectInt();
             fail("No exception on bad int");
         } catch (IOException e) {
@@ -291,9 +355,8 @@ public class LittleEndinanBinaryIOTest {
     }
 
     private void assertBadExpectLong(String message, byte[] data) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
         try {
-            BinaryReader reader = new LittleEndianBinaryReader(bais);
+            BinaryReader reader = getReader(data);
             reader.expectLong();
             fail("No exception on bad long");
         } catch (IOException e) {
@@ -430,9 +493,8 @@ public class LittleEndinanBinaryIOTest {
     }
 
     private void assertBadExpectUnsigned(String message, byte[] data, int bytes) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
         try {
-            BinaryReader reader = new LittleEndianBinaryReader(bais);
+            BinaryReader reader = getReader(data);
             reader.expectUnsigned(bytes);
             fail("No exception on bad short");
         } catch (IOException e) {
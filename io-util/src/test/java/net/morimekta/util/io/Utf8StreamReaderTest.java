@@ -92,6 +92,73 @@ public class Utf8StreamReaderTest {
         assertEquals('~', (char) new Utf8StreamReader(bais).read());
     }
 
+    @Test
+    public void testRead_noReadAhead() throws IOException {
+        String original = "ü$Ѹ~\uD83D\uDE01abcæ";
+        byte[] data = original.getBytes(UTF_8);
+
+        ByteArrayInputStream bais = new ByteArrayInputStream(data);
+
+        char[] out = new char[4];
+        assertEquals(4, new Utf8StreamReader(bais).read(out));
+        assertEquals("ü$Ѹ~", String.valueOf(out));
+        // The surrogate pair is 2 chars.
+        assertEquals(3, new Utf8StreamReader(bais).read(out, 0, 3));
+        assertEquals("\uD83D\uDE01a", String.valueOf(out, 0, 3));
+        assertEquals(2, new Utf8StreamReader(bais).read(out, 0, 2));
+        assertEquals("bc", String.valueOf(out, 0, 2));
+        assertEquals(2, bais.available());
+        assertEquals(1, new Utf8StreamReader(bais).read(out));
+        assertEquals("æ", String.valueOf(out, 0, 1));
+        assertEquals(0, bais.available());
+    }
+
+    @Test
+    public void testRead_blockBoundaries() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; ++i) {
+            builder.append("ab\u00e6\u512a\uD83D\uDE01");
+        }
+        String original = builder.toString();
+        byte[] data = original.getBytes(UTF_8);
+
+        // Returns at most 3 bytes per read, which splits most multi-byte
+        // sequences between blocks.
+        ByteArrayInputStream bais = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(3, len));
+            }
+        };
+        Utf8StreamReader reader = new Utf8StreamReader(bais);
+
+        // Odd sized reads, so the surrogate pairs are split too.
+        StringBuilder result = new StringBuilder();
+        char[] out = new char[7];
+        int r;
+        while ((r = reader.read(out)) > 0) {
+            result.append(out, 0, r);
+        }
+        assertEquals(original, result.toString());
+
+        // And with large reads.
+        reader = new Utf8StreamReader(new ByteArrayInputStream(data));
+        out = new char[original.length()];
+        assertEquals(original.length(), reader.read(out));
+        assertEquals(original, String.valueOf(out));
+        assertEquals(-1, reader.read(out));
+    }
+
+    @Test
+    public void testRead_nonStrict() throws IOException {
+        byte[] data = new byte[]{'a', -81, 'b', -2, 'c', -16, 81, 0, 0, 'd'};
+        Utf8StreamReader reader = new Utf8StreamReader(new ByteArrayInputStream(data), false);
+
+        char[] out = new char[10];
+        assertEquals(7, reader.read(out));
+        assertEquals("a?b?c?d", String.valueOf(out, 0, 7));
+    }
+
     @Test
     public void testReadSurrogatePair() throws IOException {
         byte[] src = "輸".getBytes(UTF_8);
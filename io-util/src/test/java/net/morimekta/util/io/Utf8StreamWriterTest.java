@@ -5,9 +5,12 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class Utf8StreamWriterTest {
     @Test
@@ -17,11 +20,14 @@ public class Utf8StreamWriterTest {
 
         writer.write("輸ü$Ѹ~");
 
+        // Nothing is written until flushed.
+        assertThat(out.size(), is(0));
+
+        writer.flush();
         assertThat(out.toByteArray(), is(new byte[]{
                 -16, -81, -89, -97, -61, -68, 36, -47, -72, 126
         }));
 
-        writer.flush();
         writer.flush();
         writer.close();
         writer.close();
@@ -29,5 +35,72 @@ public class Utf8StreamWriterTest {
         ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
         Utf8StreamReader reader = new Utf8StreamReader(in);
         assertThat(IOUtils.readString(reader), is("輸ü$Ѹ~"));
+
+        try {
+            writer.write("a");
+            fail("No exception on closed writer");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Writing to a closed stream."));
+        }
+    }
+
+    @Test
+    public void testBlockBoundaries() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 3000; ++i) {
+            builder.append("abcæ優😁");
+        }
+        String original = builder.toString();
+
+        // Written as one large string.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8StreamWriter writer = new Utf8StreamWriter(out);
+        writer.write(original);
+        writer.flush();
+        assertThat(out.toByteArray(), is(original.getBytes(UTF_8)));
+
+        // Written in odd sized pieces, which splits the surrogate pairs
+        // between write calls.
+        out = new ByteArrayOutputStream();
+        writer = new Utf8StreamWriter(out);
+        char[] chars = original.toCharArray();
+        for (int off = 0; off < chars.length; off += 7) {
+            writer.write(chars, off, Math.min(7, chars.length - off));
+        }
+        writer.close();
+        assertThat(out.toByteArray(), is(original.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testBadSurrogates() throws IOException {
+        assertBadSurrogate("Missing high surrogate before low: de01", "a\uDE01");
+        assertBadSurrogate("Missing low surrogate after high: d83d", "a\uD83Db");
+        assertBadSurrogate("High surrogate d83d after high: d83d", "a\uD83D\uD83D");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8StreamWriter writer = new Utf8StreamWriter(out);
+        writer.write("a\uD83D");
+        try {
+            writer.flush();
+            fail("No exception on flush");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Surrogate high pair written, but no low"));
+        }
+        assertThat(new String(out.toByteArray(), UTF_8), is("a"));
+
+        out = new ByteArrayOutputStream();
+        writer = new Utf8StreamWriter(out, false);
+        writer.write("a\uDE01b\uD83Dc\uD83D😁");
+        writer.flush();
+        assertThat(new String(out.toByteArray(), UTF_8), is("a?b?c?😁"));
+    }
+
+    private void assertBadSurrogate(String message, String str) throws IOException {
+        try {
+            new Utf8StreamWriter(new ByteArrayOutputStream()).write(str);
+            fail("No exception on bad surrogate");
+        } catch (UnsupportedEncodingException e) {
+            assertThat(e.getMessage(), is(message));
+        }
     }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2018, Stein Eldar Johnsen
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.morimekta.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class VarintUtilTest {
+    private static final int[]  INTS  = {0, 1, 127, 128, 0xcafe, 1 << 21, 1 << 28, -1,
+                                         -123456, Integer.MIN_VALUE, Integer.MAX_VALUE};
+    private static final long[] LONGS = {0L, 1L, 127L, 128L, 0xcafeL, -1L, -123456L,
+                                         1L << 56, 1L << 62, 1234567890123456789L,
+                                         Long.MIN_VALUE, Long.MAX_VALUE, 0xcafebabedeadbeefL};
+
+    @Test
+    public void testVarintSize() throws IOException {
+        for (int value : INTS) {
+            assertThat("size of " + value, VarintUtil.varintSize(value), is(writerSize(value)));
+        }
+        for (long value : LONGS) {
+            assertThat("size of " + value, VarintUtil.varintSize(value), is(writerSize(value)));
+        }
+        for (int bits = 0; bits < 64; ++bits) {
+            long value = 1L << bits;
+            assertThat(VarintUtil.varintSize(value), is(bits / 7 + 1));
+            assertThat(VarintUtil.varintSize(value - 1), is(Math.max(1, (bits + 6) / 7)));
+        }
+    }
+
+    @Test
+    public void testZigzag() {
+        assertThat(VarintUtil.zigzag(0), is(0));
+        assertThat(VarintUtil.zigzag(-1), is(1));
+        assertThat(VarintUtil.zigzag(1), is(2));
+        assertThat(VarintUtil.zigzag(Integer.MIN_VALUE), is(-1));
+        assertThat(VarintUtil.zigzag(-1L), is(1L));
+        assertThat(VarintUtil.zigzag(Long.MAX_VALUE), is(-2L));
+        for (int value : INTS) {
+            assertThat(VarintUtil.unzigzag(VarintUtil.zigzag(value)), is(value));
+        }
+        for (long value : LONGS) {
+            assertThat(VarintUtil.unzigzag(VarintUtil.zigzag(value)), is(value));
+        }
+    }
+
+    @Test
+    public void testArray() throws IOException {
+        byte[] bytes = new byte[200];
+        int pos = 0;
+        for (int value : INTS) {
+            pos = VarintUtil.writeVarint(bytes, pos, value);
+        }
+        for (long value : LONGS) {
+            pos = VarintUtil.writeVarint(bytes, pos, value);
+        }
+
+        // Same bytes as written by the binary writer.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryWriter writer = new BigEndianBinaryWriter(out)) {
+            for (int value : INTS) {
+                writer.writeVarint(value);
+            }
+            for (long value : LONGS) {
+                writer.writeVarint(value);
+            }
+        }
+        byte[] expected = out.toByteArray();
+        assertThat(pos, is(expected.length));
+        for (int i = 0; i < pos; ++i) {
+            assertThat(bytes[i], is(expected[i]));
+        }
+
+        pos = 0;
+        for (int value : INTS) {
+            assertThat(VarintUtil.readIntVarint(bytes, pos), is(value));
+            assertThat(VarintUtil.varintLength(bytes, pos), is(VarintUtil.varintSize(value)));
+            pos += VarintUtil.varintLength(bytes, pos);
+        }
+        for (long value : LONGS) {
+            assertThat(VarintUtil.readLongVarint(bytes, pos), is(value));
+            pos += VarintUtil.varintLength(bytes, pos);
+        }
+        assertThat(pos, is(expected.length));
+    }
+
+    @Test
+    public void testByteBuffer() {
+        // Heap buffer with array offset, and direct buffer.
+        ByteBuffer heap = ByteBuffer.wrap(new byte[210], 7, 200).slice();
+        ByteBuffer direct = ByteBuffer.allocateDirect(200);
+        for (ByteBuffer buffer : new ByteBuffer[]{heap, direct}) {
+            int pos = 0;
+            for (int value : INTS) {
+                pos = VarintUtil.writeVarint(buffer, pos, value);
+            }
+            for (long value : LONGS) {
+                pos = VarintUtil.writeVarint(buffer, pos, value);
+            }
+            int end = pos;
+            assertThat(buffer.position(), is(0));
+
+            pos = 0;
+            for (int value : INTS) {
+                assertThat(VarintUtil.readIntVarint(buffer, pos), is(value));
+                pos += VarintUtil.varintLength(buffer, pos);
+            }
+            for (long value : LONGS) {
+                assertThat(VarintUtil.readLongVarint(buffer, pos), is(value));
+                pos += VarintUtil.varintLength(buffer, pos);
+            }
+            assertThat(pos, is(end));
+
+            int[] ints = new int[INTS.length + 2];
+            long[] longs = new long[LONGS.length];
+            pos = VarintUtil.readVarints(buffer, 0, ints, 1, INTS.length);
+            pos = VarintUtil.readVarints(buffer, pos, longs, 0, LONGS.length);
+            assertThat(pos, is(end));
+            for (int i = 0; i < INTS.length; ++i) {
+                assertThat(ints[i + 1], is(INTS[i]));
+            }
+            for (int i = 0; i < LONGS.length; ++i) {
+                assertThat(longs[i], is(LONGS[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testPackedVarints() throws IOException {
+        Random random = new Random(42);
+        int[] ints = new int[1000];
+        long[] longs = new long[1000];
+        for (int i = 0; i < ints.length; ++i) {
+            ints[i] = random.nextInt() >>> random.nextInt(32);
+            longs[i] = random.nextLong() >>> random.nextInt(64);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryWriter writer = new BigEndianBinaryWriter(out)) {
+            writer.writePackedVarints(ints, 0, ints.length);
+            writer.writePackedVarints(longs, 0, longs.length);
+        }
+        byte[] bytes = out.toByteArray();
+
+        int[] intsOut = new int[ints.length];
+        long[] longsOut = new long[longs.length];
+        int pos = VarintUtil.readVarints(bytes, 0, intsOut, 0, ints.length);
+        // The last varints are read close to the end of the array.
+        assertThat(VarintUtil.readVarints(bytes, pos, longsOut, 0, longs.length), is(bytes.length));
+        for (int i = 0; i < ints.length; ++i) {
+            assertThat(intsOut[i], is(ints[i]));
+            assertThat(longsOut[i], is(longs[i]));
+        }
+
+        try (BinaryReader reader = new BigEndianBinaryReader(new ByteArrayInputStream(bytes))) {
+            for (int i = 0; i < ints.length; ++i) {
+                assertThat(reader.readIntVarint(), is(ints[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testBadVarints() {
+        assertBadVarint("Truncated varint at 1, limit 3", new byte[]{0, (byte) 0x80, (byte) 0x80}, 1);
+        assertBadVarint("Illegal varint offset 3, limit 3", new byte[]{0, 0, 0}, 3);
+        assertBadVarint("Illegal varint offset -1, limit 3", new byte[]{0, 0, 0}, -1);
+
+        byte[] tooLong = new byte[12];
+        for (int i = 0; i < 11; ++i) {
+            tooLong[i] = (byte) 0x80;
+        }
+        try {
+            VarintUtil.readIntVarint(tooLong, 0);
+            fail("No exception on too long varint");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Varint longer than 5 bytes at 0", e.getMessage());
+        }
+        try {
+            VarintUtil.readVarints(tooLong, 0, new int[1], 0, 1);
+            fail("No exception on too long varint");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Varint longer than 5 bytes at 0", e.getMessage());
+        }
+        try {
+            VarintUtil.readLongVarint(tooLong, 0);
+            fail("No exception on too long varint");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Varint longer than 10 bytes at 0", e.getMessage());
+        }
+        try {
+            VarintUtil.readVarints(new byte[]{1, 2, (byte) 0x80}, 0, new long[3], 0, 3);
+            fail("No exception on truncated varint");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Truncated varint at 2, limit 3", e.getMessage());
+        }
+        try {
+            VarintUtil.writeVarint(new byte[4], 1, -1);
+            fail("No exception on overflow");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No room for varint of 5 bytes at 1, limit 4", e.getMessage());
+        }
+        try {
+            VarintUtil.writeVarint(ByteBuffer.allocateDirect(4), 0, -1L);
+            fail("No exception on overflow");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No room for varint of 10 bytes at 0, limit 4", e.getMessage());
+        }
+    }
+
+    private void assertBadVarint(String message, byte[] bytes, int off) {
+        try {
+            VarintUtil.readIntVarint(bytes, off);
+            fail("No exception on bad int varint");
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+        try {
+            VarintUtil.readLongVarint(ByteBuffer.wrap(bytes), off);
+            fail("No exception on bad long varint");
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        try {
+            VarintUtil.varintLength(direct, off);
+            fail("No exception on bad varint");
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static int writerSize(int value) throws IOException {
+        return new BigEndianBinaryWriter(new ByteArrayOutputStream()).writeVarint(value);
+    }
+
+    private static int writerSize(long value) throws IOException {
+        return new BigEndianBinaryWriter(new ByteArrayOutputStream()).writeVarint(value);
+    }
+}
@@ -0,0 +1,123 @@
+package net.morimekta.util.json;
+
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Testing special aspects of the JsonByteToken class.
+ */
+public class JsonByteTokenTest {
+    @Test
+    public void testIsNull() {
+        JsonByteToken token = token(JsonToken.Type.TOKEN, "null");
+        assertEquals(JsonToken.Type.TOKEN, token.getType());
+        assertEquals(1, token.getLineNo());
+        assertEquals(1, token.getLinePos());
+        assertTrue(token.isNull());
+
+        assertFalse(token(JsonToken.Type.TOKEN, "nul").isNull());
+        assertFalse(token(JsonToken.Type.LITERAL, "null").isNull());
+    }
+
+    @Test
+    public void testIsSymbol() {
+        assertTrue(token(JsonToken.Type.SYMBOL, "[").isSymbol());
+        assertTrue(token(JsonToken.Type.SYMBOL, "[").isSymbol('['));
+        assertFalse(token(JsonToken.Type.SYMBOL, "[").isSymbol(']'));
+        assertFalse(token(JsonToken.Type.SYMBOL, "#").isSymbol());
+        assertFalse(token(JsonToken.Type.LITERAL, "\"[\"").isSymbol());
+    }
+
+    @Test
+    public void testIsBoolean() {
+        JsonByteToken token = token(JsonToken.Type.TOKEN, "true");
+        assertTrue(token.isBoolean());
+        assertTrue(token.booleanValue());
+        token = token(JsonToken.Type.TOKEN, "false");
+        assertTrue(token.isBoolean());
+        assertFalse(token.booleanValue());
+        assertFalse(token(JsonToken.Type.TOKEN, "yes").isBoolean());
+    }
+
+    @Test
+    public void testNumbers() {
+        JsonByteToken token = token(JsonToken.Type.TOKEN, "44");
+        assertFalse(token.isNumber());
+        assertFalse(token.isInteger());
+        assertFalse(token.isDouble());
+
+        token = token(JsonToken.Type.NUMBER, "44");
+        assertTrue(token.isNumber());
+        assertTrue(token.isInteger());
+        assertFalse(token.isDouble());
+        assertEquals((byte) 44, token.byteValue());
+        assertEquals((short) 44, token.shortValue());
+        assertEquals(44, token.intValue());
+        assertEquals(44L, token.longValue());
+        assertEquals(44.0, token.doubleValue(), 0.001);
+
+        token = token(JsonToken.Type.NUMBER, "-44.44e1");
+        assertTrue(token.isNumber());
+        assertFalse(token.isInteger());
+        assertTrue(token.isDouble());
+        assertEquals(-444.4, token.doubleValue(), 0.001);
+    }
+
+    @Test
+    public void testRawJsonLiteral() {
+        JsonByteToken token = token(JsonToken.Type.LITERAL, "\"\\\\↓ÑI©\\b\\u4f92\"");
+        assertEquals("\\\\↓ÑI©\\b\\u4f92", token.rawJsonLiteral());
+    }
+
+    @Test
+    public void testDecodeJsonLiteral() {
+        JsonByteToken token = token(JsonToken.Type.LITERAL,
+                                    "\"\\\\↓ÑI©ôðé\\b\\/\\f\\r\\n\\t\\\"\\u4f92\"");
+        assertEquals("\\↓ÑI©ôðé\b/\f\r\n\t\"侒", token.decodeJsonLiteral());
+
+        // No escapes, and 4-byte UTF-8 (surrogate pairs).
+        token = token(JsonToken.Type.LITERAL, "\"æ\uD83D\uDE01優\"");
+        assertEquals("æ\uD83D\uDE01優", token.decodeJsonLiteral());
+        token = token(JsonToken.Type.LITERAL, "\"æ\uD83D\uDE01\\t優\"");
+        assertEquals("æ\uD83D\uDE01\t優", token.decodeJsonLiteral());
+
+        // and with illegal escape characters.
+        assertEquals("?", token(JsonToken.Type.LITERAL, "\"\\0\"").decodeJsonLiteral());
+        // and with illegal escaped unicode.
+        assertEquals("?", token(JsonToken.Type.LITERAL, "\"\\u01\"").decodeJsonLiteral());
+        assertEquals("?", token(JsonToken.Type.LITERAL, "\"\\ubals\"").decodeJsonLiteral());
+
+        // and with bad UTF-8 (lone continuation byte).
+        token = new JsonByteToken(JsonToken.Type.LITERAL, new byte[]{'\"', '\\', 't', (byte) 0x80, '\"'}, 0, 5, 1, 1);
+        assertEquals("\t\uFFFD", token.decodeJsonLiteral());
+    }
+
+    @Test
+    public void testHashCode() {
+        JsonByteToken token1 = token(JsonToken.Type.LITERAL, "\"a\"");
+        JsonByteToken token2 = token(JsonToken.Type.SYMBOL, "{");
+        JsonByteToken token3 = token(JsonToken.Type.TOKEN, "null");
+
+        assertNotEquals(token1, token2);
+        assertNotEquals(token1, token3);
+        assertNotEquals(token2, token3);
+
+        assertNotEquals(token1.hashCode(), token2.hashCode());
+        assertNotEquals(token1.hashCode(), token3.hashCode());
+        assertNotEquals(token2.hashCode(), token3.hashCode());
+
+        assertTrue(token1.equals(token1));
+        assertFalse(token1.equals(null));
+        assertFalse(token1.equals(new Object()));
+    }
+
+    private static JsonByteToken token(JsonToken.Type type, String content) {
+        byte[] bytes = content.getBytes(UTF_8);
+        return new JsonByteToken(type, bytes, 0, bytes.length, 1, 1);
+    }
+}
@@ -0,0 +1,399 @@
+package net.morimekta.util.json;
+
+import net.morimekta.util.Strings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the byte level JSON tokenizer.
+ */
+public class JsonByteTokenizerTest {
+    private static final String lorem =
+            "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et \n" +
+            "dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut \n" +
+            "aliquip ex ea commodo consequat. Duis aute irure dolor in reprehenderit in voluptate velit esse \n" +
+            "cillum dolore eu fugiat nulla pariatur. Excepteur sint occaecat cupidatat non proident, sunt in \n" +
+            "culpa qui officia deserunt mollit anim id est laborum.\n";
+
+    @Test
+    public void testExpect() throws IOException, JsonException {
+        JsonByteTokenizer tokenizer = makeTokenizer("a, \t\n\"abba\"");
+
+        JsonByteToken a = tokenizer.expect("a");
+        assertEquals("a", a.asString());
+
+        JsonByteToken comma = tokenizer.expect("comma");
+        assertTrue(comma.isSymbol(','));
+
+        JsonByteToken abba = tokenizer.expect("abba");
+
+        assertEquals("\"abba\"", abba.asString());
+        assertEquals("abba", abba.decodeJsonLiteral());
+        assertEquals(2, abba.getLineNo());
+        assertEquals(1, abba.getLinePos());
+    }
+
+    @Test
+    public void testExpectBad() {
+        assertBad("Illegal character in JSON structure: '\\u00e6'", "æ");
+        assertBad("Illegal character in JSON structure: '\\u0001'", "\u0001");
+        assertBad("Expected __string__: Got end of file", "");
+    }
+
+    private void assertBad(String message, String str) {
+        try {
+            makeTokenizer(str).expect("__string__");
+            fail("no exception on bad string: \"" + str + "\"");
+        } catch (JsonException | IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testExpectString() throws IOException, JsonException {
+        JsonByteTokenizer tokenizer = makeTokenizer("\"a long \\n\\tstring with escapes\"");
+
+        JsonByteToken token = tokenizer.expectString("string");
+
+        assertEquals("\"a long \\n\\tstring with escapes\"", token.asString());
+        assertEquals("a long \n\tstring with escapes", token.decodeJsonLiteral());
+    }
+
+    @Test
+    public void testExpectLongString() throws IOException, JsonException {
+        String merged = Strings.times(lorem, 500);
+        String escaped = Strings.escape(merged);
+
+        String total = "{ \"field\": \"" + escaped + "\" }";
+        JsonByteTokenizer tokenizer = makeTokenizer(total);
+
+        tokenizer.expectSymbol("message start", '{');
+        assertEquals("field", tokenizer.expectString("field name").decodeJsonLiteral());
+        tokenizer.expectSymbol("", ':');
+
+        JsonByteToken longString = tokenizer.expectString("long string literal");
+        assertEquals(merged, longString.decodeJsonLiteral());
+        tokenizer.expectSymbol("message end", '}');
+        assertThat(tokenizer.next(), is(nullValue()));
+    }
+
+    @Test
+    public void testBadString() {
+        assertBadString("Expected __string__ (string literal): Got end of file", "");
+        assertBadString("Expected __string__ (string literal): but found '11'", "11");
+        assertBadString("Unexpected end of stream in string literal", "\"11");
+        assertBadString("Unexpected newline in string literal", "\"11\n\"");
+    }
+
+    private void assertBadString(String message, String str) {
+        try {
+            makeTokenizer(str).expectString("__string__");
+            fail("no exception on bad string: \"" + str + "\"");
+        } catch (JsonException | IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testExpectNumber() throws IOException, JsonException {
+        assertEquals(12345678901234567L, makeTokenizer("12345678901234567").expectNumber("number").longValue());
+        assertEquals(0.4, makeTokenizer("0.4").expectNumber("number").doubleValue(), 0.001);
+        assertEquals(4e-6, makeTokenizer("0.4e-5,").expectNumber("number").doubleValue(), 0.001);
+        assertEquals(4e-6, makeTokenizer("0.4e-5").expectNumber("number").doubleValue(), 0.001);
+        assertEquals(-0.4, makeTokenizer("-0.4").expectNumber("number").doubleValue(), 0.001);
+        assertEquals(-0.4, makeTokenizer("-.4").expectNumber("number").doubleValue(), 0.001);
+        assertEquals(-4.0, makeTokenizer("-4.").expectNumber("number").doubleValue(), 0.001);
+    }
+
+    @Test
+    public void testBadNumber() {
+        assertBadNumber("Expected __string__ (number): Got end of file", "");
+        assertBadNumber("Expected __string__ (number): but found 'false'", "false");
+        assertBadNumber("Expected __string__ (number): but found '\"string\"'", "\"string\"");
+        assertBadNumber("Wrongly terminated JSON number: '1x'", "1x");
+        assertBadNumber("Negative indicator without number", "-");
+        assertBadNumber("No decimal after negative indicator", "-,");
+        assertBadNumber("Badly terminated JSON exponent: '1e'", "1e");
+        assertBadNumber("Badly terminated JSON exponent: '1e-'", "1e-");
+        assertBadNumber("Badly terminated JSON exponent: '1eb'", "1eb");
+    }
+
+    private void assertBadNumber(String message, String str) {
+        try {
+            makeTokenizer(str).expectNumber("__string__");
+            fail("no exception on bad string: \"" + str + "\"");
+        } catch (JsonException | IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testExpectSymbol() throws IOException, JsonException {
+        JsonByteTokenizer tokenizer = makeTokenizer("{},:[]");
+
+        assertEquals('{', tokenizer.expectSymbol("one", '{'));
+        assertEquals('}', tokenizer.expectSymbol("two", '{', ':', ',', '}'));
+        assertEquals(',', tokenizer.expectSymbol("thr", '[', ',', ']'));
+        assertEquals(':', tokenizer.expectSymbol("fou", ':'));
+        assertEquals('[', tokenizer.expectSymbol("fiv", '[', ']'));
+        assertEquals(']', tokenizer.expectSymbol("six", '[', ']'));
+    }
+
+    @Test
+    public void testExpectBadSymbol() {
+        assertBadSymbol("No symbols to match.", "[");
+        assertBadSymbol("Expected __string__ (']'): but found '['", "[", ']');
+        assertBadSymbol("Expected __string__ (']'): Got end of file", "", ']');
+        assertBadSymbol("Expected __string__ (one of [']', '}']): but found '['", "[", ']', '}');
+        assertBadSymbol("Expected __string__ (one of [']', '}']): Got end of file", "", ']', '}');
+    }
+
+    private void assertBadSymbol(String message, String str, char... symbols) {
+        try {
+            makeTokenizer(str).expectSymbol("__string__", symbols);
+            fail("no exception on bad symbol: \"" + str + "\", not matching " + Arrays.toString(symbols));
+        } catch (JsonException | IOException | IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPeek() throws IOException, JsonException {
+        JsonByteTokenizer tokenizer = makeTokenizer("{\n" +
+                                                    "    \"first\": \"value\"\n" +
+                                                    "}");
+        assertTrue(tokenizer.peek("Fail").isSymbol(JsonToken.kMapStart));
+        assertTrue(tokenizer.next().isSymbol(JsonToken.kMapStart));
+        assertEquals("first", tokenizer.peek("Fail").decodeJsonLiteral());
+        assertEquals("first", tokenizer.expect("Fail").decodeJsonLiteral());
+
+        tokenizer.expectSymbol("Fail", JsonToken.kKeyValSep);
+        tokenizer.expectString("Fail");
+        assertTrue(tokenizer.expect("Fail").isSymbol(JsonToken.kMapEnd));
+
+        try {
+            tokenizer.peek("__message__");
+            fail("No exception on peek on end.");
+        } catch (JsonException e) {
+            assertEquals("Expected __message__: Got end of file", e.getMessage());
+            assertEquals("JSON Error on line 3: Expected __message__: Got end of file\n" +
+                         "}\n" +
+                         "-^", e.asString().replaceAll("\\r\\n", "\n"));
+        }
+    }
+
+    @Test
+    public void testGetLine() throws IOException {
+        JsonByteTokenizer tokenizer = makeTokenizer("{\n" +
+                                                    "    \"first\": \"value\",\n" +
+                                                    "    \"second\": 12345,\n" +
+                                                    "}");
+        try {
+            tokenizer.expectSymbol("", '{');
+            tokenizer.expectNumber("__number__");
+
+            fail("No exception on bad expectation.");
+        } catch (JsonException e) {
+            assertEquals("Expected __number__ (number): but found '\"first\"'", e.getMessage());
+            assertEquals(2, e.getLineNo());
+            assertEquals("    \"first\": \"value\",", e.getLine());
+            assertEquals(5, e.getLinePos());
+            assertEquals(7, e.getLen());
+            assertEquals("JSON Error on line 2: Expected __number__ (number): but found '\"first\"'\n" +
+                         "    \"first\": \"value\",\n" +
+                         "----^^^^^^^", e.asString().replaceAll("\\r\\n", "\n"));
+        }
+    }
+
+    @Test
+    public void testLinePosCountsChars() throws IOException, JsonException {
+        JsonByteTokenizer tokenizer = makeTokenizer("[\"æ優😁\", x]");
+        tokenizer.expectSymbol("", '[');
+        tokenizer.expectString("");
+        tokenizer.expectSymbol("", ',');
+        JsonByteToken x = tokenizer.expect("");
+        // [ + "æ優xx" (6 chars) + , + space.
+        assertEquals(10, x.getLinePos());
+    }
+
+    @Test
+    public void testLargeBuffer() throws IOException, JsonException {
+        // Test that we can refill and grow the buffer both:
+        //  - Part of normal JSON structure parsing.
+        //  - Part of string parsing.
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+            content.append("\"");
+            content.append(Strings.escape(lorem));
+            content.append("\"");
+            content.append(",");
+            content.append(i);
+            content.append(",");
+        }
+
+        JsonByteTokenizer tokenizer = makeTokenizer(content.toString());
+
+        for (int i = 0; i < 500; ++i) {
+            assertThat(tokenizer.expectString("").decodeJsonLiteral(), is(lorem));
+            assertThat(tokenizer.expectSymbol("", ','), is(','));
+            assertThat(tokenizer.expectNumber("").intValue(), is(i));
+            assertThat(tokenizer.expectSymbol("", ','), is(','));
+        }
+    }
+
+    @Test
+    public void testTinyBuffer() throws IOException, JsonException {
+        // Every token must grow or compact the buffer.
+        byte[] content = "{\"key\": [-12.5e3, true, \"æ優\"]}\n".getBytes(UTF_8);
+        JsonByteTokenizer tokenizer = new JsonByteTokenizer(new ByteArrayInputStream(content), 1);
+
+        tokenizer.expectSymbol("", '{');
+        assertEquals("key", tokenizer.expectString("").decodeJsonLiteral());
+        tokenizer.expectSymbol("", ':');
+        tokenizer.expectSymbol("", '[');
+        assertEquals(-12500.0, tokenizer.expectNumber("").doubleValue(), 0.001);
+        tokenizer.expectSymbol("", ',');
+        assertTrue(tokenizer.expect("").booleanValue());
+        tokenizer.expectSymbol("", ',');
+        assertEquals("æ優", tokenizer.expectString("").decodeJsonLiteral());
+        tokenizer.expectSymbol("", ']');
+        tokenizer.expectSymbol("", '}');
+        assertThat(tokenizer.hasNext(), is(false));
+        assertEquals(2, tokenizer.getLineNo());
+    }
+
+    @Test
+    public void testByteArray() throws IOException, JsonException {
+        byte[] content = "xx[1, \"æ\"]xx".getBytes(UTF_8);
+        JsonByteTokenizer tokenizer = new JsonByteTokenizer(content, 2, content.length - 4);
+
+        assertEquals('[', tokenizer.expectSymbol("", '['));
+        JsonByteToken one = tokenizer.expectNumber("");
+        assertEquals(1, one.intValue());
+        assertEquals(2, one.getLinePos());
+        tokenizer.expectSymbol("", ',');
+        assertEquals("æ", tokenizer.expectString("").decodeJsonLiteral());
+        assertEquals(']', tokenizer.expectSymbol("", ']'));
+        assertThat(tokenizer.hasNext(), is(false));
+    }
+
+    @Test
+    public void testByteBuffer() throws IOException, JsonException {
+        byte[] content = "xx[1, \"æ\"]xx".getBytes(UTF_8);
+
+        // Heap buffer, with array offset and position.
+        ByteBuffer heap = ByteBuffer.wrap(content, 1, content.length - 1).slice();
+        heap.position(1);
+        heap.limit(content.length - 3);
+        assertByteBufferContent(new JsonByteTokenizer(heap));
+        assertThat(heap.position(), is(1));
+
+        // Direct buffer.
+        ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+        direct.put(content);
+        direct.position(2);
+        direct.limit(content.length - 2);
+        assertByteBufferContent(new JsonByteTokenizer(direct));
+        assertThat(direct.position(), is(2));
+    }
+
+    private void assertByteBufferContent(JsonByteTokenizer tokenizer) throws IOException, JsonException {
+        assertEquals('[', tokenizer.expectSymbol("", '['));
+        JsonByteToken one = tokenizer.expectNumber("");
+        assertEquals(1, one.intValue());
+        assertEquals(2, one.getLinePos());
+        tokenizer.expectSymbol("", ',');
+        assertEquals("æ", tokenizer.expectString("").decodeJsonLiteral());
+        assertEquals(']', tokenizer.expectSymbol("", ']'));
+        assertThat(tokenizer.hasNext(), is(false));
+    }
+
+    @Test
+    public void testDirectBuffer_largeContent() throws IOException, JsonException {
+        // A single line larger than the token buffer, so the start of the
+        // line is gone when the error happens, but is still in the source.
+        StringBuilder content = new StringBuilder("[");
+        for (int i = 0; i < 500; ++i) {
+            content.append("\"").append(Strings.escape(lorem)).append("\",");
+        }
+        content.append("1.2.3]");
+        byte[] bytes = content.toString().getBytes(UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+
+        JsonByteTokenizer tokenizer = new JsonByteTokenizer(direct);
+        tokenizer.expectSymbol("", '[');
+        for (int i = 0; i < 500; ++i) {
+            assertThat(tokenizer.expectString("").decodeJsonLiteral(), is(lorem));
+            tokenizer.expectSymbol("", ',');
+        }
+        try {
+            tokenizer.expectNumber("");
+            fail("no exception");
+        } catch (JsonException e) {
+            assertThat(e.getMessage(), is("Wrongly terminated JSON number: '1.2.'"));
+            assertThat(e.getLine(), is(content.toString()));
+            assertThat(e.getLineNo(), is(1));
+            assertThat(e.getLinePos(), is(content.length() - 2));
+        }
+    }
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testForFile() throws IOException, JsonException {
+        Path file = tmp.newFile("test.json").toPath();
+        Files.write(file, "{\n  \"key\": \"優\",\n  \"bad\": x\n}\n".getBytes(UTF_8));
+
+        JsonByteTokenizer tokenizer = JsonByteTokenizer.forFile(file);
+        tokenizer.expectSymbol("", '{');
+        assertEquals("key", tokenizer.expectString("").decodeJsonLiteral());
+        tokenizer.expectSymbol("", ':');
+        assertEquals("優", tokenizer.expectString("").decodeJsonLiteral());
+        tokenizer.expectSymbol("", ',');
+        tokenizer.expectString("");
+        tokenizer.expectSymbol("", ':');
+        try {
+            tokenizer.expectNumber("value");
+            fail("no exception");
+        } catch (JsonException e) {
+            assertEquals("JSON Error on line 3: Expected value (number): but found 'x'\n" +
+                         "  \"bad\": x\n" +
+                         "---------^", e.asString());
+        }
+
+        Path empty = tmp.newFile("empty.json").toPath();
+        assertThat(JsonByteTokenizer.forFile(empty).hasNext(), is(false));
+    }
+
+    @Test
+    public void testUtf8Strings() throws IOException, JsonException {
+        // Test that we handle utf-8 in strings correctly.
+        JsonByteTokenizer tokenizer = makeTokenizer("\"æ優\\u00d6\"");
+        assertThat(tokenizer.expectString("").decodeJsonLiteral(), is("æ優Ö"));
+    }
+
+    private JsonByteTokenizer makeTokenizer(String content) {
+        byte[] src = content.getBytes(UTF_8);
+        ByteArrayInputStream bais = new ByteArrayInputStream(src);
+        return new JsonByteTokenizer(bais, 1 << 10);
+    }
+}
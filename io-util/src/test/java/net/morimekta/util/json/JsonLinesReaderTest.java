@@ -0,0 +1,197 @@
+package net.morimekta.util.json;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the JSON lines reader.
+ */
+public class JsonLinesReaderTest {
+    private static ForkJoinPool pool;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testOrdered() {
+        List<String> expected = expected(1000);
+        try (Stream<String> stream = reader(content(1000), true, 100).stream()) {
+            assertThat(stream.collect(Collectors.toList()), is(expected));
+        }
+    }
+
+    @Test
+    public void testUnordered() {
+        List<String> expected = expected(1000);
+        try (Stream<String> stream = reader(content(1000), false, 100).stream()) {
+            List<String> actual = stream.sorted().collect(Collectors.toList());
+            expected.sort(String::compareTo);
+            assertThat(actual, is(expected));
+        }
+    }
+
+    @Test
+    public void testLongLines() {
+        // Each line is longer than the chunk size.
+        List<String> expected = expected(20);
+        try (Stream<String> stream = reader(content(20), true, 5).stream()) {
+            assertThat(stream.collect(Collectors.toList()), is(expected));
+        }
+    }
+
+    @Test
+    public void testEmptyLinesAndNoTrailingNewline() {
+        String content = "\n" +
+                         "{\"id\":1,\"name\":\"n1\"}\n" +
+                         "\n" +
+                         "  {\"id\":2,\"name\":\"n2\"}  \r\n" +
+                         "{\"id\":3,\"name\":\"n3\"}";
+        try (Stream<String> stream = reader(content, true, 16).stream()) {
+            assertThat(stream.collect(Collectors.toList()), is(expected(3)));
+        }
+        try (Stream<String> stream = reader("", true, 16).stream()) {
+            assertThat(stream.count(), is(0L));
+        }
+    }
+
+    @Test
+    public void testForFile() throws IOException {
+        Path file = tmp.getRoot().toPath().resolve("records.json");
+        Files.write(file, content(100).getBytes(UTF_8));
+
+        try (JsonLinesReader<String> reader = JsonLinesReader.forFile(file, JsonLinesReaderTest::parse)) {
+            assertThat(reader.stream().collect(Collectors.toList()), is(expected(100)));
+        }
+    }
+
+    @Test
+    public void testBadRecord() {
+        StringBuilder content = new StringBuilder(content(100));
+        content.append("{\"id\":101,\"name\":}\n");
+        content.append(content(10));
+
+        for (boolean ordered : new boolean[]{true, false}) {
+            try (Stream<String> stream = reader(content.toString(), ordered, 64).stream()) {
+                stream.forEach(s -> {});
+                fail("no exception");
+            } catch (UncheckedJsonException e) {
+                assertThat(e.getMessage(), is("Expected name (string literal): but found '}'"));
+                assertThat(e.getLineNo(), is(101));
+                assertThat(e.getLinePos(), is(18));
+                assertThat(e.getLine(), is("{\"id\":101,\"name\":}"));
+            }
+        }
+    }
+
+    @Test
+    public void testBadRecord_recordsBefore() {
+        // All in one chunk, the records before the bad one are still
+        // delivered before the exception.
+        String content = content(100) + "{\"id\":101,\"name\":}\n" + content(10);
+        List<String> records = new ArrayList<>();
+        try (Stream<String> stream = reader(content, true, 1 << 16).stream()) {
+            stream.forEach(records::add);
+            fail("no exception");
+        } catch (UncheckedJsonException e) {
+            assertThat(e.getLineNo(), is(101));
+            assertThat(e.getCause().getCause(), is(instanceOf(JsonException.class)));
+        }
+        assertThat(records, is(expected(100)));
+    }
+
+    @Test(timeout = 10000L)
+    public void testParserError() {
+        JsonLinesReader<String> reader = new JsonLinesReader<>(
+                new ByteArrayInputStream(content(100).getBytes(UTF_8)),
+                tokenizer -> {
+                    throw new AssertionError("parser");
+                },
+                pool,
+                false,
+                64);
+        try (Stream<String> stream = reader.stream()) {
+            stream.forEach(s -> {});
+            fail("no exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("Failed to parse JSON lines: parser"));
+        }
+    }
+
+    @Test
+    public void testStreamOnlyOnce() {
+        JsonLinesReader<String> reader = reader("", true, 16);
+        reader.stream().close();
+        try {
+            reader.stream();
+            fail("no exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("JSON lines already streamed"));
+        }
+    }
+
+    private static JsonLinesReader<String> reader(String content, boolean ordered, int chunkSize) {
+        return new JsonLinesReader<>(new ByteArrayInputStream(content.getBytes(UTF_8)),
+                                     JsonLinesReaderTest::parse,
+                                     pool,
+                                     ordered,
+                                     chunkSize);
+    }
+
+    private static String content(int num) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 1; i <= num; ++i) {
+            builder.append("{\"id\":").append(i).append(",\"name\":\"n").append(i).append("\"}\n");
+        }
+        return builder.toString();
+    }
+
+    private static List<String> expected(int num) {
+        List<String> out = new ArrayList<>();
+        for (int i = 1; i <= num; ++i) {
+            out.add(i + ":n" + i);
+        }
+        return out;
+    }
+
+    private static String parse(JsonTokenizer tokenizer) throws IOException, JsonException {
+        tokenizer.expectSymbol("record start", JsonToken.kMapStart);
+        tokenizer.expectString("id key");
+        tokenizer.expectSymbol("id sep", JsonToken.kKeyValSep);
+        int id = tokenizer.expectNumber("id").intValue();
+        tokenizer.expectSymbol("list sep", JsonToken.kListSep);
+        tokenizer.expectString("name key");
+        tokenizer.expectSymbol("name sep", JsonToken.kKeyValSep);
+        String name = tokenizer.expectString("name").decodeJsonLiteral();
+        tokenizer.expectSymbol("record end", JsonToken.kMapEnd);
+        return id + ":" + name;
+    }
+}
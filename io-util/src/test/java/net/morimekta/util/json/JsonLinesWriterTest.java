@@ -0,0 +1,140 @@
+package net.morimekta.util.json;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the JSON lines writer.
+ */
+public class JsonLinesWriterTest {
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUpClass() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonLinesWriter<Integer> writer = new JsonLinesWriter<>(out, JsonLinesWriterTest::write)) {
+            writer.write(1);
+            writer.write(2);
+        }
+        assertThat(new String(out.toByteArray(), UTF_8),
+                   is("{\"id\":1,\"name\":\"n1\"}\n" +
+                      "{\"id\":2,\"name\":\"n2\"}\n"));
+    }
+
+    @Test
+    public void testWriteAll() throws IOException {
+        List<Integer> records = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            records.add(i);
+            expected.append("{\"id\":").append(i).append(",\"name\":\"n").append(i).append("\"}\n");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonLinesWriter<Integer> writer = new JsonLinesWriter<>(out, JsonLinesWriterTest::write, pool, 7);
+        writer.writeAll(records);
+        writer.writeAll(records.subList(0, 5));
+        writer.flush();
+
+        expected.append("{\"id\":0,\"name\":\"n0\"}\n" +
+                        "{\"id\":1,\"name\":\"n1\"}\n" +
+                        "{\"id\":2,\"name\":\"n2\"}\n" +
+                        "{\"id\":3,\"name\":\"n3\"}\n" +
+                        "{\"id\":4,\"name\":\"n4\"}\n");
+        assertThat(new String(out.toByteArray(), UTF_8), is(expected.toString()));
+
+        // And it round-trips with the reader.
+        JsonLinesReader<Integer> reader = new JsonLinesReader<>(
+                new ByteArrayInputStream(out.toByteArray()),
+                tokenizer -> {
+                    JsonPullParser parser = new JsonPullParser(tokenizer, "$.id");
+                    int id = parser.next() == null ? -1 : parser.getToken().intValue();
+                    while (parser.next() != null) {
+                        // consume the rest of the record.
+                    }
+                    return id;
+                });
+        assertThat(reader.stream().limit(1000).collect(Collectors.toList()), is(records));
+    }
+
+    @Test
+    public void testWriteAll_failure() throws IOException {
+        List<Integer> records = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            records.add(i);
+        }
+        records.set(50, -1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonLinesWriter<Integer> writer = new JsonLinesWriter<>(out, JsonLinesWriterTest::write, pool, 10);
+        try {
+            writer.writeAll(records);
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Negative id: -1"));
+        }
+
+        // The failed batches must not leak into later writes.
+        out.reset();
+        writer.writeAll(records.subList(0, 30));
+        writer.writeAll(records.subList(0, 2));
+        assertThat(new String(out.toByteArray(), UTF_8).split("\n").length, is(32));
+    }
+
+    @Test
+    public void testClosedWriterIsCollected() throws IOException, InterruptedException {
+        List<Integer> records = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            records.add(i);
+        }
+
+        // Uses the common pool, whose threads outlive the writer.
+        JsonLinesWriter<Integer> writer = new JsonLinesWriter<>(new ByteArrayOutputStream(), JsonLinesWriterTest::write);
+        writer.writeAll(records);
+        writer.close();
+
+        WeakReference<JsonLinesWriter<Integer>> ref = new WeakReference<>(writer);
+        writer = null;
+        for (int i = 0; i < 50 && ref.get() != null; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(ref.get() == null, is(true));
+    }
+
+    private static void write(JsonWriter writer, Integer id) {
+        if (id < 0) {
+            writer.object().key("id");
+            throw new IllegalArgumentException("Negative id: " + id);
+        }
+        writer.object()
+              .key("id").value(id)
+              .key("name").value("n" + id)
+              .endObject();
+    }
+}
@@ -0,0 +1,220 @@
+package net.morimekta.util.json;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static net.morimekta.util.json.JsonPullParser.Event.END_ARRAY;
+import static net.morimekta.util.json.JsonPullParser.Event.END_OBJECT;
+import static net.morimekta.util.json.JsonPullParser.Event.KEY;
+import static net.morimekta.util.json.JsonPullParser.Event.START_ARRAY;
+import static net.morimekta.util.json.JsonPullParser.Event.START_OBJECT;
+import static net.morimekta.util.json.JsonPullParser.Event.VALUE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the JSON pull parser.
+ */
+public class JsonPullParserTest {
+    private static final String DOCUMENT =
+            "{\n" +
+            "  \"name\": \"list\",\n" +
+            "  \"items\": [\n" +
+            "    {\"id\": 1, \"tags\": [\"a\", \"b\"], \"meta\": {\"x\": [1, {\"id\": 7}]}},\n" +
+            "    {\"meta\": null, \"id\": 2},\n" +
+            "    {\"i\\u0064\": \"three\"},\n" +
+            "    {\"other\": true}\n" +
+            "  ],\n" +
+            "  \"id\": 4\n" +
+            "}\n";
+
+    @Test
+    public void testEvents() throws IOException, JsonException {
+        JsonPullParser parser = makeParser("{\"a\": [1, \"b\", true, null, {}], \"c\": {\"d\": []}}", null);
+        List<String> events = new ArrayList<>();
+        JsonPullParser.Event event;
+        while ((event = parser.next()) != null) {
+            assertThat(parser.getEvent(), is(event));
+            if (parser.getToken() != null) {
+                events.add(event + ":" + parser.getToken().asString() + "@" + parser.getPath());
+            } else {
+                events.add(event + "@" + parser.getPath());
+            }
+        }
+        assertThat(events.toString(),
+                   is("[START_OBJECT@$, " +
+                      "KEY:\"a\"@$.a, " +
+                      "START_ARRAY@$.a, " +
+                      "VALUE:1@$.a[0], " +
+                      "VALUE:\"b\"@$.a[1], " +
+                      "VALUE:true@$.a[2], " +
+                      "VALUE:null@$.a[3], " +
+                      "START_OBJECT@$.a[4], " +
+                      "END_OBJECT@$.a[4], " +
+                      "END_ARRAY@$.a, " +
+                      "KEY:\"c\"@$.c, " +
+                      "START_OBJECT@$.c, " +
+                      "KEY:\"d\"@$.c.d, " +
+                      "START_ARRAY@$.c.d, " +
+                      "END_ARRAY@$.c.d, " +
+                      "END_OBJECT@$.c, " +
+                      "END_OBJECT@$]"));
+        assertThat(parser.next(), is(nullValue()));
+        assertThat(parser.getDepth(), is(0));
+    }
+
+    @Test
+    public void testRootValue() throws IOException, JsonException {
+        JsonPullParser parser = makeParser("  \"str\"  ", null);
+        assertThat(parser.next(), is(VALUE));
+        assertThat(parser.getToken().decodeJsonLiteral(), is("str"));
+        assertThat(parser.getPath(), is("$"));
+        assertThat(parser.next(), is(nullValue()));
+
+        assertThat(makeParser("", null).next(), is(nullValue()));
+    }
+
+    @Test
+    public void testSkipValue() throws IOException, JsonException {
+        JsonPullParser parser = makeParser(DOCUMENT, null);
+        assertThat(parser.next(), is(START_OBJECT));
+        assertThat(parser.next(), is(KEY));
+        parser.skipValue();
+        assertThat(parser.next(), is(KEY));
+        assertThat(parser.getToken().decodeJsonLiteral(), is("items"));
+        assertThat(parser.next(), is(START_ARRAY));
+        assertThat(parser.next(), is(START_OBJECT));
+        parser.skipValue();
+        assertThat(parser.getDepth(), is(2));
+        assertThat(parser.next(), is(START_OBJECT));
+        assertThat(parser.getPath(), is("$.items[1]"));
+        parser.skipValue();
+        assertThat(parser.next(), is(START_OBJECT));
+        assertThat(parser.next(), is(KEY));
+        assertThat(parser.getPath(), is("$.items[2].id"));
+        assertThat(parser.next(), is(VALUE));
+        assertThat(parser.next(), is(END_OBJECT));
+        assertThat(parser.next(), is(START_OBJECT));
+        parser.skipValue();
+        assertThat(parser.next(), is(END_ARRAY));
+        assertThat(parser.next(), is(KEY));
+        assertThat(parser.next(), is(VALUE));
+        assertThat(parser.getToken().intValue(), is(4));
+        // Nothing to skip.
+        parser.skipValue();
+        assertThat(parser.next(), is(END_OBJECT));
+        assertThat(parser.next(), is(nullValue()));
+    }
+
+    @Test
+    public void testPathFilter() throws IOException, JsonException {
+        assertThat(filtered("$.items[*].id"), is("[$.items[0].id=1, $.items[1].id=2, $.items[2].id=\"three\"]"));
+        assertThat(filtered("$.items[1].id"), is("[$.items[1].id=2]"));
+        assertThat(filtered("$['id']"), is("[$.id=4]"));
+        assertThat(filtered("$.*"), is("[$.name=\"list\", START_ARRAY@$.items, $.id=4]"));
+        assertThat(filtered("$.items[0].tags"), is("[START_ARRAY@$.items[0].tags]"));
+        assertThat(filtered("$.items[0].meta.x[1].id"), is("[$.items[0].meta.x[1].id=7]"));
+        assertThat(filtered("$.name.id"), is("[]"));
+        assertThat(filtered("$[0]"), is("[]"));
+        assertThat(filtered("$.nope"), is("[]"));
+
+        // A matching object or array returns all of its content.
+        JsonPullParser parser = makeParser(DOCUMENT, "$.items[0].tags");
+        assertThat(parser.next(), is(START_ARRAY));
+        assertThat(parser.getDepth(), is(4));
+        assertThat(parser.next(), is(VALUE));
+        assertThat(parser.getPath(), is("$.items[0].tags[0]"));
+        assertThat(parser.next(), is(VALUE));
+        assertThat(parser.next(), is(END_ARRAY));
+        assertThat(parser.getPath(), is("$.items[0].tags"));
+        assertThat(parser.next(), is(nullValue()));
+
+        // And skipping a matched object or array goes on to the next match.
+        parser = makeParser(DOCUMENT, "$.items[*]");
+        int objects = 0;
+        while (parser.next() != null) {
+            assertThat(parser.getEvent(), is(START_OBJECT));
+            parser.skipValue();
+            ++objects;
+        }
+        assertThat(objects, is(4));
+
+        // Root match.
+        parser = makeParser("[1]", "$");
+        assertThat(parser.next(), is(START_ARRAY));
+        assertThat(parser.next(), is(VALUE));
+        assertThat(parser.next(), is(END_ARRAY));
+        assertThat(parser.next(), is(nullValue()));
+    }
+
+    @Test
+    public void testBadFilter() throws IOException {
+        assertBadFilter("Path filter must start with '$': items", "items");
+        assertBadFilter("Empty field name at position 1 in path filter: $.", "$.");
+        assertBadFilter("Unterminated '[' at position 1 in path filter: $[1", "$[1");
+        assertBadFilter("Invalid index 'a' in path filter: $[a]", "$[a]");
+        assertBadFilter("Invalid index '-1' in path filter: $[-1]", "$[-1]");
+        assertBadFilter("Unexpected 'a' at position 1 in path filter: $a", "$a");
+    }
+
+    @Test
+    public void testBadDocument() throws IOException {
+        assertBad("Expected map key (string literal): but found 'true'", "{true: 2}");
+        assertBad("Expected key value separator (':'): but found '2'", "{\"a\" 2}");
+        assertBad("Expected entry separator or end: but found '\"b\"'", "{\"a\": 2 \"b\": 3}");
+        assertBad("Expected list separator or end: but found '2'", "[1 2]");
+        assertBad("Expected list value: but found ']'", "[1,]");
+        assertBad("Expected value: but found ':'", ":");
+        assertBad("Expected list value or end: Got end of file", "[1, 2");
+        assertBad("Expected map value: Got end of file", "{\"a\":");
+    }
+
+    private String filtered(String path) throws IOException, JsonException {
+        JsonPullParser parser = makeParser(DOCUMENT, path);
+        List<String> values = new ArrayList<>();
+        JsonPullParser.Event event;
+        while ((event = parser.next()) != null) {
+            if (event == VALUE) {
+                values.add(parser.getPath() + "=" + parser.getToken().asString());
+            } else {
+                values.add(event + "@" + parser.getPath());
+                parser.skipValue();
+            }
+        }
+        return values.toString();
+    }
+
+    private void assertBadFilter(String message, String path) throws IOException {
+        try {
+            makeParser("{}", path);
+            fail("no exception on bad filter: " + path);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private void assertBad(String message, String content) throws IOException {
+        try {
+            JsonPullParser parser = makeParser(content, null);
+            while (parser.next() != null) {
+                // read all.
+            }
+            fail("no exception on bad document: " + content);
+        } catch (JsonException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private JsonPullParser makeParser(String content, String path) throws IOException {
+        byte[] src = content.getBytes(UTF_8);
+        return new JsonPullParser(new JsonTokenizer(new ByteArrayInputStream(src), 1 << 10), path);
+    }
+}
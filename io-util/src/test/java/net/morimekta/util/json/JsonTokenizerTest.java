@@ -26,10 +26,16 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -169,6 +175,65 @@ public class JsonTokenizerTest {
         assertEquals(-4.0, token.parseDouble(), 0.001);
     }
 
+    @Test
+    public void testNumberValues() throws IOException, JsonException {
+        String[] numbers = {
+                "0", "-0", "7", "-42", "12345678901234567", "-9223372036854775807",
+                "9223372036854775807", "0.4", "-.4", "-4.", "1.5e2", "1E+3", "0.4e-5",
+                "123456789012345", "1.7976931348623157e308", "4.9e-324", "2.2250738585072014E-308",
+                "0.1", "0.3", "3.141592653589793", "1e22", "1e23", "123e30", "9007199254740993",
+                "1.00000000000000011102230246251565404236316680908203125", "12.50", "-0.000001",
+        };
+        for (String number : numbers) {
+            JsonToken token = makeTokenizer(number).expectNumber("number");
+            assertThat(number, Double.doubleToLongBits(token.doubleValue()),
+                       is(Double.doubleToLongBits(Double.parseDouble(number))));
+            assertThat(number, token.decimalValue(), is(new BigDecimal(number)));
+            if (token.isInteger()) {
+                assertThat(number, token.longValue(), is(Long.parseLong(number)));
+                assertThat(number, token.longValueExact(), is(Long.parseLong(number)));
+            }
+        }
+
+        // Compare the fast double path against the JDK with random values.
+        Random random = new Random(1234);
+        for (int i = 0; i < 10000; ++i) {
+            String number;
+            switch (i % 3) {
+                case 0:
+                    number = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+                    break;
+                case 1:
+                    number = (random.nextLong() % 1000000000000000L) + "e" + (random.nextInt(60) - 30);
+                    break;
+                default:
+                    number = random.nextInt(100000) + "." + random.nextInt(1000000000);
+                    break;
+            }
+            JsonToken token = makeTokenizer(number).expectNumber("number");
+            assertThat(number, token.doubleValue(), is(Double.parseDouble(number)));
+            assertThat(number, token.decimalValue(), is(new BigDecimal(number)));
+        }
+
+        assertThat(makeTokenizer("1.5e2").expectNumber("number").longValueExact(), is(150L));
+        assertThat(makeTokenizer("010").expectNumber("number").longValue(), is(8L));
+        // Integral numbers with fraction or exponent are not plain longs.
+        for (String number : new String[]{"1e0", "1.", "1.0e1", "10.0"}) {
+            try {
+                makeTokenizer(number).expectNumber("number").longValue();
+                fail("no exception for " + number);
+            } catch (IllegalArgumentException e) {
+                // Same as the integer parse.
+            }
+        }
+        try {
+            makeTokenizer("1.5").expectNumber("number").longValueExact();
+            fail("no exception");
+        } catch (ArithmeticException e) {
+            assertThat(e.getMessage(), is("Rounding necessary"));
+        }
+    }
+
     @Test
     public void testBadNumber() {
         assertBadNumber("Expected __string__ (number): Got end of file", "");
@@ -246,6 +311,104 @@ public class JsonTokenizerTest {
         }
     }
 
+    @Test
+    public void testDecodeKey() throws IOException, JsonException {
+        String content = "[{\"id\":1,\"name\":\"a\",\"n\\u0061me\":\"b\"}," +
+                         " {\"id\":2,\"name\":\"c\",\"n\\u0061me\":\"d\"}]";
+
+        JsonTokenizer tokenizer = makeTokenizer(content);
+        tokenizer.setKeyCacheSize(16);
+        String[] keys = readKeys(tokenizer);
+        assertThat(keys, is(new String[]{"id", "name", "name", "id", "name", "name"}));
+        assertThat(keys[3], is(sameInstance(keys[0])));
+        assertThat(keys[4], is(sameInstance(keys[1])));
+        // Escaped keys are decoded, but not interned.
+        assertThat(keys[5], is(not(sameInstance(keys[2]))));
+
+        tokenizer = makeTokenizer(content);
+        keys = readKeys(tokenizer);
+        assertThat(keys, is(new String[]{"id", "name", "name", "id", "name", "name"}));
+        assertThat(keys[3], is(not(sameInstance(keys[0]))));
+
+        try {
+            tokenizer.decodeKey(new JsonToken(JsonToken.Type.NUMBER, "12".toCharArray(), 0, 2, 1, 1));
+            fail("no exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Not a string literal key: 12"));
+        }
+    }
+
+    @Test
+    public void testDecodeKey_bounded() throws IOException, JsonException {
+        StringBuilder content = new StringBuilder("{");
+        for (int i = 0; i < 100; ++i) {
+            content.append("\"key").append(i).append("\":").append(i).append(",\n");
+        }
+        content.append("\"key0\":0}");
+
+        JsonTokenizer tokenizer = makeTokenizer(content.toString());
+        tokenizer.setKeyCacheSize(4);
+        String[] keys = readKeys(tokenizer);
+        assertThat(keys.length, is(101));
+        for (int i = 0; i < 100; ++i) {
+            assertThat(keys[i], is("key" + i));
+        }
+        assertThat(keys[100], is("key0"));
+    }
+
+    @Test
+    public void testSkipValue() throws IOException, JsonException {
+        JsonTokenizer tokenizer = makeTokenizer("[{\"a\": [1, 2.5e-3, \"x\\\"]}\"], \"b\": {}},\n" +
+                                                "  true, \"str\", -12, [[]], null]");
+        tokenizer.expectSymbol("", '[');
+        tokenizer.skipValue();
+        tokenizer.expectSymbol("", ',');
+        tokenizer.skipValue();
+        tokenizer.expectSymbol("", ',');
+        // Skipping a peeked value.
+        assertThat(tokenizer.peek("").decodeJsonLiteral(), is("str"));
+        tokenizer.skipValue();
+        tokenizer.expectSymbol("", ',');
+        tokenizer.skipValue();
+        tokenizer.expectSymbol("", ',');
+        assertTrue(tokenizer.peek("").isSymbol('['));
+        tokenizer.skipValue();
+        tokenizer.expectSymbol("", ',');
+        tokenizer.skipValue();
+        tokenizer.expectSymbol("", ']');
+        assertThat(tokenizer.hasNext(), is(false));
+
+        // Long strings crossing the buffer.
+        StringBuilder content = new StringBuilder("[");
+        for (int i = 0; i < 50; ++i) {
+            content.append("\"").append(Strings.escape(lorem)).append("\",");
+        }
+        content.append("5]");
+        tokenizer = makeTokenizer(content.toString() + " 7");
+        tokenizer.skipValue();
+        assertThat(tokenizer.expectNumber("").intValue(), is(7));
+    }
+
+    @Test
+    public void testSkipValueBad() {
+        assertBadSkip("Expected value to skip: Got end of file", "");
+        assertBadSkip("Expected value to skip: but found ']'", "]");
+        assertBadSkip("Unexpected end of stream in skipped value", "[1, [2]");
+        assertBadSkip("Unexpected end of stream in string literal", "{\"a");
+        assertBadSkip("Unexpected newline in string literal", "[\"a\n\"]");
+        assertBadSkip("Unexpected symbol in skipped value: '#'", "[#]");
+        assertBadSkip("Illegal character in JSON structure: '\\u00e6'", "[æ]");
+    }
+
+    private void assertBadSkip(String message, String str) {
+        try {
+            makeTokenizer(str).skipValue();
+            fail("no exception on bad value: \"" + str + "\"");
+        } catch (JsonException|IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
     @Test
     public void testGetLine() throws IOException {
         JsonTokenizer tokenizer = makeTokenizer("{\n" +
@@ -307,6 +470,19 @@ public class JsonTokenizerTest {
         assertThat(tokenizer.expectString("").decodeJsonLiteral(), is("æ優Ö"));
     }
 
+    private static String[] readKeys(JsonTokenizer tokenizer) throws IOException, JsonException {
+        List<String> keys = new ArrayList<>();
+        JsonToken last = null;
+        while (tokenizer.hasNext()) {
+            JsonToken token = tokenizer.next();
+            if (token.isSymbol(JsonToken.kKeyValSep)) {
+                keys.add(tokenizer.decodeKey(last));
+            }
+            last = token;
+        }
+        return keys.toArray(new String[0]);
+    }
+
     private JsonTokenizer makeTokenizer(String content) throws IOException {
         byte[] src = content.getBytes(UTF_8);
         ByteArrayInputStream bais = new ByteArrayInputStream(src);
@@ -20,10 +20,12 @@
  */
 package net.morimekta.util.json;
 
+import net.morimekta.util.Base64;
 import net.morimekta.util.Binary;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
@@ -261,6 +263,95 @@ public class JsonWriterTest {
                 baos);
     }
 
+    @Test
+    public void testLongs() throws JsonException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final JsonWriter writer = new JsonWriter(baos);
+        writer.array();
+        writer.value(0L);
+        writer.value(-7L);
+        writer.value(Long.MAX_VALUE);
+        writer.value(Long.MIN_VALUE);
+        writer.value((double) Long.MIN_VALUE);
+        writer.value(Double.NaN);
+        writer.value(-1e300);
+        writer.endArray();
+        writer.flush();
+
+        assertJsonEquals("[0,-7,9223372036854775807,-9223372036854775808,-9223372036854775808,NaN,-1.0E300]",
+                         baos);
+    }
+
+    @Test
+    public void testEscapes() throws JsonException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final JsonWriter writer = new JsonWriter(baos);
+        writer.array();
+        writer.value("\u0000\u001f\u007f\u0080");
+        writer.value("a\uD83D\uDE01b");
+        writer.value("a\uD83D");
+        writer.endArray();
+        writer.flush();
+
+        assertJsonEquals("[" +
+                         "\"\\u0000\\u001f\\u007f\\u0080\"," +
+                         "\"a\\ud83d\\ude01b\"," +
+                         "\"a\\ud83d\"" +
+                         "]", baos);
+    }
+
+    @Test
+    public void testLargeValues() throws JsonException {
+        // Values larger than the internal buffer, escaped, literal and binary.
+        StringBuilder plain = new StringBuilder();
+        StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+            plain.append("abc\næ\u0001");
+            escaped.append("abc\\næ\\u0001");
+        }
+        byte[] bytes = new byte[5000];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) (i * 7);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final JsonWriter writer = new JsonWriter(baos);
+        writer.array();
+        writer.value(plain);
+        writer.valueLiteral(escaped);
+        writer.value(Binary.wrap(bytes));
+        writer.endArray();
+        writer.flush();
+
+        assertJsonEquals("[\"" + escaped + "\"," + escaped + ",\"" + Base64.encodeToString(bytes) + "\"]",
+                         baos);
+    }
+
+    @Test
+    public void testLargeDirectBinary() throws JsonException {
+        // Larger than the chunks a buffer backed binary is written in, and
+        // not a multiple of 3.
+        byte[] bytes = new byte[20000];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) (i * 7);
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+        Binary binary = Binary.wrap(direct);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final JsonWriter writer = new JsonWriter(baos);
+        writer.object();
+        writer.key(binary);
+        writer.value(binary);
+        writer.endObject();
+        writer.flush();
+
+        String base64 = Base64.encodeToString(bytes);
+        assertJsonEquals("{\"" + base64 + "\":\"" + base64 + "\"}", baos);
+    }
+
     @Test
     public void testInvalidKeys() throws JsonException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();